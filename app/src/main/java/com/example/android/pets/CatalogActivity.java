@@ -16,50 +16,140 @@
 package com.example.android.pets;
 
 import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.FloatingActionButton;
+import android.support.design.widget.Snackbar;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
 
-import com.example.android.pets.adapters.PetCursorAdapter;
+import com.example.android.pets.adapters.PetRecyclerAdapter;
 import com.example.android.pets.data.PetContract.PetEntry;
+import com.example.android.pets.data.PetWriteQueue;
+import com.example.android.pets.importer.PetImportService;
+import com.example.android.pets.loaders.PetPageLoader;
+import com.example.android.pets.loaders.PetSearchLoader;
+import com.example.android.pets.loaders.PetSnapshot;
+import com.example.android.pets.loadtest.PetLoadTestService;
 
 /**
  * Displays list of pets that were entered and stored in the app.
  */
-public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<PetSnapshot> {
 
     private final static int PETS_CURSOR_LOADER_ID = 0;
+    private final static int PETS_PAGE_SIZE = 50;
+    private final static int PETS_PAGE_PREFETCH_DISTANCE = 10;
+    private final static int PETS_SEARCH_LOADER_ID = 1;
+    private final static int PETS_SEARCH_RESULTS_LIMIT = 100;
+    private final static long PETS_SEARCH_DELAY_MILLIS = 300;
+    private final static int PETS_COUNT_LOADER_ID = 2;
+    private final static int REQUEST_CODE_IMPORT_FILE = 0;
+    private final static String[] IMPORT_MIME_TYPES = {"text/csv", "text/comma-separated-values",
+            "application/json"};
+    private final static String KEY_SEARCH_QUERY = "search_query";
     private final String LOG_TAG = getClass().getSimpleName();
-    private PetCursorAdapter petCursorAdapter;
-    private ListView mPetsListView;
+    private final Handler mSearchHandler = new Handler();
+    private PetRecyclerAdapter mPetRecyclerAdapter;
+    private PetWriteQueue mPetWriteQueue;
+    private RecyclerView mPetsRecyclerView;
+    private LinearLayoutManager mPetsLayoutManager;
+    private View mEmptyView;
+    private TextView mPetsCountTextView;
+    private PetSnapshot mPetsPagesSnapshot;
+    private String mPendingSearchQuery;
+    private String mSearchQuery;
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            searchPets(mPendingSearchQuery);
+        }
+    };
+
+    /**
+     * Loads the total number of pets from the count statistics, which stays up to date without
+     * paging through the whole table.
+     */
+    private final LoaderManager.LoaderCallbacks<Cursor> mPetsCountLoaderCallbacks =
+            new LoaderManager.LoaderCallbacks<Cursor>() {
+                @Override
+                public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+                    return new CursorLoader(CatalogActivity.this, PetEntry.CONTENT_STATS_COUNT_URI,
+                            null, null, null, null);
+                }
+
+                @Override
+                public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+                    int petsCount = 0;
+                    if (cursor != null && cursor.moveToFirst()) {
+                        petsCount = cursor.getInt(cursor.getColumnIndexOrThrow(PetEntry.COLUMN_STATS_COUNT));
+                    }
+                    showPetsCount(petsCount);
+                }
+
+                @Override
+                public void onLoaderReset(Loader<Cursor> loader) {
+                    showPetsCount(0);
+                }
+            };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_catalog);
 
-        this.petCursorAdapter = new PetCursorAdapter(this, null);
-        getSupportLoaderManager().initLoader(PETS_CURSOR_LOADER_ID, null, this);
+        this.mPetRecyclerAdapter = new PetRecyclerAdapter(this, new PetRecyclerAdapter.OnPetClickListener() {
+            @Override
+            public void onPetClick(long petId) {
+                openEditorActivity(ContentUris.withAppendedId(PetEntry.CONTENT_URI, petId));
+            }
+        });
+        this.mPetWriteQueue = PetWriteQueue.getInstance(this);
         initializeActivityViews();
+        getSupportLoaderManager().initLoader(PETS_CURSOR_LOADER_ID, null, this);
+        getSupportLoaderManager().initLoader(PETS_COUNT_LOADER_ID, null, mPetsCountLoaderCallbacks);
+
+        if (savedInstanceState != null) {
+            searchPets(savedInstanceState.getString(KEY_SEARCH_QUERY));
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(KEY_SEARCH_QUERY, mSearchQuery);
+    }
+
+    @Override
+    protected void onDestroy() {
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        super.onDestroy();
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+        // The load test is a development tool, release builds don't offer it
+        menu.findItem(R.id.action_run_load_test).setVisible(BuildConfig.DEBUG);
+        initializeSearchView(menu.findItem(R.id.action_search));
         return true;
     }
 
@@ -67,9 +157,13 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
-            // Respond to a click on the "Insert dummy data" menu option
-            case R.id.action_insert_dummy_data:
-                addDummyPet();
+            // Respond to a click on the "Run load test" menu option
+            case R.id.action_run_load_test:
+                PetLoadTestService.startLoadTest(this);
+                return true;
+            // Respond to a click on the "Import pets" menu option
+            case R.id.action_import_pets:
+                pickImportFile();
                 return true;
             // Respond to a click on the "Delete all entries" menu option
             case R.id.action_delete_all_entries:
@@ -80,18 +174,111 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        return new CursorLoader(this, PetEntry.CONTENT_URI, null, null, null, null);
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_CODE_IMPORT_FILE) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                PetImportService.startImport(this, data.getData());
+            }
+            return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-        petCursorAdapter.swapCursor(cursor);
+    public Loader<PetSnapshot> onCreateLoader(int id, Bundle args) {
+        switch (id) {
+            case PETS_SEARCH_LOADER_ID:
+                return new PetSearchLoader(this, PetEntry.CATALOG_PROJECTION, args.getString(KEY_SEARCH_QUERY),
+                        PETS_SEARCH_RESULTS_LIMIT);
+            default:
+                return new PetPageLoader(this, PetEntry.CATALOG_PROJECTION, PETS_PAGE_SIZE);
+        }
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        petCursorAdapter.swapCursor(null);
+    public void onLoadFinished(Loader<PetSnapshot> loader, PetSnapshot snapshot) {
+        switch (loader.getId()) {
+            case PETS_SEARCH_LOADER_ID:
+                showPets(snapshot);
+                break;
+            default:
+                mPetsPagesSnapshot = snapshot;
+                if (!isSearching()) {
+                    showPets(snapshot);
+                }
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<PetSnapshot> loader) {
+        switch (loader.getId()) {
+            case PETS_SEARCH_LOADER_ID:
+                showPets(mPetsPagesSnapshot);
+                break;
+            default:
+                mPetsPagesSnapshot = null;
+                if (!isSearching()) {
+                    showPets(null);
+                }
+        }
+    }
+
+    private void showPets(PetSnapshot snapshot) {
+        mPetRecyclerAdapter.swapSnapshot(snapshot);
+        mEmptyView.setVisibility(mPetRecyclerAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    private void showPetsCount(int petsCount) {
+        mPetsCountTextView.setText(getResources().getQuantityString(R.plurals.pets_count, petsCount, petsCount));
+        mPetsCountTextView.setVisibility(petsCount == 0 ? View.GONE : View.VISIBLE);
+    }
+
+    private boolean isSearching() {
+        return !TextUtils.isEmpty(mSearchQuery);
+    }
+
+    /**
+     * Show the pets matching the search query, or all of them again if the query is empty.
+     */
+    private void searchPets(String searchQuery) {
+        String trimmedQuery = searchQuery == null ? null : searchQuery.trim();
+        if (TextUtils.equals(trimmedQuery, mSearchQuery)) {
+            return;
+        }
+        mSearchQuery = trimmedQuery;
+
+        if (isSearching()) {
+            Bundle args = new Bundle();
+            args.putString(KEY_SEARCH_QUERY, mSearchQuery);
+            getSupportLoaderManager().restartLoader(PETS_SEARCH_LOADER_ID, args, this);
+        } else {
+            getSupportLoaderManager().destroyLoader(PETS_SEARCH_LOADER_ID);
+        }
+    }
+
+    private void initializeSearchView(MenuItem searchMenuItem) {
+        SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchMenuItem);
+        if (isSearching()) {
+            MenuItemCompat.expandActionView(searchMenuItem);
+            searchView.setQuery(mSearchQuery, false);
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mSearchHandler.removeCallbacks(mSearchRunnable);
+                searchPets(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                // Wait for the user to stop typing before querying
+                mPendingSearchQuery = newText;
+                mSearchHandler.removeCallbacks(mSearchRunnable);
+                mSearchHandler.postDelayed(mSearchRunnable, PETS_SEARCH_DELAY_MILLIS);
+                return true;
+            }
+        });
     }
 
     private void showDeleteAllPetsDialog() {
@@ -115,43 +302,86 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         deleteAllPetsAlertDialog.show();
     }
     private void deleteAllPets() {
-        getContentResolver().delete(PetEntry.CONTENT_URI, null, null);
-    }
+        final long deletedAtMillis = PetWriteQueue.newDeletionTime();
+        mPetWriteQueue.deletePets(PetEntry.CONTENT_URI, deletedAtMillis, new PetWriteQueue.WriteCallback() {
+            @Override
+            public void onDeleteComplete(int deletedRows) {
+                if (deletedRows > 0) {
+                    showUndoDeleteSnackbar(deletedRows, deletedAtMillis);
+                }
+            }
 
-    private void addDummyPet() {
-        ContentValues petValues = makeDummyPetValues();
-        getContentResolver().insert(PetEntry.CONTENT_URI, petValues);
+            @Override
+            public void onWriteFailed(RuntimeException e) {
+                Toast.makeText(CatalogActivity.this, R.string.delete_all_pets_failed, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
-    private ContentValues makeDummyPetValues() {
-        ContentValues petValues = new ContentValues();
-
-        petValues.put(PetEntry.COLUMN_PET_NAME, "Toto");
-        petValues.put(PetEntry.COLUMN_PET_BREED, "Terrier");
-        petValues.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_MALE);
-        petValues.put(PetEntry.COLUMN_PET_WEIGHT, 7);
+    /**
+     * Offer to restore the deleted pets for as long as the snackbar is shown, well within the
+     * undo window of the provider.
+     */
+    private void showUndoDeleteSnackbar(int deletedRows, final long deletedAtMillis) {
+        String message = getResources().getQuantityString(R.plurals.pets_deleted, deletedRows, deletedRows);
+        Snackbar.make(mPetsRecyclerView, message, Snackbar.LENGTH_LONG)
+                .setAction(R.string.undo, new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        mPetWriteQueue.restorePets(deletedAtMillis, null);
+                    }
+                })
+                .show();
+    }
 
-        return petValues;
+    private void pickImportFile() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        // Before KitKat the picker shows every file, the import service then tells JSON from CSV
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            intent.putExtra(Intent.EXTRA_MIME_TYPES, IMPORT_MIME_TYPES);
+        }
+        startActivityForResult(intent, REQUEST_CODE_IMPORT_FILE);
     }
 
     private void initializeActivityViews() {
         initializeFAB();
-        initializeListView();
+        initializeRecyclerView();
     }
 
-    private void initializeListView() {
-        mPetsListView = (ListView) findViewById(R.id.pets_list_view);
-        mPetsListView.setAdapter(petCursorAdapter);
-        mPetsListView.setEmptyView(findViewById(R.id.view_empty_list));
-        mPetsListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+    private void initializeRecyclerView() {
+        mEmptyView = findViewById(R.id.view_empty_list);
+        mPetsCountTextView = (TextView) findViewById(R.id.pets_count_text);
+        mPetsLayoutManager = new LinearLayoutManager(this);
+        mPetsRecyclerView = (RecyclerView) findViewById(R.id.pets_recycler_view);
+        mPetsRecyclerView.setLayoutManager(mPetsLayoutManager);
+        mPetsRecyclerView.setHasFixedSize(true);
+        mPetsRecyclerView.setAdapter(mPetRecyclerAdapter);
+        mPetsRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                Uri petUri = ContentUris.withAppendedId(PetEntry.CONTENT_URI, id);
-                openEditorActivity(petUri);
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int itemCount = mPetRecyclerAdapter.getItemCount();
+                if (isSearching() || itemCount == 0) {
+                    return;
+                }
+                PetPageLoader petsLoader = getPetPageLoader();
+                if (petsLoader == null) {
+                    return;
+                }
+                petsLoader.setVisiblePosition(mPetsLayoutManager.findFirstVisibleItemPosition());
+                if (mPetsLayoutManager.findLastVisibleItemPosition() >= itemCount - PETS_PAGE_PREFETCH_DISTANCE) {
+                    petsLoader.loadNextPage();
+                }
             }
         });
     }
 
+    private PetPageLoader getPetPageLoader() {
+        Loader<PetSnapshot> petsLoader = getSupportLoaderManager().getLoader(PETS_CURSOR_LOADER_ID);
+        return (PetPageLoader) petsLoader;
+    }
+
     private void initializeFAB() {
         FloatingActionButton fab = (FloatingActionButton) findViewById(R.id.fab);
         fab.setOnClickListener(new View.OnClickListener() {
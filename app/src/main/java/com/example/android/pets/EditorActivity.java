@@ -15,6 +15,7 @@
  */
 package com.example.android.pets;
 
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.DialogInterface;
 import android.database.Cursor;
@@ -22,7 +23,6 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.app.NavUtils;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
@@ -37,6 +37,12 @@ import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.Toast;
 
+import com.example.android.pets.data.Pet;
+import com.example.android.pets.data.PetCache;
+import com.example.android.pets.data.PetCursorCodec;
+import com.example.android.pets.data.PetWriteQueue;
+import com.example.android.pets.loaders.PetEditorLoader;
+
 import static com.example.android.pets.data.PetContract.PetEntry;
 
 /**
@@ -58,6 +64,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     private Uri mPetUri;
     private boolean mPetAttributesChanged;
     private View.OnTouchListener mOnViewTouchListener;
+    private PetWriteQueue mPetWriteQueue;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -69,7 +76,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         setActivityTitle();
         setupSpinner();
         if (mActivityMode == MODE_EDIT) {
-            getSupportLoaderManager().initLoader(PET_CURSOR_LOADER_ID, null, this);
+            loadPet();
         }
     }
 
@@ -97,8 +104,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         switch (item.getItemId()) {
             case R.id.action_save:
                 if (arePetAttributesValid()) {
-                    Uri petUri = savePet();
-                    displayInsertionStatus(petUri);
+                    savePet();
                     finish();
                 } else {
                     displayInsertionStatus(null);
@@ -134,7 +140,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        return new CursorLoader(this, mPetUri, null, null, null, null);
+        return new PetEditorLoader(this, mPetUri);
     }
 
     @Override
@@ -147,6 +153,18 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         populateActivityViews(null);
     }
 
+    /**
+     * Fill the views right away if the editor already read the pet, or query it otherwise.
+     */
+    private void loadPet() {
+        Pet cachedPet = PetCache.getInstance().get(ContentUris.parseId(mPetUri));
+        if (cachedPet != null) {
+            populateActivityViews(cachedPet);
+        } else {
+            getSupportLoaderManager().initLoader(PET_CURSOR_LOADER_ID, null, this);
+        }
+    }
+
     private boolean arePetAttributesValid() {
         String name = mNameEditText.getText().toString().trim();
         if (name.isEmpty()) {
@@ -160,6 +178,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         this.mPetUri = getIntent().getData();
         this.mGender = PetEntry.DEFAULT_GENDER;
         this.mPetAttributesChanged = false;
+        this.mPetWriteQueue = PetWriteQueue.getInstance(this);
         this.mOnViewTouchListener = new View.OnTouchListener() {
             @Override
             public boolean onTouch(View view, MotionEvent motionEvent) {
@@ -237,25 +256,46 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         });
     }
 
-    private Uri savePet() {
+    private void savePet() {
         ContentValues petAttributes = getPetAttributesFromUserInput();
         if (mActivityMode == MODE_ADD) {
-            return getContentResolver().insert(PetEntry.CONTENT_URI, petAttributes);
+            mPetWriteQueue.insertPet(petAttributes, new PetWriteQueue.WriteCallback() {
+                @Override
+                public void onInsertComplete(Uri petUri) {
+                    displayInsertionStatus(petUri);
+                }
+
+                @Override
+                public void onWriteFailed(RuntimeException e) {
+                    displayInsertionStatus(null);
+                }
+            });
         } else {
-            getContentResolver().update(mPetUri, petAttributes, null, null);
-            return mPetUri;
+            mPetWriteQueue.updatePet(mPetUri, petAttributes, new PetWriteQueue.WriteCallback() {
+                @Override
+                public void onUpdateComplete(int updatedRows) {
+                    displayInsertionStatus(updatedRows == 0 ? null : mPetUri);
+                }
+
+                @Override
+                public void onWriteFailed(RuntimeException e) {
+                    displayInsertionStatus(null);
+                }
+            });
         }
     }
 
     private ContentValues getPetAttributesFromUserInput() {
-        ContentValues petAttributes = new ContentValues(4);
+        String weight = mWeightEditText.getText().toString().trim();
 
-        petAttributes = insertName(petAttributes);
-        petAttributes = insertBreed(petAttributes);
-        petAttributes = insertGender(petAttributes);
-        petAttributes = insertWeight(petAttributes);
+        // The id isn't part of the attributes, the provider assigns it on insertion
+        Pet pet = new Pet(0,
+                mNameEditText.getText().toString().trim(),
+                mBreedEditText.getText().toString().trim(),
+                mGender,
+                weight.isEmpty() ? PetEntry.DEFAULT_WEIGHT : Integer.parseInt(weight));
 
-        return petAttributes;
+        return PetCursorCodec.toContentValues(pet);
     }
 
     private void showUnsavedChangesDialog(final int navigationType) {
@@ -289,8 +329,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         alertDialogBuilder.setPositiveButton(R.string.delete, new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialogInterface, int i) {
-                int deletionStatus = deletePet();
-                displayDeletionStatus(deletionStatus);
+                deletePet();
                 finish();
             }
         });
@@ -314,11 +353,20 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         }
     }
 
-    private int deletePet() {
+    private void deletePet() {
         if (mActivityMode == MODE_EDIT) {
-            return getContentResolver().delete(mPetUri, null, null);
+            mPetWriteQueue.deletePets(mPetUri, new PetWriteQueue.WriteCallback() {
+                @Override
+                public void onDeleteComplete(int deletedRows) {
+                    displayDeletionStatus(deletedRows);
+                }
+
+                @Override
+                public void onWriteFailed(RuntimeException e) {
+                    displayDeletionStatus(0);
+                }
+            });
         }
-        return 0;
     }
 
     private void displayInsertionStatus(Uri petUri) {
@@ -330,24 +378,15 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     }
 
     private void displayToast(String s) {
-        Toast.makeText(this, s, Toast.LENGTH_SHORT).show();
+        // The write callbacks may arrive after the activity is finished
+        Toast.makeText(getApplicationContext(), s, Toast.LENGTH_SHORT).show();
     }
 
     private void populateActivityViews(Cursor petCursor) {
         if (petCursor != null && petCursor.getCount() != 0) {
             petCursor.moveToNext();
 
-            String name = petCursor.getString(petCursor.getColumnIndex(PetEntry.COLUMN_PET_NAME));
-            mNameEditText.setText(name);
-
-            String breed = petCursor.getString(petCursor.getColumnIndex(PetEntry.COLUMN_PET_BREED));
-            mBreedEditText.setText(breed);
-
-            int gender = petCursor.getInt(petCursor.getColumnIndex(PetEntry.COLUMN_PET_GENDER));
-            mGenderSpinner.setSelection(gender, true);
-
-            int weight = petCursor.getInt(petCursor.getColumnIndex(PetEntry.COLUMN_PET_WEIGHT));
-            mWeightEditText.setText(String.valueOf(weight));
+            populateActivityViews(new PetCursorCodec(petCursor).decode());
         } else {
             mNameEditText.clearComposingText();
             mBreedEditText.clearComposingText();
@@ -356,30 +395,10 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         }
     }
 
-    private ContentValues insertName(ContentValues petAttributes) {
-        String name = mNameEditText.getText().toString().trim();
-        petAttributes.put(PetEntry.COLUMN_PET_NAME, name);
-        return petAttributes;
-    }
-
-    private ContentValues insertBreed(ContentValues petAttributes) {
-        String breed = mBreedEditText.getText().toString().trim();
-        petAttributes.put(PetEntry.COLUMN_PET_BREED, breed);
-        return petAttributes;
-    }
-
-    private ContentValues insertGender(ContentValues petAttributes) {
-        petAttributes.put(PetEntry.COLUMN_PET_GENDER, mGender);
-        return petAttributes;
-    }
-
-    private ContentValues insertWeight(ContentValues petAttributes) {
-        String weight = mWeightEditText.getText().toString().trim();
-        if (weight.isEmpty()) {
-            weight = "0";
-        }
-        int weightInt = Integer.parseInt(weight);
-        petAttributes.put(PetEntry.COLUMN_PET_WEIGHT, weightInt);
-        return petAttributes;
+    private void populateActivityViews(Pet pet) {
+        mNameEditText.setText(pet.getName());
+        mBreedEditText.setText(pet.getBreed());
+        mGenderSpinner.setSelection(pet.getGender(), true);
+        mWeightEditText.setText(String.valueOf(pet.getWeight()));
     }
-}
\ No newline at end of file
+}
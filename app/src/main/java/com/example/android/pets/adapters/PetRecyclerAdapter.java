@@ -0,0 +1,98 @@
+package com.example.android.pets.adapters;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.example.android.pets.R;
+import com.example.android.pets.data.Pet;
+import com.example.android.pets.loaders.PetSnapshot;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shows an immutable snapshot of pets. A new snapshot of the same loader only updates the items
+ * that changed, using the diff its loader computed in the background.
+ */
+public class PetRecyclerAdapter extends RecyclerView.Adapter<PetRecyclerAdapter.PetViewHolder> {
+
+    private final String mUnknownBreed;
+    private final OnPetClickListener mOnPetClickListener;
+    private List<Pet> mPets;
+
+    public PetRecyclerAdapter(Context context, OnPetClickListener onPetClickListener) {
+        this.mUnknownBreed = context.getString(R.string.unknown_breed);
+        this.mOnPetClickListener = onPetClickListener;
+        this.mPets = Collections.emptyList();
+        setHasStableIds(true);
+    }
+
+    /**
+     * Show the pets of the snapshot, or none if it's null. The diff of the snapshot is only
+     * dispatched if it was computed against the pets shown now, otherwise the whole list is redrawn.
+     */
+    public void swapSnapshot(PetSnapshot snapshot) {
+        if (snapshot == null) {
+            mPets = Collections.emptyList();
+            notifyDataSetChanged();
+        } else if (snapshot.getPreviousPets() == mPets) {
+            mPets = snapshot.getPets();
+            snapshot.getDiffResult().dispatchUpdatesTo(this);
+        } else {
+            mPets = snapshot.getPets();
+            notifyDataSetChanged();
+        }
+    }
+
+    @Override
+    public PetViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_pets_list_view, parent, false);
+        return new PetViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(PetViewHolder holder, int position) {
+        Pet pet = mPets.get(position);
+        holder.mNameTextView.setText(pet.getName());
+        holder.mSummaryTextView.setText(TextUtils.isEmpty(pet.getBreed()) ? mUnknownBreed : pet.getBreed());
+    }
+
+    @Override
+    public int getItemCount() {
+        return mPets.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mPets.get(position).getId();
+    }
+
+    public interface OnPetClickListener {
+        void onPetClick(long petId);
+    }
+
+    class PetViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        private final TextView mNameTextView;
+        private final TextView mSummaryTextView;
+
+        PetViewHolder(View view) {
+            super(view);
+            this.mNameTextView = (TextView) view.findViewById(R.id.name_text_view);
+            this.mSummaryTextView = (TextView) view.findViewById(R.id.summary_text_view);
+            view.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            if (getAdapterPosition() != RecyclerView.NO_POSITION) {
+                mOnPetClickListener.onPetClick(getItemId());
+            }
+        }
+    }
+}
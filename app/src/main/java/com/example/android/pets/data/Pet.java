@@ -0,0 +1,68 @@
+package com.example.android.pets.data;
+
+/**
+ * Immutable pet row of the pets table.
+ */
+public final class Pet {
+
+    private final long mId;
+    private final String mName;
+    private final String mBreed;
+    private final int mGender;
+    private final int mWeight;
+
+    public Pet(long id, String name, String breed, int gender, int weight) {
+        this.mId = id;
+        this.mName = name;
+        this.mBreed = breed;
+        this.mGender = gender;
+        this.mWeight = weight;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the breed of the pet, may be null or empty when unknown
+     */
+    public String getBreed() {
+        return mBreed;
+    }
+
+    public int getGender() {
+        return mGender;
+    }
+
+    public int getWeight() {
+        return mWeight;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Pet)) {
+            return false;
+        }
+        Pet pet = (Pet) o;
+        return mId == pet.mId && mGender == pet.mGender && mWeight == pet.mWeight
+                && (mName == null ? pet.mName == null : mName.equals(pet.mName))
+                && (mBreed == null ? pet.mBreed == null : mBreed.equals(pet.mBreed));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mId ^ (mId >>> 32));
+        result = 31 * result + (mName != null ? mName.hashCode() : 0);
+        result = 31 * result + (mBreed != null ? mBreed.hashCode() : 0);
+        result = 31 * result + mGender;
+        result = 31 * result + mWeight;
+        return result;
+    }
+}
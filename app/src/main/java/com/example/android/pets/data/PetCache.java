@@ -0,0 +1,95 @@
+package com.example.android.pets.data;
+
+import android.util.LruCache;
+
+/**
+ * Process-wide LRU cache of the pets read by the editor, keyed by id and bounded by an
+ * estimate of their size in bytes. {@link PetProvider} invalidates it from its write paths.
+ * <p>
+ * A reader must take {@link #getGeneration()} before querying and pass it to
+ * {@link #put(Pet, long)}, so that a row read before a write can't be cached after the write
+ * invalidated it.
+ */
+public final class PetCache {
+
+    public static final int DEFAULT_MAX_SIZE_BYTES = 1024 * 1024;
+
+    //Estimated bytes of a Pet, its boxed key, the cache entry and two empty strings
+    private static final int PET_OVERHEAD_BYTES = 160;
+
+    private static final PetCache sInstance = new PetCache(DEFAULT_MAX_SIZE_BYTES);
+
+    private final LruCache<Long, Pet> mPets;
+    private final int mMaxSizeBytes;
+    private long mGeneration;
+
+    private PetCache(int maxSizeBytes) {
+        this.mMaxSizeBytes = maxSizeBytes;
+        this.mPets = new LruCache<Long, Pet>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(Long id, Pet pet) {
+                return estimateSizeBytes(pet);
+            }
+        };
+    }
+
+    public static PetCache getInstance() {
+        return sInstance;
+    }
+
+    private static int estimateSizeBytes(Pet pet) {
+        int nameLength = pet.getName() == null ? 0 : pet.getName().length();
+        int breedLength = pet.getBreed() == null ? 0 : pet.getBreed().length();
+        return PET_OVERHEAD_BYTES + 2 * (nameLength + breedLength);
+    }
+
+    /**
+     * @return the cached pet, or null on a miss
+     */
+    public Pet get(long id) {
+        return mPets.get(id);
+    }
+
+    public synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Cache the pet, unless the cache was invalidated since the given generation was taken.
+     */
+    public synchronized void put(Pet pet, long generation) {
+        if (generation == mGeneration) {
+            mPets.put(pet.getId(), pet);
+        }
+    }
+
+    synchronized void invalidate(long id) {
+        mGeneration++;
+        mPets.remove(id);
+    }
+
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mPets.evictAll();
+    }
+
+    public int getHitCount() {
+        return mPets.hitCount();
+    }
+
+    public int getMissCount() {
+        return mPets.missCount();
+    }
+
+    public int getEvictionCount() {
+        return mPets.evictionCount();
+    }
+
+    public int getSizeBytes() {
+        return mPets.size();
+    }
+
+    public int getMaxSizeBytes() {
+        return mMaxSizeBytes;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Coalesces the change notifications of {@link PetProvider}. The URIs changed during a short
+ * window are collected and each of them is notified once when the window ends. When the whole
+ * table changed, or too many single pets did, one notification of the content URI replaces them,
+ * as it also reaches the observers of every single pet.
+ */
+class PetChangeNotifier {
+
+    private static final long NOTIFICATION_WINDOW_MILLIS = 100;
+    private static final int MAX_PENDING_ITEM_URIS = 16;
+
+    private final ContentResolver mContentResolver;
+    private final Handler mHandler;
+    private final Set<Uri> mPendingUris;
+    private final Runnable mFlushRunnable;
+    private boolean mFlushScheduled;
+
+    PetChangeNotifier(ContentResolver contentResolver) {
+        this.mContentResolver = contentResolver;
+        this.mHandler = new Handler(Looper.getMainLooper());
+        this.mPendingUris = new LinkedHashSet<Uri>();
+        this.mFlushRunnable = new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * Schedule a notification of the given URI, to be sent at the end of the current window.
+     */
+    synchronized void notifyChange(Uri uri) {
+        if (!mPendingUris.contains(PetEntry.CONTENT_URI)) {
+            if (PetEntry.CONTENT_URI.equals(uri) || mPendingUris.size() >= MAX_PENDING_ITEM_URIS) {
+                mPendingUris.clear();
+                mPendingUris.add(PetEntry.CONTENT_URI);
+            } else {
+                mPendingUris.add(uri);
+            }
+        }
+
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlushRunnable, NOTIFICATION_WINDOW_MILLIS);
+        }
+    }
+
+    private void flush() {
+        Uri[] uris;
+        synchronized (this) {
+            uris = mPendingUris.toArray(new Uri[mPendingUris.size()]);
+            mPendingUris.clear();
+            mFlushScheduled = false;
+        }
+
+        for (Uri uri : uris) {
+            mContentResolver.notifyChange(uri, null);
+        }
+    }
+}
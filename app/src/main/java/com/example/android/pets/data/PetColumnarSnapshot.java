@@ -0,0 +1,307 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Immutable column-oriented copy of the pets table for shelter-wide statistics. Every column is
+ * a primitive array indexed by row, and the names and breeds are stored as int codes into
+ * dictionaries of their distinct values, so aggregating never boxes a value. {@link PetProvider}
+ * reads one to answer {@link PetContract#METHOD_SHELTER_STATS}.
+ */
+public final class PetColumnarSnapshot {
+
+    /**
+     * Code of a null breed.
+     */
+    public static final int NO_CODE = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MIN_ROWS_PER_TASK = 16 * 1024;
+
+    private final int mCount;
+    private final long[] mIds;
+    private final int[] mGenders;
+    private final int[] mWeights;
+    private final int[] mNameCodes;
+    private final int[] mBreedCodes;
+    private final String[] mNames;
+    private final String[] mBreeds;
+
+    private PetColumnarSnapshot(int count, long[] ids, int[] genders, int[] weights, int[] nameCodes,
+                                int[] breedCodes, String[] names, String[] breeds) {
+        this.mCount = count;
+        this.mIds = ids;
+        this.mGenders = genders;
+        this.mWeights = weights;
+        this.mNameCodes = nameCodes;
+        this.mBreedCodes = breedCodes;
+        this.mNames = names;
+        this.mBreeds = breeds;
+    }
+
+    /**
+     * Read the rows of the cursor in one pass and close it. The cursor must have the columns of
+     * {@link PetEntry#EDITOR_PROJECTION}.
+     */
+    static PetColumnarSnapshot read(Cursor cursor) {
+        try {
+            int idColumnIndex = cursor.getColumnIndexOrThrow(PetEntry._ID);
+            int nameColumnIndex = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_NAME);
+            int breedColumnIndex = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_BREED);
+            int genderColumnIndex = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_GENDER);
+            int weightColumnIndex = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_WEIGHT);
+
+            Builder builder = new Builder(Math.max(cursor.getCount(), 0));
+            while (cursor.moveToNext()) {
+                builder.add(cursor.getLong(idColumnIndex),
+                        cursor.getString(nameColumnIndex),
+                        cursor.getString(breedColumnIndex),
+                        cursor.getInt(genderColumnIndex),
+                        cursor.getInt(weightColumnIndex));
+            }
+            return builder.build();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public long getId(int row) {
+        return mIds[row];
+    }
+
+    public int getGender(int row) {
+        return mGenders[row];
+    }
+
+    public int getWeight(int row) {
+        return mWeights[row];
+    }
+
+    public String getName(int row) {
+        return mNames[mNameCodes[row]];
+    }
+
+    /**
+     * @return the breed of the row, or null if it has none
+     */
+    public String getBreed(int row) {
+        int breedCode = mBreedCodes[row];
+        return breedCode == NO_CODE ? null : mBreeds[breedCode];
+    }
+
+    /**
+     * @return the number of distinct breeds, the breed codes go from 0 to this number excluded
+     */
+    public int getBreedCount() {
+        return mBreeds.length;
+    }
+
+    public String getBreedForCode(int breedCode) {
+        return mBreeds[breedCode];
+    }
+
+    /**
+     * @return the number of pets of each gender, indexed by gender
+     */
+    public int[] countByGender(ExecutorService executor) {
+        return countBuckets(mGenders, 1, PetEntry.GENDER_FEMALE + 1, executor);
+    }
+
+    /**
+     * @return the number of pets of each breed, indexed by breed code. Pets without a breed
+     * aren't counted.
+     */
+    public int[] countByBreed(ExecutorService executor) {
+        return countBuckets(mBreedCodes, 1, mBreeds.length, executor);
+    }
+
+    /**
+     * @return the number of pets in each weight range of the given width, the first bucket
+     * starting at 0 and the last one holding the heaviest pet
+     */
+    public int[] weightHistogram(int bucketWidth, ExecutorService executor) {
+        if (bucketWidth <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive!");
+        }
+        int maxWeight = 0;
+        for (int row = 0; row < mCount; row++) {
+            maxWeight = Math.max(maxWeight, mWeights[row]);
+        }
+        return countBuckets(mWeights, bucketWidth, maxWeight / bucketWidth + 1, executor);
+    }
+
+    /**
+     * @return the average weight of the pets of each breed, indexed by breed code
+     */
+    public double[] averageWeightByBreed() {
+        long[] weightSums = new long[mBreeds.length];
+        int[] counts = new int[mBreeds.length];
+        for (int row = 0; row < mCount; row++) {
+            int breedCode = mBreedCodes[row];
+            if (breedCode != NO_CODE) {
+                weightSums[breedCode] += mWeights[row];
+                counts[breedCode]++;
+            }
+        }
+
+        double[] averages = new double[mBreeds.length];
+        for (int breedCode = 0; breedCode < averages.length; breedCode++) {
+            averages[breedCode] = counts[breedCode] == 0 ? 0 : (double) weightSums[breedCode] / counts[breedCode];
+        }
+        return averages;
+    }
+
+    /**
+     * @return an estimate of the heap used by the snapshot, not counting the dictionary strings
+     * shared with other objects
+     */
+    public long estimateHeapBytes() {
+        long bytes = (long) mIds.length * 8 + (long) (mGenders.length + mWeights.length
+                + mNameCodes.length + mBreedCodes.length) * 4;
+        bytes += (long) (mNames.length + mBreeds.length) * 4;
+        for (String name : mNames) {
+            bytes += 40 + 2 * name.length();
+        }
+        for (String breed : mBreeds) {
+            bytes += 40 + 2 * breed.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Count the rows of each bucket, the bucket of a row being its value divided by the divisor.
+     * Values outside of the buckets are skipped. With an executor, the rows are split in ranges
+     * counted in parallel and then summed, otherwise they are counted on the calling thread.
+     */
+    private int[] countBuckets(final int[] values, final int divisor, final int bucketCount,
+                               ExecutorService executor) {
+        int taskCount = executor == null ? 1 : Math.min(Runtime.getRuntime().availableProcessors(),
+                mCount / MIN_ROWS_PER_TASK);
+        if (taskCount <= 1) {
+            return countBuckets(values, divisor, bucketCount, 0, mCount);
+        }
+
+        List<Future<int[]>> futures = new ArrayList<Future<int[]>>(taskCount);
+        int rowsPerTask = (mCount + taskCount - 1) / taskCount;
+        for (int start = 0; start < mCount; start += rowsPerTask) {
+            final int from = start;
+            final int to = Math.min(start + rowsPerTask, mCount);
+            futures.add(executor.submit(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return countBuckets(values, divisor, bucketCount, from, to);
+                }
+            }));
+        }
+
+        int[] counts = new int[bucketCount];
+        try {
+            for (Future<int[]> future : futures) {
+                int[] taskCounts = future.get();
+                for (int bucket = 0; bucket < bucketCount; bucket++) {
+                    counts[bucket] += taskCounts[bucket];
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while aggregating the pets", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to aggregate the pets", e.getCause());
+        }
+        return counts;
+    }
+
+    private int[] countBuckets(int[] values, int divisor, int bucketCount, int from, int to) {
+        int[] counts = new int[bucketCount];
+        for (int row = from; row < to; row++) {
+            int value = values[row];
+            if (value >= 0) {
+                int bucket = value / divisor;
+                if (bucket < bucketCount) {
+                    counts[bucket]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Appends rows to growing arrays and dictionary encodes their strings.
+     */
+    private static class Builder {
+
+        private final Map<String, Integer> mNameDictionary = new HashMap<String, Integer>();
+        private final Map<String, Integer> mBreedDictionary = new HashMap<String, Integer>();
+        private final List<String> mNames = new ArrayList<String>();
+        private final List<String> mBreeds = new ArrayList<String>();
+        private int mCount;
+        private long[] mIds;
+        private int[] mGenders;
+        private int[] mWeights;
+        private int[] mNameCodes;
+        private int[] mBreedCodes;
+
+        Builder(int expectedCount) {
+            int capacity = Math.max(expectedCount, INITIAL_CAPACITY);
+            this.mIds = new long[capacity];
+            this.mGenders = new int[capacity];
+            this.mWeights = new int[capacity];
+            this.mNameCodes = new int[capacity];
+            this.mBreedCodes = new int[capacity];
+        }
+
+        void add(long id, String name, String breed, int gender, int weight) {
+            if (mCount == mIds.length) {
+                int capacity = mCount * 2;
+                mIds = Arrays.copyOf(mIds, capacity);
+                mGenders = Arrays.copyOf(mGenders, capacity);
+                mWeights = Arrays.copyOf(mWeights, capacity);
+                mNameCodes = Arrays.copyOf(mNameCodes, capacity);
+                mBreedCodes = Arrays.copyOf(mBreedCodes, capacity);
+            }
+            mIds[mCount] = id;
+            mGenders[mCount] = gender;
+            mWeights[mCount] = weight;
+            mNameCodes[mCount] = encode(name, mNameDictionary, mNames);
+            mBreedCodes[mCount] = breed == null ? NO_CODE : encode(breed, mBreedDictionary, mBreeds);
+            mCount++;
+        }
+
+        PetColumnarSnapshot build() {
+            return new PetColumnarSnapshot(mCount,
+                    Arrays.copyOf(mIds, mCount),
+                    Arrays.copyOf(mGenders, mCount),
+                    Arrays.copyOf(mWeights, mCount),
+                    Arrays.copyOf(mNameCodes, mCount),
+                    Arrays.copyOf(mBreedCodes, mCount),
+                    mNames.toArray(new String[mNames.size()]),
+                    mBreeds.toArray(new String[mBreeds.size()]));
+        }
+
+        private int encode(String value, Map<String, Integer> dictionary, List<String> values) {
+            Integer code = dictionary.get(value);
+            if (code == null) {
+                code = values.size();
+                dictionary.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+    }
+}
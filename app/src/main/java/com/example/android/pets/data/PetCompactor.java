@@ -0,0 +1,163 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+/**
+ * Purges the soft deleted pets once they can no longer be restored, on a background thread of
+ * its own. Rows are purged in small batches of one transaction each, so a writer never waits
+ * long for the lock, and the freed pages are then given back to the file system with an
+ * incremental vacuum.
+ */
+class PetCompactor {
+
+    private static final String LOG_TAG = PetCompactor.class.getSimpleName();
+    private static final int PURGE_BATCH_SIZE = 500;
+
+    //Margin after the end of the undo window, so that a restore racing the window still wins
+    private static final long COMPACTION_MARGIN_MILLIS = 5 * 1000;
+
+    //Delays of the retries of a failed compaction, doubled after every failure in a row
+    private static final long RETRY_MIN_DELAY_MILLIS = 30 * 1000;
+    private static final long RETRY_MAX_DELAY_MILLIS = 30 * 60 * 1000;
+
+    //Number of free pages released by each step of the vacuum, each step being a write of its own
+    private static final int VACUUM_BATCH_PAGES = 256;
+
+    private static final String SQL_PURGE_BATCH = "DELETE FROM " + PetEntry.TABLE_NAME + " WHERE " + PetEntry._ID +
+            " IN (SELECT " + PetEntry._ID + " FROM " + PetEntry.TABLE_NAME + " WHERE " +
+            PetEntry.COLUMN_PET_DELETED_AT + "<? LIMIT " + PURGE_BATCH_SIZE + ")";
+    private static final String SQL_OLDEST_DELETION = "SELECT IFNULL(MIN(" + PetEntry.COLUMN_PET_DELETED_AT +
+            "),-1) FROM " + PetEntry.TABLE_NAME;
+
+    private final PetDbHelper mPetDbHelper;
+    private final Handler mHandler;
+    private final Runnable mCompaction = new Runnable() {
+        @Override
+        public void run() {
+            compact();
+        }
+    };
+    private boolean mScheduled;
+    //Only used on the thread of the handler
+    private long mRetryDelayMillis = RETRY_MIN_DELAY_MILLIS;
+
+    PetCompactor(PetDbHelper petDbHelper) {
+        this.mPetDbHelper = petDbHelper;
+        HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Make sure a compaction runs once the undo window of the pets deleted now is over. Does
+     * nothing if one is already scheduled, as it reschedules itself for the remaining pets.
+     */
+    void schedule() {
+        scheduleIn(PetEntry.DELETE_UNDO_WINDOW_MILLIS + COMPACTION_MARGIN_MILLIS);
+    }
+
+    /**
+     * Stop the thread of the compactor, dropping the scheduled compaction. The pets it would have
+     * purged are purged by the next compactor of the database.
+     */
+    void quit() {
+        mHandler.getLooper().quit();
+    }
+
+    private synchronized void scheduleIn(long delayMillis) {
+        if (mScheduled) {
+            return;
+        }
+        mScheduled = true;
+        mHandler.postDelayed(mCompaction, delayMillis);
+    }
+
+    private void compact() {
+        synchronized (this) {
+            mScheduled = false;
+        }
+
+        try {
+            purge();
+            mRetryDelayMillis = RETRY_MIN_DELAY_MILLIS;
+        } catch (SQLiteException e) {
+            // The database may be full, locked for too long or closed, try again later
+            Log.e(LOG_TAG, "Compaction failed, retrying in " + mRetryDelayMillis + " ms", e);
+            scheduleIn(mRetryDelayMillis);
+            mRetryDelayMillis = Math.min(mRetryDelayMillis * 2, RETRY_MAX_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Purge the pets whose undo window is over, then schedule the next compaction for the
+     * oldest remaining deletion, if any.
+     */
+    private void purge() {
+        long startTime = SystemClock.elapsedRealtime();
+        SQLiteDatabase database = mPetDbHelper.getWritableDatabase();
+        long purgeBefore = System.currentTimeMillis() - PetEntry.DELETE_UNDO_WINDOW_MILLIS;
+        int purgedRows = 0;
+
+        SQLiteStatement purgeStatement = database.compileStatement(SQL_PURGE_BATCH);
+        try {
+            int batchRows;
+            do {
+                database.beginTransactionNonExclusive();
+                try {
+                    purgeStatement.bindLong(1, purgeBefore);
+                    batchRows = purgeStatement.executeUpdateDelete();
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                purgedRows += batchRows;
+            } while (batchRows == PURGE_BATCH_SIZE);
+        } finally {
+            purgeStatement.close();
+        }
+
+        if (purgedRows > 0) {
+            vacuum(database);
+            Log.d(LOG_TAG, "Purged " + purgedRows + " deleted pets in " +
+                    (SystemClock.elapsedRealtime() - startTime) + " ms");
+        }
+
+        long oldestDeletion = DatabaseUtils.longForQuery(database, SQL_OLDEST_DELETION, null);
+        if (oldestDeletion != -1) {
+            long purgeTime = oldestDeletion + PetEntry.DELETE_UNDO_WINDOW_MILLIS + COMPACTION_MARGIN_MILLIS;
+            scheduleIn(Math.max(0, purgeTime - System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Release the free pages of the file, a batch of pages at a time so that a writer never waits
+     * long for the lock. Does nothing until the file was converted to incremental auto vacuum by
+     * {@link PetDbHelper}.
+     */
+    private void vacuum(SQLiteDatabase database) {
+        if (DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null) !=
+                PetDbHelper.AUTO_VACUUM_INCREMENTAL) {
+            return;
+        }
+        while (DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null) > 0) {
+            // Each step of the pragma releases one page, reading the whole result runs all of them
+            Cursor cursor = database.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_BATCH_PAGES + ")", null);
+            try {
+                cursor.getCount();
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+}
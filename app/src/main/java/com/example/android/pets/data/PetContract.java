@@ -13,6 +13,42 @@ public final class PetContract {
     public static final String CONTENT_AUTHORITY = "com.example.android.pets";
     public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
     public static final String PATH_PETS = PetEntry.TABLE_NAME;
+    public static final String PATH_SEARCH = "search";
+    public static final String PATH_STATS = "stats";
+    public static final String PATH_STATS_BY_GENDER = PATH_STATS + "/by_gender";
+    public static final String PATH_STATS_BY_BREED = PATH_STATS + "/by_breed";
+    public static final String PATH_STATS_COUNT = PATH_STATS + "/count";
+    public static final String PATH_EXPORT = "export";
+    public static final String PATH_RESTORE = "restore";
+    public static final String PATH_CHANGES = "changes";
+    public static final String PATH_SYNC = "sync";
+
+    //Methods of ContentResolver.call on the authority. The metrics dump is returned in the
+    //KEY_METRICS_DUMP string of the result, the slow query threshold is the argument in milliseconds
+    //and null or a negative value turns the slow query log off, an argument that isn't a number
+    //throws an IllegalArgumentException
+    public static final String METHOD_DUMP_METRICS = "dump_metrics";
+    public static final String METHOD_RESET_METRICS = "reset_metrics";
+    public static final String METHOD_SET_SLOW_QUERY_THRESHOLD = "set_slow_query_threshold";
+
+    //Enables the query result cache of the provider with the argument as its size in bytes, null
+    //or 0 turns it off again, a negative size or one that isn't a number throws an
+    //IllegalArgumentException
+    public static final String METHOD_SET_QUERY_CACHE_SIZE = "set_query_cache_size";
+    public static final String KEY_METRICS_DUMP = "metrics_dump";
+
+    //Computes the shelter-wide statistics over a columnar snapshot of the pets, with the argument
+    //as the width of the weight histogram buckets, DEFAULT_WEIGHT_BUCKET_WIDTH when null. The
+    //counts by gender are indexed by gender, the counts and average weights by breed are in the
+    //order of the KEY_BREEDS array, the pets without a breed are only in the total count
+    public static final String METHOD_SHELTER_STATS = "shelter_stats";
+    public static final int DEFAULT_WEIGHT_BUCKET_WIDTH = 5;
+    public static final String KEY_PET_COUNT = "pet_count";
+    public static final String KEY_COUNT_BY_GENDER = "count_by_gender";
+    public static final String KEY_BREEDS = "breeds";
+    public static final String KEY_COUNT_BY_BREED = "count_by_breed";
+    public static final String KEY_AVERAGE_WEIGHT_BY_BREED = "average_weight_by_breed";
+    public static final String KEY_WEIGHT_HISTOGRAM = "weight_histogram";
 
     private PetContract() {
     }
@@ -22,10 +58,33 @@ public final class PetContract {
         //MIME constants
         public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PETS;
         public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PETS;
+        public static final String CONTENT_STATS_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PETS + "." + PATH_STATS;
 
         //URI of the table
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PETS);
 
+        //URI of the full-text search over the table
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        //URIs of the statistics over the table. Their rows are the groups, with a count and an
+        //average weight column, and they are computed again only after the table changed
+        public static final Uri CONTENT_STATS_BY_GENDER_URI = Uri.withAppendedPath(CONTENT_URI, PATH_STATS_BY_GENDER);
+        public static final Uri CONTENT_STATS_BY_BREED_URI = Uri.withAppendedPath(CONTENT_URI, PATH_STATS_BY_BREED);
+        public static final Uri CONTENT_STATS_COUNT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_STATS_COUNT);
+
+        //URI of a streamed export of the whole table, read with ContentResolver.openInputStream
+        public static final Uri CONTENT_EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+
+        //URI restoring the pets deleted by one delete operation, updated with no values. Only the
+        //pets whose deletion time is exactly the one of the URI come back, which is what an undo
+        //of that delete relies on
+        public static final Uri CONTENT_RESTORE_URI = Uri.withAppendedPath(CONTENT_URI, PATH_RESTORE);
+
+        //URI of the rows exchanged with the sync server. Queried, it returns the rows changed since
+        //they were last synced, with their sync columns. Bulk inserted, it merges rows of the server
+        //in one transaction, keeping the row with the newest version stamp
+        public static final Uri CONTENT_SYNC_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SYNC);
+
         //Table name and its columns
         public static final String TABLE_NAME = "pets";
         public static final String _ID = BaseColumns._ID;
@@ -34,6 +93,81 @@ public final class PetContract {
         public static final String COLUMN_PET_GENDER = "gender";
         public static final String COLUMN_PET_WEIGHT = "weight";
 
+        //Deletion time in milliseconds of a deleted pet, null for the others. Deleted pets are
+        //hidden from every query and purged once DELETE_UNDO_WINDOW_MILLIS is over, this column
+        //can't be queried
+        public static final String COLUMN_PET_DELETED_AT = "deleted_at";
+
+        //Sync columns, they can't be queried but through CONTENT_SYNC_URI. The uuid identifies a
+        //pet on every device, the version and update time in milliseconds stamp its last change
+        //and the dirty flag is set on the rows changed since they were last synced. They are
+        //maintained by triggers, so the local writes never set them
+        public static final String COLUMN_PET_UUID = "uuid";
+        public static final String COLUMN_PET_VERSION = "version";
+        public static final String COLUMN_PET_UPDATED_AT = "updated_at";
+        public static final String COLUMN_PET_DIRTY = "dirty";
+
+        //Columns of the statistics
+        public static final String COLUMN_STATS_COUNT = "count";
+        public static final String COLUMN_STATS_AVERAGE_WEIGHT = "average_weight";
+
+        //Projections of the screens, each one reads only the columns it shows
+        public static final String[] CATALOG_PROJECTION = {_ID, COLUMN_PET_NAME, COLUMN_PET_BREED};
+        public static final String[] EDITOR_PROJECTION = {_ID, COLUMN_PET_NAME, COLUMN_PET_BREED,
+                COLUMN_PET_GENDER, COLUMN_PET_WEIGHT};
+
+        //Indexes of the table
+        public static final String INDEX_NAME = "pets_name_index";
+        public static final String INDEX_BREED = "pets_breed_index";
+        public static final String INDEX_GENDER_WEIGHT = "pets_gender_weight_index";
+        public static final String INDEX_WEIGHT = "pets_weight_index";
+        public static final String INDEX_DELETED_AT = "pets_deleted_at_index";
+        public static final String INDEX_UUID = "pets_uuid_index";
+        public static final String INDEX_DIRTY = "pets_dirty_index";
+
+        //Purged pets whose deletion wasn't synced yet, keyed by uuid with the sync columns and
+        //the deletion time of the pet
+        public static final String SYNC_TOMBSTONES_TABLE_NAME = "pet_sync_tombstones";
+
+        //Columns of the sync rows, in the order CONTENT_SYNC_URI returns them. A deleted pet has
+        //its deletion time, the others null
+        public static final String[] SYNC_PROJECTION = {COLUMN_PET_UUID, COLUMN_PET_NAME, COLUMN_PET_BREED,
+                COLUMN_PET_GENDER, COLUMN_PET_WEIGHT, COLUMN_PET_DELETED_AT, COLUMN_PET_VERSION,
+                COLUMN_PET_UPDATED_AT};
+
+        //Full-text search table, its rows share the ids of the pets rows
+        public static final String FTS_TABLE_NAME = "pets_fts";
+        public static final String FTS_COLUMN_DOC_ID = "docid";
+
+
+        //Paging query parameters
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+        public static final String QUERY_PARAMETER_OFFSET = "offset";
+        public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+        //Sorted paging query parameters and the keys the pets can be sorted by. Pages of a sort
+        //are chained by the PetPageToken of the last row of the previous page
+        public static final String QUERY_PARAMETER_SORT = "sort";
+        public static final String QUERY_PARAMETER_PAGE_TOKEN = "page_token";
+        public static final String SORT_BY_ID = "id";
+        public static final String SORT_BY_NAME = "name";
+        public static final String SORT_BY_BREED = "breed";
+        public static final String SORT_BY_WEIGHT = "weight";
+
+        //Deletion and restore query parameter: the deletion time to stamp on the deleted pets, and
+        //the one of the pets to restore. Every deletion has a time of its own, so a restore brings
+        //back exactly the pets of one deletion
+        public static final String QUERY_PARAMETER_DELETED_AT = "deleted_at";
+
+        //Search query parameter
+        public static final String QUERY_PARAMETER_SEARCH_QUERY = "q";
+
+        //Export query parameter and its formats
+        public static final String QUERY_PARAMETER_FORMAT = "format";
+        public static final String EXPORT_FORMAT_CSV = "csv";
+        public static final String EXPORT_FORMAT_BINARY = "binary";
+        public static final String EXPORT_CSV_TYPE = "text/csv";
+        public static final String EXPORT_BINARY_TYPE = "application/octet-stream";
 
         //Gender IDs
         public static final int GENDER_UNKNOWN = 0;
@@ -44,10 +178,139 @@ public final class PetContract {
         public static final int DEFAULT_GENDER = GENDER_UNKNOWN;
         public static final int DEFAULT_WEIGHT = 0;
 
-        //Checking methods
+        //How long a deleted pet can still be restored
+        public static final long DELETE_UNDO_WINDOW_MILLIS = 60 * 1000;
+
+        //Building methods
+        public static Uri buildPageUri(long afterId, int pageSize) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, Long.toString(afterId))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, Integer.toString(pageSize))
+                    .build();
+        }
+
+        /**
+         * @param pageToken the token of the last row of the previous page, or null for the first page
+         */
+        public static Uri buildSortedPageUri(String sortKey, String pageToken, int pageSize) {
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SORT, sortKey)
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, Integer.toString(pageSize));
+            if (pageToken != null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_PAGE_TOKEN, pageToken);
+            }
+            return builder.build();
+        }
+
+        /**
+         * @param uri the URI of the pet, or the content URI for all of them
+         */
+        public static Uri buildDeleteUri(Uri uri, long deletedAtMillis) {
+            return uri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_DELETED_AT, Long.toString(deletedAtMillis))
+                    .build();
+        }
+
+        public static Uri buildRestoreUri(long deletedAtMillis) {
+            return CONTENT_RESTORE_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_DELETED_AT, Long.toString(deletedAtMillis))
+                    .build();
+        }
+
+        public static Uri buildSearchUri(String searchQuery, int limit) {
+            return CONTENT_SEARCH_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SEARCH_QUERY, searchQuery)
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, Integer.toString(limit))
+                    .build();
+        }
+
+        public static Uri buildSyncUri(int limit) {
+            return CONTENT_SYNC_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, Integer.toString(limit))
+                    .build();
+        }
+
+        public static Uri buildExportUri(String format) {
+            return CONTENT_EXPORT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_FORMAT, format)
+                    .build();
+        }
+
+        //Checking methods, the rules PetProvider enforces on every written pet
+        public static boolean isNameValid(String name) {
+            return name != null;
+        }
+
         public static boolean isGenderValid(int gender) {
             return gender == GENDER_MALE || gender == GENDER_FEMALE || gender == GENDER_UNKNOWN;
         }
+
+        public static boolean isWeightValid(int weight) {
+            return weight >= 0;
+        }
+
+        /**
+         * Order of the version stamps of the sync rows of a pet, the newest one wins a merge.
+         *
+         * @return a negative number, zero or a positive number as the first stamp is older than,
+         * the same as or newer than the second one
+         */
+        public static int compareSyncStamps(long version, long updatedAt, long otherVersion, long otherUpdatedAt) {
+            if (version != otherVersion) {
+                return version < otherVersion ? -1 : 1;
+            }
+            return updatedAt < otherUpdatedAt ? -1 : (updatedAt == otherUpdatedAt ? 0 : 1);
+        }
+    }
+
+    /**
+     * Append-only log of the changes to the visible pets, kept by triggers on the pets table. A
+     * consumer mirroring the pets reads the changes after the last sequence number it applied,
+     * instead of the whole table.
+     */
+    public static final class PetChangeEntry implements BaseColumns {
+
+        //MIME constants
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PetChangeEntry.TABLE_NAME;
+
+        //URI of the log, queried read-only with the since query parameter
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(PetEntry.CONTENT_URI, PATH_CHANGES);
+
+        //Table name and its columns. The _ID column is the sequence number of the change
+        public static final String TABLE_NAME = "pet_changes";
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_CHANGE_OP = "op";
+        public static final String COLUMN_PET_ID = "pet_id";
+        public static final String COLUMN_CHANGED_COLUMNS = "changed_columns";
+        public static final String COLUMN_CHANGED_AT = "changed_at";
+
+        //Operations of the changes. A soft deleted pet is logged as deleted and a restored one as
+        //inserted. A resync row is only returned when the changes after the requested sequence
+        //number were truncated: the consumer must read the whole table again, then continue from
+        //the sequence number of the resync row
+        public static final int OP_RESYNC = 0;
+        public static final int OP_INSERT = 1;
+        public static final int OP_UPDATE = 2;
+        public static final int OP_DELETE = 3;
+
+        //Query parameter, the changes are read after this sequence number, 0 to read them all.
+        //The limit query parameter of the pets also applies
+        public static final String QUERY_PARAMETER_SINCE = "since";
+
+        //How many of the latest changes are kept, older ones are truncated as new ones come in
+        public static final int MAX_RETAINED_CHANGES = 10000;
+
+        //Comma separated list of the columns a change wrote
+        public static final String CHANGED_COLUMNS_ALL = PetEntry.COLUMN_PET_NAME + "," + PetEntry.COLUMN_PET_BREED +
+                "," + PetEntry.COLUMN_PET_GENDER + "," + PetEntry.COLUMN_PET_WEIGHT;
+
+        //Building methods
+        public static Uri buildChangesUri(long sinceSequence, int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SINCE, Long.toString(sinceSequence))
+                    .appendQueryParameter(PetEntry.QUERY_PARAMETER_LIMIT, Integer.toString(limit))
+                    .build();
+        }
     }
 
 }
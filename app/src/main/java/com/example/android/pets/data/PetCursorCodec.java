@@ -0,0 +1,117 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+/**
+ * Converts pets between their {@link Pet} values and the cursors, content values and statements
+ * of the pets table.
+ * <p>
+ * A codec reads the rows of one cursor. The column indices are resolved once when it is created,
+ * so decoding a row is only the reads of its fields. The id and name columns are required, the
+ * columns left out of the projection are decoded as their default values.
+ */
+public final class PetCursorCodec {
+
+    private final Cursor mCursor;
+    private final int mIdColumnIndex;
+    private final int mNameColumnIndex;
+    private final int mBreedColumnIndex;
+    private final int mGenderColumnIndex;
+    private final int mWeightColumnIndex;
+
+    /**
+     * @throws IllegalArgumentException if the cursor has no id or name column
+     */
+    public PetCursorCodec(Cursor cursor) {
+        this.mCursor = cursor;
+        this.mIdColumnIndex = cursor.getColumnIndexOrThrow(PetEntry._ID);
+        this.mNameColumnIndex = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_NAME);
+        this.mBreedColumnIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_BREED);
+        this.mGenderColumnIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_GENDER);
+        this.mWeightColumnIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_WEIGHT);
+    }
+
+    /**
+     * @return whether the cursor holds all the columns of a pet, so that the decoded pets are
+     * complete rows
+     */
+    public boolean hasAllColumns() {
+        return mBreedColumnIndex != -1 && mGenderColumnIndex != -1 && mWeightColumnIndex != -1;
+    }
+
+    /**
+     * @return the pet of the current row of the cursor
+     */
+    public Pet decode() {
+        return new Pet(mCursor.getLong(mIdColumnIndex),
+                mCursor.getString(mNameColumnIndex),
+                mBreedColumnIndex == -1 ? null : mCursor.getString(mBreedColumnIndex),
+                mGenderColumnIndex == -1 ? PetEntry.DEFAULT_GENDER : mCursor.getInt(mGenderColumnIndex),
+                mWeightColumnIndex == -1 ? PetEntry.DEFAULT_WEIGHT : mCursor.getInt(mWeightColumnIndex));
+    }
+
+    /**
+     * Decode the values of a new pet. The id is 0 and the missing gender and weight default like
+     * the table columns do.
+     *
+     * @throws IllegalArgumentException if the gender or weight isn't an integer
+     */
+    public static Pet fromContentValues(ContentValues contentValues) {
+        return new Pet(0,
+                contentValues.getAsString(PetEntry.COLUMN_PET_NAME),
+                contentValues.getAsString(PetEntry.COLUMN_PET_BREED),
+                getInt(contentValues, PetEntry.COLUMN_PET_GENDER, PetEntry.DEFAULT_GENDER),
+                getInt(contentValues, PetEntry.COLUMN_PET_WEIGHT, PetEntry.DEFAULT_WEIGHT));
+    }
+
+    /**
+     * @return the values of all the columns of the pet but its id
+     */
+    public static ContentValues toContentValues(Pet pet) {
+        ContentValues contentValues = new ContentValues(4);
+        contentValues.put(PetEntry.COLUMN_PET_NAME, pet.getName());
+        contentValues.put(PetEntry.COLUMN_PET_BREED, pet.getBreed());
+        contentValues.put(PetEntry.COLUMN_PET_GENDER, pet.getGender());
+        contentValues.put(PetEntry.COLUMN_PET_WEIGHT, pet.getWeight());
+        return contentValues;
+    }
+
+    /**
+     * @return the integer value of the column, or the default value if the values don't set it
+     * @throws IllegalArgumentException if the column is set to null or to a value that isn't an
+     *                                  integer
+     */
+    public static int getInt(ContentValues contentValues, String column, int defaultValue) {
+        if (!contentValues.containsKey(column)) {
+            return defaultValue;
+        }
+        Integer value = contentValues.getAsInteger(column);
+        if (value == null) {
+            throw new IllegalArgumentException("Not an integer " + column + ": " + contentValues.get(column));
+        }
+        return value;
+    }
+
+    /**
+     * Bind the name, breed, gender and weight of the pet to the parameters 1 to 4 of an insert
+     * statement.
+     */
+    static void bindInsert(SQLiteStatement insertStatement, Pet pet) {
+        bindString(insertStatement, 1, pet.getName());
+        bindString(insertStatement, 2, pet.getBreed());
+        insertStatement.bindLong(3, pet.getGender());
+        insertStatement.bindLong(4, pet.getWeight());
+    }
+
+    static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.example.android.pets.data;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
+import com.example.android.pets.data.PetContract.PetChangeEntry;
 import com.example.android.pets.data.PetContract.PetEntry;
 
 
@@ -13,7 +17,7 @@ import com.example.android.pets.data.PetContract.PetEntry;
 
 public class PetDbHelper extends SQLiteOpenHelper {
 
-    public static final int DB_VERSION = 1;
+    public static final int DB_VERSION = 8;
     public static final String DB_NAME = "shelter.db";
 
     public static final String SQL_DATATYPE_INT = " INTEGER ";
@@ -29,22 +33,370 @@ public class PetDbHelper extends SQLiteOpenHelper {
             PetEntry.COLUMN_PET_BREED + SQL_DATATYPE_TEXT + "," +
             PetEntry.COLUMN_PET_GENDER + SQL_DATATYPE_INT + SQL_KEYWORD_NOT_NULL + SQL_KEYWORD_DEFAULT + PetEntry.DEFAULT_GENDER + "," +
             PetEntry.COLUMN_PET_WEIGHT + SQL_DATATYPE_INT + SQL_KEYWORD_NOT_NULL + SQL_KEYWORD_DEFAULT + PetEntry.DEFAULT_WEIGHT + ")";
-    private static final String SQL_DELETE_ENTRY = "DROP TABLE IF EXISTS" + PetEntry.TABLE_NAME;
+    private static final String SQL_DELETE_ENTRY = "DROP TABLE IF EXISTS " + PetEntry.TABLE_NAME;
+    private static final String SQL_DELETE_FTS_ENTRY = "DROP TABLE IF EXISTS " + PetEntry.FTS_TABLE_NAME;
+    private static final String SQL_DELETE_CHANGES_ENTRY = "DROP TABLE IF EXISTS " + PetChangeEntry.TABLE_NAME;
+    private static final String SQL_DELETE_SYNC_TOMBSTONES_ENTRY = "DROP TABLE IF EXISTS " +
+            PetEntry.SYNC_TOMBSTONES_TABLE_NAME;
 
+    //Current time in milliseconds, as logged by the change triggers
+    private static final String SQL_NOW_MILLIS = "CAST((julianday('now')-2440587.5)*86400000 AS INTEGER)";
+
+    //New random uuid of a pet, as 32 hexadecimal digits
+    private static final String SQL_NEW_UUID = "lower(hex(randomblob(16)))";
+
+    //Version of the schema created by SQL_CREATE_ENTRY, later versions are reached through migrations
+    private static final int DB_BASE_VERSION = 1;
+
+    //Migration to version 2: indexes for filtering and sorting by name, breed and gender/weight
+    private static final String[] SQL_MIGRATION_2 = {
+            "CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_NAME + " ON " + PetEntry.TABLE_NAME +
+                    "(" + PetEntry.COLUMN_PET_NAME + " COLLATE NOCASE)",
+            "CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_BREED + " ON " + PetEntry.TABLE_NAME +
+                    "(" + PetEntry.COLUMN_PET_BREED + ")",
+            "CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_GENDER_WEIGHT + " ON " + PetEntry.TABLE_NAME +
+                    "(" + PetEntry.COLUMN_PET_GENDER + "," + PetEntry.COLUMN_PET_WEIGHT + ")"
+    };
+
+    //Migration to version 3: full-text search table over name and breed, kept in sync by triggers
+    private static final String[] SQL_MIGRATION_3 = {
+            "CREATE VIRTUAL TABLE " + PetEntry.FTS_TABLE_NAME + " USING fts4(" +
+                    PetEntry.COLUMN_PET_NAME + "," + PetEntry.COLUMN_PET_BREED + ")",
+            "INSERT INTO " + PetEntry.FTS_TABLE_NAME + "(" + PetEntry.FTS_COLUMN_DOC_ID + "," +
+                    PetEntry.COLUMN_PET_NAME + "," + PetEntry.COLUMN_PET_BREED + ") SELECT " +
+                    PetEntry._ID + "," + PetEntry.COLUMN_PET_NAME + "," + PetEntry.COLUMN_PET_BREED +
+                    " FROM " + PetEntry.TABLE_NAME,
+            "CREATE TRIGGER pets_fts_insert AFTER INSERT ON " + PetEntry.TABLE_NAME + " BEGIN " +
+                    "INSERT INTO " + PetEntry.FTS_TABLE_NAME + "(" + PetEntry.FTS_COLUMN_DOC_ID + "," +
+                    PetEntry.COLUMN_PET_NAME + "," + PetEntry.COLUMN_PET_BREED + ") VALUES (new." +
+                    PetEntry._ID + ",new." + PetEntry.COLUMN_PET_NAME + ",new." + PetEntry.COLUMN_PET_BREED + ");" +
+                    " END",
+            "CREATE TRIGGER pets_fts_update AFTER UPDATE OF " + PetEntry.COLUMN_PET_NAME + "," +
+                    PetEntry.COLUMN_PET_BREED + " ON " + PetEntry.TABLE_NAME + " BEGIN " +
+                    "UPDATE " + PetEntry.FTS_TABLE_NAME + " SET " +
+                    PetEntry.COLUMN_PET_NAME + "=new." + PetEntry.COLUMN_PET_NAME + "," +
+                    PetEntry.COLUMN_PET_BREED + "=new." + PetEntry.COLUMN_PET_BREED +
+                    " WHERE " + PetEntry.FTS_COLUMN_DOC_ID + "=old." + PetEntry._ID + ";" +
+                    " END",
+            "CREATE TRIGGER pets_fts_delete AFTER DELETE ON " + PetEntry.TABLE_NAME + " BEGIN " +
+                    "DELETE FROM " + PetEntry.FTS_TABLE_NAME +
+                    " WHERE " + PetEntry.FTS_COLUMN_DOC_ID + "=old." + PetEntry._ID + ";" +
+                    " END"
+    };
+
+    //Migration to version 4: index for sorting and paging by weight
+    private static final String[] SQL_MIGRATION_4 = {
+            "CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_WEIGHT + " ON " + PetEntry.TABLE_NAME +
+                    "(" + PetEntry.COLUMN_PET_WEIGHT + ")"
+    };
+
+    //Migration to version 5: deletion time of the soft deleted pets, waiting to be purged
+    private static final String[] SQL_MIGRATION_5 = {
+            "ALTER TABLE " + PetEntry.TABLE_NAME + " ADD COLUMN " + PetEntry.COLUMN_PET_DELETED_AT + SQL_DATATYPE_INT,
+            "CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_DELETED_AT + " ON " + PetEntry.TABLE_NAME +
+                    "(" + PetEntry.COLUMN_PET_DELETED_AT + ")"
+    };
+
+
+    //Migration to version 6: change log of the visible pets, kept by triggers. A soft delete is
+    //logged as a deletion and a restore as an insertion, the purge of deleted pets isn't logged.
+    //Every thousandth change truncates the log to the latest MAX_RETAINED_CHANGES
+    private static final String[] SQL_MIGRATION_6 = {
+            "CREATE TABLE " + PetChangeEntry.TABLE_NAME + "(" +
+                    PetChangeEntry._ID + SQL_DATATYPE_INT + SQL_KEYWORD_PRIMARY_KEY + SQL_KEYWORD_AUTOINCREMENT + "," +
+                    PetChangeEntry.COLUMN_CHANGE_OP + SQL_DATATYPE_INT + SQL_KEYWORD_NOT_NULL + "," +
+                    PetChangeEntry.COLUMN_PET_ID + SQL_DATATYPE_INT + SQL_KEYWORD_NOT_NULL + "," +
+                    PetChangeEntry.COLUMN_CHANGED_COLUMNS + SQL_DATATYPE_TEXT + "," +
+                    PetChangeEntry.COLUMN_CHANGED_AT + SQL_DATATYPE_INT + SQL_KEYWORD_NOT_NULL + ")",
+            "CREATE TRIGGER pets_changes_insert AFTER INSERT ON " + PetEntry.TABLE_NAME +
+                    " WHEN new." + PetEntry.COLUMN_PET_DELETED_AT + " IS NULL BEGIN " +
+                    buildChangeInsert(PetChangeEntry.OP_INSERT, "new", "'" + PetChangeEntry.CHANGED_COLUMNS_ALL + "'") +
+                    " END",
+            "CREATE TRIGGER pets_changes_update AFTER UPDATE OF " + PetChangeEntry.CHANGED_COLUMNS_ALL +
+                    " ON " + PetEntry.TABLE_NAME + " WHEN old." + PetEntry.COLUMN_PET_DELETED_AT + " IS NULL AND new." +
+                    PetEntry.COLUMN_PET_DELETED_AT + " IS NULL AND (" +
+                    buildColumnChanged(PetEntry.COLUMN_PET_NAME) + " OR " +
+                    buildColumnChanged(PetEntry.COLUMN_PET_BREED) + " OR " +
+                    buildColumnChanged(PetEntry.COLUMN_PET_GENDER) + " OR " +
+                    buildColumnChanged(PetEntry.COLUMN_PET_WEIGHT) + ") BEGIN " +
+                    buildChangeInsert(PetChangeEntry.OP_UPDATE, "new", "substr(" +
+                            buildChangedColumnName(PetEntry.COLUMN_PET_NAME) + "||" +
+                            buildChangedColumnName(PetEntry.COLUMN_PET_BREED) + "||" +
+                            buildChangedColumnName(PetEntry.COLUMN_PET_GENDER) + "||" +
+                            buildChangedColumnName(PetEntry.COLUMN_PET_WEIGHT) + ",2)") +
+                    " END",
+            "CREATE TRIGGER pets_changes_soft_delete AFTER UPDATE OF " + PetEntry.COLUMN_PET_DELETED_AT +
+                    " ON " + PetEntry.TABLE_NAME + " WHEN old." + PetEntry.COLUMN_PET_DELETED_AT + " IS NULL AND new." +
+                    PetEntry.COLUMN_PET_DELETED_AT + " IS NOT NULL BEGIN " +
+                    buildChangeInsert(PetChangeEntry.OP_DELETE, "new", "NULL") +
+                    " END",
+            "CREATE TRIGGER pets_changes_restore AFTER UPDATE OF " + PetEntry.COLUMN_PET_DELETED_AT +
+                    " ON " + PetEntry.TABLE_NAME + " WHEN old." + PetEntry.COLUMN_PET_DELETED_AT + " IS NOT NULL AND new." +
+                    PetEntry.COLUMN_PET_DELETED_AT + " IS NULL BEGIN " +
+                    buildChangeInsert(PetChangeEntry.OP_INSERT, "new", "'" + PetChangeEntry.CHANGED_COLUMNS_ALL + "'") +
+                    " END",
+            "CREATE TRIGGER pets_changes_delete AFTER DELETE ON " + PetEntry.TABLE_NAME +
+                    " WHEN old." + PetEntry.COLUMN_PET_DELETED_AT + " IS NULL BEGIN " +
+                    buildChangeInsert(PetChangeEntry.OP_DELETE, "old", "NULL") +
+                    " END",
+            "CREATE TRIGGER pet_changes_truncate AFTER INSERT ON " + PetChangeEntry.TABLE_NAME +
+                    " WHEN new." + PetChangeEntry._ID + "%1000=0 BEGIN " +
+                    "DELETE FROM " + PetChangeEntry.TABLE_NAME + " WHERE " + PetChangeEntry._ID + "<=new." +
+                    PetChangeEntry._ID + "-" + PetChangeEntry.MAX_RETAINED_CHANGES + ";" +
+                    " END"
+    };
+
+    //Migration to version 7: sync columns and the tombstones of the purged pets not synced yet.
+    //The existing pets get a uuid and are synced as new. A local write stamps a new version and
+    //marks the row dirty, while a merged server row comes with its own stamp and is left alone
+    private static final String[] SQL_MIGRATION_7 = {
+            "ALTER TABLE " + PetEntry.TABLE_NAME + " ADD COLUMN " + PetEntry.COLUMN_PET_UUID + SQL_DATATYPE_TEXT,
+            "ALTER TABLE " + PetEntry.TABLE_NAME + " ADD COLUMN " + PetEntry.COLUMN_PET_VERSION + SQL_DATATYPE_INT +
+                    SQL_KEYWORD_NOT_NULL + SQL_KEYWORD_DEFAULT + "0",
+            "ALTER TABLE " + PetEntry.TABLE_NAME + " ADD COLUMN " + PetEntry.COLUMN_PET_UPDATED_AT + SQL_DATATYPE_INT +
+                    SQL_KEYWORD_NOT_NULL + SQL_KEYWORD_DEFAULT + "0",
+            "ALTER TABLE " + PetEntry.TABLE_NAME + " ADD COLUMN " + PetEntry.COLUMN_PET_DIRTY + SQL_DATATYPE_INT +
+                    SQL_KEYWORD_NOT_NULL + SQL_KEYWORD_DEFAULT + "0",
+            "UPDATE " + PetEntry.TABLE_NAME + " SET " + PetEntry.COLUMN_PET_UUID + "=" + SQL_NEW_UUID + "," +
+                    PetEntry.COLUMN_PET_VERSION + "=1," + PetEntry.COLUMN_PET_UPDATED_AT + "=" + SQL_NOW_MILLIS + "," +
+                    PetEntry.COLUMN_PET_DIRTY + "=1",
+            "CREATE UNIQUE INDEX IF NOT EXISTS " + PetEntry.INDEX_UUID + " ON " + PetEntry.TABLE_NAME +
+                    "(" + PetEntry.COLUMN_PET_UUID + ")",
+            "CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_DIRTY + " ON " + PetEntry.TABLE_NAME +
+                    "(" + PetEntry.COLUMN_PET_DIRTY + ")",
+            "CREATE TABLE " + PetEntry.SYNC_TOMBSTONES_TABLE_NAME + "(" +
+                    PetEntry.COLUMN_PET_UUID + SQL_DATATYPE_TEXT + SQL_KEYWORD_PRIMARY_KEY + "," +
+                    PetEntry.COLUMN_PET_DELETED_AT + SQL_DATATYPE_INT + SQL_KEYWORD_NOT_NULL + "," +
+                    PetEntry.COLUMN_PET_VERSION + SQL_DATATYPE_INT + SQL_KEYWORD_NOT_NULL + "," +
+                    PetEntry.COLUMN_PET_UPDATED_AT + SQL_DATATYPE_INT + SQL_KEYWORD_NOT_NULL + ")",
+            "CREATE TRIGGER pets_sync_insert AFTER INSERT ON " + PetEntry.TABLE_NAME +
+                    " WHEN new." + PetEntry.COLUMN_PET_VERSION + "=0 BEGIN " +
+                    "UPDATE " + PetEntry.TABLE_NAME + " SET " +
+                    PetEntry.COLUMN_PET_UUID + "=IFNULL(new." + PetEntry.COLUMN_PET_UUID + "," + SQL_NEW_UUID + ")," +
+                    PetEntry.COLUMN_PET_VERSION + "=1," +
+                    PetEntry.COLUMN_PET_UPDATED_AT + "=" + SQL_NOW_MILLIS + "," +
+                    PetEntry.COLUMN_PET_DIRTY + "=1 WHERE " + PetEntry._ID + "=new." + PetEntry._ID + ";" +
+                    " END",
+            "CREATE TRIGGER pets_sync_update AFTER UPDATE OF " + PetChangeEntry.CHANGED_COLUMNS_ALL + "," +
+                    PetEntry.COLUMN_PET_DELETED_AT + " ON " + PetEntry.TABLE_NAME +
+                    " WHEN new." + PetEntry.COLUMN_PET_VERSION + "=old." + PetEntry.COLUMN_PET_VERSION +
+                    " AND new." + PetEntry.COLUMN_PET_UPDATED_AT + "=old." + PetEntry.COLUMN_PET_UPDATED_AT + " AND (" +
+                    buildColumnChanged(PetEntry.COLUMN_PET_NAME) + " OR " +
+                    buildColumnChanged(PetEntry.COLUMN_PET_BREED) + " OR " +
+                    buildColumnChanged(PetEntry.COLUMN_PET_GENDER) + " OR " +
+                    buildColumnChanged(PetEntry.COLUMN_PET_WEIGHT) + " OR " +
+                    buildColumnChanged(PetEntry.COLUMN_PET_DELETED_AT) + ") BEGIN " +
+                    "UPDATE " + PetEntry.TABLE_NAME + " SET " +
+                    PetEntry.COLUMN_PET_VERSION + "=old." + PetEntry.COLUMN_PET_VERSION + "+1," +
+                    PetEntry.COLUMN_PET_UPDATED_AT + "=" + SQL_NOW_MILLIS + "," +
+                    PetEntry.COLUMN_PET_DIRTY + "=1 WHERE " + PetEntry._ID + "=new." + PetEntry._ID + ";" +
+                    " END",
+            "CREATE TRIGGER pets_sync_purge AFTER DELETE ON " + PetEntry.TABLE_NAME +
+                    " WHEN old." + PetEntry.COLUMN_PET_DIRTY + "=1 AND old." + PetEntry.COLUMN_PET_DELETED_AT +
+                    " IS NOT NULL BEGIN " +
+                    "INSERT OR REPLACE INTO " + PetEntry.SYNC_TOMBSTONES_TABLE_NAME + "(" +
+                    PetEntry.COLUMN_PET_UUID + "," + PetEntry.COLUMN_PET_DELETED_AT + "," +
+                    PetEntry.COLUMN_PET_VERSION + "," + PetEntry.COLUMN_PET_UPDATED_AT + ") VALUES (old." +
+                    PetEntry.COLUMN_PET_UUID + ",old." + PetEntry.COLUMN_PET_DELETED_AT + ",old." +
+                    PetEntry.COLUMN_PET_VERSION + ",old." + PetEntry.COLUMN_PET_UPDATED_AT + ");" +
+                    " END"
+    };
+
+    //Migration to version 8: incremental auto vacuum, so that the compactor can give the pages of
+    //the purged pets back a few at a time. The mode of a file that already has tables only changes
+    //with a full VACUUM, which can't run in the transaction of the migrations, see onOpen
+    private static final String[] SQL_MIGRATION_8 = {};
+
+    //Value of PRAGMA auto_vacuum when the free pages are only released by incremental_vacuum
+    static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private final PetDbProfile mProfile;
+    private volatile int mSchemaGeneration;
+    //Set when the database was created or upgraded from before version 8, until it is vacuumed
+    private boolean mAutoVacuumConversionPending;
 
     public PetDbHelper(Context context) {
-        super(context, DB_NAME, null, DB_VERSION);
+        this(context, PetDbProfile.DEFAULT);
+    }
+
+    public PetDbHelper(Context context, PetDbProfile profile) {
+        this(context, DB_NAME, profile);
+    }
+
+    /**
+     * @param name the database file name, or null for a private in-memory database that
+     *             starts empty, for example to measure the data layer without touching the disk
+     */
+    public PetDbHelper(Context context, String name, PetDbProfile profile) {
+        super(context, name, null, DB_VERSION);
+        this.mProfile = profile;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(profile.isWriteAheadLoggingEnabled());
+        }
     }
 
+    /**
+     * Create the base schema and bring it to the current version through the same migrations
+     * an existing database goes through, so both paths always end up with the same schema.
+     */
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
 
         sqLiteDatabase.execSQL(SQL_CREATE_ENTRY);
+        migrate(sqLiteDatabase, DB_BASE_VERSION, DB_VERSION);
+        mSchemaGeneration++;
+        // A pragma inside the transaction of onCreate is ignored, and the file header was already
+        // written when the journal mode was set, so even a new file takes the mode through the
+        // vacuum, which is cheap while it holds no pets
+        mAutoVacuumConversionPending = true;
+    }
+
+    /**
+     * Apply every migration step between the two versions in order, keeping the stored pets.
+     * SQLiteOpenHelper already runs this inside a transaction, so a failing step leaves the
+     * database at its old version.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        migrate(sqLiteDatabase, oldVersion, newVersion);
+        mSchemaGeneration++;
+        if (oldVersion < 8) {
+            mAutoVacuumConversionPending = true;
+        }
+    }
+
+    /**
+     * @return a number that changes every time this helper creates or migrates the schema, so
+     * that anything compiled against the old schema can be dropped
+     */
+    public int getSchemaGeneration() {
+        return mSchemaGeneration;
     }
 
+    /**
+     * There's no way to migrate back to an older schema, so the data is dropped and recreated.
+     */
     @Override
-    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int i, int i1) {
+    public void onDowngrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        sqLiteDatabase.execSQL(SQL_DELETE_SYNC_TOMBSTONES_ENTRY);
+        sqLiteDatabase.execSQL(SQL_DELETE_CHANGES_ENTRY);
+        sqLiteDatabase.execSQL(SQL_DELETE_FTS_ENTRY);
         sqLiteDatabase.execSQL(SQL_DELETE_ENTRY);
         onCreate(sqLiteDatabase);
     }
+
+    /**
+     * Apply the profile settings. The pragmas only reach the connection used for writing, the
+     * reading connections of the WAL pool keep the platform defaults.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase sqLiteDatabase) {
+        super.onOpen(sqLiteDatabase);
+
+        sqLiteDatabase.setMaxSqlCacheSize(mProfile.getStatementCacheSize());
+        if (sqLiteDatabase.isReadOnly()) {
+            return;
+        }
+
+        if (mAutoVacuumConversionPending) {
+            convertToIncrementalAutoVacuum(sqLiteDatabase);
+            mAutoVacuumConversionPending = false;
+        }
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && mProfile.isWriteAheadLoggingEnabled()) {
+            sqLiteDatabase.enableWriteAheadLogging();
+        }
+        executePragma(sqLiteDatabase, "synchronous=" + mProfile.getSynchronous());
+        executePragma(sqLiteDatabase, "cache_size=-" + mProfile.getCacheSizeKib());
+        executePragma(sqLiteDatabase, "mmap_size=" + mProfile.getMmapSizeBytes());
+    }
+
+    /**
+     * Rebuild the file in incremental auto vacuum mode, once for the migration to version 8. This
+     * runs after the migration transaction is committed, as VACUUM can't run inside one. Older
+     * SQLite versions can't change the mode of a file in WAL mode, so write-ahead logging is
+     * turned off during the vacuum. Before Jelly Bean it is only turned on after this runs.
+     */
+    private void convertToIncrementalAutoVacuum(SQLiteDatabase sqLiteDatabase) {
+        if (DatabaseUtils.longForQuery(sqLiteDatabase, "PRAGMA auto_vacuum", null) == AUTO_VACUUM_INCREMENTAL) {
+            return;
+        }
+        boolean writeAheadLoggingEnabled = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN &&
+                sqLiteDatabase.isWriteAheadLoggingEnabled();
+        if (writeAheadLoggingEnabled) {
+            sqLiteDatabase.disableWriteAheadLogging();
+        }
+        try {
+            sqLiteDatabase.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+            sqLiteDatabase.execSQL("VACUUM");
+        } finally {
+            if (writeAheadLoggingEnabled) {
+                sqLiteDatabase.enableWriteAheadLogging();
+            }
+        }
+    }
+
+    /**
+     * Pragmas that return their new value can't go through execSQL on every platform version.
+     */
+    private void executePragma(SQLiteDatabase sqLiteDatabase, String pragma) {
+        Cursor cursor = sqLiteDatabase.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void migrate(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            for (String statement : getMigrationStatements(version)) {
+                sqLiteDatabase.execSQL(statement);
+            }
+        }
+    }
+
+    private String[] getMigrationStatements(int version) {
+        switch (version) {
+            case 2:
+                return SQL_MIGRATION_2;
+            case 3:
+                return SQL_MIGRATION_3;
+            case 4:
+                return SQL_MIGRATION_4;
+            case 5:
+                return SQL_MIGRATION_5;
+            case 6:
+                return SQL_MIGRATION_6;
+            case 7:
+                return SQL_MIGRATION_7;
+            case 8:
+                return SQL_MIGRATION_8;
+            default:
+                throw new IllegalStateException("No migration to database version " + version);
+        }
+    }
+
+    /**
+     * @param row the row of the trigger the change is about, new or old
+     */
+    private static String buildChangeInsert(int op, String row, String changedColumns) {
+        return "INSERT INTO " + PetChangeEntry.TABLE_NAME + "(" + PetChangeEntry.COLUMN_CHANGE_OP + "," +
+                PetChangeEntry.COLUMN_PET_ID + "," + PetChangeEntry.COLUMN_CHANGED_COLUMNS + "," +
+                PetChangeEntry.COLUMN_CHANGED_AT + ") VALUES (" + op + "," + row + "." + PetEntry._ID + "," +
+                changedColumns + "," + SQL_NOW_MILLIS + ");";
+    }
+
+    private static String buildColumnChanged(String column) {
+        return "old." + column + " IS NOT new." + column;
+    }
+
+    /**
+     * @return an expression of the column name preceded by a comma if an update changed it, or
+     * of an empty string
+     */
+    private static String buildChangedColumnName(String column) {
+        return "(CASE WHEN " + buildColumnChanged(column) + " THEN '," + column + "' ELSE '' END)";
+    }
 }
@@ -0,0 +1,78 @@
+package com.example.android.pets.data;
+
+/**
+ * Tuning settings applied by {@link PetDbHelper} every time it opens the shelter database.
+ */
+public final class PetDbProfile {
+
+    //Values of the synchronous pragma
+    public static final String SYNCHRONOUS_OFF = "OFF";
+    public static final String SYNCHRONOUS_NORMAL = "NORMAL";
+    public static final String SYNCHRONOUS_FULL = "FULL";
+
+    /**
+     * Write-ahead logging so that the catalog reads don't wait for the editor writes.
+     * NORMAL sync is durable in WAL mode except on power loss, where the last commits may roll back.
+     */
+    public static final PetDbProfile DEFAULT = new PetDbProfile(true, SYNCHRONOUS_NORMAL, 2048, 32 * 1024 * 1024, 50);
+
+    /**
+     * The behaviour of the database before the profiles existed, kept to compare against.
+     */
+    public static final PetDbProfile ROLLBACK_JOURNAL = new PetDbProfile(false, SYNCHRONOUS_FULL, 2048, 0, 25);
+
+    private final boolean mWriteAheadLoggingEnabled;
+    private final String mSynchronous;
+    private final int mCacheSizeKib;
+    private final long mMmapSizeBytes;
+    private final int mStatementCacheSize;
+
+    /**
+     * @param writeAheadLoggingEnabled whether to open the database in WAL mode, which also gives it
+     *                                 a pool of connections so that several readers can run in parallel
+     * @param synchronous              one of the SYNCHRONOUS constants
+     * @param cacheSizeKib             page cache of the writing connection in KiB
+     * @param mmapSizeBytes            bytes of the file to memory map, 0 to disable, ignored before SQLite 3.7.17
+     * @param statementCacheSize       number of prepared statements kept per connection, at most 100
+     */
+    public PetDbProfile(boolean writeAheadLoggingEnabled, String synchronous, int cacheSizeKib,
+                        long mmapSizeBytes, int statementCacheSize) {
+
+        if (!SYNCHRONOUS_OFF.equals(synchronous) && !SYNCHRONOUS_NORMAL.equals(synchronous)
+                && !SYNCHRONOUS_FULL.equals(synchronous)) {
+            throw new IllegalArgumentException("Invalid synchronous mode: " + synchronous);
+        }
+        if (cacheSizeKib <= 0 || mmapSizeBytes < 0) {
+            throw new IllegalArgumentException("Cache size must be positive and mmap size cannot be negative!");
+        }
+        if (statementCacheSize <= 0 || statementCacheSize > 100) {
+            throw new IllegalArgumentException("Statement cache size must be between 1 and 100!");
+        }
+
+        this.mWriteAheadLoggingEnabled = writeAheadLoggingEnabled;
+        this.mSynchronous = synchronous;
+        this.mCacheSizeKib = cacheSizeKib;
+        this.mMmapSizeBytes = mmapSizeBytes;
+        this.mStatementCacheSize = statementCacheSize;
+    }
+
+    public boolean isWriteAheadLoggingEnabled() {
+        return mWriteAheadLoggingEnabled;
+    }
+
+    public String getSynchronous() {
+        return mSynchronous;
+    }
+
+    public int getCacheSizeKib() {
+        return mCacheSizeKib;
+    }
+
+    public long getMmapSizeBytes() {
+        return mMmapSizeBytes;
+    }
+
+    public int getStatementCacheSize() {
+        return mStatementCacheSize;
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.android.pets.data;
+
+import android.content.ContentProvider;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Writes the whole pets table to the pipe opened by {@link PetProvider#openFile(Uri, String)}.
+ * Rows are read by id in keyset batches and encoded into one reused buffer that is written to the
+ * pipe channel whenever it fills up, so memory use is the same for any table size. Rows written
+ * while the export runs may or may not be part of it.
+ * <p>
+ * The CSV format has a header row and quotes the text fields that need it. The binary format is
+ * big-endian: the magic "PETS" and an int version, then for each pet a 1 byte, the long id, the int
+ * gender, the int weight, the name and the breed, and finally a 0 byte. A text field is its int
+ * length in UTF-8 bytes, -1 for null, followed by the bytes.
+ */
+class PetExportWriter implements ContentProvider.PipeDataWriter<String> {
+
+    private static final String LOG_TAG = PetExportWriter.class.getSimpleName();
+    private static final int BATCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BINARY_VERSION = 1;
+    private static final byte[] BINARY_MAGIC = {'P', 'E', 'T', 'S'};
+    private static final byte[] CSV_HEADER = (PetEntry._ID + "," + PetEntry.COLUMN_PET_NAME + "," +
+            PetEntry.COLUMN_PET_BREED + "," + PetEntry.COLUMN_PET_GENDER + "," + PetEntry.COLUMN_PET_WEIGHT + "\n")
+            .getBytes(Charset.forName("UTF-8"));
+    //The unary plus keeps the deletion time index out of the plan, which walks the rowids instead
+    private static final String SQL_SELECT_BATCH = "SELECT " + PetEntry._ID + "," + PetEntry.COLUMN_PET_NAME + "," +
+            PetEntry.COLUMN_PET_BREED + "," + PetEntry.COLUMN_PET_GENDER + "," + PetEntry.COLUMN_PET_WEIGHT +
+            " FROM " + PetEntry.TABLE_NAME + " WHERE +" + PetEntry.COLUMN_PET_DELETED_AT + " IS NULL AND " +
+            PetEntry._ID + ">? ORDER BY " + PetEntry._ID +
+            " LIMIT " + BATCH_SIZE;
+
+    //Column indices of SQL_SELECT_BATCH
+    private static final int COLUMN_ID = 0;
+    private static final int COLUMN_NAME = 1;
+    private static final int COLUMN_BREED = 2;
+    private static final int COLUMN_GENDER = 3;
+    private static final int COLUMN_WEIGHT = 4;
+
+    //UTF-8 takes at most 3 bytes for a UTF-16 char, a surrogate pair taking 4 bytes for 2 chars
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private final PetDbHelper mPetDbHelper;
+
+    PetExportWriter(PetDbHelper petDbHelper) {
+        this.mPetDbHelper = petDbHelper;
+    }
+
+    /**
+     * @return whether the format is one this writer can export
+     */
+    static boolean isFormatValid(String format) {
+        return PetEntry.EXPORT_FORMAT_CSV.equals(format) || PetEntry.EXPORT_FORMAT_BINARY.equals(format);
+    }
+
+    /**
+     * The output is closed by the caller once this returns.
+     */
+    @Override
+    public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType, Bundle opts, String format) {
+
+        long startTime = SystemClock.elapsedRealtime();
+        // Closing the stream would close the descriptor owned by the caller, so it is left open
+        FileChannel channel = new FileOutputStream(output.getFileDescriptor()).getChannel();
+        Encoder encoder = new Encoder(channel);
+        boolean binary = PetEntry.EXPORT_FORMAT_BINARY.equals(format);
+        long rowCount = 0;
+
+        try {
+            if (binary) {
+                encoder.putBytes(BINARY_MAGIC);
+                encoder.ensureRemaining(4);
+                encoder.mBuffer.putInt(BINARY_VERSION);
+            } else {
+                encoder.putBytes(CSV_HEADER);
+            }
+
+            SQLiteDatabase database = mPetDbHelper.getReadableDatabase();
+            String[] selectionArgs = {"0"};
+            int batchRowCount;
+            do {
+                Cursor cursor = database.rawQuery(SQL_SELECT_BATCH, selectionArgs);
+                try {
+                    batchRowCount = cursor.getCount();
+                    while (cursor.moveToNext()) {
+                        if (binary) {
+                            writeBinaryRow(encoder, cursor);
+                        } else {
+                            writeCsvRow(encoder, cursor);
+                        }
+                    }
+                    if (cursor.moveToLast()) {
+                        selectionArgs[0] = Long.toString(cursor.getLong(COLUMN_ID));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                rowCount += batchRowCount;
+            } while (batchRowCount == BATCH_SIZE);
+
+            if (binary) {
+                encoder.ensureRemaining(1);
+                encoder.mBuffer.put((byte) 0);
+            }
+            encoder.flush();
+        } catch (IOException e) {
+            // Most likely the reader closed its end of the pipe early
+            Log.e(LOG_TAG, "Error exporting the pets to " + uri, e);
+            return;
+        }
+
+        long elapsedMillis = SystemClock.elapsedRealtime() - startTime;
+        Log.d(LOG_TAG, "Exported " + rowCount + " pets, " + encoder.mWrittenBytes + " bytes, in " +
+                elapsedMillis + " ms");
+    }
+
+    private void writeBinaryRow(Encoder encoder, Cursor cursor) throws IOException {
+        encoder.ensureRemaining(1 + 8 + 4 + 4);
+        ByteBuffer buffer = encoder.mBuffer;
+        buffer.put((byte) 1);
+        buffer.putLong(cursor.getLong(COLUMN_ID));
+        buffer.putInt(cursor.getInt(COLUMN_GENDER));
+        buffer.putInt(cursor.getInt(COLUMN_WEIGHT));
+        encoder.putSizedString(cursor.getString(COLUMN_NAME));
+        encoder.putSizedString(cursor.getString(COLUMN_BREED));
+    }
+
+    private void writeCsvRow(Encoder encoder, Cursor cursor) throws IOException {
+        encoder.putAscii(Long.toString(cursor.getLong(COLUMN_ID)));
+        encoder.putAscii(",");
+        encoder.putCsvString(cursor.getString(COLUMN_NAME));
+        encoder.putAscii(",");
+        encoder.putCsvString(cursor.getString(COLUMN_BREED));
+        encoder.putAscii(",");
+        encoder.putAscii(Integer.toString(cursor.getInt(COLUMN_GENDER)));
+        encoder.putAscii(",");
+        encoder.putAscii(Integer.toString(cursor.getInt(COLUMN_WEIGHT)));
+        encoder.putAscii("\n");
+    }
+
+    /**
+     * Encodes values into the reused buffer, writing it to the channel whenever it fills up.
+     */
+    private static class Encoder {
+
+        private final FileChannel mChannel;
+        private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CharsetEncoder mCharsetEncoder = Charset.forName("UTF-8").newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private long mWrittenBytes;
+
+        Encoder(FileChannel channel) {
+            this.mChannel = channel;
+        }
+
+        void ensureRemaining(int byteCount) throws IOException {
+            if (mBuffer.remaining() < byteCount) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            mBuffer.flip();
+            while (mBuffer.hasRemaining()) {
+                mWrittenBytes += mChannel.write(mBuffer);
+            }
+            mBuffer.clear();
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensureRemaining(1);
+                int length = Math.min(bytes.length - offset, mBuffer.remaining());
+                mBuffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        /**
+         * Put a string known to be ASCII, such as a number, one byte per char.
+         */
+        void putAscii(String value) throws IOException {
+            ensureRemaining(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                mBuffer.put((byte) value.charAt(i));
+            }
+        }
+
+        void putCsvString(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1
+                    && value.indexOf('\r') == -1) {
+                putUtf8(value);
+                return;
+            }
+            putAscii("\"");
+            putUtf8(value.replace("\"", "\"\""));
+            putAscii("\"");
+        }
+
+        /**
+         * Put the UTF-8 byte length of the string followed by its bytes, or -1 for null.
+         */
+        void putSizedString(String value) throws IOException {
+            if (value == null) {
+                ensureRemaining(4);
+                mBuffer.putInt(-1);
+                return;
+            }
+
+            int maxByteCount = 4 + value.length() * MAX_BYTES_PER_CHAR;
+            if (maxByteCount > mBuffer.capacity()) {
+                // Too long to patch its length in the buffer, encode it on its own
+                byte[] bytes = value.getBytes(mCharsetEncoder.charset());
+                ensureRemaining(4);
+                mBuffer.putInt(bytes.length);
+                putBytes(bytes);
+                return;
+            }
+
+            ensureRemaining(maxByteCount);
+            int lengthPosition = mBuffer.position();
+            mBuffer.position(lengthPosition + 4);
+            putUtf8(value);
+            mBuffer.putInt(lengthPosition, mBuffer.position() - lengthPosition - 4);
+        }
+
+        private void putUtf8(String value) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(value);
+            mCharsetEncoder.reset();
+            while (mCharsetEncoder.encode(chars, mBuffer, true).isOverflow()) {
+                flush();
+            }
+            while (mCharsetEncoder.flush(mBuffer).isOverflow()) {
+                flush();
+            }
+        }
+    }
+}
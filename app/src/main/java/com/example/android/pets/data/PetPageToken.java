@@ -0,0 +1,124 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.util.Base64;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.nio.charset.Charset;
+
+/**
+ * Opaque position in a sorted listing of the pets: the sort key, and the sort value and id of the
+ * last row of a page. {@link PetProvider} serves the next page as the rows ordered after that
+ * position, which is an index seek however deep the page is. Pets inserted or deleted between
+ * two pages never make the next page skip or repeat the other pets.
+ */
+public final class PetPageToken {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BASE64_FLAGS = Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING;
+    private static final String SEPARATOR = "\n";
+    private static final char VALUE_NULL = 'n';
+    private static final char VALUE_PRESENT = 'v';
+
+    private final String mSortKey;
+    private final String mSortValue;
+    private final long mId;
+
+    private PetPageToken(String sortKey, String sortValue, long id) {
+        this.mSortKey = sortKey;
+        this.mSortValue = sortValue;
+        this.mId = id;
+    }
+
+    /**
+     * @return the column the pets are sorted by for the given sort key
+     * @throws IllegalArgumentException if the pets can't be sorted by the key
+     */
+    public static String getSortColumn(String sortKey) {
+        if (PetEntry.SORT_BY_ID.equals(sortKey)) {
+            return PetEntry._ID;
+        } else if (PetEntry.SORT_BY_NAME.equals(sortKey)) {
+            return PetEntry.COLUMN_PET_NAME;
+        } else if (PetEntry.SORT_BY_BREED.equals(sortKey)) {
+            return PetEntry.COLUMN_PET_BREED;
+        } else if (PetEntry.SORT_BY_WEIGHT.equals(sortKey)) {
+            return PetEntry.COLUMN_PET_WEIGHT;
+        }
+        throw new IllegalArgumentException("Cannot sort the pets by: " + sortKey);
+    }
+
+    /**
+     * @param sortValue the value of the sort column of the row, null for a pet without a breed
+     */
+    public static String encode(String sortKey, String sortValue, long id) {
+        getSortColumn(sortKey);
+        String token = sortKey + SEPARATOR + id + SEPARATOR +
+                (sortValue == null ? String.valueOf(VALUE_NULL) : VALUE_PRESENT + sortValue);
+        return Base64.encodeToString(token.getBytes(UTF_8), BASE64_FLAGS);
+    }
+
+    /**
+     * @return the token of the current row of the cursor, which must hold the id and the sort
+     * column
+     */
+    public static String fromCursor(Cursor cursor, String sortKey) {
+        String sortValue = cursor.getString(cursor.getColumnIndexOrThrow(getSortColumn(sortKey)));
+        return encode(sortKey, sortValue, cursor.getLong(cursor.getColumnIndexOrThrow(PetEntry._ID)));
+    }
+
+    public static String fromPet(Pet pet, String sortKey) {
+        String sortValue;
+        if (PetEntry.SORT_BY_NAME.equals(sortKey)) {
+            sortValue = pet.getName();
+        } else if (PetEntry.SORT_BY_BREED.equals(sortKey)) {
+            sortValue = pet.getBreed();
+        } else if (PetEntry.SORT_BY_WEIGHT.equals(sortKey)) {
+            sortValue = Integer.toString(pet.getWeight());
+        } else {
+            sortValue = Long.toString(pet.getId());
+        }
+        return encode(sortKey, sortValue, pet.getId());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token wasn't made by this class
+     */
+    static PetPageToken decode(String token) {
+        String[] parts;
+        try {
+            parts = new String(Base64.decode(token, BASE64_FLAGS), UTF_8).split(SEPARATOR, 3);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token: " + token, e);
+        }
+        if (parts.length != 3 || parts[2].isEmpty()) {
+            throw new IllegalArgumentException("Invalid page token: " + token);
+        }
+
+        long id;
+        try {
+            id = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page token: " + token, e);
+        }
+
+        getSortColumn(parts[0]);
+        String sortValue = parts[2].charAt(0) == VALUE_NULL ? null : parts[2].substring(1);
+        return new PetPageToken(parts[0], sortValue, id);
+    }
+
+    String getSortKey() {
+        return mSortKey;
+    }
+
+    /**
+     * @return the sort value of the last row, null if it has none
+     */
+    String getSortValue() {
+        return mSortValue;
+    }
+
+    long getId() {
+        return mId;
+    }
+}
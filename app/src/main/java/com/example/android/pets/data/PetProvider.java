@@ -1,16 +1,47 @@
 package com.example.android.pets.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
 
+import com.example.android.pets.data.PetContract.PetChangeEntry;
 import com.example.android.pets.data.PetContract.PetEntry;
 
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
 /**
  * Created by Bassam on 7/12/2017.
  */
@@ -22,14 +53,182 @@ public class PetProvider extends ContentProvider {
     public static final String LOG_TAG = PetProvider.class.getSimpleName();
     public static final int PETS = 100;
     public static final int PETS_ID = 101;
+    public static final int PETS_SEARCH = 102;
+    public static final int PETS_STATS_BY_GENDER = 103;
+    public static final int PETS_STATS_BY_BREED = 104;
+    public static final int PETS_STATS_COUNT = 105;
+    public static final int PETS_EXPORT = 106;
+    public static final int PETS_RESTORE = 107;
+    public static final int PETS_CHANGES = 108;
+    public static final int PETS_SYNC = 109;
     private static final UriMatcher mUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
     static {
         mUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS, PETS);
         mUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/#", PETS_ID);
+        mUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/" + PetContract.PATH_SEARCH,
+                PETS_SEARCH);
+        mUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/" + PetContract.PATH_STATS_BY_GENDER,
+                PETS_STATS_BY_GENDER);
+        mUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/" + PetContract.PATH_STATS_BY_BREED,
+                PETS_STATS_BY_BREED);
+        mUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/" + PetContract.PATH_STATS_COUNT,
+                PETS_STATS_COUNT);
+        mUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/" + PetContract.PATH_EXPORT,
+                PETS_EXPORT);
+        mUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/" + PetContract.PATH_RESTORE,
+                PETS_RESTORE);
+        mUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/" + PetContract.PATH_CHANGES,
+                PETS_CHANGES);
+        mUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/" + PetContract.PATH_SYNC,
+                PETS_SYNC);
     }
 
+    /**
+     * Selection of the pets that aren't soft deleted, added to every read and write. Nearly every
+     * row is null, but without statistics SQLite would still pick the deletion time index for
+     * this equality over the index of the filter or sort, the unary plus keeps it out of the plan.
+     */
+    private static final String SQL_NOT_DELETED = "+" + PetEntry.TABLE_NAME + "." + PetEntry.COLUMN_PET_DELETED_AT +
+            " IS NULL";
+
+    /**
+     * The pets joined with their matches. The full-text table is only read in the subquery, so
+     * that its name and breed columns don't make the columns of a caller's selection ambiguous.
+     * The first number of offsets() is the column of the first match, as the matches are listed
+     * column by column.
+     */
+    private static final String SQL_SEARCH_TABLES = PetEntry.TABLE_NAME + " JOIN (SELECT " +
+            PetEntry.FTS_COLUMN_DOC_ID + ",substr(offsets(" + PetEntry.FTS_TABLE_NAME + "),1,1) AS match_column" +
+            " FROM " + PetEntry.FTS_TABLE_NAME + " WHERE " + PetEntry.FTS_TABLE_NAME + " MATCH ?) AS matches" +
+            " ON " + PetEntry.TABLE_NAME + "." + PetEntry._ID + "=matches." + PetEntry.FTS_COLUMN_DOC_ID;
+    /**
+     * Matches in the name column rank before matches in the breed column only.
+     */
+    private static final String SQL_SEARCH_SORT_ORDER = "matches.match_column," +
+            PetEntry.TABLE_NAME + "." + PetEntry.COLUMN_PET_NAME + " COLLATE NOCASE";
+    private static final Map<String, String> sSearchProjectionMap = new HashMap<String, String>();
+
+    private static final String[] CHANGES_PROJECTION = {PetChangeEntry._ID, PetChangeEntry.COLUMN_CHANGE_OP,
+            PetChangeEntry.COLUMN_PET_ID, PetChangeEntry.COLUMN_CHANGED_COLUMNS, PetChangeEntry.COLUMN_CHANGED_AT};
+    /**
+     * The changes after a sequence number, read in the same statement as the check that none of
+     * them were truncated, so that a page never has a gap.
+     */
+    private static final String SQL_CHANGES_SELECTION = PetChangeEntry._ID + ">? AND ?>=(SELECT IFNULL(MIN(" +
+            PetChangeEntry._ID + "),1)-1 FROM " + PetChangeEntry.TABLE_NAME + ")";
+    private static final String SQL_OLDEST_CHANGE = "SELECT IFNULL(MIN(" + PetChangeEntry._ID + "),1) FROM " +
+            PetChangeEntry.TABLE_NAME;
+    private static final String SQL_LATEST_CHANGE = "SELECT IFNULL(MAX(" + PetChangeEntry._ID + "),0) FROM " +
+            PetChangeEntry.TABLE_NAME;
+
+    /**
+     * The dirty rows of the pets, deleted or not, and the tombstones of the purged ones.
+     */
+    private static final String SQL_SYNC_ROWS = "SELECT " + TextUtils.join(",", PetEntry.SYNC_PROJECTION) +
+            " FROM " + PetEntry.TABLE_NAME + " WHERE " + PetEntry.COLUMN_PET_DIRTY + "=1 UNION ALL SELECT " +
+            PetEntry.COLUMN_PET_UUID + ",NULL,NULL," + PetEntry.DEFAULT_GENDER + "," + PetEntry.DEFAULT_WEIGHT + "," +
+            PetEntry.COLUMN_PET_DELETED_AT + "," + PetEntry.COLUMN_PET_VERSION + "," + PetEntry.COLUMN_PET_UPDATED_AT +
+            " FROM " + PetEntry.SYNC_TOMBSTONES_TABLE_NAME;
+
+    private static final String SQL_COLUMNAR_SNAPSHOT = "SELECT " + TextUtils.join(",", PetEntry.EDITOR_PROJECTION) +
+            " FROM " + PetEntry.TABLE_NAME + " WHERE " + SQL_NOT_DELETED;
+    private static final long STATS_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private static final String SQL_STATS_COUNT = "COUNT(*) AS " + PetEntry.COLUMN_STATS_COUNT;
+    private static final String SQL_STATS_AVERAGE_WEIGHT = "AVG(" + PetEntry.COLUMN_PET_WEIGHT + ") AS " +
+            PetEntry.COLUMN_STATS_AVERAGE_WEIGHT;
+
+    /**
+     * A sort order is a comma separated list of terms made of a known column, optionally compared
+     * without case, and an optional direction.
+     */
+    private static final Pattern SORT_ORDER_TERM_PATTERN = Pattern.compile(
+            "\\s*(" + PetEntry._ID + "|" + PetEntry.COLUMN_PET_NAME + "|" + PetEntry.COLUMN_PET_BREED + "|" +
+                    PetEntry.COLUMN_PET_GENDER + "|" + PetEntry.COLUMN_PET_WEIGHT + ")" +
+                    "(\\s+COLLATE\\s+NOCASE)?(\\s+(ASC|DESC))?\\s*", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * The columns that can be requested in a projection, and the ones read by a null projection.
+     * The deletion, sync and versioning columns are internal to the provider.
+     */
+    private static final String[] PETS_COLUMNS = {PetEntry._ID, PetEntry.COLUMN_PET_NAME, PetEntry.COLUMN_PET_BREED,
+            PetEntry.COLUMN_PET_GENDER, PetEntry.COLUMN_PET_WEIGHT};
+    private static final Set<String> sPetsColumns = new HashSet<String>();
+
+    static {
+        for (String column : PETS_COLUMNS) {
+            sPetsColumns.add(column);
+            sSearchProjectionMap.put(column, PetEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+    }
+
+    /**
+     * The last deletion time stamped on soft deleted pets, shared by the whole process so that no
+     * two deletions get the same time.
+     */
+    private static final AtomicLong sLastDeletionTime = new AtomicLong();
+
+    private final String mDatabaseName;
+    private final PetDbProfile mDbProfile;
     private PetDbHelper mPetDbHelper;
+    private PetChangeNotifier mPetChangeNotifier;
+    private PetStatementCache mPetStatementCache;
+    private PetExportWriter mPetExportWriter;
+    private PetCompactor mPetCompactor;
+    private PetProviderMetrics mMetrics;
+    private final PetStatsCache mPetStatsCache = new PetStatsCache();
+
+    /**
+     * The columnar snapshot of the last shelter statistics, and the write generation it was read
+     * at. Guarded by the lock of the provider.
+     */
+    private PetColumnarSnapshot mColumnarSnapshot;
+    private long mColumnarSnapshotGeneration;
+
+    /**
+     * Counts the columns of the large snapshots in parallel, its threads stop when idle.
+     */
+    private ThreadPoolExecutor mStatsExecutor;
+
+    /**
+     * Caches the results of the pets queries once enabled by
+     * {@link PetContract#METHOD_SET_QUERY_CACHE_SIZE}, null while disabled.
+     */
+    private volatile PetQueryCache mPetQueryCache;
+
+    /**
+     * Incremented after every committed write that changed the pets table. Results derived from
+     * the table are cached with the generation taken before they were queried, and are only valid
+     * while it is unchanged.
+     */
+    private final AtomicLong mWriteGeneration = new AtomicLong();
+
+    /**
+     * Collects the URIs changed by the operations of the batch that {@link #applyBatch(ArrayList)}
+     * runs on the current thread, so that they are only notified once the batch is committed.
+     * Null when no batch is running.
+     */
+    private final ThreadLocal<Set<Uri>> mBatchChangedUris = new ThreadLocal<Set<Uri>>();
+
+    /**
+     * The provider of the app, over the shelter database.
+     */
+    public PetProvider() {
+        this(PetDbHelper.DB_NAME, PetDbProfile.DEFAULT);
+    }
+
+    /**
+     * A provider over a database of its own, for example to load test the data layer without
+     * touching the pets of the user. It is started with
+     * {@link #attachInfo(android.content.Context, android.content.pm.ProviderInfo)}, called
+     * directly rather than through a content resolver, and stopped with {@link #shutdown()}. Its
+     * change notifications still go to the observers of the content URIs.
+     */
+    public PetProvider(String databaseName, PetDbProfile dbProfile) {
+        this.mDatabaseName = databaseName;
+        this.mDbProfile = dbProfile;
+    }
 
     /**
      * Initialize the provider and the database helper object.
@@ -37,81 +236,586 @@ public class PetProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
 
-        mPetDbHelper = new PetDbHelper(getContext());
+        mMetrics = new PetProviderMetrics(getUriCodeNames());
+        mPetDbHelper = new PetDbHelper(getContext(), mDatabaseName, mDbProfile);
+        mPetStatementCache = new PetStatementCache(mPetDbHelper);
+        mPetExportWriter = new PetExportWriter(mPetDbHelper);
+        mPetCompactor = new PetCompactor(mPetDbHelper);
+        // Purge the pets deleted before the process last stopped
+        mPetCompactor.schedule();
+        mPetChangeNotifier = new PetChangeNotifier(getContext().getContentResolver());
+        int processors = Runtime.getRuntime().availableProcessors();
+        mStatsExecutor = new ThreadPoolExecutor(processors, processors, STATS_THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mStatsExecutor.allowCoreThreadTimeOut(true);
 
         return true;
     }
 
+    /**
+     * Stop the compactor thread and close the database.
+     */
+    @Override
+    public void shutdown() {
+        mPetCompactor.quit();
+        mStatsExecutor.shutdown();
+        mPetStatementCache.close();
+        mPetDbHelper.close();
+    }
+
+    private static SparseArray<String> getUriCodeNames() {
+        SparseArray<String> uriCodeNames = new SparseArray<String>();
+        uriCodeNames.put(PETS, "pets");
+        uriCodeNames.put(PETS_ID, "pets/#");
+        uriCodeNames.put(PETS_SEARCH, "pets/search");
+        uriCodeNames.put(PETS_STATS_BY_GENDER, "pets/stats/by_gender");
+        uriCodeNames.put(PETS_STATS_BY_BREED, "pets/stats/by_breed");
+        uriCodeNames.put(PETS_STATS_COUNT, "pets/stats/count");
+        uriCodeNames.put(PETS_EXPORT, "pets/export");
+        uriCodeNames.put(PETS_RESTORE, "pets/restore");
+        uriCodeNames.put(PETS_CHANGES, "pets/changes");
+        uriCodeNames.put(PETS_SYNC, "pets/sync");
+        // Batches and unknown URIs
+        uriCodeNames.put(UriMatcher.NO_MATCH, "other");
+        return uriCodeNames;
+    }
+
     /**
      * Perform the query for the given URI. Use the given projection, selection, selection arguments, and sort order.
      */
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+
+        long startNanos = System.nanoTime();
+        int operationUriCode = mUriMatcher.match(uri);
+        Cursor cursor = null;
+        try {
+            cursor = queryUri(operationUriCode, uri, projection, selection, selectionArgs, sortOrder);
+            return cursor;
+        } finally {
+            // The cursor was filled by rawQuery, counting its rows doesn't run the query again
+            mMetrics.record(PetProviderMetrics.OP_QUERY, operationUriCode, startNanos,
+                    cursor == null ? 0 : cursor.getCount(), cursor != null);
+        }
+    }
+
+    private Cursor queryUri(int operationUriCode, Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
         Cursor cursor;
 
-        SQLiteDatabase database = mPetDbHelper.getReadableDatabase();
+        if (isStatsUriCode(operationUriCode)) {
+            cursor = queryStats(operationUriCode, projection, selection, sortOrder);
+            cursor.setNotificationUri(getContext().getContentResolver(), PetEntry.CONTENT_URI);
+            return cursor;
+        }
+        if (operationUriCode == PETS_SYNC) {
+            return querySyncRows(uri, projection, selection, sortOrder);
+        }
+        if (operationUriCode == PETS_CHANGES) {
+            cursor = queryChanges(uri, projection, selection, sortOrder);
+            // Every write to the pets table is logged
+            cursor.setNotificationUri(getContext().getContentResolver(), PetEntry.CONTENT_URI);
+            return cursor;
+        }
 
-        int operationUriCode = mUriMatcher.match(uri);
+        checkProjectionValidity(projection);
+        checkSortOrderValidity(sortOrder);
+        if (projection == null) {
+            projection = PETS_COLUMNS;
+        }
+
+        PetQueryCache petQueryCache = mPetQueryCache;
+        if (petQueryCache == null) {
+            cursor = queryPets(operationUriCode, uri, projection, selection, selectionArgs, sortOrder);
+        } else {
+            long writeGeneration = mWriteGeneration.get();
+            String cacheKey = PetQueryCache.buildKey(operationUriCode, uri, projection, selection, selectionArgs,
+                    sortOrder);
+            cursor = petQueryCache.get(cacheKey, writeGeneration);
+            if (cursor == null) {
+                cursor = petQueryCache.put(cacheKey, writeGeneration,
+                        queryPets(operationUriCode, uri, projection, selection, selectionArgs, sortOrder));
+            }
+        }
+
+        if (operationUriCode == PETS_SEARCH) {
+            // Any change to the pets table may change the search results
+            cursor.setNotificationUri(getContext().getContentResolver(), PetEntry.CONTENT_URI);
+        } else {
+            cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        }
+
+        return cursor;
+    }
+
+    private Cursor queryPets(int operationUriCode, Uri uri, String[] projection, String selection,
+                             String[] selectionArgs, String sortOrder) {
+        Cursor cursor;
+
+        SQLiteDatabase database = mPetDbHelper.getReadableDatabase();
 
         switch (operationUriCode) {
             case PETS:
-                cursor = database.query(PetEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                selection = DatabaseUtils.concatenateWhere(selection, SQL_NOT_DELETED);
+                String sortKey = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_SORT);
+                if (sortKey != null) {
+                    cursor = querySortedPage(database, uri, sortKey, projection, selection, selectionArgs, sortOrder);
+                    break;
+                }
+                String afterId = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_AFTER_ID);
+                if (afterId != null) {
+                    selection = DatabaseUtils.concatenateWhere(selection, PetEntry._ID + ">?");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{Long.toString(Long.parseLong(afterId))});
+                    if (sortOrder == null) {
+                        sortOrder = PetEntry._ID + " ASC";
+                    }
+                }
+                cursor = rawQuery(database, SQLiteQueryBuilder.buildQueryString(false, PetEntry.TABLE_NAME, projection,
+                        selection, null, null, sortOrder, getQueryLimit(uri)), selectionArgs);
                 break;
             case PETS_ID:
-                selection = PetEntry._ID + "=?";
+                selection = PetEntry._ID + "=? AND " + SQL_NOT_DELETED;
                 selectionArgs = new String[]{Long.toString(ContentUris.parseId(uri))};
-                cursor = database.query(PetEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                cursor = rawQuery(database, SQLiteQueryBuilder.buildQueryString(false, PetEntry.TABLE_NAME, projection,
+                        selection, null, null, sortOrder, null), selectionArgs);
+                break;
+            case PETS_SEARCH:
+                cursor = searchPets(database, uri, projection, selection, selectionArgs);
                 break;
             default:
                 throw new IllegalArgumentException("Cannot query this URI: " + uri);
         }
+        return cursor;
+    }
 
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+    /**
+     * Query a page of the pets sorted by the given key, starting after the row of the page token
+     * if the URI has one. The rows are ordered by the sort column and then by id, the order of the
+     * index on the sort column, and the page starts with a seek in that index.
+     */
+    private Cursor querySortedPage(SQLiteDatabase database, Uri uri, String sortKey, String[] projection,
+                                   String selection, String[] selectionArgs, String sortOrder) {
+
+        if (sortOrder != null || uri.getQueryParameter(PetEntry.QUERY_PARAMETER_AFTER_ID) != null
+                || uri.getQueryParameter(PetEntry.QUERY_PARAMETER_OFFSET) != null) {
+            throw new IllegalArgumentException("A sorted page cannot have a sort order, an after id or an offset: " + uri);
+        }
 
+        String sortColumn = PetPageToken.getSortColumn(sortKey);
+        if (PetEntry.SORT_BY_NAME.equals(sortKey)) {
+            sortColumn += " COLLATE NOCASE";
+        }
+
+        String pageToken = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_PAGE_TOKEN);
+        if (pageToken != null) {
+            PetPageToken lastRow = PetPageToken.decode(pageToken);
+            if (!sortKey.equals(lastRow.getSortKey())) {
+                throw new IllegalArgumentException("The page token is for another sort: " + uri);
+            }
+            String id = Long.toString(lastRow.getId());
+            String sortValue = lastRow.getSortValue();
+
+            if (PetEntry.SORT_BY_ID.equals(sortKey)) {
+                selection = DatabaseUtils.concatenateWhere(selection, PetEntry._ID + ">?");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{id});
+            } else if (sortValue == null) {
+                // Null breeds come first, the next rows are the later nulls and all the breeds
+                selection = DatabaseUtils.concatenateWhere(selection, "(" + sortColumn + " IS NULL AND " +
+                        PetEntry._ID + ">?) OR " + sortColumn + " IS NOT NULL");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{id});
+            } else {
+                if (PetEntry.SORT_BY_WEIGHT.equals(sortKey)) {
+                    sortValue = Long.toString(Long.parseLong(sortValue));
+                }
+                // The first term is the index seek, the second one skips the rows up to the last id
+                selection = DatabaseUtils.concatenateWhere(selection, sortColumn + ">=? AND (" +
+                        sortColumn + ">? OR " + PetEntry._ID + ">?)");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{sortValue, sortValue, id});
+            }
+        }
+
+        String keysetSortOrder = PetEntry.SORT_BY_ID.equals(sortKey) ? PetEntry._ID :
+                sortColumn + "," + PetEntry._ID;
+        return rawQuery(database, SQLiteQueryBuilder.buildQueryString(false, PetEntry.TABLE_NAME, projection,
+                selection, null, null, keysetSortOrder, getQueryLimit(uri)), selectionArgs);
+    }
+
+    private boolean isStatsUriCode(int uriCode) {
+        return uriCode == PETS_STATS_BY_GENDER || uriCode == PETS_STATS_BY_BREED || uriCode == PETS_STATS_COUNT;
+    }
+
+    /**
+     * Serve a statistics URI from the cache, or run its GROUP BY query and cache the result. The
+     * statistics have fixed columns and groups, so they can't be queried with a projection, a
+     * selection or a sort order.
+     */
+    private Cursor queryStats(int uriCode, String[] projection, String selection, String sortOrder) {
+
+        if (projection != null || selection != null || sortOrder != null) {
+            throw new IllegalArgumentException("Statistics cannot be queried with a projection, selection or sort order");
+        }
+
+        long writeGeneration = mWriteGeneration.get();
+        Cursor cursor = mPetStatsCache.get(uriCode, writeGeneration);
+        if (cursor != null) {
+            return cursor;
+        }
+
+        SQLiteDatabase database = mPetDbHelper.getReadableDatabase();
+        switch (uriCode) {
+            case PETS_STATS_BY_GENDER:
+                cursor = rawQuery(database, SQLiteQueryBuilder.buildQueryString(false, PetEntry.TABLE_NAME,
+                        new String[]{PetEntry.COLUMN_PET_GENDER, SQL_STATS_COUNT, SQL_STATS_AVERAGE_WEIGHT},
+                        SQL_NOT_DELETED, PetEntry.COLUMN_PET_GENDER, null, PetEntry.COLUMN_PET_GENDER, null), null);
+                break;
+            case PETS_STATS_BY_BREED:
+                cursor = rawQuery(database, SQLiteQueryBuilder.buildQueryString(false, PetEntry.TABLE_NAME,
+                        new String[]{PetEntry.COLUMN_PET_BREED, SQL_STATS_COUNT, SQL_STATS_AVERAGE_WEIGHT},
+                        SQL_NOT_DELETED, PetEntry.COLUMN_PET_BREED, null, PetEntry.COLUMN_PET_BREED, null), null);
+                break;
+            default:
+                cursor = rawQuery(database, SQLiteQueryBuilder.buildQueryString(false, PetEntry.TABLE_NAME,
+                        new String[]{SQL_STATS_COUNT}, SQL_NOT_DELETED, null, null, null, null), null);
+        }
+        return mPetStatsCache.put(uriCode, writeGeneration, cursor);
+    }
+
+    /**
+     * Read the rows to send to the sync server, up to the limit of the URI. They have fixed
+     * columns, so they can't be queried with a projection, a selection or a sort order.
+     */
+    private Cursor querySyncRows(Uri uri, String[] projection, String selection, String sortOrder) {
+
+        if (projection != null || selection != null || sortOrder != null) {
+            throw new IllegalArgumentException("Sync rows cannot be queried with a projection, selection or sort order");
+        }
+
+        String limit = getQueryLimit(uri);
+        return rawQuery(mPetDbHelper.getReadableDatabase(),
+                limit == null ? SQL_SYNC_ROWS : SQL_SYNC_ROWS + " LIMIT " + limit, null);
+    }
+
+    /**
+     * Read the changes after the since sequence number of the URI, oldest first. If some of them
+     * were already truncated from the log, a single resync row with the latest sequence number is
+     * returned instead. The log has fixed columns and order, so it can't be queried with a
+     * projection, a selection or a sort order.
+     */
+    private Cursor queryChanges(Uri uri, String[] projection, String selection, String sortOrder) {
+
+        if (projection != null || selection != null || sortOrder != null) {
+            throw new IllegalArgumentException("Changes cannot be queried with a projection, selection or sort order");
+        }
+
+        String since = uri.getQueryParameter(PetChangeEntry.QUERY_PARAMETER_SINCE);
+        String sinceSequence = Long.toString(since == null ? 0 : Long.parseLong(since));
+
+        SQLiteDatabase database = mPetDbHelper.getReadableDatabase();
+        Cursor cursor = rawQuery(database, SQLiteQueryBuilder.buildQueryString(false, PetChangeEntry.TABLE_NAME,
+                CHANGES_PROJECTION, SQL_CHANGES_SELECTION, null, null, PetChangeEntry._ID, getQueryLimit(uri)),
+                new String[]{sinceSequence, sinceSequence});
+        if (cursor.getCount() > 0 ||
+                Long.parseLong(sinceSequence) >= DatabaseUtils.longForQuery(database, SQL_OLDEST_CHANGE, null) - 1) {
+            return cursor;
+        }
+        cursor.close();
+
+        MatrixCursor resyncCursor = new MatrixCursor(CHANGES_PROJECTION, 1);
+        resyncCursor.addRow(new Object[]{DatabaseUtils.longForQuery(database, SQL_LATEST_CHANGE, null),
+                PetChangeEntry.OP_RESYNC, null, null, System.currentTimeMillis()});
+        return resyncCursor;
+    }
+
+    /**
+     * Query the full-text index for the pets whose name or breed contain words starting with the
+     * words of the search query. The results always come in ranked order.
+     */
+    private Cursor searchPets(SQLiteDatabase database, Uri uri, String[] projection, String selection,
+                              String[] selectionArgs) {
+
+        String matchExpression = buildSearchMatchExpression(
+                uri.getQueryParameter(PetEntry.QUERY_PARAMETER_SEARCH_QUERY));
+
+        SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+        queryBuilder.setTables(SQL_SEARCH_TABLES);
+        queryBuilder.setProjectionMap(sSearchProjectionMap);
+
+        if (matchExpression == null) {
+            // Nothing to search for, return an empty result with the requested columns
+            return queryBuilder.query(database, projection, "0", null, null, null, null, "0");
+        }
+
+        selection = DatabaseUtils.concatenateWhere(SQL_NOT_DELETED, selection);
+        // The match argument comes first, the subquery is in the FROM clause. appendSelectionArgs
+        // doesn't take null arguments to append
+        selectionArgs = selectionArgs == null ? new String[]{matchExpression} :
+                DatabaseUtils.appendSelectionArgs(new String[]{matchExpression}, selectionArgs);
+
+        return rawQuery(database, queryBuilder.buildQuery(projection, selection, null, null,
+                SQL_SEARCH_SORT_ORDER, getQueryLimit(uri)), selectionArgs);
+    }
+
+    /**
+     * Run the query and fill the first window of its cursor, so that the time of the query is
+     * spent, and measured, in the provider. Queries over the slow query threshold are logged
+     * with their plan.
+     */
+    private Cursor rawQuery(SQLiteDatabase database, String sql, String[] selectionArgs) {
+        long startNanos = System.nanoTime();
+        Cursor cursor = database.rawQuery(sql, selectionArgs);
+        try {
+            cursor.getCount();
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+        if (mMetrics.isSlowQuery(startNanos)) {
+            mMetrics.logSlowQuery(startNanos, sql, explainQueryPlan(database, sql, selectionArgs));
+        }
         return cursor;
     }
 
+    private List<String> explainQueryPlan(SQLiteDatabase database, String sql, String[] selectionArgs) {
+        List<String> queryPlan = new ArrayList<String>();
+        Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        try {
+            int detailColumnIndex = cursor.getColumnIndex("detail");
+            if (detailColumnIndex == -1) {
+                detailColumnIndex = cursor.getColumnCount() - 1;
+            }
+            while (cursor.moveToNext()) {
+                queryPlan.add(cursor.getString(detailColumnIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+        return queryPlan;
+    }
+
+    /**
+     * Turn the user input into an FTS expression where every word is a prefix query, for example
+     * "to ter" becomes "to* ter*". Words are lower cased so that they can't be read as the FTS
+     * operators AND, OR, NOT or NEAR. Returns null if the input has no words to search for.
+     */
+    private String buildSearchMatchExpression(String searchQuery) {
+
+        if (searchQuery == null) {
+            return null;
+        }
+
+        StringBuilder matchExpression = new StringBuilder(searchQuery.length() + 8);
+        for (String word : searchQuery.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (matchExpression.length() > 0) {
+                matchExpression.append(' ');
+            }
+            matchExpression.append(word.toLowerCase(Locale.US)).append('*');
+        }
+
+        return matchExpression.length() == 0 ? null : matchExpression.toString();
+    }
+
+    /**
+     * Build the LIMIT clause out of the paging query parameters of the URI, or null if it has none.
+     */
+    private String getQueryLimit(Uri uri) {
+
+        String limit = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_LIMIT);
+        String offset = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_OFFSET);
+
+        if (limit == null) {
+            if (offset != null) {
+                throw new IllegalArgumentException("Offset cannot be used without a limit: " + uri);
+            }
+            return null;
+        }
+
+        int limitValue = Integer.parseInt(limit);
+        int offsetValue = offset == null ? 0 : Integer.parseInt(offset);
+        if (limitValue < 0 || offsetValue < 0) {
+            throw new IllegalArgumentException("Limit and offset cannot be negative: " + uri);
+        }
+        return offsetValue + "," + limitValue;
+    }
+
+    /**
+     * Open a pipe streaming an export of all the pets in the format of the URI. The export is
+     * written by a background thread while the caller reads it.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+
+        long startNanos = System.nanoTime();
+        int operationUriCode = mUriMatcher.match(uri);
+        boolean succeeded = false;
+        try {
+            if (operationUriCode != PETS_EXPORT) {
+                throw new FileNotFoundException("Cannot open this URI: " + uri);
+            }
+            if (!"r".equals(mode)) {
+                throw new FileNotFoundException("The export can only be opened for reading: " + uri);
+            }
+
+            String format = getExportFormat(uri);
+            ParcelFileDescriptor output = openPipeHelper(uri, getType(uri), null, format, mPetExportWriter);
+            succeeded = true;
+            return output;
+        } finally {
+            // Only the opening is measured, the export itself is logged by the writer
+            mMetrics.record(PetProviderMetrics.OP_OPEN_FILE, operationUriCode, startNanos, 0, succeeded);
+        }
+    }
+
+    private String getExportFormat(Uri uri) {
+        String format = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_FORMAT);
+        if (format == null) {
+            return PetEntry.EXPORT_FORMAT_CSV;
+        }
+        if (!PetExportWriter.isFormatValid(format)) {
+            throw new IllegalArgumentException("Unknown export format: " + uri);
+        }
+        return format;
+    }
+
     /**
      * Insert new data into the provider with the given ContentValues.
      */
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
 
-        checkInsertPetValuesValidity(contentValues);
-
+        long startNanos = System.nanoTime();
         int operationUriCode = mUriMatcher.match(uri);
+        Uri petUri = null;
+        try {
+            petUri = insertUri(operationUriCode, uri, contentValues);
+            return petUri;
+        } finally {
+            mMetrics.record(PetProviderMetrics.OP_INSERT, operationUriCode, startNanos, petUri == null ? 0 : 1,
+                    petUri != null);
+        }
+    }
+
+    private Uri insertUri(int operationUriCode, Uri uri, ContentValues contentValues) {
+
+        Pet pet = PetCursorCodec.fromContentValues(contentValues);
+        checkPetValidity(pet);
 
         switch (operationUriCode) {
             case PETS:
-                return insertPet(uri, contentValues);
+                return insertPet(uri, pet, contentValues);
 
             default:
                 throw new IllegalArgumentException("Insertion not supported for this uri: " + uri);
         }
     }
 
+    /**
+     * Insert all the given rows in a single transaction using a precompiled statement, and send
+     * one change notification once the whole batch is committed.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+
+        long startNanos = System.nanoTime();
+        int operationUriCode = mUriMatcher.match(uri);
+        int insertedRows = 0;
+        boolean succeeded = false;
+        try {
+            insertedRows = bulkInsertUri(operationUriCode, uri, values);
+            succeeded = true;
+            return insertedRows;
+        } finally {
+            mMetrics.record(PetProviderMetrics.OP_BULK_INSERT, operationUriCode, startNanos, insertedRows, succeeded);
+        }
+    }
+
+    private int bulkInsertUri(int operationUriCode, Uri uri, ContentValues[] values) {
+
+        switch (operationUriCode) {
+            case PETS:
+                return bulkInsertPets(uri, values);
+            case PETS_SYNC:
+                return mergeSyncRows(values);
+
+            default:
+                throw new IllegalArgumentException("Bulk insertion not supported for this uri: " + uri);
+        }
+    }
+
+    /**
+     * Apply all the operations in a single transaction. Either all of them are committed or none,
+     * and the observers are notified once at the end instead of once per operation.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+
+        long startNanos = System.nanoTime();
+        SQLiteDatabase database = mPetDbHelper.getWritableDatabase();
+        Set<Uri> changedUris = new LinkedHashSet<Uri>();
+        ContentProviderResult[] results = null;
+
+        mBatchChangedUris.set(changedUris);
+        database.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mBatchChangedUris.set(null);
+            // The operations are also counted one by one under their own URIs
+            mMetrics.record(PetProviderMetrics.OP_APPLY_BATCH, UriMatcher.NO_MATCH, startNanos, operations.size(),
+                    results != null);
+        }
+
+        for (Uri changedUri : changedUris) {
+            notifyPetsChanged(changedUri);
+        }
+        return results;
+    }
+
     /**
      * Updates the data at the given selection and selection arguments, with the new ContentValues.
      */
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
 
+        long startNanos = System.nanoTime();
+        int operationCode = mUriMatcher.match(uri);
+        int updatedRows = 0;
+        boolean succeeded = false;
+        try {
+            updatedRows = updateUri(operationCode, uri, contentValues, selection, selectionArgs);
+            succeeded = true;
+            return updatedRows;
+        } finally {
+            mMetrics.record(PetProviderMetrics.OP_UPDATE, operationCode, startNanos, updatedRows, succeeded);
+        }
+    }
+
+    private int updateUri(int operationCode, Uri uri, ContentValues contentValues, String selection,
+                          String[] selectionArgs) {
+
+        if (operationCode == PETS_RESTORE) {
+            return restorePets(uri);
+        }
+
         if (contentValues.size() == 0) {
             return 0;
         }
 
         checkUpdatePetsValidity(contentValues);
 
-        int operationCode = mUriMatcher.match(uri);
-
         switch (operationCode) {
             case PETS:
                 return updatePets(uri, contentValues, selection, selectionArgs);
             case PETS_ID:
-                selection = PetEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updatePets(uri, contentValues, selection, selectionArgs);
+                return updatePetById(uri, contentValues);
             default:
                 throw new IllegalArgumentException("Update not supported for: " + uri);
         }
@@ -123,21 +827,158 @@ public class PetProvider extends ContentProvider {
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
 
+        long startNanos = System.nanoTime();
         int operationCode = mUriMatcher.match(uri);
+        int deletedRows = 0;
+        boolean succeeded = false;
+        try {
+            deletedRows = deleteUri(operationCode, uri, selection, selectionArgs);
+            succeeded = true;
+            return deletedRows;
+        } finally {
+            mMetrics.record(PetProviderMetrics.OP_DELETE, operationCode, startNanos, deletedRows, succeeded);
+        }
+    }
+
+    private int deleteUri(int operationCode, Uri uri, String selection, String[] selectionArgs) {
 
         switch (operationCode) {
             case PETS:
                 return deletePets(uri, selection, selectionArgs);
             case PETS_ID:
-                selection = PetEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return deletePets(uri, selection, selectionArgs);
+                return deletePetById(uri);
             default:
                 throw new IllegalArgumentException("Deletion not supported for: " + uri);
         }
 
     }
 
+    /**
+     * Expose the metrics of the provider through the METHOD_* methods of {@link PetContract}.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+
+        if (PetContract.METHOD_DUMP_METRICS.equals(method)) {
+            Bundle result = new Bundle();
+            StringWriter metricsDump = new StringWriter();
+            dumpMetrics(new PrintWriter(metricsDump));
+            result.putString(PetContract.KEY_METRICS_DUMP, metricsDump.toString());
+            return result;
+        } else if (PetContract.METHOD_RESET_METRICS.equals(method)) {
+            mMetrics.reset();
+            return null;
+        } else if (PetContract.METHOD_SET_SLOW_QUERY_THRESHOLD.equals(method)) {
+            mMetrics.setSlowQueryThresholdMillis(arg == null ? -1 : parseSlowQueryThresholdMillis(arg));
+            return null;
+        } else if (PetContract.METHOD_SET_QUERY_CACHE_SIZE.equals(method)) {
+            int maxSizeBytes = arg == null ? 0 : parseQueryCacheSizeBytes(arg);
+            mPetQueryCache = maxSizeBytes > 0 ? new PetQueryCache(maxSizeBytes) : null;
+            return null;
+        } else if (PetContract.METHOD_SHELTER_STATS.equals(method)) {
+            return computeShelterStats(arg == null ? PetContract.DEFAULT_WEIGHT_BUCKET_WIDTH :
+                    parseWeightBucketWidth(arg));
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private static long parseSlowQueryThresholdMillis(String arg) {
+        try {
+            return Long.parseLong(arg.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The slow query threshold must be a number of milliseconds: " + arg,
+                    e);
+        }
+    }
+
+    private static int parseWeightBucketWidth(String arg) {
+        int bucketWidth;
+        try {
+            bucketWidth = Integer.parseInt(arg.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The weight bucket width must be a number: " + arg, e);
+        }
+        if (bucketWidth <= 0) {
+            throw new IllegalArgumentException("The weight bucket width must be positive: " + arg);
+        }
+        return bucketWidth;
+    }
+
+    /**
+     * Aggregate the columnar snapshot of the pets into the shelter statistics, the counts split
+     * across the stats executor for the large tables.
+     */
+    private Bundle computeShelterStats(int weightBucketWidth) {
+        PetColumnarSnapshot snapshot = getColumnarSnapshot();
+        ExecutorService executor = mStatsExecutor;
+
+        String[] breeds = new String[snapshot.getBreedCount()];
+        for (int breedCode = 0; breedCode < breeds.length; breedCode++) {
+            breeds[breedCode] = snapshot.getBreedForCode(breedCode);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(PetContract.KEY_PET_COUNT, snapshot.getCount());
+        result.putIntArray(PetContract.KEY_COUNT_BY_GENDER, snapshot.countByGender(executor));
+        result.putStringArray(PetContract.KEY_BREEDS, breeds);
+        result.putIntArray(PetContract.KEY_COUNT_BY_BREED, snapshot.countByBreed(executor));
+        result.putDoubleArray(PetContract.KEY_AVERAGE_WEIGHT_BY_BREED, snapshot.averageWeightByBreed());
+        result.putIntArray(PetContract.KEY_WEIGHT_HISTOGRAM, snapshot.weightHistogram(weightBucketWidth, executor));
+        return result;
+    }
+
+    /**
+     * @return the columnar snapshot of the pets, read again in one pass over a single cursor if a
+     * write committed since the last one was read
+     */
+    private PetColumnarSnapshot getColumnarSnapshot() {
+        long writeGeneration = mWriteGeneration.get();
+        synchronized (this) {
+            if (mColumnarSnapshot != null && mColumnarSnapshotGeneration == writeGeneration) {
+                return mColumnarSnapshot;
+            }
+        }
+
+        Cursor cursor = rawQuery(mPetDbHelper.getReadableDatabase(), SQL_COLUMNAR_SNAPSHOT, null);
+        PetColumnarSnapshot snapshot = PetColumnarSnapshot.read(cursor);
+        synchronized (this) {
+            if (mColumnarSnapshot == null || mColumnarSnapshotGeneration <= writeGeneration) {
+                mColumnarSnapshot = snapshot;
+                mColumnarSnapshotGeneration = writeGeneration;
+            }
+        }
+        return snapshot;
+    }
+
+    private static int parseQueryCacheSizeBytes(String arg) {
+        int maxSizeBytes;
+        try {
+            maxSizeBytes = Integer.parseInt(arg.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The query cache size must be a number of bytes: " + arg, e);
+        }
+        if (maxSizeBytes < 0) {
+            throw new IllegalArgumentException("The query cache size cannot be negative: " + arg);
+        }
+        return maxSizeBytes;
+    }
+
+    /**
+     * Print the metrics in the dumpsys output of the provider.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        dumpMetrics(writer);
+    }
+
+    private void dumpMetrics(PrintWriter writer) {
+        PetQueryCache petQueryCache = mPetQueryCache;
+        if (petQueryCache != null) {
+            petQueryCache.dump(writer);
+        }
+        mMetrics.dump(writer);
+    }
+
     /**
      * Returns the MIME type of data for the content URI.
      */
@@ -151,49 +992,301 @@ public class PetProvider extends ContentProvider {
                 return PetEntry.CONTENT_LIST_TYPE;
             case PETS_ID:
                 return PetEntry.CONTENT_ITEM_TYPE;
+            case PETS_SEARCH:
+                return PetEntry.CONTENT_LIST_TYPE;
+            case PETS_STATS_BY_GENDER:
+            case PETS_STATS_BY_BREED:
+            case PETS_STATS_COUNT:
+                return PetEntry.CONTENT_STATS_TYPE;
+            case PETS_RESTORE:
+                return PetEntry.CONTENT_LIST_TYPE;
+            case PETS_CHANGES:
+                return PetChangeEntry.CONTENT_LIST_TYPE;
+            case PETS_SYNC:
+                return PetEntry.CONTENT_LIST_TYPE;
+            case PETS_EXPORT:
+                return PetEntry.EXPORT_FORMAT_BINARY.equals(getExportFormat(uri)) ?
+                        PetEntry.EXPORT_BINARY_TYPE : PetEntry.EXPORT_CSV_TYPE;
             default:
                 throw new IllegalArgumentException("Invalid URI: " + uri);
         }
     }
 
-    private Uri insertPet(Uri uri, ContentValues contentValues) {
+    /**
+     * @param pet the pet decoded from the values, which are only inserted as they are when they
+     *            hold other columns than the pet's
+     */
+    private Uri insertPet(Uri uri, Pet pet, ContentValues contentValues) {
 
         SQLiteDatabase database = mPetDbHelper.getWritableDatabase();
 
-        long id = database.insert(PetEntry.TABLE_NAME, null, contentValues);
+        long id;
+        if (PetStatementCache.canInsert(contentValues)) {
+            id = executeInsertPet(database, pet);
+        } else {
+            id = database.insert(PetEntry.TABLE_NAME, null, contentValues);
+        }
 
         if (id == -1) {
             Log.e(LOG_TAG, "Error inserting the row for uri: " + uri);
             return null;
         }
-        getContext().getContentResolver().notifyChange(uri, null);
-        return ContentUris.withAppendedId(uri, id);
+        Uri petUri = ContentUris.withAppendedId(uri, id);
+        notifyPetsChanged(petUri);
+        return petUri;
+    }
+
+    private long executeInsertPet(SQLiteDatabase database, Pet pet) {
+
+        SQLiteStatement insertStatement = mPetStatementCache.getInsertStatement(database);
+        // The transaction only orders the locks. A bulk insert or a batch holds the connection
+        // before it locks the statement, so an insert holding the statement while it waits for
+        // the connection would deadlock with them
+        database.beginTransactionNonExclusive();
+        try {
+            long id;
+            synchronized (insertStatement) {
+                PetCursorCodec.bindInsert(insertStatement, pet);
+                id = insertStatement.executeInsert();
+            }
+            database.setTransactionSuccessful();
+            return id;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private int bulkInsertPets(Uri uri, ContentValues[] values) {
+
+        SQLiteDatabase database = mPetDbHelper.getWritableDatabase();
+        SQLiteStatement insertStatement = mPetStatementCache.getInsertStatement(database);
+        int insertedRows = 0;
+
+        database.beginTransaction();
+        try {
+            synchronized (insertStatement) {
+                for (ContentValues contentValues : values) {
+                    Pet pet = PetCursorCodec.fromContentValues(contentValues);
+                    checkPetValidity(pet);
+                    long id;
+                    if (PetStatementCache.canInsert(contentValues)) {
+                        PetCursorCodec.bindInsert(insertStatement, pet);
+                        id = insertStatement.executeInsert();
+                    } else {
+                        // The statement only binds the pet's columns, the other ones would be lost
+                        id = database.insert(PetEntry.TABLE_NAME, null, contentValues);
+                    }
+                    if (id != -1) {
+                        insertedRows++;
+                    }
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (insertedRows > 0) {
+            notifyPetsChanged(uri);
+        }
+        return insertedRows;
+    }
+
+    /**
+     * Merge the rows of the sync server in a single transaction, then send one change notification
+     * if any pet changed. Rows that only acknowledge local rows don't change the pets.
+     *
+     * @return the number of rows applied or acknowledged
+     */
+    private int mergeSyncRows(ContentValues[] serverRows) {
+
+        SQLiteDatabase database = mPetDbHelper.getWritableDatabase();
+        PetSyncMerger petSyncMerger = new PetSyncMerger(database);
+        int appliedRows = 0;
+        int acknowledgedRows = 0;
+
+        database.beginTransaction();
+        try {
+            for (ContentValues serverRow : serverRows) {
+                int result = petSyncMerger.merge(serverRow);
+                if (result == PetSyncMerger.MERGE_APPLIED) {
+                    appliedRows++;
+                } else if (result == PetSyncMerger.MERGE_ACKNOWLEDGED) {
+                    acknowledgedRows++;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            petSyncMerger.close();
+        }
+
+        if (appliedRows > 0) {
+            PetCache.getInstance().invalidateAll();
+            notifyPetsChanged(PetEntry.CONTENT_URI);
+        }
+        if (appliedRows + acknowledgedRows > 0) {
+            // Synced deletions may now be purged
+            mPetCompactor.schedule();
+        }
+        return appliedRows + acknowledgedRows;
     }
 
     private int updatePets(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
 
         SQLiteDatabase database = mPetDbHelper.getWritableDatabase();
-        getContext().getContentResolver().notifyChange(uri, null);
-        return database.update(PetEntry.TABLE_NAME, contentValues, selection, selectionArgs);
+        selection = DatabaseUtils.concatenateWhere(selection, SQL_NOT_DELETED);
+        int updatedRows = database.update(PetEntry.TABLE_NAME, contentValues, selection, selectionArgs);
+        if (updatedRows > 0) {
+            // The selection may match any pet
+            PetCache.getInstance().invalidateAll();
+            notifyPetsChanged(uri);
+        }
+        return updatedRows;
+    }
+
+    private int updatePetById(Uri uri, ContentValues contentValues) {
+
+        long id = ContentUris.parseId(uri);
+        int columnMask = PetStatementCache.getUpdateColumnMask(contentValues);
+        if (columnMask == -1) {
+            return updatePets(uri, contentValues, PetEntry._ID + "=?", new String[]{String.valueOf(id)});
+        }
+
+        SQLiteDatabase database = mPetDbHelper.getWritableDatabase();
+        SQLiteStatement updateStatement = mPetStatementCache.getUpdateByIdStatement(database, columnMask);
+        int updatedRows;
+
+        database.beginTransactionNonExclusive();
+        try {
+            synchronized (updateStatement) {
+                PetStatementCache.bindUpdateById(updateStatement, columnMask, contentValues, id);
+                updatedRows = updateStatement.executeUpdateDelete();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (updatedRows > 0) {
+            PetCache.getInstance().invalidate(id);
+            notifyPetsChanged(uri);
+        }
+        return updatedRows;
+    }
+
+    /**
+     * @return a deletion time no other deletion of the process got, the current time unless an
+     * earlier deletion already took it
+     */
+    static long newDeletionTime() {
+        while (true) {
+            long lastDeletionTime = sLastDeletionTime.get();
+            long deletionTime = Math.max(System.currentTimeMillis(), lastDeletionTime + 1);
+            if (sLastDeletionTime.compareAndSet(lastDeletionTime, deletionTime)) {
+                return deletionTime;
+            }
+        }
     }
 
+    /**
+     * @return the deletion time of the URI, which came from {@link #newDeletionTime()}, or a new one
+     */
+    private static long getDeletionTime(Uri uri) {
+        String deletedAt = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_DELETED_AT);
+        return deletedAt == null ? newDeletionTime() : Long.parseLong(deletedAt);
+    }
+
+    /**
+     * Soft delete the selected pets by setting their deletion time. They are hidden at once and
+     * purged by the compactor once they can no longer be restored.
+     */
     private int deletePets(Uri uri, String selection, String[] selectionArgs) {
 
         SQLiteDatabase database = mPetDbHelper.getWritableDatabase();
-        getContext().getContentResolver().notifyChange(uri, null);
-        return database.delete(PetEntry.TABLE_NAME, selection, selectionArgs);
+        ContentValues deletedValues = new ContentValues(1);
+        deletedValues.put(PetEntry.COLUMN_PET_DELETED_AT, getDeletionTime(uri));
+        selection = DatabaseUtils.concatenateWhere(selection, SQL_NOT_DELETED);
+
+        int deletedRows = database.update(PetEntry.TABLE_NAME, deletedValues, selection, selectionArgs);
+        if (deletedRows > 0) {
+            PetCache.getInstance().invalidateAll();
+            notifyPetsChanged(PetEntry.CONTENT_URI);
+            mPetCompactor.schedule();
+        }
+        return deletedRows;
+    }
+
+    private int deletePetById(Uri uri) {
+
+        SQLiteDatabase database = mPetDbHelper.getWritableDatabase();
+        SQLiteStatement deleteStatement = mPetStatementCache.getDeleteByIdStatement(database);
+        long id = ContentUris.parseId(uri);
+        int deletedRows;
+
+        database.beginTransactionNonExclusive();
+        try {
+            synchronized (deleteStatement) {
+                deleteStatement.bindLong(1, getDeletionTime(uri));
+                deleteStatement.bindLong(2, id);
+                deletedRows = deleteStatement.executeUpdateDelete();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (deletedRows > 0) {
+            PetCache.getInstance().invalidate(id);
+            notifyPetsChanged(ContentUris.withAppendedId(PetEntry.CONTENT_URI, id));
+            mPetCompactor.schedule();
+        }
+        return deletedRows;
     }
 
-    private void checkInsertPetValuesValidity(ContentValues contentValues) {
+    /**
+     * Bring back the pets of the deletion stamped with the time of the URI that weren't purged yet.
+     * The pets of other deletions, even later ones, stay deleted.
+     */
+    private int restorePets(Uri uri) {
+
+        String deletedAt = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_DELETED_AT);
+        if (deletedAt == null) {
+            throw new IllegalArgumentException("Restoring requires the time of the deletion: " + uri);
+        }
 
-        String name = contentValues.getAsString(PetEntry.COLUMN_PET_NAME);
-        int gender = contentValues.getAsInteger(PetEntry.COLUMN_PET_GENDER);
-        int weight = contentValues.getAsInteger(PetEntry.COLUMN_PET_WEIGHT);
+        SQLiteDatabase database = mPetDbHelper.getWritableDatabase();
+        ContentValues restoredValues = new ContentValues(1);
+        restoredValues.putNull(PetEntry.COLUMN_PET_DELETED_AT);
+        int restoredRows = database.update(PetEntry.TABLE_NAME, restoredValues,
+                PetEntry.COLUMN_PET_DELETED_AT + "=?", new String[]{Long.toString(Long.parseLong(deletedAt))});
 
-        checkNameValidity(name);
-        checkGenderValidity(gender);
-        checkWeightValidity(weight);
+        if (restoredRows > 0) {
+            PetCache.getInstance().invalidateAll();
+            notifyPetsChanged(PetEntry.CONTENT_URI);
+        }
+        return restoredRows;
+    }
 
+    /**
+     * Advance the write generation and notify the observers of the given URI once the write is
+     * committed. Must only be called after a write that changed at least one row, with the item URI
+     * when a single pet changed.
+     */
+    private void notifyPetsChanged(Uri uri) {
+        Set<Uri> batchChangedUris = mBatchChangedUris.get();
+        if (batchChangedUris != null) {
+            batchChangedUris.add(uri);
+            return;
+        }
+        mWriteGeneration.incrementAndGet();
+        mPetChangeNotifier.notifyChange(uri);
+    }
+
+    private void checkPetValidity(Pet pet) {
+        checkNameValidity(pet.getName());
+        checkGenderValidity(pet.getGender());
+        checkWeightValidity(pet.getWeight());
     }
 
     private void checkUpdatePetsValidity(ContentValues contentValues) {
@@ -202,15 +1295,47 @@ public class PetProvider extends ContentProvider {
             checkNameValidity(contentValues.getAsString(PetEntry.COLUMN_PET_NAME));
         }
         if (contentValues.containsKey(PetEntry.COLUMN_PET_GENDER)) {
-            checkGenderValidity(contentValues.getAsInteger(PetEntry.COLUMN_PET_GENDER));
+            checkGenderValidity(PetCursorCodec.getInt(contentValues, PetEntry.COLUMN_PET_GENDER,
+                    PetEntry.DEFAULT_GENDER));
         }
         if (contentValues.containsKey(PetEntry.COLUMN_PET_WEIGHT)) {
-            checkWeightValidity(contentValues.getAsInteger(PetEntry.COLUMN_PET_WEIGHT));
+            checkWeightValidity(PetCursorCodec.getInt(contentValues, PetEntry.COLUMN_PET_WEIGHT,
+                    PetEntry.DEFAULT_WEIGHT));
+        }
+    }
+
+    /**
+     * Only allow sorting by the known columns, so that callers can't inject expressions in the
+     * ORDER BY clause.
+     */
+    private void checkSortOrderValidity(String sortOrder) {
+        if (sortOrder == null) {
+            return;
+        }
+        for (String term : sortOrder.split(",", -1)) {
+            if (!SORT_ORDER_TERM_PATTERN.matcher(term).matches()) {
+                throw new IllegalArgumentException("Invalid sort order: " + sortOrder);
+            }
+        }
+    }
+
+    /**
+     * Only allow the known columns, so that callers can't read arbitrary expressions or columns
+     * they don't expect. A null projection reads all the columns that can be requested.
+     */
+    private void checkProjectionValidity(String[] projection) {
+        if (projection == null) {
+            return;
+        }
+        for (String column : projection) {
+            if (!sPetsColumns.contains(column)) {
+                throw new IllegalArgumentException("Unknown column in projection: " + column);
+            }
         }
     }
 
     private void checkNameValidity(String name) {
-        if (name == null) {
+        if (!PetEntry.isNameValid(name)) {
             throw new IllegalArgumentException("Name cannot be null!");
         }
     }
@@ -222,7 +1347,7 @@ public class PetProvider extends ContentProvider {
     }
 
     private void checkWeightValidity(int weight) {
-        if (weight < 0) {
+        if (!PetEntry.isWeightValid(weight)) {
             throw new IllegalArgumentException("Weight cannot be a negative value!");
         }
     }
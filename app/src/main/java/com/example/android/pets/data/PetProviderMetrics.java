@@ -0,0 +1,202 @@
+package com.example.android.pets.data;
+
+import android.content.UriMatcher;
+import android.util.SparseArray;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the operations of {@link PetProvider} for each URI code: calls, failures, rows and a
+ * latency histogram. Recording an operation takes a lookup in arrays built up front and one
+ * uncontended lock, so the metrics stay on in production.
+ * <p>
+ * Queries slower than an opt-in threshold are also kept, with their query plan, in a short log
+ * of the latest ones.
+ */
+class PetProviderMetrics {
+
+    static final int OP_QUERY = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_BULK_INSERT = 2;
+    static final int OP_APPLY_BATCH = 3;
+    static final int OP_UPDATE = 4;
+    static final int OP_DELETE = 5;
+    static final int OP_OPEN_FILE = 6;
+    private static final String[] OP_NAMES = {"query", "insert", "bulkInsert", "applyBatch", "update",
+            "delete", "openFile"};
+
+    //Bucket i counts the operations that took less than 2^i microseconds, the last one the slower
+    private static final int HISTOGRAM_BUCKET_COUNT = 24;
+
+    private static final int SLOW_QUERY_LOG_SIZE = 20;
+
+    private final SparseArray<String> mUriCodeNames;
+    private final SparseArray<Stats[]> mStats = new SparseArray<Stats[]>();
+    private final Deque<String> mSlowQueries = new ArrayDeque<String>(SLOW_QUERY_LOG_SIZE);
+    private volatile long mSlowQueryThresholdNanos = -1;
+
+    /**
+     * @param uriCodeNames the names of the URI codes to count, the operations of any other code
+     *                     are counted together
+     */
+    PetProviderMetrics(SparseArray<String> uriCodeNames) {
+        this.mUriCodeNames = uriCodeNames;
+        for (int i = 0; i < uriCodeNames.size(); i++) {
+            mStats.put(uriCodeNames.keyAt(i), newStats());
+        }
+    }
+
+    private static Stats[] newStats() {
+        Stats[] stats = new Stats[OP_NAMES.length];
+        for (int op = 0; op < stats.length; op++) {
+            stats[op] = new Stats();
+        }
+        return stats;
+    }
+
+    /**
+     * Record an operation that started at the given {@link System#nanoTime()}.
+     *
+     * @param rows the rows read or written, 0 for a failed operation
+     */
+    void record(int op, int uriCode, long startNanos, int rows, boolean succeeded) {
+        long durationNanos = System.nanoTime() - startNanos;
+        Stats[] uriCodeStats = mStats.get(uriCode);
+        if (uriCodeStats == null) {
+            // Unknown URIs are counted under the NO_MATCH code, registered like the others
+            uriCodeStats = mStats.get(UriMatcher.NO_MATCH);
+        }
+        if (uriCodeStats != null) {
+            uriCodeStats[op].record(durationNanos, rows, succeeded);
+        }
+    }
+
+    /**
+     * @param thresholdMillis the duration over which queries are logged with their plan, or a
+     *                        negative value to stop logging them
+     */
+    void setSlowQueryThresholdMillis(long thresholdMillis) {
+        mSlowQueryThresholdNanos = thresholdMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * @return whether a query that started at the given time is slow enough to be logged
+     */
+    boolean isSlowQuery(long startNanos) {
+        long thresholdNanos = mSlowQueryThresholdNanos;
+        return thresholdNanos >= 0 && System.nanoTime() - startNanos >= thresholdNanos;
+    }
+
+    void logSlowQuery(long startNanos, String sql, List<String> queryPlan) {
+        StringBuilder entry = new StringBuilder()
+                .append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)).append(" ms: ").append(sql);
+        for (String step : queryPlan) {
+            entry.append("\n    ").append(step);
+        }
+        synchronized (mSlowQueries) {
+            if (mSlowQueries.size() == SLOW_QUERY_LOG_SIZE) {
+                mSlowQueries.removeFirst();
+            }
+            mSlowQueries.addLast(entry.toString());
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < mStats.size(); i++) {
+            for (Stats stats : mStats.valueAt(i)) {
+                stats.reset();
+            }
+        }
+        synchronized (mSlowQueries) {
+            mSlowQueries.clear();
+        }
+    }
+
+    /**
+     * Print one line for each URI code and operation that ran, followed by the slow query log.
+     */
+    void dump(PrintWriter writer) {
+        writer.println("operation uri calls failures rows mean_us p50_us p99_us max_us");
+        for (int i = 0; i < mStats.size(); i++) {
+            Stats[] uriCodeStats = mStats.valueAt(i);
+            for (int op = 0; op < uriCodeStats.length; op++) {
+                uriCodeStats[op].dump(writer, OP_NAMES[op], mUriCodeNames.valueAt(i));
+            }
+        }
+
+        List<String> slowQueries;
+        synchronized (mSlowQueries) {
+            slowQueries = new ArrayList<String>(mSlowQueries);
+        }
+        writer.println("slow queries: " + slowQueries.size());
+        for (String slowQuery : slowQueries) {
+            writer.println(slowQuery);
+        }
+        writer.flush();
+    }
+
+    private static class Stats {
+
+        private final long[] mHistogram = new long[HISTOGRAM_BUCKET_COUNT];
+        private long mCalls;
+        private long mFailures;
+        private long mRows;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        synchronized void record(long durationNanos, int rows, boolean succeeded) {
+            mCalls++;
+            if (!succeeded) {
+                mFailures++;
+            }
+            mRows += rows;
+            mTotalNanos += durationNanos;
+            mMaxNanos = Math.max(mMaxNanos, durationNanos);
+
+            long micros = durationNanos / 1000;
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            mHistogram[Math.min(bucket, HISTOGRAM_BUCKET_COUNT - 1)]++;
+        }
+
+        synchronized void reset() {
+            mCalls = 0;
+            mFailures = 0;
+            mRows = 0;
+            mTotalNanos = 0;
+            mMaxNanos = 0;
+            for (int i = 0; i < mHistogram.length; i++) {
+                mHistogram[i] = 0;
+            }
+        }
+
+        synchronized void dump(PrintWriter writer, String opName, String uriCodeName) {
+            if (mCalls == 0) {
+                return;
+            }
+            writer.println(String.format(Locale.US, "%s %s %d %d %d %d %d %d %d", opName, uriCodeName, mCalls,
+                    mFailures, mRows, mTotalNanos / mCalls / 1000, getPercentileMicros(50),
+                    getPercentileMicros(99), mMaxNanos / 1000));
+        }
+
+        /**
+         * @return the upper bound of the histogram bucket holding the percentile
+         */
+        private long getPercentileMicros(int percentile) {
+            long rank = (mCalls * percentile + 99) / 100;
+            long count = 0;
+            for (int bucket = 0; bucket < mHistogram.length; bucket++) {
+                count += mHistogram[bucket];
+                if (count >= rank) {
+                    return bucket == mHistogram.length - 1 ? mMaxNanos / 1000 : 1L << bucket;
+                }
+            }
+            return mMaxNanos / 1000;
+        }
+    }
+}
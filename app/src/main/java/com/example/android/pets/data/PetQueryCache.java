@@ -0,0 +1,276 @@
+package com.example.android.pets.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.LruCache;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Opt-in LRU cache of the results of the pets queries of {@link PetProvider}, keyed by the
+ * normalized query and bounded by an estimate of their size in bytes.
+ * <p>
+ * Like {@link PetStatsCache}, a result is tagged with the write generation of the provider taken
+ * before it was queried. The cache only holds the results of the latest generation it has seen:
+ * the first lookup or insertion with a newer generation drops all the others, and a result of an
+ * older generation is never stored. So a result is never served after a write committed.
+ * <p>
+ * The results are copied once into flat arrays, and every hit is served by a read-only cursor
+ * sharing them.
+ */
+class PetQueryCache {
+
+    //Estimated bytes of a cached result and its key, of each row, of each value and of each char
+    private static final int RESULT_OVERHEAD_BYTES = 160;
+    private static final int VALUE_SLOT_BYTES = 4;
+    private static final int BOXED_VALUE_BYTES = 24;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final LruCache<String, Result> mResults;
+    private final int mMaxSizeBytes;
+    private long mGeneration;
+    private long mHits;
+    private long mMisses;
+    private long mSkippedPuts;
+
+    PetQueryCache(int maxSizeBytes) {
+        this.mMaxSizeBytes = maxSizeBytes;
+        this.mResults = new LruCache<String, Result>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(String key, Result result) {
+                return result.mSizeBytes;
+            }
+        };
+    }
+
+    /**
+     * @return the key of a query: the URI code, path and sorted query parameters of the URI, then
+     * the projection, selection, selection arguments and sort order
+     */
+    static String buildKey(int uriCode, Uri uri, String[] projection, String selection, String[] selectionArgs,
+                           String sortOrder) {
+        StringBuilder key = new StringBuilder().append(uriCode).append(KEY_SEPARATOR).append(uri.getPath());
+
+        List<String> parameterNames = new ArrayList<String>(uri.getQueryParameterNames());
+        Collections.sort(parameterNames);
+        for (String parameterName : parameterNames) {
+            key.append(KEY_SEPARATOR).append(parameterName).append('=').append(uri.getQueryParameter(parameterName));
+        }
+
+        key.append(KEY_SEPARATOR).append('p');
+        if (projection != null) {
+            for (String column : projection) {
+                key.append(column).append(',');
+            }
+        }
+        key.append(KEY_SEPARATOR).append('w').append(selection);
+        key.append(KEY_SEPARATOR).append('a');
+        if (selectionArgs != null) {
+            for (String selectionArg : selectionArgs) {
+                key.append(selectionArg).append(KEY_SEPARATOR);
+            }
+        }
+        key.append(KEY_SEPARATOR).append('o').append(sortOrder);
+        return key.toString();
+    }
+
+    /**
+     * @return a new cursor over the cached result of the query, or null if there is none for the
+     * given write generation
+     */
+    synchronized Cursor get(String key, long writeGeneration) {
+        advanceGeneration(writeGeneration);
+        Result result = mResults.get(key);
+        if (result == null || result.mWriteGeneration != writeGeneration) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return new ResultCursor(result);
+    }
+
+    /**
+     * Copy the rows of the cursor and close it. The copy is cached unless a write committed since
+     * the given generation was taken, or it would take more than an eighth of the cache.
+     *
+     * @param writeGeneration the write generation taken before the cursor was queried
+     * @return a new cursor over the copied rows
+     */
+    Cursor put(String key, long writeGeneration, Cursor cursor) {
+        Result result;
+        try {
+            result = new Result(writeGeneration, cursor);
+        } finally {
+            cursor.close();
+        }
+        synchronized (this) {
+            advanceGeneration(writeGeneration);
+            if (writeGeneration == mGeneration && result.mSizeBytes <= mMaxSizeBytes / 8) {
+                mResults.put(key, result);
+            } else {
+                mSkippedPuts++;
+            }
+        }
+        return new ResultCursor(result);
+    }
+
+    private void advanceGeneration(long writeGeneration) {
+        if (writeGeneration > mGeneration) {
+            mGeneration = writeGeneration;
+            mResults.evictAll();
+        }
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        long lookups = mHits + mMisses;
+        writer.println(String.format(Locale.US, "query cache: hits %d misses %d hit_rate %.3f skipped %d " +
+                        "evictions %d entries %d size_bytes %d/%d", mHits, mMisses,
+                lookups == 0 ? 0 : (double) mHits / lookups, mSkippedPuts, mResults.evictionCount(),
+                mResults.snapshot().size(), mResults.size(), mMaxSizeBytes));
+    }
+
+    private static class Result {
+
+        private final long mWriteGeneration;
+        private final String[] mColumnNames;
+        private final int mRowCount;
+        //The values of all the rows one after the other: Long, Double, String or null
+        private final Object[] mValues;
+        private final int mSizeBytes;
+
+        Result(long writeGeneration, Cursor cursor) {
+            this.mWriteGeneration = writeGeneration;
+            this.mColumnNames = cursor.getColumnNames();
+            this.mRowCount = cursor.getCount();
+            this.mValues = new Object[mRowCount * mColumnNames.length];
+
+            int sizeBytes = RESULT_OVERHEAD_BYTES + VALUE_SLOT_BYTES * mValues.length;
+            int index = 0;
+            while (cursor.moveToNext()) {
+                for (int column = 0; column < mColumnNames.length; column++) {
+                    Object value = getValue(cursor, column);
+                    if (value instanceof String) {
+                        sizeBytes += STRING_OVERHEAD_BYTES + 2 * ((String) value).length();
+                    } else if (value != null) {
+                        sizeBytes += BOXED_VALUE_BYTES;
+                    }
+                    mValues[index++] = value;
+                }
+            }
+            this.mSizeBytes = sizeBytes;
+        }
+
+        private static Object getValue(Cursor cursor, int column) {
+            switch (cursor.getType(column)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    return null;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    return cursor.getLong(column);
+                case Cursor.FIELD_TYPE_FLOAT:
+                    return cursor.getDouble(column);
+                default:
+                    return cursor.getString(column);
+            }
+        }
+    }
+
+    /**
+     * Read-only cursor over a cached result. Numbers read as strings and strings read as numbers
+     * are converted like SQLite converts them.
+     */
+    private static class ResultCursor extends AbstractCursor {
+
+        private final Result mResult;
+
+        ResultCursor(Result result) {
+            this.mResult = result;
+        }
+
+        private Object getValue(int column) {
+            checkPosition();
+            return mResult.mValues[getPosition() * mResult.mColumnNames.length + column];
+        }
+
+        @Override
+        public int getCount() {
+            return mResult.mRowCount;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mResult.mColumnNames;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = getValue(column);
+            if (value == null) {
+                return FIELD_TYPE_NULL;
+            } else if (value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if (value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            }
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = getValue(column);
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = getValue(column);
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return value == null ? 0 : (long) parseDouble((String) value);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = getValue(column);
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return value == null ? 0 : parseDouble((String) value);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return getValue(column) == null;
+        }
+
+        private static double parseDouble(String value) {
+            try {
+                return Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+/**
+ * Keeps the statements of the fixed-shape writes of {@link PetProvider}: insert, update by id
+ * and soft delete by id. They are compiled once per database instance and schema, instead of building
+ * the SQL and its arguments array on every call.
+ * <p>
+ * A statement holds its bindings, so a caller must hold the statement lock from binding to
+ * execution. To avoid deadlocks with the database connection, the lock must only be taken inside
+ * a transaction.
+ */
+class PetStatementCache {
+
+    /**
+     * The columns an update by id can set. An update is compiled for each subset of them.
+     */
+    private static final String[] UPDATABLE_COLUMNS = {PetEntry.COLUMN_PET_NAME, PetEntry.COLUMN_PET_BREED,
+            PetEntry.COLUMN_PET_GENDER, PetEntry.COLUMN_PET_WEIGHT};
+
+    private static final String SQL_INSERT_PET = "INSERT INTO " + PetEntry.TABLE_NAME + "(" +
+            PetEntry.COLUMN_PET_NAME + "," +
+            PetEntry.COLUMN_PET_BREED + "," +
+            PetEntry.COLUMN_PET_GENDER + "," +
+            PetEntry.COLUMN_PET_WEIGHT + ") VALUES (?,?,?,?)";
+    private static final String SQL_SOFT_DELETE_PET_BY_ID = "UPDATE " + PetEntry.TABLE_NAME + " SET " +
+            PetEntry.COLUMN_PET_DELETED_AT + "=? WHERE " + PetEntry._ID + "=? AND " +
+            PetEntry.COLUMN_PET_DELETED_AT + " IS NULL";
+
+    private final PetDbHelper mPetDbHelper;
+    private final SQLiteStatement[] mUpdateByIdStatements;
+    private SQLiteDatabase mDatabase;
+    private int mSchemaGeneration;
+    private SQLiteStatement mInsertStatement;
+    private SQLiteStatement mDeleteByIdStatement;
+
+    PetStatementCache(PetDbHelper petDbHelper) {
+        this.mPetDbHelper = petDbHelper;
+        this.mUpdateByIdStatements = new SQLiteStatement[1 << UPDATABLE_COLUMNS.length];
+    }
+
+    /**
+     * @return the bit mask of the updatable columns set by the values, or -1 if they also set
+     * another column and the update can't use a cached statement
+     */
+    static int getUpdateColumnMask(ContentValues contentValues) {
+        int columnMask = 0;
+        for (int i = 0; i < UPDATABLE_COLUMNS.length; i++) {
+            if (contentValues.containsKey(UPDATABLE_COLUMNS[i])) {
+                columnMask |= 1 << i;
+            }
+        }
+        return Integer.bitCount(columnMask) == contentValues.size() ? columnMask : -1;
+    }
+
+    /**
+     * @return whether the insert statement can write all the values
+     */
+    static boolean canInsert(ContentValues contentValues) {
+        return getUpdateColumnMask(contentValues) != -1;
+    }
+
+    synchronized SQLiteStatement getInsertStatement(SQLiteDatabase database) {
+        invalidateIfStale(database);
+        if (mInsertStatement == null) {
+            mInsertStatement = database.compileStatement(SQL_INSERT_PET);
+        }
+        return mInsertStatement;
+    }
+
+    synchronized SQLiteStatement getUpdateByIdStatement(SQLiteDatabase database, int columnMask) {
+        invalidateIfStale(database);
+        if (mUpdateByIdStatements[columnMask] == null) {
+            mUpdateByIdStatements[columnMask] = database.compileStatement(buildUpdateByIdSql(columnMask));
+        }
+        return mUpdateByIdStatements[columnMask];
+    }
+
+    synchronized SQLiteStatement getDeleteByIdStatement(SQLiteDatabase database) {
+        invalidateIfStale(database);
+        if (mDeleteByIdStatement == null) {
+            mDeleteByIdStatement = database.compileStatement(SQL_SOFT_DELETE_PET_BY_ID);
+        }
+        return mDeleteByIdStatement;
+    }
+
+    /**
+     * Bind the values and the id to the update statement compiled for the given column mask.
+     */
+    static void bindUpdateById(SQLiteStatement updateStatement, int columnMask, ContentValues contentValues,
+                               long id) {
+        int bindIndex = 1;
+        for (int i = 0; i < UPDATABLE_COLUMNS.length; i++) {
+            if ((columnMask & (1 << i)) == 0) {
+                continue;
+            }
+            String column = UPDATABLE_COLUMNS[i];
+            if (PetEntry.COLUMN_PET_NAME.equals(column) || PetEntry.COLUMN_PET_BREED.equals(column)) {
+                PetCursorCodec.bindString(updateStatement, bindIndex, contentValues.getAsString(column));
+            } else {
+                Integer value = contentValues.getAsInteger(column);
+                if (value == null) {
+                    updateStatement.bindNull(bindIndex);
+                } else {
+                    updateStatement.bindLong(bindIndex, value);
+                }
+            }
+            bindIndex++;
+        }
+        updateStatement.bindLong(bindIndex, id);
+    }
+
+    private static String buildUpdateByIdSql(int columnMask) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(PetEntry.TABLE_NAME).append(" SET ");
+        boolean firstColumn = true;
+        for (int i = 0; i < UPDATABLE_COLUMNS.length; i++) {
+            if ((columnMask & (1 << i)) == 0) {
+                continue;
+            }
+            if (!firstColumn) {
+                sql.append(',');
+            }
+            sql.append(UPDATABLE_COLUMNS[i]).append("=?");
+            firstColumn = false;
+        }
+        return sql.append(" WHERE ").append(PetEntry._ID).append("=? AND ")
+                .append(PetEntry.COLUMN_PET_DELETED_AT).append(" IS NULL").toString();
+    }
+
+    /**
+     * Drop the statements compiled for another database instance or an older schema.
+     */
+    private void invalidateIfStale(SQLiteDatabase database) {
+        int schemaGeneration = mPetDbHelper.getSchemaGeneration();
+        if (database == mDatabase && schemaGeneration == mSchemaGeneration) {
+            return;
+        }
+
+        close();
+        mDatabase = database;
+        mSchemaGeneration = schemaGeneration;
+    }
+
+    /**
+     * Close the compiled statements, so that the database can be closed. They are compiled again
+     * when next needed.
+     */
+    synchronized void close() {
+        closeStatement(mInsertStatement);
+        closeStatement(mDeleteByIdStatement);
+        for (SQLiteStatement updateStatement : mUpdateByIdStatements) {
+            closeStatement(updateStatement);
+        }
+        mInsertStatement = null;
+        mDeleteByIdStatement = null;
+        for (int i = 0; i < mUpdateByIdStatements.length; i++) {
+            mUpdateByIdStatements[i] = null;
+        }
+        mDatabase = null;
+    }
+
+    private void closeStatement(SQLiteStatement statement) {
+        if (statement != null) {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.SparseArray;
+
+/**
+ * Keeps the last result of each statistics query of {@link PetProvider}, tagged with the write
+ * generation of the provider when the query started. A result is only served while the
+ * generation is unchanged, so any committed write makes every cached statistic stale.
+ */
+class PetStatsCache {
+
+    private final SparseArray<Result> mResults = new SparseArray<Result>();
+
+    /**
+     * @return a new cursor over the cached result of the query, or null if there is none for the
+     * given write generation
+     */
+    synchronized Cursor get(int uriCode, long writeGeneration) {
+        Result result = mResults.get(uriCode);
+        if (result == null || result.mWriteGeneration != writeGeneration) {
+            return null;
+        }
+        return result.newCursor();
+    }
+
+    /**
+     * Copy the rows of the cursor into the cache and close it.
+     *
+     * @param writeGeneration the write generation taken before the cursor was queried
+     * @return a new cursor over the copied rows
+     */
+    Cursor put(int uriCode, long writeGeneration, Cursor cursor) {
+        Result result;
+        try {
+            result = new Result(writeGeneration, cursor);
+        } finally {
+            cursor.close();
+        }
+        synchronized (this) {
+            Result cachedResult = mResults.get(uriCode);
+            if (cachedResult == null || cachedResult.mWriteGeneration <= writeGeneration) {
+                mResults.put(uriCode, result);
+            }
+        }
+        return result.newCursor();
+    }
+
+    private static class Result {
+
+        private final long mWriteGeneration;
+        private final String[] mColumnNames;
+        private final Object[][] mRows;
+
+        Result(long writeGeneration, Cursor cursor) {
+            this.mWriteGeneration = writeGeneration;
+            this.mColumnNames = cursor.getColumnNames();
+            this.mRows = new Object[cursor.getCount()][];
+
+            int row = 0;
+            while (cursor.moveToNext()) {
+                Object[] values = new Object[mColumnNames.length];
+                for (int column = 0; column < values.length; column++) {
+                    values[column] = getValue(cursor, column);
+                }
+                mRows[row++] = values;
+            }
+        }
+
+        private static Object getValue(Cursor cursor, int column) {
+            switch (cursor.getType(column)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    return null;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    return cursor.getLong(column);
+                case Cursor.FIELD_TYPE_FLOAT:
+                    return cursor.getDouble(column);
+                default:
+                    return cursor.getString(column);
+            }
+        }
+
+        Cursor newCursor() {
+            MatrixCursor cursor = new MatrixCursor(mColumnNames, mRows.length);
+            for (Object[] values : mRows) {
+                cursor.addRow(values);
+            }
+            return cursor;
+        }
+    }
+}
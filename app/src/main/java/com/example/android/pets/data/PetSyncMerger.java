@@ -0,0 +1,184 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+/**
+ * Merges the rows of the sync server into the pets table, keeping for each pet the row with the
+ * newest version stamp: the higher version, then the later update time. A server row with the
+ * same stamp as the local row is the server acknowledging it, the local row is then marked as
+ * synced.
+ * <p>
+ * A merger is made for one batch, inside the transaction {@link PetProvider} runs the batch in.
+ * The statements it compiles are closed by {@link #close()}.
+ */
+class PetSyncMerger {
+
+    static final int MERGE_SKIPPED = 0;
+    static final int MERGE_ACKNOWLEDGED = 1;
+    static final int MERGE_APPLIED = 2;
+
+    private static final String SQL_SELECT_STAMP = "SELECT " + PetEntry._ID + "," + PetEntry.COLUMN_PET_VERSION + "," +
+            PetEntry.COLUMN_PET_UPDATED_AT + " FROM " + PetEntry.TABLE_NAME + " WHERE " + PetEntry.COLUMN_PET_UUID + "=?";
+    private static final String SQL_SELECT_TOMBSTONE_STAMP = "SELECT 0," + PetEntry.COLUMN_PET_VERSION + "," +
+            PetEntry.COLUMN_PET_UPDATED_AT + " FROM " + PetEntry.SYNC_TOMBSTONES_TABLE_NAME + " WHERE " +
+            PetEntry.COLUMN_PET_UUID + "=?";
+    private static final String SQL_INSERT = "INSERT INTO " + PetEntry.TABLE_NAME + "(" +
+            PetEntry.COLUMN_PET_NAME + "," + PetEntry.COLUMN_PET_BREED + "," + PetEntry.COLUMN_PET_GENDER + "," +
+            PetEntry.COLUMN_PET_WEIGHT + "," + PetEntry.COLUMN_PET_UUID + "," + PetEntry.COLUMN_PET_VERSION + "," +
+            PetEntry.COLUMN_PET_UPDATED_AT + ") VALUES (?,?,?,?,?,?,?)";
+    private static final String SQL_UPDATE = "UPDATE " + PetEntry.TABLE_NAME + " SET " +
+            PetEntry.COLUMN_PET_NAME + "=?," + PetEntry.COLUMN_PET_BREED + "=?," + PetEntry.COLUMN_PET_GENDER + "=?," +
+            PetEntry.COLUMN_PET_WEIGHT + "=?," + PetEntry.COLUMN_PET_DELETED_AT + "=?," +
+            PetEntry.COLUMN_PET_VERSION + "=?," + PetEntry.COLUMN_PET_UPDATED_AT + "=?," +
+            PetEntry.COLUMN_PET_DIRTY + "=0 WHERE " + PetEntry._ID + "=?";
+    private static final String SQL_ACKNOWLEDGE = "UPDATE " + PetEntry.TABLE_NAME + " SET " +
+            PetEntry.COLUMN_PET_DIRTY + "=0 WHERE " + PetEntry._ID + "=?";
+    private static final String SQL_DELETE_TOMBSTONE = "DELETE FROM " + PetEntry.SYNC_TOMBSTONES_TABLE_NAME +
+            " WHERE " + PetEntry.COLUMN_PET_UUID + "=?";
+
+    //Columns of SQL_SELECT_STAMP and SQL_SELECT_TOMBSTONE_STAMP
+    private static final int COLUMN_INDEX_ID = 0;
+    private static final int COLUMN_INDEX_VERSION = 1;
+    private static final int COLUMN_INDEX_UPDATED_AT = 2;
+
+    private final SQLiteDatabase mDatabase;
+    private SQLiteStatement mInsertStatement;
+    private SQLiteStatement mUpdateStatement;
+    private SQLiteStatement mAcknowledgeStatement;
+    private SQLiteStatement mDeleteTombstoneStatement;
+
+    PetSyncMerger(SQLiteDatabase database) {
+        this.mDatabase = database;
+    }
+
+    /**
+     * Merge a server row holding the columns of {@link PetEntry#SYNC_PROJECTION}.
+     *
+     * @return MERGE_APPLIED if the row changed the pets, MERGE_ACKNOWLEDGED if it only marked a
+     * local row or tombstone as synced, MERGE_SKIPPED if the local row is newer
+     * @throws IllegalArgumentException if the row has no uuid or stamp, or breaks the rules of
+     *                                  the pets while not deleted
+     */
+    int merge(ContentValues serverRow) {
+        String uuid = serverRow.getAsString(PetEntry.COLUMN_PET_UUID);
+        Long version = serverRow.getAsLong(PetEntry.COLUMN_PET_VERSION);
+        Long updatedAt = serverRow.getAsLong(PetEntry.COLUMN_PET_UPDATED_AT);
+        if (uuid == null || version == null || version < 1 || updatedAt == null) {
+            throw new IllegalArgumentException("Invalid sync row: " + serverRow);
+        }
+        Long deletedAt = serverRow.getAsLong(PetEntry.COLUMN_PET_DELETED_AT);
+
+        long[] stamp = queryStamp(SQL_SELECT_STAMP, uuid);
+        if (stamp != null) {
+            int comparison = PetEntry.compareSyncStamps(version, updatedAt, stamp[COLUMN_INDEX_VERSION],
+                    stamp[COLUMN_INDEX_UPDATED_AT]);
+            if (comparison < 0) {
+                return MERGE_SKIPPED;
+            } else if (comparison == 0) {
+                mAcknowledgeStatement = compile(mAcknowledgeStatement, SQL_ACKNOWLEDGE);
+                mAcknowledgeStatement.bindLong(1, stamp[COLUMN_INDEX_ID]);
+                mAcknowledgeStatement.executeUpdateDelete();
+                return MERGE_ACKNOWLEDGED;
+            }
+
+            mUpdateStatement = compile(mUpdateStatement, SQL_UPDATE);
+            int bindIndex = bindPet(mUpdateStatement, serverRow, deletedAt == null);
+            if (deletedAt == null) {
+                mUpdateStatement.bindNull(bindIndex++);
+            } else {
+                mUpdateStatement.bindLong(bindIndex++, deletedAt);
+            }
+            mUpdateStatement.bindLong(bindIndex++, version);
+            mUpdateStatement.bindLong(bindIndex++, updatedAt);
+            mUpdateStatement.bindLong(bindIndex, stamp[COLUMN_INDEX_ID]);
+            mUpdateStatement.executeUpdateDelete();
+            return MERGE_APPLIED;
+        }
+
+        // The pet may have been deleted and purged here before its deletion was synced
+        int result = MERGE_SKIPPED;
+        long[] tombstoneStamp = queryStamp(SQL_SELECT_TOMBSTONE_STAMP, uuid);
+        if (tombstoneStamp != null) {
+            int comparison = PetEntry.compareSyncStamps(version, updatedAt, tombstoneStamp[COLUMN_INDEX_VERSION],
+                    tombstoneStamp[COLUMN_INDEX_UPDATED_AT]);
+            if (comparison < 0) {
+                return MERGE_SKIPPED;
+            }
+            mDeleteTombstoneStatement = compile(mDeleteTombstoneStatement, SQL_DELETE_TOMBSTONE);
+            mDeleteTombstoneStatement.bindString(1, uuid);
+            mDeleteTombstoneStatement.executeUpdateDelete();
+            result = MERGE_ACKNOWLEDGED;
+        }
+
+        // A pet deleted before it ever reached this device is never inserted
+        if (deletedAt == null) {
+            mInsertStatement = compile(mInsertStatement, SQL_INSERT);
+            int bindIndex = bindPet(mInsertStatement, serverRow, true);
+            mInsertStatement.bindString(bindIndex++, uuid);
+            mInsertStatement.bindLong(bindIndex++, version);
+            mInsertStatement.bindLong(bindIndex, updatedAt);
+            mInsertStatement.executeInsert();
+            result = MERGE_APPLIED;
+        }
+        return result;
+    }
+
+    void close() {
+        closeStatement(mInsertStatement);
+        closeStatement(mUpdateStatement);
+        closeStatement(mAcknowledgeStatement);
+        closeStatement(mDeleteTombstoneStatement);
+    }
+
+    /**
+     * Bind the name, breed, gender and weight of the row to the parameters 1 to 4.
+     *
+     * @param validate whether the row is a visible pet that must follow the rules of the pets,
+     *                 a deleted pet is kept as it is
+     * @return the index of the next parameter
+     */
+    private int bindPet(SQLiteStatement statement, ContentValues serverRow, boolean validate) {
+        Pet pet = PetCursorCodec.fromContentValues(serverRow);
+        if (validate && (!PetEntry.isNameValid(pet.getName()) || !PetEntry.isGenderValid(pet.getGender()) ||
+                !PetEntry.isWeightValid(pet.getWeight()))) {
+            throw new IllegalArgumentException("Invalid sync row: " + serverRow);
+        }
+        // The name column can't be null, even for a deleted pet
+        PetCursorCodec.bindString(statement, 1, pet.getName() == null ? "" : pet.getName());
+        PetCursorCodec.bindString(statement, 2, pet.getBreed());
+        statement.bindLong(3, pet.getGender());
+        statement.bindLong(4, pet.getWeight());
+        return 5;
+    }
+
+    /**
+     * @return the id, version and update time of the row with the uuid, or null if there is none
+     */
+    private long[] queryStamp(String sql, String uuid) {
+        Cursor cursor = mDatabase.rawQuery(sql, new String[]{uuid});
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new long[]{cursor.getLong(COLUMN_INDEX_ID), cursor.getLong(COLUMN_INDEX_VERSION),
+                    cursor.getLong(COLUMN_INDEX_UPDATED_AT)};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private SQLiteStatement compile(SQLiteStatement statement, String sql) {
+        return statement != null ? statement : mDatabase.compileStatement(sql);
+    }
+
+    private void closeStatement(SQLiteStatement statement) {
+        if (statement != null) {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the pet writes of the process off the main thread. There is one queue for the whole
+ * process with a single worker thread, so the writes reach the provider one at a time in the
+ * order they were queued, whichever screen queued them. The results are reported back on the
+ * main thread, and a write the provider rejects is reported to
+ * {@link WriteCallback#onWriteFailed(RuntimeException)} instead of crashing the worker.
+ */
+public final class PetWriteQueue {
+
+    private static final String LOG_TAG = PetWriteQueue.class.getSimpleName();
+
+    private static PetWriteQueue sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final Handler mWorkerHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    //Updates queued but not taken by the worker yet, by pet URI. Guarded by itself
+    private final Map<Uri, PetUpdate> mPendingUpdates = new HashMap<Uri, PetUpdate>();
+
+    /**
+     * @param workerLooper the looper of the thread that runs the writes
+     */
+    PetWriteQueue(ContentResolver contentResolver, Looper workerLooper) {
+        this.mContentResolver = contentResolver;
+        this.mWorkerHandler = new Handler(workerLooper);
+    }
+
+    public static synchronized PetWriteQueue getInstance(Context context) {
+        if (sInstance == null) {
+            HandlerThread workerThread = new HandlerThread(LOG_TAG);
+            workerThread.start();
+            sInstance = new PetWriteQueue(context.getApplicationContext().getContentResolver(),
+                    workerThread.getLooper());
+        }
+        return sInstance;
+    }
+
+    public void insertPet(final ContentValues petValues, WriteCallback callback) {
+        mWorkerHandler.post(new Write(callback) {
+            @Override
+            Object execute() {
+                return mContentResolver.insert(PetEntry.CONTENT_URI, petValues);
+            }
+
+            @Override
+            void complete(WriteCallback callback, Object result) {
+                callback.onInsertComplete((Uri) result);
+            }
+        });
+    }
+
+    /**
+     * Queue an update of a single pet. If an update of the same pet is still waiting for the
+     * worker, the values are merged into it and it runs once, in its place in the queue, then
+     * reports its result to the callbacks of both. If the worker already took it, both updates run.
+     */
+    public void updatePet(Uri petUri, ContentValues petValues, WriteCallback callback) {
+        synchronized (mPendingUpdates) {
+            PetUpdate pendingUpdate = mPendingUpdates.get(petUri);
+            if (pendingUpdate != null) {
+                pendingUpdate.mValues.putAll(petValues);
+                pendingUpdate.addCallback(callback);
+                return;
+            }
+            PetUpdate update = new PetUpdate(petUri, petValues, callback);
+            mPendingUpdates.put(petUri, update);
+            mWorkerHandler.post(update);
+        }
+    }
+
+    /**
+     * Queue a deletion of a single pet or, with the content URI, of all of them.
+     */
+    public void deletePets(final Uri uri, WriteCallback callback) {
+        mWorkerHandler.post(new Write(callback) {
+            @Override
+            Object execute() {
+                return mContentResolver.delete(uri, null, null);
+            }
+
+            @Override
+            void complete(WriteCallback callback, Object result) {
+                callback.onDeleteComplete((Integer) result);
+            }
+        });
+    }
+
+    /**
+     * Queue a deletion that can be undone with {@link #restorePets(long, WriteCallback)}.
+     *
+     * @param deletedAtMillis the deletion time to stamp on the deleted pets, from
+     *                        {@link #newDeletionTime()}
+     */
+    public void deletePets(Uri uri, long deletedAtMillis, WriteCallback callback) {
+        deletePets(PetEntry.buildDeleteUri(uri, deletedAtMillis), callback);
+    }
+
+    /**
+     * @return a deletion time that no other deletion of the process gets
+     */
+    public static long newDeletionTime() {
+        return PetProvider.newDeletionTime();
+    }
+
+    /**
+     * Queue the restore of the pets of a deletion, the ones deleted since by other deletions stay
+     * deleted.
+     *
+     * @param deletedAtMillis the deletion time the pets were deleted with
+     */
+    public void restorePets(long deletedAtMillis, WriteCallback callback) {
+        final Uri restoreUri = PetEntry.buildRestoreUri(deletedAtMillis);
+        mWorkerHandler.post(new Write(callback) {
+            @Override
+            Object execute() {
+                return mContentResolver.update(restoreUri, new ContentValues(), null, null);
+            }
+
+            @Override
+            void complete(WriteCallback callback, Object result) {
+                callback.onUpdateComplete((Integer) result);
+            }
+        });
+    }
+
+    /**
+     * Receives the result of a queued write on the main thread. Override only the callbacks of
+     * the writes you queue.
+     */
+    public static abstract class WriteCallback {
+
+        public void onInsertComplete(Uri petUri) {
+        }
+
+        public void onUpdateComplete(int updatedRows) {
+        }
+
+        public void onDeleteComplete(int deletedRows) {
+        }
+
+        /**
+         * Called instead of the completion callback when the provider threw, for example the
+         * IllegalArgumentException of values it doesn't accept.
+         */
+        public void onWriteFailed(RuntimeException e) {
+        }
+    }
+
+    /**
+     * A write run by the worker thread, which posts its result or its failure to the callbacks
+     * on the main thread.
+     */
+    private abstract class Write implements Runnable {
+
+        private final List<WriteCallback> mCallbacks = new ArrayList<WriteCallback>(1);
+
+        Write(WriteCallback callback) {
+            addCallback(callback);
+        }
+
+        final void addCallback(WriteCallback callback) {
+            if (callback != null) {
+                mCallbacks.add(callback);
+            }
+        }
+
+        /**
+         * @return the result of the write, run on the worker thread
+         */
+        abstract Object execute();
+
+        abstract void complete(WriteCallback callback, Object result);
+
+        @Override
+        public final void run() {
+            Object result = null;
+            RuntimeException failure = null;
+            try {
+                result = execute();
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Queued write failed", e);
+                failure = e;
+            }
+
+            final Object writeResult = result;
+            final RuntimeException writeFailure = failure;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (WriteCallback callback : mCallbacks) {
+                        if (writeFailure != null) {
+                            callback.onWriteFailed(writeFailure);
+                        } else {
+                            complete(callback, writeResult);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private class PetUpdate extends Write {
+
+        private final Uri mPetUri;
+        //Merged under the lock of the pending updates until the worker takes the update
+        private final ContentValues mValues;
+
+        PetUpdate(Uri petUri, ContentValues values, WriteCallback callback) {
+            super(callback);
+            this.mPetUri = petUri;
+            this.mValues = new ContentValues(values);
+        }
+
+        @Override
+        Object execute() {
+            synchronized (mPendingUpdates) {
+                // No later update merges into this one once it is taken
+                mPendingUpdates.remove(mPetUri);
+            }
+            return mContentResolver.update(mPetUri, mValues, null, null);
+        }
+
+        @Override
+        void complete(WriteCallback callback, Object result) {
+            callback.onUpdateComplete((Integer) result);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.android.pets.importer;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads pets from a UTF-8 CSV file whose header row names the columns of the pets table. The name
+ * column is required, the other ones are optional and unknown columns are ignored. Fields may be
+ * quoted, with doubled quotes inside, and quoted fields may span lines.
+ * <p>
+ * The file is parsed byte by byte, which is safe as the separators and quotes never appear inside
+ * the multi-byte characters of UTF-8, so that the reader knows the position of every row in the
+ * file and a resumed import can seek past the rows it already committed.
+ */
+class CsvPetRecordReader implements PetRecordReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int INITIAL_FIELD_SIZE = 64;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final InputStream mInputStream;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mBufferLength;
+    private int mBufferIndex;
+    //Position in the file of the next byte to parse
+    private long mPosition;
+    private boolean mRecordRead;
+
+    private byte[] mField = new byte[INITIAL_FIELD_SIZE];
+    private int mFieldLength;
+    private int mRowFieldCount;
+    private final List<String> mFields = new ArrayList<String>();
+    private int mNameIndex = -1;
+    private int mBreedIndex = -1;
+    private int mGenderIndex = -1;
+    private int mWeightIndex = -1;
+
+    CsvPetRecordReader(InputStream inputStream) throws IOException {
+        this.mInputStream = inputStream;
+        if (!readRow(true)) {
+            throw new IOException("The CSV file has no header row");
+        }
+
+        for (int i = 0; i < mFields.size(); i++) {
+            String column = mFields.get(i).trim().toLowerCase(Locale.US);
+            if (PetEntry.COLUMN_PET_NAME.equals(column)) {
+                mNameIndex = i;
+            } else if (PetEntry.COLUMN_PET_BREED.equals(column)) {
+                mBreedIndex = i;
+            } else if (PetEntry.COLUMN_PET_GENDER.equals(column)) {
+                mGenderIndex = i;
+            } else if (PetEntry.COLUMN_PET_WEIGHT.equals(column)) {
+                mWeightIndex = i;
+            }
+        }
+        if (mNameIndex == -1) {
+            throw new IOException("The CSV file has no " + PetEntry.COLUMN_PET_NAME + " column");
+        }
+    }
+
+    @Override
+    public boolean readNext(PetRecord record) throws IOException {
+        if (!readRecordRow(true)) {
+            return false;
+        }
+
+        record.mName = getField(mNameIndex);
+        record.mBreed = getField(mBreedIndex);
+        record.mGender = getField(mGenderIndex);
+        record.mWeight = getField(mWeightIndex);
+        return true;
+    }
+
+    @Override
+    public boolean skipNext() throws IOException {
+        return readRecordRow(false);
+    }
+
+    @Override
+    public long getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * Skip the bytes up to the position, without parsing them. The input stream of a file seeks
+     * instead of reading them.
+     */
+    @Override
+    public boolean seek(long position) throws IOException {
+        if (mRecordRead || position < mPosition) {
+            throw new IllegalStateException("Can only seek forward before reading the records");
+        }
+
+        long bytesLeft = position - mPosition;
+        int bufferedBytes = (int) Math.min(bytesLeft, mBufferLength - mBufferIndex);
+        mBufferIndex += bufferedBytes;
+        bytesLeft -= bufferedBytes;
+        while (bytesLeft > 0) {
+            long skippedBytes = mInputStream.skip(bytesLeft);
+            if (skippedBytes <= 0) {
+                // Some streams only skip what they buffered, reading tells the end of the file apart
+                if (mInputStream.read() == -1) {
+                    throw new IOException("The CSV file ends before the resume position " + position);
+                }
+                skippedBytes = 1;
+            }
+            bytesLeft -= skippedBytes;
+        }
+        mPosition = position;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInputStream.close();
+    }
+
+    /**
+     * Read the next row that isn't blank.
+     *
+     * @param decode whether to decode the fields into {@link #mFields}, or only to move past them
+     * @return false at the end of the file
+     */
+    private boolean readRecordRow(boolean decode) throws IOException {
+        mRecordRead = true;
+        do {
+            if (!readRow(decode)) {
+                return false;
+            }
+        } while (mRowFieldCount == 1 && mFieldLength == 0);
+        return true;
+    }
+
+    private String getField(int index) {
+        if (index == -1 || index >= mFields.size()) {
+            return null;
+        }
+        String field = mFields.get(index).trim();
+        return field.isEmpty() ? null : field;
+    }
+
+    /**
+     * Read the next row, leaving the length of its last field in {@link #mFieldLength}.
+     *
+     * @param decode whether to decode the fields into {@link #mFields}
+     * @return false at the end of the file
+     */
+    private boolean readRow(boolean decode) throws IOException {
+        mFields.clear();
+        mFieldLength = 0;
+        mRowFieldCount = 0;
+
+        int b = read();
+        if (b == -1) {
+            return false;
+        }
+
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (b == -1) {
+                    throw new IOException("Unterminated quoted field in the CSV file");
+                }
+                if (b == '"') {
+                    int next = read();
+                    if (next != '"') {
+                        // Closing quote, the next byte is read as unquoted
+                        quoted = false;
+                        b = next;
+                        continue;
+                    }
+                }
+                appendToField(b, decode);
+            } else if (b == '"' && mFieldLength == 0) {
+                quoted = true;
+            } else if (b == ',') {
+                endField(decode);
+                mFieldLength = 0;
+            } else if (b == '\n' || b == '\r' || b == -1) {
+                if (b == '\r' && peek() == '\n') {
+                    read();
+                }
+                endField(decode);
+                return true;
+            } else {
+                appendToField(b, decode);
+            }
+            b = read();
+        }
+    }
+
+    private void appendToField(int b, boolean decode) {
+        if (decode) {
+            if (mFieldLength == mField.length) {
+                mField = Arrays.copyOf(mField, mFieldLength * 2);
+            }
+            mField[mFieldLength] = (byte) b;
+        }
+        mFieldLength++;
+    }
+
+    private void endField(boolean decode) {
+        mRowFieldCount++;
+        if (decode) {
+            mFields.add(new String(mField, 0, mFieldLength, UTF_8));
+        }
+    }
+
+    /**
+     * @return the next byte, or -1 at the end of the file
+     */
+    private int read() throws IOException {
+        if (mBufferIndex == mBufferLength && !fillBuffer()) {
+            return -1;
+        }
+        mPosition++;
+        return mBuffer[mBufferIndex++] & 0xff;
+    }
+
+    /**
+     * @return the next byte without moving past it, or -1 at the end of the file
+     */
+    private int peek() throws IOException {
+        if (mBufferIndex == mBufferLength && !fillBuffer()) {
+            return -1;
+        }
+        return mBuffer[mBufferIndex] & 0xff;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        int length = mInputStream.read(mBuffer, 0, mBuffer.length);
+        if (length <= 0) {
+            return false;
+        }
+        mBufferLength = length;
+        mBufferIndex = 0;
+        return true;
+    }
+}
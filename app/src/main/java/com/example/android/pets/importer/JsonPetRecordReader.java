@@ -0,0 +1,89 @@
+package com.example.android.pets.importer;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads pets from a JSON array of objects keyed by the columns of the pets table, for example
+ * {@code [{"name": "Toto", "breed": "Terrier", "gender": 1, "weight": 7}]}. Unknown keys are
+ * skipped. The array is streamed, so it is never held in memory as a whole.
+ */
+class JsonPetRecordReader implements PetRecordReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final JsonReader mReader;
+
+    JsonPetRecordReader(Reader reader) throws IOException {
+        this.mReader = new JsonReader(new BufferedReader(reader, BUFFER_SIZE));
+        mReader.beginArray();
+    }
+
+    @Override
+    public boolean readNext(PetRecord record) throws IOException {
+        if (!mReader.hasNext()) {
+            mReader.endArray();
+            return false;
+        }
+
+        record.clear();
+        try {
+            mReader.beginObject();
+            while (mReader.hasNext()) {
+                String key = mReader.nextName();
+                if (mReader.peek() == JsonToken.NULL) {
+                    mReader.nextNull();
+                } else if (PetEntry.COLUMN_PET_NAME.equals(key)) {
+                    record.mName = mReader.nextString();
+                } else if (PetEntry.COLUMN_PET_BREED.equals(key)) {
+                    record.mBreed = mReader.nextString();
+                } else if (PetEntry.COLUMN_PET_GENDER.equals(key)) {
+                    record.mGender = mReader.nextString();
+                } else if (PetEntry.COLUMN_PET_WEIGHT.equals(key)) {
+                    record.mWeight = mReader.nextString();
+                } else {
+                    mReader.skipValue();
+                }
+            }
+            mReader.endObject();
+        } catch (IllegalStateException e) {
+            // JsonReader reports unexpected tokens this way
+            throw new IOException("Malformed pet in the JSON file", e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean skipNext() throws IOException {
+        if (!mReader.hasNext()) {
+            mReader.endArray();
+            return false;
+        }
+        mReader.skipValue();
+        return true;
+    }
+
+    /**
+     * The reader buffers ahead of the records, so their positions in the file aren't known.
+     */
+    @Override
+    public long getPosition() {
+        return -1;
+    }
+
+    @Override
+    public boolean seek(long position) {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.android.pets.importer;
+
+/**
+ * Immutable state of an import, reported after each committed chunk and at the end.
+ */
+public class PetImportProgress {
+
+    private final long mResumeOffset;
+    private final long mResumePosition;
+    private final long mRecordsRead;
+    private final long mPetsInserted;
+    private final long mRecordsRejected;
+    private final long mElapsedMillis;
+    private final boolean mFinished;
+
+    PetImportProgress(long resumeOffset, long resumePosition, long recordsRead, long petsInserted,
+                      long recordsRejected, long elapsedMillis, boolean finished) {
+        this.mResumeOffset = resumeOffset;
+        this.mResumePosition = resumePosition;
+        this.mRecordsRead = recordsRead;
+        this.mPetsInserted = petsInserted;
+        this.mRecordsRejected = recordsRejected;
+        this.mElapsedMillis = elapsedMillis;
+        this.mFinished = finished;
+    }
+
+    /**
+     * @return the number of records of the file that are committed or rejected. An import
+     * started again from this offset neither skips nor duplicates a pet.
+     */
+    public long getResumeOffset() {
+        return mResumeOffset;
+    }
+
+    /**
+     * @return the position in the file of the record at the resume offset, so that a resumed
+     * import seeks to it instead of reading the records before it, or -1 if it isn't known
+     */
+    public long getResumePosition() {
+        return mResumePosition;
+    }
+
+    /**
+     * @return the number of records read from the file, including the skipped ones
+     */
+    public long getRecordsRead() {
+        return mRecordsRead;
+    }
+
+    public long getPetsInserted() {
+        return mPetsInserted;
+    }
+
+    public long getRecordsRejected() {
+        return mRecordsRejected;
+    }
+
+    public long getElapsedMillis() {
+        return mElapsedMillis;
+    }
+
+    /**
+     * @return the number of inserted pets per second since the import started
+     */
+    public long getPetsPerSecond() {
+        return mElapsedMillis == 0 ? 0 : mPetsInserted * 1000 / mElapsedMillis;
+    }
+
+    /**
+     * @return whether the whole file was imported, false if the import was cancelled
+     */
+    public boolean isFinished() {
+        return mFinished;
+    }
+}
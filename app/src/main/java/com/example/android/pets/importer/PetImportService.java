@@ -0,0 +1,201 @@
+package com.example.android.pets.importer;
+
+import android.app.IntentService;
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.util.Log;
+
+import com.example.android.pets.R;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Locale;
+
+/**
+ * Imports CSV and JSON files of pets in the background, one file at a time, showing the progress
+ * and throughput in a notification that can cancel the import.
+ * <p>
+ * The resume offset of each file is saved after every committed chunk and cleared once the file
+ * is fully imported, so importing a cancelled or failed file again continues where it stopped.
+ * A CSV file is resumed by seeking to the saved position of the offset, a JSON file by skipping
+ * its committed records.
+ */
+public class PetImportService extends IntentService {
+
+    private static final String LOG_TAG = PetImportService.class.getSimpleName();
+    private static final String ACTION_IMPORT = "com.example.android.pets.action.IMPORT_PETS";
+    private static final String ACTION_CANCEL = "com.example.android.pets.action.CANCEL_PETS_IMPORT";
+    private static final String PREFERENCES_NAME = "pet_imports";
+    //Suffix of the preference key holding the position in the file of the saved resume offset
+    private static final String KEY_SUFFIX_POSITION = "#position";
+    private static final String MIME_TYPE_JSON = "application/json";
+    private static final String EXTENSION_JSON = ".json";
+    private static final String CHARSET_NAME = "UTF-8";
+    private static final int NOTIFICATION_ID = 1;
+
+    private volatile PetImporter mPetImporter;
+
+    public PetImportService() {
+        super(PetImportService.class.getSimpleName());
+    }
+
+    /**
+     * Queue the import of the given file, resuming it if a previous import of it was stopped.
+     */
+    public static void startImport(Context context, Uri fileUri) {
+        Intent intent = new Intent(context, PetImportService.class);
+        intent.setAction(ACTION_IMPORT);
+        intent.setData(fileUri);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        context.startService(intent);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // The cancel request must not wait behind the import it cancels
+        if (intent != null && ACTION_CANCEL.equals(intent.getAction())) {
+            PetImporter petImporter = mPetImporter;
+            if (petImporter != null) {
+                petImporter.cancel();
+            }
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null || !ACTION_IMPORT.equals(intent.getAction())) {
+            return;
+        }
+
+        Uri fileUri = intent.getData();
+        final String resumeKey = fileUri.toString();
+        final String resumePositionKey = resumeKey + KEY_SUFFIX_POSITION;
+        final SharedPreferences preferences = getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE);
+        final NotificationCompat.Builder notificationBuilder = createNotificationBuilder();
+        startForeground(NOTIFICATION_ID, notificationBuilder.build());
+
+        PetImporter petImporter = new PetImporter(getContentResolver(), PetImporter.DEFAULT_CHUNK_SIZE);
+        mPetImporter = petImporter;
+        PetImportProgress progress = null;
+        int failureMessageId = R.string.import_failed;
+        PetRecordReader reader = null;
+        try {
+            reader = openReader(fileUri);
+            progress = petImporter.importPets(reader, preferences.getLong(resumeKey, 0),
+                    preferences.getLong(resumePositionKey, -1), new PetImporter.ProgressListener() {
+                        @Override
+                        public void onProgress(PetImportProgress chunkProgress) {
+                            saveResumeOffset(preferences, resumeKey, chunkProgress);
+                            notificationBuilder.setContentText(getString(R.string.import_progress,
+                                    chunkProgress.getPetsInserted(), chunkProgress.getPetsPerSecond()));
+                            showNotification(notificationBuilder.build());
+                        }
+                    });
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading " + fileUri, e);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_TAG, "Error inserting the pets of " + fileUri, e);
+        } catch (SQLiteException e) {
+            // The database may be full or locked for too long, the chunks committed before are kept
+            Log.e(LOG_TAG, "Error saving the pets of " + fileUri, e);
+            failureMessageId = R.string.import_failed_saving;
+        } finally {
+            mPetImporter = null;
+            closeReader(reader);
+            stopForeground(true);
+        }
+
+        if (progress != null && progress.isFinished()) {
+            preferences.edit().remove(resumeKey).remove(resumePositionKey).apply();
+            showResultNotification(getString(R.string.import_finished, progress.getPetsInserted(),
+                    progress.getRecordsRejected()));
+        } else if (progress != null) {
+            saveResumeOffset(preferences, resumeKey, progress);
+            showResultNotification(getString(R.string.import_cancelled, progress.getResumeOffset()));
+        } else {
+            // The resume offset of the last committed chunk was saved with its progress
+            showResultNotification(getString(failureMessageId));
+        }
+    }
+
+    private static void saveResumeOffset(SharedPreferences preferences, String resumeKey,
+                                         PetImportProgress progress) {
+        preferences.edit()
+                .putLong(resumeKey, progress.getResumeOffset())
+                .putLong(resumeKey + KEY_SUFFIX_POSITION, progress.getResumePosition())
+                .apply();
+    }
+
+    private PetRecordReader openReader(Uri fileUri) throws IOException {
+        InputStream inputStream = getContentResolver().openInputStream(fileUri);
+        if (inputStream == null) {
+            throw new IOException("Cannot open " + fileUri);
+        }
+
+        try {
+            if (isJsonFile(fileUri)) {
+                return new JsonPetRecordReader(new InputStreamReader(inputStream, CHARSET_NAME));
+            }
+            return new CsvPetRecordReader(inputStream);
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    private boolean isJsonFile(Uri fileUri) {
+        String mimeType = getContentResolver().getType(fileUri);
+        if (mimeType != null) {
+            return MIME_TYPE_JSON.equals(mimeType);
+        }
+        String path = fileUri.getPath();
+        return path != null && path.toLowerCase(Locale.US).endsWith(EXTENSION_JSON);
+    }
+
+    private void closeReader(PetRecordReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error closing the import file", e);
+        }
+    }
+
+    private NotificationCompat.Builder createNotificationBuilder() {
+        Intent cancelIntent = new Intent(this, PetImportService.class).setAction(ACTION_CANCEL);
+        PendingIntent cancelPendingIntent = PendingIntent.getService(this, 0, cancelIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+
+        return new NotificationCompat.Builder(this)
+                .setSmallIcon(android.R.drawable.stat_sys_download)
+                .setContentTitle(getString(R.string.import_notification_title))
+                .setOngoing(true)
+                .setProgress(0, 0, true)
+                .addAction(android.R.drawable.ic_menu_close_clear_cancel, getString(R.string.cancel),
+                        cancelPendingIntent);
+    }
+
+    private void showResultNotification(String text) {
+        showNotification(new NotificationCompat.Builder(this)
+                .setSmallIcon(android.R.drawable.stat_sys_download_done)
+                .setContentTitle(getString(R.string.import_notification_title))
+                .setContentText(text)
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(text))
+                .build());
+    }
+
+    private void showNotification(Notification notification) {
+        NotificationManagerCompat.from(this).notify(NOTIFICATION_ID, notification);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.android.pets.importer;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.os.SystemClock;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Streams the records of an import file into {@link com.example.android.pets.data.PetProvider}.
+ * Valid records are collected in a fixed-size chunk that is committed with one bulk insert
+ * once full, so parsing waits for each commit and memory use doesn't depend on the file size.
+ * Records breaking the provider rules are counted and skipped instead of failing their chunk.
+ */
+class PetImporter {
+
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final ContentResolver mContentResolver;
+    private final ContentValues[] mChunk;
+    private volatile boolean mCancelled;
+
+    PetImporter(ContentResolver contentResolver, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive!");
+        }
+        this.mContentResolver = contentResolver;
+        this.mChunk = new ContentValues[chunkSize];
+        for (int i = 0; i < chunkSize; i++) {
+            mChunk[i] = new ContentValues();
+        }
+    }
+
+    /**
+     * Stop the running import at the next record. The records of the chunk being filled are not
+     * committed, they are imported again when resuming.
+     */
+    void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Import the records of the reader, starting after the ones before the resume offset of a
+     * previous import of the same file. Must not be called on the main thread.
+     *
+     * @param resumePosition the position in the file of the resume offset, seeked to if the
+     *                       reader can, or -1 to skip the records before the offset instead
+     */
+    PetImportProgress importPets(PetRecordReader reader, long resumeOffset, long resumePosition,
+                                 ProgressListener listener) throws IOException {
+
+        long startTime = SystemClock.elapsedRealtime();
+        PetRecord record = new PetRecord();
+        long recordsRead = 0;
+        long petsInserted = 0;
+        long recordsRejected = 0;
+        long committedOffset = resumeOffset;
+        long committedPosition = resumePosition;
+        int chunkSize = 0;
+
+        if (resumeOffset > 0) {
+            if (resumePosition > 0 && reader.seek(resumePosition)) {
+                recordsRead = resumeOffset;
+            } else {
+                // The committed records are moved past without decoding nor validating them
+                while (recordsRead < resumeOffset && !mCancelled && reader.skipNext()) {
+                    recordsRead++;
+                }
+            }
+        }
+
+        while (!mCancelled && reader.readNext(record)) {
+            recordsRead++;
+
+            ContentValues petValues = mChunk[chunkSize];
+            petValues.clear();
+            if (!toPetValues(record, petValues)) {
+                recordsRejected++;
+                continue;
+            }
+
+            if (++chunkSize == mChunk.length) {
+                petsInserted += mContentResolver.bulkInsert(PetEntry.CONTENT_URI, mChunk);
+                chunkSize = 0;
+                committedOffset = recordsRead;
+                committedPosition = reader.getPosition();
+                if (listener != null) {
+                    listener.onProgress(new PetImportProgress(committedOffset, committedPosition, recordsRead,
+                            petsInserted, recordsRejected, SystemClock.elapsedRealtime() - startTime, false));
+                }
+            }
+        }
+
+        boolean finished = !mCancelled;
+        if (finished) {
+            if (chunkSize > 0) {
+                petsInserted += mContentResolver.bulkInsert(PetEntry.CONTENT_URI, Arrays.copyOf(mChunk, chunkSize));
+            }
+            committedOffset = Math.max(recordsRead, resumeOffset);
+            committedPosition = reader.getPosition();
+        }
+        return new PetImportProgress(committedOffset, committedPosition, recordsRead, petsInserted,
+                recordsRejected, SystemClock.elapsedRealtime() - startTime, finished);
+    }
+
+    /**
+     * Convert the record to the values of a pet, the missing gender and weight taking their
+     * defaults.
+     *
+     * @return false if the record breaks one of the rules of the provider
+     */
+    private boolean toPetValues(PetRecord record, ContentValues petValues) {
+        int gender;
+        int weight;
+        try {
+            gender = record.mGender == null ? PetEntry.DEFAULT_GENDER : Integer.parseInt(record.mGender);
+            weight = record.mWeight == null ? PetEntry.DEFAULT_WEIGHT : Integer.parseInt(record.mWeight);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        if (!PetEntry.isNameValid(record.mName) || !PetEntry.isGenderValid(gender) || !PetEntry.isWeightValid(weight)) {
+            return false;
+        }
+
+        petValues.put(PetEntry.COLUMN_PET_NAME, record.mName);
+        petValues.put(PetEntry.COLUMN_PET_BREED, record.mBreed);
+        petValues.put(PetEntry.COLUMN_PET_GENDER, gender);
+        petValues.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+        return true;
+    }
+
+    interface ProgressListener {
+
+        /**
+         * Called on the importing thread after each committed chunk.
+         */
+        void onProgress(PetImportProgress progress);
+    }
+}
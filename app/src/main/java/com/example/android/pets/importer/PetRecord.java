@@ -0,0 +1,20 @@
+package com.example.android.pets.importer;
+
+/**
+ * The raw fields of one record of an import file, reused from record to record. A missing or
+ * empty field is null, and the numbers are kept as text until the record is validated.
+ */
+class PetRecord {
+
+    String mName;
+    String mBreed;
+    String mGender;
+    String mWeight;
+
+    void clear() {
+        mName = null;
+        mBreed = null;
+        mGender = null;
+        mWeight = null;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.android.pets.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Parses the records of an import file one at a time, holding no more than the current record
+ * in memory.
+ */
+interface PetRecordReader extends Closeable {
+
+    /**
+     * Read the next record into the given one.
+     *
+     * @return false at the end of the file, leaving the record untouched
+     * @throws IOException if the file can't be read or isn't well-formed
+     */
+    boolean readNext(PetRecord record) throws IOException;
+
+    /**
+     * Move past the next record without decoding its fields.
+     *
+     * @return false at the end of the file
+     * @throws IOException if the file can't be read or isn't well-formed
+     */
+    boolean skipNext() throws IOException;
+
+    /**
+     * @return the position in the file right after the last record read, to start a reader of the
+     * same file at with {@link #seek(long)}, or -1 if the reader can't seek
+     */
+    long getPosition();
+
+    /**
+     * Start reading at a position returned by {@link #getPosition()} for the same file. Must be
+     * called before any record is read.
+     *
+     * @return false if the reader can't seek, it then still starts at the first record
+     * @throws IOException if the file can't be read or is shorter than the position
+     */
+    boolean seek(long position) throws IOException;
+}
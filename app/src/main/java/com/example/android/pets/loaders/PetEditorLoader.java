@@ -0,0 +1,38 @@
+package com.example.android.pets.loaders;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+import com.example.android.pets.data.PetCache;
+import com.example.android.pets.data.PetContract.PetEntry;
+import com.example.android.pets.data.PetCursorCodec;
+
+/**
+ * Loads the row of one pet for the editor with all its columns, and puts the decoded pet in the
+ * {@link PetCache} so that opening the pet again fills the editor without a query. The cache is
+ * only filled here, from complete rows.
+ */
+public class PetEditorLoader extends CursorLoader {
+
+    public PetEditorLoader(Context context, Uri petUri) {
+        super(context, petUri, PetEntry.EDITOR_PROJECTION, null, null, null);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        PetCache petCache = PetCache.getInstance();
+        long cacheGeneration = petCache.getGeneration();
+
+        Cursor cursor = super.loadInBackground();
+        if (cursor != null && cursor.moveToFirst()) {
+            PetCursorCodec petCursorCodec = new PetCursorCodec(cursor);
+            if (petCursorCodec.hasAllColumns()) {
+                petCache.put(petCursorCodec.decode(), cacheGeneration);
+            }
+            cursor.moveToPosition(-1);
+        }
+        return cursor;
+    }
+}
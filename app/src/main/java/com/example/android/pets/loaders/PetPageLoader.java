@@ -0,0 +1,301 @@
+package com.example.android.pets.loaders;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.example.android.pets.data.Pet;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Loads the pets table in fixed-size pages ordered by id. Only the first page is queried when
+ * the loader starts, further pages are fetched on demand through {@link #loadNextPage()}.
+ * Each page is a keyset query starting after the last id of the previous page, so fetching a
+ * page costs the same no matter how big the table is or how deep the page is.
+ * <p>
+ * A change of a single pet reloads only the page holding it. A change of the whole table
+ * reloads only the pages around the visible position given to {@link #setVisiblePosition(int)}:
+ * the pages after them are dropped and fetched again on demand, the pages before them are kept
+ * as they were and reloaded once they come back around the visible position.
+ */
+public class PetPageLoader extends PetSnapshotLoader {
+
+    //Pages reloaded around the visible one on a change of the whole table, including it
+    private static final int RELOAD_WINDOW_PAGES = 3;
+
+    private static final String SELECTION_ID_RANGE = PetEntry._ID + ">? AND " + PetEntry._ID + "<=?";
+    private static final String SORT_ORDER_ID = PetEntry._ID + " ASC";
+
+    private final String[] mProjection;
+    private final int mPageSize;
+    //Written under the lock of the loader by loadNextPage and by the loads
+    private int mRequestedPetCount;
+    private volatile boolean mEndReached;
+    private volatile int mVisiblePosition;
+    //The pets before this position weren't reloaded since the last change of the whole table
+    private volatile int mStalePetCount;
+    private volatile boolean mReloadRequired;
+    //Ids of the pets changed since the last load. Guarded by itself
+    private final Set<Long> mChangedPetIds = new HashSet<Long>();
+    //Changes applied by the last load, given back if its snapshot is cancelled
+    private volatile AppliedChanges mAppliedChanges;
+    //Changes of the load running, only used on the loader thread
+    private AppliedChanges mLoadingChanges;
+
+    public PetPageLoader(Context context, String[] projection, int pageSize) {
+        super(context);
+        this.mProjection = projection;
+        this.mPageSize = pageSize;
+        this.mRequestedPetCount = pageSize;
+        this.mReloadRequired = true;
+    }
+
+    /**
+     * Fetch one more page after the ones already delivered. Does nothing if the last page was
+     * the end of the table or if a page is already being fetched.
+     */
+    public void loadNextPage() {
+        PetSnapshot snapshot = getSnapshot();
+        synchronized (this) {
+            if (snapshot == null || mEndReached || snapshot.getPets().size() < mRequestedPetCount) {
+                return;
+            }
+            mRequestedPetCount += mPageSize;
+        }
+        forceLoad();
+    }
+
+    /**
+     * Set the position of the first visible pet, around which the pages are reloaded when the
+     * whole table changes. Reloads the pages around it still holding pets from before the last
+     * change.
+     */
+    public void setVisiblePosition(int position) {
+        mVisiblePosition = position;
+        if (getReloadWindowStart(position) < mStalePetCount) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public PetSnapshot loadInBackground() {
+        AppliedChanges appliedChanges = new AppliedChanges(mReloadRequired, mStalePetCount);
+        mReloadRequired = false;
+        synchronized (mChangedPetIds) {
+            appliedChanges.mPetIds.addAll(mChangedPetIds);
+            mChangedPetIds.clear();
+        }
+
+        mLoadingChanges = appliedChanges;
+        appliedChanges.mSnapshot = super.loadInBackground();
+        mAppliedChanges = appliedChanges;
+        return appliedChanges.mSnapshot;
+    }
+
+    /**
+     * Reload the pages the changes since the previous load touched, then append the missing
+     * pages to the previous pets.
+     */
+    @Override
+    protected List<Pet> loadPets(List<Pet> previousPets) {
+        AppliedChanges changes = mLoadingChanges;
+
+        List<Pet> pets = new ArrayList<Pet>(previousPets);
+        int windowStart = Math.min(getReloadWindowStart(mVisiblePosition), pets.size());
+        if (changes.mReload) {
+            reloadWindow(pets, windowStart);
+        } else {
+            reloadChangedPages(pets, changes.mPetIds);
+            if (windowStart < mStalePetCount) {
+                reloadRange(pets, windowStart, Math.min(mStalePetCount, pets.size()));
+                mStalePetCount = windowStart;
+            }
+        }
+
+        int requestedPetCount;
+        synchronized (this) {
+            requestedPetCount = mRequestedPetCount;
+        }
+        boolean hasMorePets = true;
+        while (hasMorePets && pets.size() < requestedPetCount) {
+            long lastId = pets.isEmpty() ? 0 : pets.get(pets.size() - 1).getId();
+            int petCount = pets.size();
+            int missingPetCount = Math.min(requestedPetCount - petCount, mPageSize);
+            queryPets(PetEntry.buildPageUri(lastId, missingPetCount), mProjection, pets);
+            hasMorePets = pets.size() - petCount == missingPetCount;
+        }
+        mEndReached = !hasMorePets;
+
+        return pets;
+    }
+
+    /**
+     * Reload the pages of the window starting at the position, after a change of the whole
+     * table. The pets after the window are dropped, the ones before it become stale.
+     */
+    private void reloadWindow(List<Pet> pets, int windowStart) {
+        int windowEnd = windowStart + RELOAD_WINDOW_PAGES * mPageSize;
+        if (windowEnd < pets.size()) {
+            int reloadedPetCount = reloadRange(pets, windowStart, windowEnd);
+            pets.subList(windowStart + reloadedPetCount, pets.size()).clear();
+            synchronized (this) {
+                mRequestedPetCount = Math.max(pets.size(), mPageSize);
+            }
+        } else {
+            // The window reaches the end of the list, its pets are queried again with the next pages
+            pets.subList(windowStart, pets.size()).clear();
+        }
+        mStalePetCount = windowStart;
+    }
+
+    /**
+     * Reload the page of each changed pet that is in the list. The pets after the last one are
+     * fetched with the next pages.
+     */
+    private void reloadChangedPages(List<Pet> pets, Set<Long> changedPetIds) {
+        // From the last page so that reloading a page doesn't move the pages left to reload
+        TreeSet<Integer> changedPages = new TreeSet<Integer>();
+        for (long petId : changedPetIds) {
+            int position = findPosition(pets, petId);
+            if (position < pets.size()) {
+                changedPages.add(position / mPageSize);
+            }
+        }
+        for (int page : changedPages.descendingSet()) {
+            int pageStart = page * mPageSize;
+            reloadRange(pets, pageStart, Math.min(pageStart + mPageSize, pets.size()));
+        }
+    }
+
+    /**
+     * Replace the pets from the start position to the end position with the pets now between
+     * the ids around them, including the restored ones.
+     *
+     * @return the number of pets now in the range
+     */
+    private int reloadRange(List<Pet> pets, int start, int end) {
+        if (start >= end) {
+            return 0;
+        }
+        long afterId = start == 0 ? 0 : pets.get(start - 1).getId();
+        long lastId = pets.get(end - 1).getId();
+
+        List<Pet> rangePets = new ArrayList<Pet>(end - start);
+        queryPets(PetEntry.CONTENT_URI, mProjection, SELECTION_ID_RANGE,
+                new String[]{Long.toString(afterId), Long.toString(lastId)}, SORT_ORDER_ID, rangePets);
+        List<Pet> range = pets.subList(start, end);
+        range.clear();
+        range.addAll(rangePets);
+        return rangePets.size();
+    }
+
+    /**
+     * @return the position of the pet in the list ordered by id, or the position it would be
+     * inserted at
+     */
+    private static int findPosition(List<Pet> pets, long petId) {
+        int low = 0;
+        int high = pets.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (pets.get(middle).getId() < petId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int getReloadWindowStart(int visiblePosition) {
+        // The visible pets span the visible page and the next one, the previous page is kept too
+        return Math.max(visiblePosition / mPageSize - 1, 0) * mPageSize;
+    }
+
+    @Override
+    protected void onContentChanged(Uri uri) {
+        long petId = getPetId(uri);
+        if (petId == -1) {
+            mReloadRequired = true;
+        } else {
+            synchronized (mChangedPetIds) {
+                mChangedPetIds.add(petId);
+            }
+        }
+        super.onContentChanged(uri);
+    }
+
+    /**
+     * @return the id of the pet URI, or -1 if the URI isn't the one of a single pet
+     */
+    private static long getPetId(Uri uri) {
+        if (uri == null) {
+            return -1;
+        }
+        List<String> pathSegments = uri.getPathSegments();
+        List<String> tablePathSegments = PetEntry.CONTENT_URI.getPathSegments();
+        if (pathSegments.size() != tablePathSegments.size() + 1
+                || !pathSegments.subList(0, tablePathSegments.size()).equals(tablePathSegments)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(uri.getLastPathSegment());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void onCanceled(PetSnapshot snapshot) {
+        // The next load applies again the changes of the cancelled one
+        AppliedChanges appliedChanges = mAppliedChanges;
+        if (snapshot == null || appliedChanges == null || appliedChanges.mSnapshot != snapshot) {
+            return;
+        }
+        if (appliedChanges.mReload) {
+            mReloadRequired = true;
+        }
+        synchronized (mChangedPetIds) {
+            mChangedPetIds.addAll(appliedChanges.mPetIds);
+        }
+        mStalePetCount = Math.max(mStalePetCount, appliedChanges.mStalePetCount);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        synchronized (this) {
+            mRequestedPetCount = mPageSize;
+        }
+        mEndReached = false;
+        mVisiblePosition = 0;
+        mStalePetCount = 0;
+        mReloadRequired = true;
+        synchronized (mChangedPetIds) {
+            mChangedPetIds.clear();
+        }
+        mAppliedChanges = null;
+    }
+
+    /**
+     * The changes a load applied to the previous pets, and the snapshot it loaded.
+     */
+    private static class AppliedChanges {
+
+        private final boolean mReload;
+        private final Set<Long> mPetIds = new HashSet<Long>();
+        //The stale pet count before the load
+        private final int mStalePetCount;
+        private PetSnapshot mSnapshot;
+
+        AppliedChanges(boolean reload, int stalePetCount) {
+            this.mReload = reload;
+            this.mStalePetCount = stalePetCount;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.android.pets.loaders;
+
+import android.content.Context;
+
+import com.example.android.pets.data.Pet;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the ranked results of a full-text search over the pets.
+ */
+public class PetSearchLoader extends PetSnapshotLoader {
+
+    private final String[] mProjection;
+    private final String mSearchQuery;
+    private final int mLimit;
+
+    public PetSearchLoader(Context context, String[] projection, String searchQuery, int limit) {
+        super(context);
+        this.mProjection = projection;
+        this.mSearchQuery = searchQuery;
+        this.mLimit = limit;
+    }
+
+    @Override
+    protected List<Pet> loadPets(List<Pet> previousPets) {
+        List<Pet> pets = new ArrayList<Pet>(mLimit);
+        queryPets(PetEntry.buildSearchUri(mSearchQuery, mLimit), mProjection, pets);
+        return pets;
+    }
+}
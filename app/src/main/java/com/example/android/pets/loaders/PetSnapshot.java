@@ -0,0 +1,39 @@
+package com.example.android.pets.loaders;
+
+import android.support.v7.util.DiffUtil;
+
+import com.example.android.pets.data.Pet;
+
+import java.util.List;
+
+/**
+ * Immutable list of pets delivered by a {@link PetSnapshotLoader}, along with the changes
+ * from the list it delivered before, computed on the loader thread.
+ */
+public final class PetSnapshot {
+
+    private final List<Pet> mPreviousPets;
+    private final List<Pet> mPets;
+    private final DiffUtil.DiffResult mDiffResult;
+
+    PetSnapshot(List<Pet> previousPets, List<Pet> pets, DiffUtil.DiffResult diffResult) {
+        this.mPreviousPets = previousPets;
+        this.mPets = pets;
+        this.mDiffResult = diffResult;
+    }
+
+    /**
+     * @return the list the diff result applies to
+     */
+    public List<Pet> getPreviousPets() {
+        return mPreviousPets;
+    }
+
+    public List<Pet> getPets() {
+        return mPets;
+    }
+
+    public DiffUtil.DiffResult getDiffResult() {
+        return mDiffResult;
+    }
+}
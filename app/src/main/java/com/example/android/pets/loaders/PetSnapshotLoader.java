@@ -0,0 +1,190 @@
+package com.example.android.pets.loaders;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v7.util.DiffUtil;
+
+import com.example.android.pets.data.Pet;
+import com.example.android.pets.data.PetContract.PetEntry;
+import com.example.android.pets.data.PetCursorCodec;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base of the loaders that read pets into immutable snapshots. The rows are decoded and the
+ * diff against the previous snapshot is computed on the loader thread, so the main thread only
+ * has to apply the changed items. Any change to the pets table reloads the snapshot, the
+ * subclasses can reload only what the notified URI changed.
+ */
+public abstract class PetSnapshotLoader extends AsyncTaskLoader<PetSnapshot> {
+
+    private final PetContentObserver mObserver;
+    private boolean mObserverRegistered;
+    private volatile PetSnapshot mSnapshot;
+
+    public PetSnapshotLoader(Context context) {
+        super(context);
+        this.mObserver = new PetContentObserver();
+    }
+
+    /**
+     * Load the pets of the new snapshot.
+     *
+     * @param previousPets the pets of the last delivered snapshot, empty if there is none
+     */
+    protected abstract List<Pet> loadPets(List<Pet> previousPets);
+
+    @Override
+    public PetSnapshot loadInBackground() {
+        PetSnapshot previousSnapshot = mSnapshot;
+        List<Pet> previousPets = previousSnapshot == null ? Collections.<Pet>emptyList() : previousSnapshot.getPets();
+
+        List<Pet> pets = Collections.unmodifiableList(loadPets(previousPets));
+        DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new PetDiffCallback(previousPets, pets), false);
+
+        return new PetSnapshot(previousPets, pets, diffResult);
+    }
+
+    @Override
+    public void deliverResult(PetSnapshot snapshot) {
+        if (isReset()) {
+            return;
+        }
+        mSnapshot = snapshot;
+        if (isStarted()) {
+            super.deliverResult(snapshot);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(PetEntry.CONTENT_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (mSnapshot != null) {
+            deliverResult(mSnapshot);
+        }
+        if (takeContentChanged() || mSnapshot == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mSnapshot = null;
+    }
+
+    /**
+     * Called on the main thread when the pets changed, with the URI the provider notified.
+     * Reloads the snapshot by default.
+     *
+     * @param uri the URI of the changed pet or of the pets table, null before API 16 where the
+     *            observers don't receive it
+     */
+    protected void onContentChanged(Uri uri) {
+        onContentChanged();
+    }
+
+    /**
+     * @return the last delivered snapshot, or null if none was delivered yet
+     */
+    protected PetSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Query the pets and decode all the rows into the list. The id and name are required, the
+     * columns left out of the projection are decoded as their default values.
+     */
+    protected void queryPets(Uri uri, String[] projection, List<Pet> pets) {
+        queryPets(uri, projection, null, null, null, pets);
+    }
+
+    protected void queryPets(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                             String sortOrder, List<Pet> pets) {
+        Cursor cursor = getContext().getContentResolver().query(uri, projection, selection, selectionArgs,
+                sortOrder);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            PetCursorCodec petCursorCodec = new PetCursorCodec(cursor);
+            while (cursor.moveToNext()) {
+                pets.add(petCursorCodec.decode());
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private class PetContentObserver extends ContentObserver {
+
+        PetContentObserver() {
+            super(new Handler());
+        }
+
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onContentChanged(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onContentChanged(uri);
+        }
+    }
+
+    private static class PetDiffCallback extends DiffUtil.Callback {
+
+        private final List<Pet> mOldPets;
+        private final List<Pet> mNewPets;
+
+        PetDiffCallback(List<Pet> oldPets, List<Pet> newPets) {
+            this.mOldPets = oldPets;
+            this.mNewPets = newPets;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldPets.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewPets.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldPets.get(oldItemPosition).getId() == mNewPets.get(newItemPosition).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldPets.get(oldItemPosition).equals(mNewPets.get(newItemPosition));
+        }
+    }
+}
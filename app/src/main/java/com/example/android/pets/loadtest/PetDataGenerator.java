@@ -0,0 +1,133 @@
+package com.example.android.pets.loadtest;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.os.SystemClock;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Makes the synthetic pets of a {@link PetDataProfile} and fills a provider with them. The
+ * pets are inserted in chunks through {@link PetEntry#CONTENT_URI}, one bulk insert and so one
+ * transaction each, reusing the same values for every chunk.
+ */
+class PetDataGenerator {
+
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final PetDataProfile mProfile;
+    private final Random mRandom;
+    private final double[] mCumulativeNameWeights;
+    private final double[] mCumulativeBreedWeights;
+
+    PetDataGenerator(PetDataProfile profile) {
+        this(profile, profile.getSeed());
+    }
+
+    /**
+     * @param seed seed of this generator, for the threads of a stress test each drawing their own
+     *             pets from the same profile
+     */
+    PetDataGenerator(PetDataProfile profile, long seed) {
+        this.mProfile = profile;
+        this.mRandom = new Random(seed);
+        this.mCumulativeNameWeights = buildCumulativeWeights(profile.getNames().length, profile.getNameSkew());
+        this.mCumulativeBreedWeights = buildCumulativeWeights(profile.getBreeds().length, profile.getBreedSkew());
+    }
+
+    /**
+     * Insert the number of pets of the profile. Must not be called on the main thread.
+     *
+     * @return the report of the fill, whose latencies are the ones of each bulk insert
+     */
+    PetLoadReport insertPets(ContentProvider provider, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive!");
+        }
+
+        ContentValues[] chunk = new ContentValues[Math.min(chunkSize, mProfile.getPetCount())];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = new ContentValues();
+        }
+
+        PetLoadRecorder recorder = new PetLoadRecorder(mProfile.getPetCount() / chunk.length + 1);
+        long startTime = SystemClock.elapsedRealtime();
+        int petsLeft = mProfile.getPetCount();
+        while (petsLeft > 0) {
+            int petCount = Math.min(chunk.length, petsLeft);
+            for (int i = 0; i < petCount; i++) {
+                nextPet(chunk[i]);
+            }
+            ContentValues[] values = petCount == chunk.length ? chunk : Arrays.copyOf(chunk, petCount);
+
+            long startNanos = System.nanoTime();
+            try {
+                int insertedCount = provider.bulkInsert(PetEntry.CONTENT_URI, values);
+                recorder.recordSuccess(System.nanoTime() - startNanos, insertedCount);
+            } catch (RuntimeException e) {
+                recorder.recordFailure(e);
+            }
+            petsLeft -= petCount;
+        }
+        return recorder.toReport(SystemClock.elapsedRealtime() - startTime);
+    }
+
+    /**
+     * Replace the values with the ones of the next pet.
+     */
+    void nextPet(ContentValues petValues) {
+        petValues.clear();
+        petValues.put(PetEntry.COLUMN_PET_NAME, nextName());
+        petValues.put(PetEntry.COLUMN_PET_BREED, mProfile.getBreeds()[pick(mCumulativeBreedWeights)]);
+        petValues.put(PetEntry.COLUMN_PET_GENDER, nextGender());
+        petValues.put(PetEntry.COLUMN_PET_WEIGHT, mProfile.getMinWeight() +
+                mRandom.nextInt(mProfile.getMaxWeight() - mProfile.getMinWeight() + 1));
+    }
+
+    String nextName() {
+        return mProfile.getNames()[pick(mCumulativeNameWeights)];
+    }
+
+    private int nextGender() {
+        int genderWeightsSum = 0;
+        for (int gender = PetEntry.GENDER_UNKNOWN; gender <= PetEntry.GENDER_FEMALE; gender++) {
+            genderWeightsSum += mProfile.getGenderWeight(gender);
+        }
+        int draw = mRandom.nextInt(genderWeightsSum);
+        for (int gender = PetEntry.GENDER_UNKNOWN; gender < PetEntry.GENDER_FEMALE; gender++) {
+            draw -= mProfile.getGenderWeight(gender);
+            if (draw < 0) {
+                return gender;
+            }
+        }
+        return PetEntry.GENDER_FEMALE;
+    }
+
+    /**
+     * @return the index of an entry drawn by the cumulative weights
+     */
+    private int pick(double[] cumulativeWeights) {
+        double draw = mRandom.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, draw);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return Math.min(index, cumulativeWeights.length - 1);
+    }
+
+    /**
+     * @return the running sums of the Zipf weights of the entries, 1 / (rank ^ skew)
+     */
+    private static double[] buildCumulativeWeights(int count, double skew) {
+        double[] cumulativeWeights = new double[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulativeWeights[i] = sum;
+        }
+        return cumulativeWeights;
+    }
+}
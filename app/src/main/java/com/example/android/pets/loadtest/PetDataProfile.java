@@ -0,0 +1,140 @@
+package com.example.android.pets.loadtest;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+/**
+ * Shape of the synthetic pets made by {@link PetDataGenerator}. The same profile always makes
+ * the same pets in the same order, so that runs can be compared with each other.
+ * <p>
+ * Names and breeds are drawn from their lists with a Zipf skew: the first entry is the most
+ * common and each next one is rarer, 0 drawing them all evenly. Genders are drawn by their
+ * weights and weights evenly from their range.
+ */
+public final class PetDataProfile {
+
+    private static final String[] NAMES = {"Bella", "Max", "Luna", "Charlie", "Lucy", "Cooper", "Daisy",
+            "Milo", "Lola", "Buddy", "Sadie", "Rocky", "Molly", "Bear", "Bailey", "Duke", "Stella", "Tucker",
+            "Zoe", "Oliver", "Penny", "Jack", "Coco", "Toby", "Rosie", "Bentley", "Ruby", "Leo", "Maggie", "Toto"};
+
+    private static final String[] BREEDS = {"Labrador Retriever", "German Shepherd", "Golden Retriever",
+            "French Bulldog", "Bulldog", "Beagle", "Poodle", "Rottweiler", "Dachshund", "Yorkshire Terrier",
+            "Boxer", "Siberian Husky", "Shih Tzu", "Tabby", "Siamese", "Maine Coon", "Persian", "Terrier"};
+
+    /**
+     * Ten thousand pets, a realistic shelter catalog.
+     */
+    public static final PetDataProfile DEFAULT = new PetDataProfile(42, 10000, NAMES, 1.0, BREEDS, 1.2,
+            new int[]{10, 45, 45}, 1, 60);
+
+    /**
+     * A hundred thousand pets, to find where the catalog stops scaling.
+     */
+    public static final PetDataProfile LARGE = new PetDataProfile(42, 100000, NAMES, 1.0, BREEDS, 1.2,
+            new int[]{10, 45, 45}, 1, 60);
+
+    private final long mSeed;
+    private final int mPetCount;
+    private final String[] mNames;
+    private final double mNameSkew;
+    private final String[] mBreeds;
+    private final double mBreedSkew;
+    private final int[] mGenderWeights;
+    private final int mMinWeight;
+    private final int mMaxWeight;
+
+    /**
+     * @param seed          seed of the random numbers
+     * @param petCount      number of pets to insert
+     * @param names         names to draw from, the most common first
+     * @param nameSkew      Zipf exponent of the names, 0 for evenly drawn names
+     * @param breeds        breeds to draw from, the most common first
+     * @param breedSkew     Zipf exponent of the breeds, 0 for evenly drawn breeds
+     * @param genderWeights relative weights of the genders, indexed by the GENDER constants of
+     *                      {@link PetEntry}
+     * @param minWeight     lowest weight of a pet
+     * @param maxWeight     highest weight of a pet
+     */
+    public PetDataProfile(long seed, int petCount, String[] names, double nameSkew, String[] breeds,
+                          double breedSkew, int[] genderWeights, int minWeight, int maxWeight) {
+
+        if (petCount <= 0) {
+            throw new IllegalArgumentException("Pet count must be positive!");
+        }
+        if (names.length == 0 || breeds.length == 0) {
+            throw new IllegalArgumentException("Names and breeds cannot be empty!");
+        }
+        for (String name : names) {
+            if (!PetEntry.isNameValid(name)) {
+                throw new IllegalArgumentException("Invalid name: " + name);
+            }
+        }
+        if (nameSkew < 0 || breedSkew < 0) {
+            throw new IllegalArgumentException("Skews cannot be negative!");
+        }
+        if (genderWeights.length != PetEntry.GENDER_FEMALE + 1) {
+            throw new IllegalArgumentException("There must be one weight per gender!");
+        }
+        int genderWeightsSum = 0;
+        for (int genderWeight : genderWeights) {
+            if (genderWeight < 0) {
+                throw new IllegalArgumentException("Gender weights cannot be negative!");
+            }
+            genderWeightsSum += genderWeight;
+        }
+        if (genderWeightsSum == 0) {
+            throw new IllegalArgumentException("At least one gender must have a weight!");
+        }
+        if (!PetEntry.isWeightValid(minWeight) || maxWeight < minWeight) {
+            throw new IllegalArgumentException("Invalid weight range: " + minWeight + " to " + maxWeight);
+        }
+
+        this.mSeed = seed;
+        this.mPetCount = petCount;
+        this.mNames = names.clone();
+        this.mNameSkew = nameSkew;
+        this.mBreeds = breeds.clone();
+        this.mBreedSkew = breedSkew;
+        this.mGenderWeights = genderWeights.clone();
+        this.mMinWeight = minWeight;
+        this.mMaxWeight = maxWeight;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    public int getPetCount() {
+        return mPetCount;
+    }
+
+    String[] getNames() {
+        return mNames;
+    }
+
+    public double getNameSkew() {
+        return mNameSkew;
+    }
+
+    String[] getBreeds() {
+        return mBreeds;
+    }
+
+    public double getBreedSkew() {
+        return mBreedSkew;
+    }
+
+    /**
+     * @return the relative weight of the gender, one of the GENDER constants of {@link PetEntry}
+     */
+    public int getGenderWeight(int gender) {
+        return mGenderWeights[gender];
+    }
+
+    public int getMinWeight() {
+        return mMinWeight;
+    }
+
+    public int getMaxWeight() {
+        return mMaxWeight;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.android.pets.loadtest;
+
+import android.database.sqlite.SQLiteDatabaseLockedException;
+
+import java.util.Arrays;
+
+/**
+ * Records the latency of every operation of a load run, and its failures. A recorder is used by
+ * one thread only, the recorders of the threads of a run are added together at its end.
+ */
+class PetLoadRecorder {
+
+    private static final int MIN_CAPACITY = 64;
+
+    private long[] mLatenciesNanos;
+    private int mLatencyCount;
+    private long mOperations;
+    private long mErrors;
+    private long mLockTimeouts;
+    private String mFirstError;
+
+    PetLoadRecorder(int expectedCount) {
+        this.mLatenciesNanos = new long[Math.max(expectedCount, MIN_CAPACITY)];
+    }
+
+    /**
+     * @param operations the number of operations the call did, more than one for a bulk insert
+     */
+    void recordSuccess(long latencyNanos, int operations) {
+        if (mLatencyCount == mLatenciesNanos.length) {
+            mLatenciesNanos = Arrays.copyOf(mLatenciesNanos, mLatencyCount * 2);
+        }
+        mLatenciesNanos[mLatencyCount++] = latencyNanos;
+        mOperations += operations;
+    }
+
+    void recordFailure(RuntimeException e) {
+        // Thrown once the busy timeout of SQLite has expired waiting for another connection
+        if (e instanceof SQLiteDatabaseLockedException) {
+            mLockTimeouts++;
+        } else {
+            mErrors++;
+        }
+        if (mFirstError == null) {
+            mFirstError = e.toString();
+        }
+    }
+
+    void addAll(PetLoadRecorder other) {
+        for (int i = 0; i < other.mLatencyCount; i++) {
+            recordSuccess(other.mLatenciesNanos[i], 0);
+        }
+        mOperations += other.mOperations;
+        mErrors += other.mErrors;
+        mLockTimeouts += other.mLockTimeouts;
+        if (mFirstError == null) {
+            mFirstError = other.mFirstError;
+        }
+    }
+
+    PetLoadReport toReport(long elapsedMillis) {
+        Arrays.sort(mLatenciesNanos, 0, mLatencyCount);
+        return new PetLoadReport(mOperations, mErrors, mLockTimeouts, elapsedMillis,
+                getPercentileMicros(0.50), getPercentileMicros(0.99), mFirstError);
+    }
+
+    /**
+     * @return the latency under which the fraction of the sorted latencies falls, by nearest rank
+     */
+    private long getPercentileMicros(double fraction) {
+        if (mLatencyCount == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * mLatencyCount);
+        return mLatenciesNanos[Math.max(rank, 1) - 1] / 1000;
+    }
+}
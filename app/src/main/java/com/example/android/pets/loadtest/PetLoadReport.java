@@ -0,0 +1,84 @@
+package com.example.android.pets.loadtest;
+
+/**
+ * Immutable result of a load run: its throughput, the latencies of its calls to the provider
+ * and its failures.
+ */
+public class PetLoadReport {
+
+    private final long mOperations;
+    private final long mErrors;
+    private final long mLockTimeouts;
+    private final long mElapsedMillis;
+    private final long mP50Micros;
+    private final long mP99Micros;
+    private final String mFirstError;
+
+    PetLoadReport(long operations, long errors, long lockTimeouts, long elapsedMillis, long p50Micros,
+                  long p99Micros, String firstError) {
+        this.mOperations = operations;
+        this.mErrors = errors;
+        this.mLockTimeouts = lockTimeouts;
+        this.mElapsedMillis = elapsedMillis;
+        this.mP50Micros = p50Micros;
+        this.mP99Micros = p99Micros;
+        this.mFirstError = firstError;
+    }
+
+    /**
+     * @return the number of operations that succeeded, each pet of a bulk insert counting as one
+     */
+    public long getOperations() {
+        return mOperations;
+    }
+
+    /**
+     * @return the number of calls that failed, apart from the lock timeouts
+     */
+    public long getErrors() {
+        return mErrors;
+    }
+
+    /**
+     * @return the number of calls that failed waiting for the database lock
+     */
+    public long getLockTimeouts() {
+        return mLockTimeouts;
+    }
+
+    public long getElapsedMillis() {
+        return mElapsedMillis;
+    }
+
+    /**
+     * @return the number of operations per second over the whole run
+     */
+    public long getOperationsPerSecond() {
+        return mElapsedMillis == 0 ? 0 : mOperations * 1000 / mElapsedMillis;
+    }
+
+    /**
+     * @return the median latency of the successful calls
+     */
+    public long getP50Micros() {
+        return mP50Micros;
+    }
+
+    public long getP99Micros() {
+        return mP99Micros;
+    }
+
+    /**
+     * @return the description of the first failure, null if there was none
+     */
+    public String getFirstError() {
+        return mFirstError;
+    }
+
+    @Override
+    public String toString() {
+        return mOperations + " operations in " + mElapsedMillis + " ms (" + getOperationsPerSecond() +
+                "/s), p50 " + mP50Micros + " us, p99 " + mP99Micros + " us, " + mErrors + " errors, " +
+                mLockTimeouts + " lock timeouts" + (mFirstError == null ? "" : ", first failure: " + mFirstError);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.android.pets.loadtest;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.util.Log;
+
+import com.example.android.pets.R;
+import com.example.android.pets.data.PetDbProfile;
+import com.example.android.pets.data.PetProvider;
+
+/**
+ * Fills a database of its own with the synthetic pets of {@link PetDataProfile#DEFAULT}, then
+ * runs a {@link PetStressTest} against it, in the background. The throughput, latencies and
+ * failures of both runs are logged and shown in a notification. The database is served by a
+ * provider private to the test and deleted after it, the shelter database is never touched.
+ */
+public class PetLoadTestService extends IntentService {
+
+    private static final String LOG_TAG = PetLoadTestService.class.getSimpleName();
+    private static final String ACTION_LOAD_TEST = "com.example.android.pets.action.RUN_LOAD_TEST";
+    private static final String DB_NAME = "shelter_load_test.db";
+    private static final int NOTIFICATION_ID = 2;
+
+    public PetLoadTestService() {
+        super(PetLoadTestService.class.getSimpleName());
+    }
+
+    /**
+     * Queue a load test, after the ones already queued.
+     */
+    public static void startLoadTest(Context context) {
+        Intent intent = new Intent(context, PetLoadTestService.class);
+        intent.setAction(ACTION_LOAD_TEST);
+        context.startService(intent);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null || !ACTION_LOAD_TEST.equals(intent.getAction())) {
+            return;
+        }
+
+        PetDataProfile profile = PetDataProfile.DEFAULT;
+        NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(this)
+                .setSmallIcon(android.R.drawable.stat_sys_upload)
+                .setContentTitle(getString(R.string.load_test_notification_title))
+                .setContentText(getString(R.string.load_test_generating, profile.getPetCount()))
+                .setOngoing(true)
+                .setProgress(0, 0, true);
+        startForeground(NOTIFICATION_ID, notificationBuilder.build());
+
+        // A database left by a test that was killed would skew this one
+        deleteDatabase(DB_NAME);
+        PetProvider provider = new PetProvider(DB_NAME, PetDbProfile.DEFAULT);
+        provider.attachInfo(this, null);
+
+        PetLoadReport fillReport;
+        PetLoadReport stressReport;
+        try {
+            fillReport = new PetDataGenerator(profile).insertPets(provider, PetDataGenerator.DEFAULT_CHUNK_SIZE);
+            Log.i(LOG_TAG, "Fill: " + fillReport);
+
+            notificationBuilder.setContentText(getString(R.string.load_test_stressing));
+            NotificationManagerCompat.from(this).notify(NOTIFICATION_ID, notificationBuilder.build());
+            stressReport = new PetStressTest(provider, profile, PetStressTest.DEFAULT_THREAD_COUNT,
+                    PetStressTest.DEFAULT_OPERATIONS_PER_THREAD, PetStressTest.DEFAULT_WRITE_PERCENT).run();
+            Log.i(LOG_TAG, "Stress: " + stressReport);
+        } catch (InterruptedException e) {
+            Log.w(LOG_TAG, "Load test interrupted", e);
+            return;
+        } finally {
+            provider.shutdown();
+            deleteDatabase(DB_NAME);
+            stopForeground(true);
+        }
+
+        String text = getString(R.string.load_test_finished,
+                fillReport.getOperations(), fillReport.getOperationsPerSecond(),
+                stressReport.getOperationsPerSecond(), stressReport.getP50Micros(), stressReport.getP99Micros(),
+                fillReport.getErrors() + stressReport.getErrors(),
+                fillReport.getLockTimeouts() + stressReport.getLockTimeouts());
+        NotificationManagerCompat.from(this).notify(NOTIFICATION_ID, new NotificationCompat.Builder(this)
+                .setSmallIcon(android.R.drawable.stat_sys_upload_done)
+                .setContentTitle(getString(R.string.load_test_notification_title))
+                .setContentText(text)
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(text))
+                .build());
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.android.pets.loadtest;
+
+import android.content.ContentProvider;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a mix of reads and writes against a {@link com.example.android.pets.data.PetProvider} from
+ * several threads at once, the way the catalog, the editor, the imports and the sync use it
+ * together. The writes change and delete any pet, so the provider must have a database of its
+ * own, filled by {@link PetDataGenerator}.
+ * <p>
+ * The reads are catalog pages, single pets, searches and counts. The writes are mostly updates,
+ * then inserts and a few deletes, of random pets among the ones present when the test started.
+ * Every thread draws its operations from its own seed, so a run can be repeated.
+ */
+class PetStressTest {
+
+    static final int DEFAULT_THREAD_COUNT = 4;
+    static final int DEFAULT_OPERATIONS_PER_THREAD = 1000;
+    static final int DEFAULT_WRITE_PERCENT = 20;
+
+    private static final int PAGE_SIZE = 50;
+    private static final int SEARCH_LIMIT = 20;
+    private static final String[] ID_PROJECTION = {PetEntry._ID};
+
+    private final ContentProvider mProvider;
+    private final PetDataProfile mProfile;
+    private final int mThreadCount;
+    private final int mOperationsPerThread;
+    private final int mWritePercent;
+
+    /**
+     * @param writePercent the percentage of the operations that are writes
+     */
+    PetStressTest(ContentProvider provider, PetDataProfile profile, int threadCount,
+                  int operationsPerThread, int writePercent) {
+        if (threadCount <= 0 || operationsPerThread <= 0) {
+            throw new IllegalArgumentException("Thread and operation counts must be positive!");
+        }
+        if (writePercent < 0 || writePercent > 100) {
+            throw new IllegalArgumentException("Write percentage must be between 0 and 100!");
+        }
+        this.mProvider = provider;
+        this.mProfile = profile;
+        this.mThreadCount = threadCount;
+        this.mOperationsPerThread = operationsPerThread;
+        this.mWritePercent = writePercent;
+    }
+
+    /**
+     * Run the operations of all the threads and wait for them. Must not be called on the main
+     * thread.
+     *
+     * @throws InterruptedException if the waiting thread was interrupted, the test threads are
+     *                              then interrupted too
+     */
+    PetLoadReport run() throws InterruptedException {
+        final long maxId = queryMaxId();
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+        List<Future<PetLoadRecorder>> futures = new ArrayList<Future<PetLoadRecorder>>(mThreadCount);
+        PetLoadRecorder recorder = new PetLoadRecorder(mThreadCount * mOperationsPerThread);
+        long startTime;
+
+        try {
+            for (int i = 0; i < mThreadCount; i++) {
+                final long seed = mProfile.getSeed() + i + 1;
+                futures.add(executor.submit(new Callable<PetLoadRecorder>() {
+                    @Override
+                    public PetLoadRecorder call() throws InterruptedException {
+                        // All the threads start together so that they contend from the first operation
+                        startSignal.await();
+                        return runOperations(seed, maxId);
+                    }
+                }));
+            }
+
+            startTime = SystemClock.elapsedRealtime();
+            startSignal.countDown();
+            for (Future<PetLoadRecorder> future : futures) {
+                try {
+                    recorder.addAll(future.get());
+                } catch (ExecutionException e) {
+                    // The operations catch their own failures, anything else is a bug of the test
+                    throw new IllegalStateException("Stress test thread failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return recorder.toReport(SystemClock.elapsedRealtime() - startTime);
+    }
+
+    private PetLoadRecorder runOperations(long seed, long maxId) {
+        Random random = new Random(seed);
+        PetDataGenerator generator = new PetDataGenerator(mProfile, seed);
+        ContentValues petValues = new ContentValues();
+        PetLoadRecorder recorder = new PetLoadRecorder(mOperationsPerThread);
+
+        for (int i = 0; i < mOperationsPerThread && !Thread.currentThread().isInterrupted(); i++) {
+            long petId = maxId == 0 ? 1 : 1 + (long) (random.nextDouble() * maxId);
+            int draw = random.nextInt(100);
+            long startNanos = System.nanoTime();
+            try {
+                if (random.nextInt(100) < mWritePercent) {
+                    write(draw, petId, generator, petValues);
+                } else {
+                    read(draw, petId, generator);
+                }
+                recorder.recordSuccess(System.nanoTime() - startNanos, 1);
+            } catch (RuntimeException e) {
+                recorder.recordFailure(e);
+            }
+        }
+        return recorder;
+    }
+
+    private void read(int draw, long petId, PetDataGenerator generator) {
+        Cursor cursor;
+        if (draw < 50) {
+            cursor = mProvider.query(PetEntry.buildPageUri(petId, PAGE_SIZE),
+                    PetEntry.CATALOG_PROJECTION, null, null, null);
+        } else if (draw < 75) {
+            cursor = mProvider.query(ContentUris.withAppendedId(PetEntry.CONTENT_URI, petId),
+                    PetEntry.EDITOR_PROJECTION, null, null, null);
+        } else if (draw < 90) {
+            cursor = mProvider.query(PetEntry.buildSearchUri(generator.nextName(), SEARCH_LIMIT),
+                    PetEntry.CATALOG_PROJECTION, null, null, null);
+        } else {
+            cursor = mProvider.query(PetEntry.CONTENT_STATS_COUNT_URI, null, null, null, null);
+        }
+        if (cursor == null) {
+            return;
+        }
+        try {
+            // Moving over the rows reads them all, like the catalog list does
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void write(int draw, long petId, PetDataGenerator generator, ContentValues petValues) {
+        generator.nextPet(petValues);
+        if (draw < 60) {
+            mProvider.update(ContentUris.withAppendedId(PetEntry.CONTENT_URI, petId), petValues, null, null);
+        } else if (draw < 90) {
+            mProvider.insert(PetEntry.CONTENT_URI, petValues);
+        } else {
+            mProvider.delete(ContentUris.withAppendedId(PetEntry.CONTENT_URI, petId), null, null);
+        }
+    }
+
+    /**
+     * @return the highest id of the pets, 0 if there is none
+     */
+    private long queryMaxId() {
+        Cursor cursor = mProvider.query(PetEntry.buildPageUri(0, 1), ID_PROJECTION, null, null,
+                PetEntry._ID + " DESC");
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
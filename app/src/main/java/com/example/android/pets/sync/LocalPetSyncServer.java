@@ -0,0 +1,70 @@
+package com.example.android.pets.sync;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-process stand-in for the sync server, holding the shared catalog in memory. Several
+ * {@link PetSyncEngine}s can sync through the same instance, which makes it usable to develop
+ * and check the sync without a backend.
+ * <p>
+ * It merges like the devices do: each pet keeps the row with the newest version stamp. Every
+ * row it stores gets the next sequence number, so a pull after a sequence number returns each
+ * pet changed since then once, with its latest row.
+ */
+public class LocalPetSyncServer implements PetSyncTransport {
+
+    private final Map<String, Long> mSequenceByUuid = new HashMap<String, Long>();
+    private final TreeMap<Long, PetSyncRow> mRowsBySequence = new TreeMap<Long, PetSyncRow>();
+    private long mSequence;
+
+    @Override
+    public synchronized byte[] push(byte[] request) throws IOException {
+        List<PetSyncRow> pushedRows = PetSyncBatch.decode(request).getRows();
+        List<PetSyncRow> mergedRows = new ArrayList<PetSyncRow>(pushedRows.size());
+
+        for (PetSyncRow pushedRow : pushedRows) {
+            Long storedSequence = mSequenceByUuid.get(pushedRow.getUuid());
+            PetSyncRow storedRow = storedSequence == null ? null : mRowsBySequence.get(storedSequence);
+            if (storedRow != null && pushedRow.compareStampTo(storedRow) <= 0) {
+                mergedRows.add(storedRow);
+                continue;
+            }
+            if (storedSequence != null) {
+                mRowsBySequence.remove(storedSequence);
+            }
+            mSequence++;
+            mSequenceByUuid.put(pushedRow.getUuid(), mSequence);
+            mRowsBySequence.put(mSequence, pushedRow);
+            mergedRows.add(pushedRow);
+        }
+        return new PetSyncBatch(mSequence, false, mergedRows).encode();
+    }
+
+    @Override
+    public synchronized byte[] pull(long sinceSequence, int limit) throws IOException {
+        List<PetSyncRow> rows = new ArrayList<PetSyncRow>();
+        long sequence = sinceSequence;
+
+        Iterator<Map.Entry<Long, PetSyncRow>> entries = mRowsBySequence.tailMap(sinceSequence, false)
+                .entrySet().iterator();
+        while (rows.size() < limit && entries.hasNext()) {
+            Map.Entry<Long, PetSyncRow> entry = entries.next();
+            rows.add(entry.getValue());
+            sequence = entry.getKey();
+        }
+        return new PetSyncBatch(sequence, entries.hasNext(), rows).encode();
+    }
+
+    /**
+     * @return the number of pets the server holds, deleted or not
+     */
+    public synchronized int getRowCount() {
+        return mRowsBySequence.size();
+    }
+}
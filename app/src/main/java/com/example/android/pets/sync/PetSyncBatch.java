@@ -0,0 +1,115 @@
+package com.example.android.pets.sync;
+
+import android.util.JsonReader;
+import android.util.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable batch of sync rows, the unit of every request and response between a device and
+ * the sync server. It is encoded as gzipped JSON, for example
+ * {@code {"sequence": 42, "has_more": false, "rows": [{"uuid": "...", "name": "Toto", ...}]}}.
+ * <p>
+ * The sequence number and the more flag are only meaningful in a pull response: the rows are
+ * the changes of the server up to the sequence number, and more changes follow it if the flag
+ * is set.
+ */
+public final class PetSyncBatch {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String KEY_SEQUENCE = "sequence";
+    private static final String KEY_HAS_MORE = "has_more";
+    private static final String KEY_ROWS = "rows";
+
+    private final long mSequence;
+    private final boolean mHasMore;
+    private final List<PetSyncRow> mRows;
+
+    public PetSyncBatch(long sequence, boolean hasMore, List<PetSyncRow> rows) {
+        this.mSequence = sequence;
+        this.mHasMore = hasMore;
+        this.mRows = Collections.unmodifiableList(new ArrayList<PetSyncRow>(rows));
+    }
+
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(output), UTF_8));
+        try {
+            writer.beginObject();
+            writer.name(KEY_SEQUENCE).value(mSequence);
+            writer.name(KEY_HAS_MORE).value(mHasMore);
+            writer.name(KEY_ROWS).beginArray();
+            for (PetSyncRow row : mRows) {
+                row.write(writer);
+            }
+            writer.endArray();
+            writer.endObject();
+        } finally {
+            // Closing finishes the gzip stream
+            writer.close();
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the bytes aren't an encoded batch
+     */
+    public static PetSyncBatch decode(byte[] encodedBatch) throws IOException {
+        long sequence = 0;
+        boolean hasMore = false;
+        List<PetSyncRow> rows = new ArrayList<PetSyncRow>();
+
+        JsonReader reader = new JsonReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(encodedBatch)), UTF_8));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (KEY_SEQUENCE.equals(key)) {
+                    sequence = reader.nextLong();
+                } else if (KEY_HAS_MORE.equals(key)) {
+                    hasMore = reader.nextBoolean();
+                } else if (KEY_ROWS.equals(key)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        rows.add(PetSyncRow.read(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            // Thrown by JsonReader for a value of an unexpected type
+            throw new IOException("Invalid sync batch", e);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid sync batch", e);
+        } finally {
+            reader.close();
+        }
+        return new PetSyncBatch(sequence, hasMore, rows);
+    }
+
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public boolean hasMore() {
+        return mHasMore;
+    }
+
+    public List<PetSyncRow> getRows() {
+        return mRows;
+    }
+}
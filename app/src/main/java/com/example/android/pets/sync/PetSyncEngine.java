@@ -0,0 +1,137 @@
+package com.example.android.pets.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Syncs the pets of the device with a sync server, in batches of rows.
+ * <p>
+ * It first pushes the rows changed on the device, as marked by the provider, and merges the
+ * rows the server answers with: the server acknowledges the rows it took, and returns its own
+ * for the pets it has a newer row of. It then pulls the rows changed on the server since the
+ * last pull. Each batch of server rows is merged by {@link PetEntry#CONTENT_SYNC_URI} in one
+ * transaction, with a single change notification.
+ * <p>
+ * A sync can be interrupted at any point. The rows of an unacknowledged push are still marked
+ * as changed and pushed again, and the sequence number of the server is only saved once the
+ * rows pulled up to it are committed.
+ */
+public class PetSyncEngine {
+
+    private static final String LOG_TAG = PetSyncEngine.class.getSimpleName();
+
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    private static final String PREFERENCES_NAME = "pet_sync";
+    private static final String KEY_PULL_SEQUENCE = "pull_sequence";
+
+    private final ContentResolver mContentResolver;
+    private final SharedPreferences mPreferences;
+    private final PetSyncTransport mTransport;
+    private final int mBatchSize;
+
+    public PetSyncEngine(Context context, PetSyncTransport transport) {
+        this(context, transport, DEFAULT_BATCH_SIZE);
+    }
+
+    public PetSyncEngine(Context context, PetSyncTransport transport, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive!");
+        }
+        this.mContentResolver = context.getContentResolver();
+        this.mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.mTransport = transport;
+        this.mBatchSize = batchSize;
+    }
+
+    /**
+     * Push the local changes, then pull the changes of the server. Must not be called on the
+     * main thread.
+     *
+     * @throws IOException if the transport failed, the rows synced until then stay synced
+     */
+    public void sync() throws IOException {
+        long startTime = SystemClock.elapsedRealtime();
+        int pushedRows = push();
+        int pulledRows = pull();
+        Log.d(LOG_TAG, "Pushed " + pushedRows + " and pulled " + pulledRows + " pets in " +
+                (SystemClock.elapsedRealtime() - startTime) + " ms");
+    }
+
+    private int push() throws IOException {
+        int pushedRows = 0;
+        while (true) {
+            List<PetSyncRow> changedRows = queryChangedRows();
+            if (changedRows.isEmpty()) {
+                break;
+            }
+
+            byte[] response = mTransport.push(new PetSyncBatch(0, false, changedRows).encode());
+            int mergedRows = merge(PetSyncBatch.decode(response).getRows());
+            pushedRows += changedRows.size();
+
+            // Rows changed again during the push stay marked, they go with the next batch or sync
+            if (changedRows.size() < mBatchSize || mergedRows == 0) {
+                break;
+            }
+        }
+        return pushedRows;
+    }
+
+    private int pull() throws IOException {
+        int pulledRows = 0;
+        long sequence = mPreferences.getLong(KEY_PULL_SEQUENCE, 0);
+        PetSyncBatch batch;
+        do {
+            batch = PetSyncBatch.decode(mTransport.pull(sequence, mBatchSize));
+            merge(batch.getRows());
+            pulledRows += batch.getRows().size();
+
+            sequence = batch.getSequence();
+            // Committed at once, so that a restarted sync never pulls the merged rows again
+            mPreferences.edit().putLong(KEY_PULL_SEQUENCE, sequence).commit();
+        } while (batch.hasMore());
+        return pulledRows;
+    }
+
+    private List<PetSyncRow> queryChangedRows() {
+        List<PetSyncRow> rows = new ArrayList<PetSyncRow>(mBatchSize);
+        Cursor cursor = mContentResolver.query(PetEntry.buildSyncUri(mBatchSize), null, null, null, null);
+        if (cursor == null) {
+            return rows;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                rows.add(PetSyncRow.fromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    /**
+     * @return the number of rows applied or acknowledged
+     */
+    private int merge(List<PetSyncRow> serverRows) {
+        if (serverRows.isEmpty()) {
+            return 0;
+        }
+        ContentValues[] values = new ContentValues[serverRows.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = serverRows.get(i).toContentValues();
+        }
+        return mContentResolver.bulkInsert(PetEntry.CONTENT_SYNC_URI, values);
+    }
+}
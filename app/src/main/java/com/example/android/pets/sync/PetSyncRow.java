@@ -0,0 +1,198 @@
+package com.example.android.pets.sync;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.io.IOException;
+
+/**
+ * Immutable row of a pet as exchanged with the sync server: its data, its deletion time and its
+ * version stamp. Rows are identified by the uuid of the pet, never by its local id.
+ */
+public final class PetSyncRow {
+
+    //Indices of the columns of PetEntry.SYNC_PROJECTION
+    private static final int COLUMN_INDEX_UUID = 0;
+    private static final int COLUMN_INDEX_NAME = 1;
+    private static final int COLUMN_INDEX_BREED = 2;
+    private static final int COLUMN_INDEX_GENDER = 3;
+    private static final int COLUMN_INDEX_WEIGHT = 4;
+    private static final int COLUMN_INDEX_DELETED_AT = 5;
+    private static final int COLUMN_INDEX_VERSION = 6;
+    private static final int COLUMN_INDEX_UPDATED_AT = 7;
+
+    private final String mUuid;
+    private final String mName;
+    private final String mBreed;
+    private final int mGender;
+    private final int mWeight;
+    private final long mDeletedAt;
+    private final long mVersion;
+    private final long mUpdatedAt;
+
+    /**
+     * @param deletedAt the deletion time of a deleted pet, 0 for the others
+     */
+    public PetSyncRow(String uuid, String name, String breed, int gender, int weight, long deletedAt, long version,
+                      long updatedAt) {
+        this.mUuid = uuid;
+        this.mName = name;
+        this.mBreed = breed;
+        this.mGender = gender;
+        this.mWeight = weight;
+        this.mDeletedAt = deletedAt;
+        this.mVersion = version;
+        this.mUpdatedAt = updatedAt;
+    }
+
+    /**
+     * @return the row of the current position of a cursor of {@link PetEntry#CONTENT_SYNC_URI}
+     */
+    static PetSyncRow fromCursor(Cursor cursor) {
+        return new PetSyncRow(cursor.getString(COLUMN_INDEX_UUID),
+                cursor.getString(COLUMN_INDEX_NAME),
+                cursor.getString(COLUMN_INDEX_BREED),
+                cursor.getInt(COLUMN_INDEX_GENDER),
+                cursor.getInt(COLUMN_INDEX_WEIGHT),
+                cursor.isNull(COLUMN_INDEX_DELETED_AT) ? 0 : cursor.getLong(COLUMN_INDEX_DELETED_AT),
+                cursor.getLong(COLUMN_INDEX_VERSION),
+                cursor.getLong(COLUMN_INDEX_UPDATED_AT));
+    }
+
+    /**
+     * @return the values bulk inserted into {@link PetEntry#CONTENT_SYNC_URI} to merge the row
+     */
+    ContentValues toContentValues() {
+        ContentValues contentValues = new ContentValues(PetEntry.SYNC_PROJECTION.length);
+        contentValues.put(PetEntry.COLUMN_PET_UUID, mUuid);
+        contentValues.put(PetEntry.COLUMN_PET_NAME, mName);
+        contentValues.put(PetEntry.COLUMN_PET_BREED, mBreed);
+        contentValues.put(PetEntry.COLUMN_PET_GENDER, mGender);
+        contentValues.put(PetEntry.COLUMN_PET_WEIGHT, mWeight);
+        if (isDeleted()) {
+            contentValues.put(PetEntry.COLUMN_PET_DELETED_AT, mDeletedAt);
+        } else {
+            contentValues.putNull(PetEntry.COLUMN_PET_DELETED_AT);
+        }
+        contentValues.put(PetEntry.COLUMN_PET_VERSION, mVersion);
+        contentValues.put(PetEntry.COLUMN_PET_UPDATED_AT, mUpdatedAt);
+        return contentValues;
+    }
+
+    void write(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name(PetEntry.COLUMN_PET_UUID).value(mUuid);
+        if (mName != null) {
+            writer.name(PetEntry.COLUMN_PET_NAME).value(mName);
+        }
+        if (mBreed != null) {
+            writer.name(PetEntry.COLUMN_PET_BREED).value(mBreed);
+        }
+        writer.name(PetEntry.COLUMN_PET_GENDER).value(mGender);
+        writer.name(PetEntry.COLUMN_PET_WEIGHT).value(mWeight);
+        if (isDeleted()) {
+            writer.name(PetEntry.COLUMN_PET_DELETED_AT).value(mDeletedAt);
+        }
+        writer.name(PetEntry.COLUMN_PET_VERSION).value(mVersion);
+        writer.name(PetEntry.COLUMN_PET_UPDATED_AT).value(mUpdatedAt);
+        writer.endObject();
+    }
+
+    /**
+     * @throws IOException if the object isn't a row with a uuid and a version stamp
+     */
+    static PetSyncRow read(JsonReader reader) throws IOException {
+        String uuid = null;
+        String name = null;
+        String breed = null;
+        int gender = PetEntry.DEFAULT_GENDER;
+        int weight = PetEntry.DEFAULT_WEIGHT;
+        long deletedAt = 0;
+        long version = 0;
+        long updatedAt = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (PetEntry.COLUMN_PET_UUID.equals(key)) {
+                uuid = reader.nextString();
+            } else if (PetEntry.COLUMN_PET_NAME.equals(key)) {
+                name = reader.nextString();
+            } else if (PetEntry.COLUMN_PET_BREED.equals(key)) {
+                breed = reader.nextString();
+            } else if (PetEntry.COLUMN_PET_GENDER.equals(key)) {
+                gender = reader.nextInt();
+            } else if (PetEntry.COLUMN_PET_WEIGHT.equals(key)) {
+                weight = reader.nextInt();
+            } else if (PetEntry.COLUMN_PET_DELETED_AT.equals(key)) {
+                deletedAt = reader.nextLong();
+            } else if (PetEntry.COLUMN_PET_VERSION.equals(key)) {
+                version = reader.nextLong();
+            } else if (PetEntry.COLUMN_PET_UPDATED_AT.equals(key)) {
+                updatedAt = reader.nextLong();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (uuid == null || version < 1) {
+            throw new IOException("Sync row without a uuid or a version");
+        }
+        return new PetSyncRow(uuid, name, breed, gender, weight, deletedAt, version, updatedAt);
+    }
+
+    /**
+     * @return a negative number, zero or a positive number as the stamp of this row is older
+     * than, the same as or newer than the stamp of the other row
+     */
+    public int compareStampTo(PetSyncRow other) {
+        return PetEntry.compareSyncStamps(mVersion, mUpdatedAt, other.mVersion, other.mUpdatedAt);
+    }
+
+    public String getUuid() {
+        return mUuid;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public String getBreed() {
+        return mBreed;
+    }
+
+    public int getGender() {
+        return mGender;
+    }
+
+    public int getWeight() {
+        return mWeight;
+    }
+
+    public boolean isDeleted() {
+        return mDeletedAt != 0;
+    }
+
+    /**
+     * @return the deletion time of a deleted pet, 0 for the others
+     */
+    public long getDeletedAt() {
+        return mDeletedAt;
+    }
+
+    public long getVersion() {
+        return mVersion;
+    }
+
+    public long getUpdatedAt() {
+        return mUpdatedAt;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.android.pets.sync;
+
+import java.io.IOException;
+
+/**
+ * Connection of a device to the sync server. The requests and responses are compressed
+ * {@link PetSyncBatch} bytes, so an implementation only moves them, over HTTP for example.
+ */
+public interface PetSyncTransport {
+
+    /**
+     * Send the rows changed on the device. The server keeps for each pet the row with the newest
+     * version stamp.
+     *
+     * @param request the encoded batch of the changed rows
+     * @return the encoded batch of the rows the server holds for the same pets after the merge
+     */
+    byte[] push(byte[] request) throws IOException;
+
+    /**
+     * Read the rows changed on the server after a sequence number of the server.
+     *
+     * @return the encoded batch of at most limit rows, with the sequence number to read the next
+     * batch from and whether there are more rows after it
+     */
+    byte[] pull(long sinceSequence, int limit) throws IOException;
+}
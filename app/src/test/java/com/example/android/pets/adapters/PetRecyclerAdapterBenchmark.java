@@ -0,0 +1,76 @@
+package com.example.android.pets.adapters;
+
+import android.content.Context;
+import android.widget.FrameLayout;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.benchmark.PetBenchmarkOperation;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.Pet;
+import com.example.android.pets.loaders.PetSnapshotLoader;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time and bytes allocated per bind of a catalog row. One view holder is bound to every pet of
+ * the list in turn, as during a fling, a tenth of the pets having no breed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetRecyclerAdapterBenchmark {
+
+    private static final int PET_COUNT = 1000;
+
+    @Test
+    public void bindRows() throws Exception {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetRecyclerAdapterBenchmark.class);
+        Context context = RuntimeEnvironment.application;
+
+        final PetRecyclerAdapter adapter = new PetRecyclerAdapter(context, null);
+        adapter.swapSnapshot(new FixedPetsLoader(context, newPets()).loadInBackground());
+        final PetRecyclerAdapter.PetViewHolder holder = adapter.createViewHolder(new FrameLayout(context), 0);
+
+        report.measure("bind", PET_COUNT, PET_COUNT, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                for (int position = 0; position < PET_COUNT; position++) {
+                    adapter.bindViewHolder(holder, position);
+                }
+            }
+        });
+        report.write();
+    }
+
+    private static List<Pet> newPets() {
+        List<Pet> pets = new ArrayList<Pet>(PET_COUNT);
+        for (int i = 1; i <= PET_COUNT; i++) {
+            pets.add(new Pet(i, "Pet " + i, i % 10 == 0 ? null : "Terrier", i % 3, 1 + i % 60));
+        }
+        return pets;
+    }
+
+    /**
+     * Loads the same pets every time, the first snapshot it loads being a diff from no pets.
+     */
+    private static class FixedPetsLoader extends PetSnapshotLoader {
+
+        private final List<Pet> mPets;
+
+        FixedPetsLoader(Context context, List<Pet> pets) {
+            super(context);
+            this.mPets = pets;
+        }
+
+        @Override
+        protected List<Pet> loadPets(List<Pet> previousPets) {
+            return mPets;
+        }
+    }
+}
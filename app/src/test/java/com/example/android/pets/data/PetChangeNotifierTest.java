@@ -0,0 +1,159 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Change notifications of {@link PetProvider}, as seen by the observer a loader of the catalog
+ * registers on the content URI and its descendants. Every notification it gets is a reload. The
+ * shadow content resolver only calls the observers of the exact URI, so the notifications are
+ * read from the ones it records instead.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetChangeNotifierTest {
+
+    private static final int BURST_UPDATES = 1000;
+
+    private PetProvider mProvider;
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class);
+        ShadowContentResolver.registerProviderInternal(PetContract.CONTENT_AUTHORITY, mProvider);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void burstOfUpdatesReloadsOncePerWindow() {
+        Uri petUri = insertPet("Toto");
+        flushNotifications();
+        clearReloads();
+
+        // A thousand updates spread over a second, as a drag on a weight slider would send them
+        for (int i = 0; i < BURST_UPDATES; i++) {
+            updateWeight(petUri, i + 1);
+            ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+        }
+        flushNotifications();
+
+        List<Uri> reloads = getReloads();
+        assertTrue("Reloads: " + reloads.size(), reloads.size() > 0 && reloads.size() <= 11);
+        for (Uri uri : reloads) {
+            assertEquals(petUri, uri);
+        }
+    }
+
+    @Test
+    public void burstOfUpdatesWithinOneWindowReloadsOnce() {
+        Uri petUri = insertPet("Toto");
+        flushNotifications();
+        clearReloads();
+
+        for (int i = 0; i < BURST_UPDATES; i++) {
+            updateWeight(petUri, i + 1);
+        }
+        assertEquals(0, getReloads().size());
+        flushNotifications();
+
+        List<Uri> reloads = getReloads();
+        assertEquals(1, reloads.size());
+        assertEquals(petUri, reloads.get(0));
+    }
+
+    @Test
+    public void updatesOfManyPetsReloadTheContentUriOnce() {
+        List<Uri> petUris = new ArrayList<Uri>();
+        for (int i = 0; i < 20; i++) {
+            petUris.add(insertPet("Pet " + i));
+        }
+        flushNotifications();
+        clearReloads();
+
+        for (Uri petUri : petUris) {
+            updateWeight(petUri, 5);
+        }
+        flushNotifications();
+
+        List<Uri> reloads = getReloads();
+        assertEquals(1, reloads.size());
+        assertEquals(PetEntry.CONTENT_URI, reloads.get(0));
+    }
+
+    @Test
+    public void writesThatChangeNoRowDoNotReload() {
+        flushNotifications();
+        clearReloads();
+
+        Uri missingPetUri = ContentUris.withAppendedId(PetEntry.CONTENT_URI, 42);
+        assertEquals(0, updateWeight(missingPetUri, 5));
+        assertEquals(0, mContentResolver.delete(missingPetUri, null, null));
+        flushNotifications();
+
+        assertEquals(0, getReloads().size());
+    }
+
+    private Uri insertPet(String name) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        return mContentResolver.insert(PetEntry.CONTENT_URI, values);
+    }
+
+    private int updateWeight(Uri petUri, int weight) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+        return mContentResolver.update(petUri, values, null, null);
+    }
+
+    /**
+     * @return the notified URIs since the reloads were last cleared that reach an observer of the content URI
+     * and its descendants
+     */
+    private List<Uri> getReloads() {
+        List<Uri> reloads = new ArrayList<Uri>();
+        for (ShadowContentResolver.NotifiedUri notifiedUri : Shadows.shadowOf(mContentResolver).getNotifiedUris()) {
+            if (notifiedUri.uri.toString().startsWith(PetEntry.CONTENT_URI.toString())) {
+                reloads.add(notifiedUri.uri);
+            }
+        }
+        return reloads;
+    }
+
+    private void clearReloads() {
+        Shadows.shadowOf(mContentResolver).getNotifiedUris().clear();
+    }
+
+    private static void flushNotifications() {
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Migrations of the shelter database, and the plans of the queries its indexes are for.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetDbHelperTest {
+
+    private static final String CREATED_DB_NAME = "created_test.db";
+    private static final String MIGRATED_DB_NAME = "migrated_test.db";
+
+    //Schema of the first version of the database, before any migration
+    private static final String SQL_CREATE_VERSION_1 = "CREATE TABLE pets(" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT,name TEXT NOT NULL,breed TEXT," +
+            "gender INTEGER NOT NULL DEFAULT 0,weight INTEGER NOT NULL DEFAULT 0)";
+
+    private Context mContext;
+    private final List<PetDbHelper> mPetDbHelpers = new ArrayList<PetDbHelper>();
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mContext.deleteDatabase(CREATED_DB_NAME);
+        mContext.deleteDatabase(MIGRATED_DB_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        for (PetDbHelper petDbHelper : mPetDbHelpers) {
+            petDbHelper.close();
+        }
+        mContext.deleteDatabase(CREATED_DB_NAME);
+        mContext.deleteDatabase(MIGRATED_DB_NAME);
+    }
+
+    @Test
+    public void migrationFromFirstVersionKeepsPets() {
+        createVersion1Database("Toto", "Terrier", PetEntry.GENDER_MALE, 7);
+
+        SQLiteDatabase database = openHelper(MIGRATED_DB_NAME).getWritableDatabase();
+
+        assertEquals(PetDbHelper.DB_VERSION, database.getVersion());
+        Cursor cursor = database.query(PetEntry.TABLE_NAME, null, null, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals("Toto", cursor.getString(cursor.getColumnIndex(PetEntry.COLUMN_PET_NAME)));
+            assertEquals("Terrier", cursor.getString(cursor.getColumnIndex(PetEntry.COLUMN_PET_BREED)));
+            assertEquals(PetEntry.GENDER_MALE, cursor.getInt(cursor.getColumnIndex(PetEntry.COLUMN_PET_GENDER)));
+            assertEquals(7, cursor.getInt(cursor.getColumnIndex(PetEntry.COLUMN_PET_WEIGHT)));
+            // The existing pets are synced as new ones
+            assertNotNull(cursor.getString(cursor.getColumnIndex(PetEntry.COLUMN_PET_UUID)));
+            assertEquals(1, cursor.getInt(cursor.getColumnIndex(PetEntry.COLUMN_PET_DIRTY)));
+        } finally {
+            cursor.close();
+        }
+
+        // The full-text index was filled with the existing pets
+        assertEquals(1, DatabaseUtils.longForQuery(database, "SELECT COUNT(*) FROM " + PetEntry.FTS_TABLE_NAME +
+                " WHERE " + PetEntry.FTS_TABLE_NAME + " MATCH 'toto'", null));
+    }
+
+    @Test
+    public void migratedSchemaMatchesCreatedSchema() {
+        createVersion1Database("Toto", null, PetEntry.GENDER_UNKNOWN, 0);
+
+        List<String> createdSchema = readSchema(openHelper(CREATED_DB_NAME).getWritableDatabase());
+        List<String> migratedSchema = readSchema(openHelper(MIGRATED_DB_NAME).getWritableDatabase());
+
+        assertEquals(createdSchema, migratedSchema);
+    }
+
+    @Test
+    public void createdAndMigratedDatabasesUseIncrementalAutoVacuum() {
+        createVersion1Database("Toto", null, PetEntry.GENDER_UNKNOWN, 0);
+
+        assertEquals(PetDbHelper.AUTO_VACUUM_INCREMENTAL, DatabaseUtils.longForQuery(
+                openHelper(CREATED_DB_NAME).getWritableDatabase(), "PRAGMA auto_vacuum", null));
+        assertEquals(PetDbHelper.AUTO_VACUUM_INCREMENTAL, DatabaseUtils.longForQuery(
+                openHelper(MIGRATED_DB_NAME).getWritableDatabase(), "PRAGMA auto_vacuum", null));
+    }
+
+    @Test
+    public void filterByBreedUsesBreedIndex() {
+        assertPlanUsesIndex(PetEntry.INDEX_BREED, "SELECT * FROM pets WHERE breed=? AND +deleted_at IS NULL",
+                "Terrier");
+    }
+
+    @Test
+    public void filterByGenderAndWeightUsesGenderWeightIndex() {
+        assertPlanUsesIndex(PetEntry.INDEX_GENDER_WEIGHT,
+                "SELECT * FROM pets WHERE gender=? AND weight>? AND +deleted_at IS NULL", "1", "10");
+    }
+
+    @Test
+    public void filterByNameIgnoringCaseUsesNameIndex() {
+        assertPlanUsesIndex(PetEntry.INDEX_NAME,
+                "SELECT * FROM pets WHERE name=? COLLATE NOCASE AND +deleted_at IS NULL", "toto");
+    }
+
+    @Test
+    public void sortByNameUsesNameIndex() {
+        assertPlanUsesIndex(PetEntry.INDEX_NAME,
+                "SELECT * FROM pets WHERE +deleted_at IS NULL ORDER BY name COLLATE NOCASE,_id LIMIT 20");
+    }
+
+    @Test
+    public void sortByWeightUsesWeightIndex() {
+        assertPlanUsesIndex(PetEntry.INDEX_WEIGHT,
+                "SELECT * FROM pets WHERE +deleted_at IS NULL ORDER BY weight,_id LIMIT 20");
+    }
+
+    /**
+     * Assert that the plan of the query, written like the ones of PetProvider, reads the table
+     * through the index, either seeking in it or walking it in order, with neither a full scan of
+     * the table nor a temporary B-tree for the sort.
+     */
+    private void assertPlanUsesIndex(String index, String sql, String... selectionArgs) {
+        SQLiteDatabase database = openHelper(CREATED_DB_NAME).getWritableDatabase();
+
+        List<String> plan = new ArrayList<String>();
+        Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        try {
+            int detailColumnIndex = cursor.getColumnCount() - 1;
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detailColumnIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        String message = sql + " " + plan;
+        assertTrue(message, plan.toString().contains("USING INDEX " + index + " "));
+        for (String step : plan) {
+            assertTrue(message, !step.startsWith("SCAN TABLE " + PetEntry.TABLE_NAME) || step.contains(" USING "));
+            assertTrue(message, !step.contains("TEMP B-TREE"));
+        }
+    }
+
+    private void createVersion1Database(String name, String breed, int gender, int weight) {
+        SQLiteDatabase database = mContext.openOrCreateDatabase(MIGRATED_DB_NAME, Context.MODE_PRIVATE, null);
+        try {
+            database.execSQL(SQL_CREATE_VERSION_1);
+            ContentValues values = new ContentValues();
+            values.put(PetEntry.COLUMN_PET_NAME, name);
+            values.put(PetEntry.COLUMN_PET_BREED, breed);
+            values.put(PetEntry.COLUMN_PET_GENDER, gender);
+            values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+            database.insertOrThrow(PetEntry.TABLE_NAME, null, values);
+            database.setVersion(1);
+        } finally {
+            database.close();
+        }
+    }
+
+    private PetDbHelper openHelper(String name) {
+        PetDbHelper petDbHelper = new PetDbHelper(mContext, name, PetDbProfile.DEFAULT);
+        mPetDbHelpers.add(petDbHelper);
+        return petDbHelper;
+    }
+
+    /**
+     * @return the definitions of the tables, indexes and triggers, sorted by name and without
+     * white space, which differs between the created table and the one of the first version
+     */
+    private static List<String> readSchema(SQLiteDatabase database) {
+        List<String> schema = new ArrayList<String>();
+        Cursor cursor = database.rawQuery("SELECT type,name,sql FROM sqlite_master ORDER BY name", null);
+        try {
+            while (cursor.moveToNext()) {
+                String sql = cursor.getString(2);
+                schema.add(cursor.getString(0) + " " + cursor.getString(1) + ": " +
+                        (sql == null ? null : sql.replaceAll("\\s+", "")));
+            }
+        } finally {
+            cursor.close();
+        }
+        return schema;
+    }
+}
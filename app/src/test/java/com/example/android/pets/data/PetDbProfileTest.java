@@ -0,0 +1,75 @@
+package com.example.android.pets.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PetDbProfileTest {
+
+    @Test
+    public void defaultProfileUsesWriteAheadLogging() {
+        PetDbProfile profile = PetDbProfile.DEFAULT;
+
+        assertTrue(profile.isWriteAheadLoggingEnabled());
+        assertEquals(PetDbProfile.SYNCHRONOUS_NORMAL, profile.getSynchronous());
+        assertEquals(2048, profile.getCacheSizeKib());
+        assertEquals(32 * 1024 * 1024, profile.getMmapSizeBytes());
+        assertEquals(50, profile.getStatementCacheSize());
+    }
+
+    @Test
+    public void rollbackJournalProfileKeepsFormerBehaviour() {
+        PetDbProfile profile = PetDbProfile.ROLLBACK_JOURNAL;
+
+        assertFalse(profile.isWriteAheadLoggingEnabled());
+        assertEquals(PetDbProfile.SYNCHRONOUS_FULL, profile.getSynchronous());
+        assertEquals(0, profile.getMmapSizeBytes());
+        assertEquals(25, profile.getStatementCacheSize());
+    }
+
+    @Test
+    public void boundsAreAccepted() {
+        PetDbProfile profile = new PetDbProfile(false, PetDbProfile.SYNCHRONOUS_OFF, 1, 0, 100);
+
+        assertEquals(PetDbProfile.SYNCHRONOUS_OFF, profile.getSynchronous());
+        assertEquals(1, profile.getCacheSizeKib());
+        assertEquals(100, profile.getStatementCacheSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSynchronousModeIsRejected() {
+        new PetDbProfile(true, "EXTRA", 2048, 0, 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lowerCaseSynchronousModeIsRejected() {
+        new PetDbProfile(true, "normal", 2048, 0, 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullSynchronousModeIsRejected() {
+        new PetDbProfile(true, null, 2048, 0, 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCacheSizeIsRejected() {
+        new PetDbProfile(true, PetDbProfile.SYNCHRONOUS_NORMAL, 0, 0, 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMmapSizeIsRejected() {
+        new PetDbProfile(true, PetDbProfile.SYNCHRONOUS_NORMAL, 2048, -1, 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroStatementCacheSizeIsRejected() {
+        new PetDbProfile(true, PetDbProfile.SYNCHRONOUS_NORMAL, 2048, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void statementCacheSizeOverLimitIsRejected() {
+        new PetDbProfile(true, PetDbProfile.SYNCHRONOUS_NORMAL, 2048, 0, 101);
+    }
+}
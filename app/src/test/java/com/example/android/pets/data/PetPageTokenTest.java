@@ -0,0 +1,78 @@
+package com.example.android.pets.data;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Encoding of the page tokens, which needs the Base64 of the platform.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetPageTokenTest {
+
+    @Test
+    public void roundTripKeepsSortKeyValueAndId() {
+        PetPageToken token = PetPageToken.decode(PetPageToken.encode(PetEntry.SORT_BY_NAME, "Toto", 42));
+
+        assertEquals(PetEntry.SORT_BY_NAME, token.getSortKey());
+        assertEquals("Toto", token.getSortValue());
+        assertEquals(42, token.getId());
+    }
+
+    @Test
+    public void roundTripKeepsNullSortValue() {
+        PetPageToken token = PetPageToken.decode(PetPageToken.encode(PetEntry.SORT_BY_BREED, null, 7));
+
+        assertNull(token.getSortValue());
+        assertEquals(7, token.getId());
+    }
+
+    @Test
+    public void roundTripKeepsEmptyValueApartFromNull() {
+        PetPageToken token = PetPageToken.decode(PetPageToken.encode(PetEntry.SORT_BY_BREED, "", 7));
+
+        assertEquals("", token.getSortValue());
+    }
+
+    @Test
+    public void roundTripKeepsSeparatorsAndNonAsciiCharacters() {
+        String name = "Miél\nn° 2 🐶";
+
+        PetPageToken token = PetPageToken.decode(PetPageToken.encode(PetEntry.SORT_BY_NAME, name, Long.MAX_VALUE));
+
+        assertEquals(name, token.getSortValue());
+        assertEquals(Long.MAX_VALUE, token.getId());
+    }
+
+    @Test
+    public void tokenIsUrlSafe() {
+        String token = PetPageToken.encode(PetEntry.SORT_BY_NAME, "ÿþý?/+", 1);
+
+        assertEquals(token, token.replaceAll("[^A-Za-z0-9_-]", ""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeRejectsUnknownSortKey() {
+        PetPageToken.encode("age", "3", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeRejectsGarbage() {
+        PetPageToken.decode("not a token");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeRejectsTruncatedToken() {
+        String token = PetPageToken.encode(PetEntry.SORT_BY_NAME, "Toto", 42);
+
+        PetPageToken.decode(token.substring(0, 6));
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Single inserts share the cached insert statement with bulk inserts, so the two must take the
+ * connection and the statement in the same order.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetProviderInsertTest {
+
+    private static final int ROUNDS = 200;
+    private static final int BULK_SIZE = 10;
+    private static final long JOIN_TIMEOUT_MILLIS = 30000;
+
+    private PetProvider mProvider;
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class);
+        ShadowContentResolver.registerProviderInternal(PetContract.CONTENT_AUTHORITY, mProvider);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void concurrentInsertsAndBulkInsertsDoNotDeadlock() throws InterruptedException {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread inserter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < ROUNDS; i++) {
+                        mContentResolver.insert(PetEntry.CONTENT_URI, newPet("Toto"));
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        Thread bulkInserter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ContentValues[] pets = new ContentValues[BULK_SIZE];
+                    for (int i = 0; i < BULK_SIZE; i++) {
+                        pets[i] = newPet("Rex");
+                    }
+                    for (int i = 0; i < ROUNDS; i++) {
+                        mContentResolver.bulkInsert(PetEntry.CONTENT_URI, pets);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+
+        inserter.start();
+        bulkInserter.start();
+        inserter.join(JOIN_TIMEOUT_MILLIS);
+        bulkInserter.join(JOIN_TIMEOUT_MILLIS);
+
+        assertFalse("inserts still running", inserter.isAlive());
+        assertFalse("bulk inserts still running", bulkInserter.isAlive());
+        assertNull(failure.get());
+        assertEquals(ROUNDS * (1 + BULK_SIZE), countPets());
+    }
+
+    private int countPets() {
+        Cursor cursor = mContentResolver.query(PetEntry.CONTENT_URI, new String[]{PetEntry._ID}, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues newPet(String name) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 1);
+        return values;
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sorted pages of the pets, walked while other pets are inserted and deleted. Whatever the writes,
+ * a walk returns the pets in order, never twice, and every pet that stays in the table from the
+ * start to the end of the walk.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetProviderPagingTest {
+
+    private static final int PET_COUNT = 300;
+    private static final int PAGE_SIZE = 7;
+    private static final String[] BREEDS = {null, "Beagle", "Collie", "Terrier"};
+
+    private PetProvider mProvider;
+    private ContentResolver mContentResolver;
+    private final Random mRandom = new Random(18);
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class);
+        ShadowContentResolver.registerProviderInternal(PetContract.CONTENT_AUTHORITY, mProvider);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void pagesByNameSurviveInsertsAndDeletesBetweenPages() {
+        checkPagesSurviveWritesBetweenPages(PetEntry.SORT_BY_NAME);
+    }
+
+    @Test
+    public void pagesByBreedSurviveInsertsAndDeletesBetweenPages() {
+        checkPagesSurviveWritesBetweenPages(PetEntry.SORT_BY_BREED);
+    }
+
+    @Test
+    public void pagesByWeightSurviveInsertsAndDeletesBetweenPages() {
+        checkPagesSurviveWritesBetweenPages(PetEntry.SORT_BY_WEIGHT);
+    }
+
+    @Test
+    public void pagesByIdSurviveInsertsAndDeletesBetweenPages() {
+        checkPagesSurviveWritesBetweenPages(PetEntry.SORT_BY_ID);
+    }
+
+    @Test
+    public void pagesByNameSurviveConcurrentInserts() throws InterruptedException {
+        Set<Long> initialIds = insertRandomPets(PET_COUNT);
+        final AtomicReference<Throwable> writerFailure = new AtomicReference<Throwable>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    insertRandomPets(PET_COUNT);
+                } catch (Throwable e) {
+                    writerFailure.set(e);
+                }
+            }
+        });
+
+        writer.start();
+        List<PetRow> rows = walkPages(PetEntry.SORT_BY_NAME, null);
+        writer.join();
+
+        assertNull(writerFailure.get());
+        assertSortedWithoutDuplicates(PetEntry.SORT_BY_NAME, rows);
+        assertTrue(getIds(rows).containsAll(initialIds));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pageTokenOfAnotherSortIsRejected() {
+        String token = PetPageToken.encode(PetEntry.SORT_BY_WEIGHT, "3", 1);
+
+        mContentResolver.query(PetEntry.buildSortedPageUri(PetEntry.SORT_BY_NAME, token, PAGE_SIZE),
+                null, null, null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sortedPageWithSortOrderIsRejected() {
+        mContentResolver.query(PetEntry.buildSortedPageUri(PetEntry.SORT_BY_NAME, null, PAGE_SIZE),
+                null, null, null, PetEntry.COLUMN_PET_WEIGHT);
+    }
+
+    /**
+     * Walk the pages of the sort, inserting random pets and deleting a random one, read or not,
+     * between the pages. The writes stop before the walk reaches the end of the initial pets, as
+     * a walk by id would otherwise keep reading the pets inserted after its last page.
+     */
+    private void checkPagesSurviveWritesBetweenPages(String sortKey) {
+        Set<Long> initialIds = insertRandomPets(PET_COUNT);
+        final Set<Long> deletedIds = new HashSet<Long>();
+
+        List<PetRow> rows = walkPages(sortKey, new PageListener() {
+            @Override
+            public void onPage(List<PetRow> readRows) {
+                if (readRows.size() < PET_COUNT / 2) {
+                    insertRandomPets(3);
+                    deletedIds.add(deleteRandomPet());
+                }
+            }
+        });
+
+        assertSortedWithoutDuplicates(sortKey, rows);
+        Set<Long> ids = getIds(rows);
+        for (long id : initialIds) {
+            assertTrue("Pet " + id + " skipped", deletedIds.contains(id) || ids.contains(id));
+        }
+    }
+
+    private interface PageListener {
+        void onPage(List<PetRow> readRows);
+    }
+
+    private List<PetRow> walkPages(String sortKey, PageListener listener) {
+        List<PetRow> rows = new ArrayList<PetRow>();
+        String pageToken = null;
+        while (true) {
+            Cursor cursor = mContentResolver.query(PetEntry.buildSortedPageUri(sortKey, pageToken, PAGE_SIZE),
+                    null, null, null, null);
+            try {
+                assertTrue(cursor.getCount() <= PAGE_SIZE);
+                if (!cursor.moveToLast()) {
+                    return rows;
+                }
+                pageToken = PetPageToken.fromCursor(cursor, sortKey);
+                cursor.moveToPosition(-1);
+                while (cursor.moveToNext()) {
+                    rows.add(new PetRow(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+            if (listener != null) {
+                listener.onPage(rows);
+            }
+        }
+    }
+
+    private Set<Long> insertRandomPets(int count) {
+        Set<Long> ids = new HashSet<Long>();
+        for (int i = 0; i < count; i++) {
+            ContentValues values = new ContentValues();
+            int nameLength = 1 + nextRandom(3);
+            StringBuilder name = new StringBuilder();
+            for (int j = 0; j < nameLength; j++) {
+                // Mixed case names with many duplicates, to exercise the ties broken by id
+                name.append((char) ((nextRandom(2) == 0 ? 'a' : 'A') + nextRandom(3)));
+            }
+            values.put(PetEntry.COLUMN_PET_NAME, name.toString());
+            values.put(PetEntry.COLUMN_PET_BREED, BREEDS[nextRandom(BREEDS.length)]);
+            values.put(PetEntry.COLUMN_PET_WEIGHT, nextRandom(20));
+            ids.add(ContentUris.parseId(mContentResolver.insert(PetEntry.CONTENT_URI, values)));
+        }
+        return ids;
+    }
+
+    private long deleteRandomPet() {
+        Cursor cursor = mContentResolver.query(PetEntry.CONTENT_URI, new String[]{PetEntry._ID}, null, null, null);
+        long id;
+        try {
+            cursor.moveToPosition(nextRandom(cursor.getCount()));
+            id = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+        assertEquals(1, mContentResolver.delete(ContentUris.withAppendedId(PetEntry.CONTENT_URI, id), null, null));
+        return id;
+    }
+
+    private int nextRandom(int bound) {
+        // The writer thread shares the generator
+        synchronized (mRandom) {
+            return mRandom.nextInt(bound);
+        }
+    }
+
+    private static void assertSortedWithoutDuplicates(String sortKey, List<PetRow> rows) {
+        List<PetRow> sortedRows = new ArrayList<PetRow>(rows);
+        Collections.sort(sortedRows, new PetRowComparator(sortKey));
+        assertEquals(sortedRows, rows);
+        assertEquals(rows.size(), getIds(rows).size());
+    }
+
+    private static Set<Long> getIds(List<PetRow> rows) {
+        Set<Long> ids = new HashSet<Long>();
+        for (PetRow row : rows) {
+            ids.add(row.mId);
+        }
+        return ids;
+    }
+
+    private static final class PetRow {
+        final long mId;
+        final String mName;
+        final String mBreed;
+        final int mWeight;
+
+        PetRow(Cursor cursor) {
+            mId = cursor.getLong(cursor.getColumnIndexOrThrow(PetEntry._ID));
+            mName = cursor.getString(cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_NAME));
+            mBreed = cursor.getString(cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_BREED));
+            mWeight = cursor.getInt(cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_WEIGHT));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PetRow && ((PetRow) o).mId == mId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) mId;
+        }
+
+        @Override
+        public String toString() {
+            return mId + ":" + mName + "/" + mBreed + "/" + mWeight;
+        }
+    }
+
+    /**
+     * The order of a sorted page: the sort column as SQLite compares it, then the id.
+     */
+    private static final class PetRowComparator implements Comparator<PetRow> {
+        private final String mSortKey;
+
+        PetRowComparator(String sortKey) {
+            this.mSortKey = sortKey;
+        }
+
+        @Override
+        public int compare(PetRow a, PetRow b) {
+            int order = 0;
+            if (PetEntry.SORT_BY_NAME.equals(mSortKey)) {
+                // NOCASE only folds ASCII letters, as do these names
+                order = a.mName.toLowerCase(Locale.US).compareTo(b.mName.toLowerCase(Locale.US));
+            } else if (PetEntry.SORT_BY_BREED.equals(mSortKey)) {
+                if (a.mBreed == null || b.mBreed == null) {
+                    order = (a.mBreed == null ? 0 : 1) - (b.mBreed == null ? 0 : 1);
+                } else {
+                    order = a.mBreed.compareTo(b.mBreed);
+                }
+            } else if (PetEntry.SORT_BY_WEIGHT.equals(mSortKey)) {
+                order = a.mWeight < b.mWeight ? -1 : (a.mWeight == b.mWeight ? 0 : 1);
+            }
+            if (order != 0) {
+                return order;
+            }
+            return a.mId < b.mId ? -1 : (a.mId == b.mId ? 0 : 1);
+        }
+    }
+}
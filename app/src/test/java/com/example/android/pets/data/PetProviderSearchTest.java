@@ -0,0 +1,109 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Search of {@link PetProvider}: prefix matches in the name or breed, ranked name first, with or
+ * without a selection of the caller.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetProviderSearchTest {
+
+    private static final String[] NAME_PROJECTION = {PetEntry.COLUMN_PET_NAME};
+
+    private PetProvider mProvider;
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class);
+        ShadowContentResolver.registerProviderInternal(PetContract.CONTENT_AUTHORITY, mProvider);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+        insertPet("Terry", "Collie");
+        insertPet("Rex", "Terrier");
+        insertPet("Toto", "Beagle");
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void searchMatchesWordPrefixesWithNameMatchesFirst() {
+        assertEquals(names("Terry", "Rex"), search("ter", null, null));
+    }
+
+    @Test
+    public void searchIgnoresCaseAndOperators() {
+        assertEquals(names("Toto"), search("TOTO", null, null));
+        assertEquals(names(), search("toto NOT", null, null));
+    }
+
+    @Test
+    public void searchWithoutWordsReturnsNothing() {
+        assertEquals(names(), search(" ,; ", null, null));
+    }
+
+    @Test
+    public void searchIsNarrowedBySelection() {
+        assertEquals(names("Rex"), search("ter", PetEntry.COLUMN_PET_NAME + "=?", new String[]{"Rex"}));
+    }
+
+    @Test
+    public void searchSkipsDeletedPets() {
+        mContentResolver.delete(PetEntry.CONTENT_URI, PetEntry.COLUMN_PET_NAME + "=?", new String[]{"Terry"});
+
+        assertEquals(names("Rex"), search("ter", null, null));
+    }
+
+    private void insertPet(String name, String breed) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_BREED, breed);
+        mContentResolver.insert(PetEntry.CONTENT_URI, values);
+    }
+
+    private List<String> search(String searchQuery, String selection, String[] selectionArgs) {
+        List<String> names = new ArrayList<String>();
+        Cursor cursor = mContentResolver.query(PetEntry.buildSearchUri(searchQuery, 10), NAME_PROJECTION,
+                selection, selectionArgs, null);
+        try {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+
+    private static List<String> names(String... names) {
+        List<String> list = new ArrayList<String>();
+        for (String name : names) {
+            list.add(name);
+        }
+        return list;
+    }
+}
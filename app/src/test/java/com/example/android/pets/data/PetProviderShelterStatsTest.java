@@ -0,0 +1,161 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The shelter statistics aggregated over the columnar snapshot match the ones counted by walking
+ * the rows, after writes too, and the parallel counts match the ones of a single thread.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetProviderShelterStatsTest {
+
+    private static final int PET_COUNT = 500;
+    private static final int LARGE_PET_COUNT = 100000;
+    private static final String[] BREEDS = {null, "Beagle", "Collie", "Terrier"};
+
+    private PetProvider mProvider;
+    private ContentResolver mContentResolver;
+    private final Random mRandom = new Random(14);
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class);
+        ShadowContentResolver.registerProviderInternal(PetContract.CONTENT_AUTHORITY, mProvider);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void statsMatchWalkOfTheRowsAfterWrites() {
+        ContentValues[] pets = new ContentValues[PET_COUNT];
+        for (int i = 0; i < PET_COUNT; i++) {
+            pets[i] = newPet(i);
+        }
+        mContentResolver.bulkInsert(PetEntry.CONTENT_URI, pets);
+        checkStatsMatchWalk(3);
+
+        mContentResolver.delete(ContentUris.withAppendedId(PetEntry.CONTENT_URI, 1), null, null);
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 99);
+        mContentResolver.update(ContentUris.withAppendedId(PetEntry.CONTENT_URI, 2), values, null, null);
+        checkStatsMatchWalk(PetContract.DEFAULT_WEIGHT_BUCKET_WIDTH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroWeightBucketWidthIsRejected() {
+        mProvider.call(PetContract.METHOD_SHELTER_STATS, "0", null);
+    }
+
+    @Test
+    public void parallelCountsMatchSingleThreadCounts() {
+        MatrixCursor cursor = new MatrixCursor(PetEntry.EDITOR_PROJECTION, LARGE_PET_COUNT);
+        for (int i = 0; i < LARGE_PET_COUNT; i++) {
+            cursor.addRow(new Object[]{i + 1, "Pet " + i, BREEDS[mRandom.nextInt(BREEDS.length)],
+                    mRandom.nextInt(PetEntry.GENDER_FEMALE + 1), mRandom.nextInt(60)});
+        }
+        PetColumnarSnapshot snapshot = PetColumnarSnapshot.read(cursor);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertArrayEquals(snapshot.countByGender(null), snapshot.countByGender(executor));
+            assertArrayEquals(snapshot.countByBreed(null), snapshot.countByBreed(executor));
+            assertArrayEquals(snapshot.weightHistogram(7, null), snapshot.weightHistogram(7, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void checkStatsMatchWalk(int weightBucketWidth) {
+        int[] countByGender = new int[PetEntry.GENDER_FEMALE + 1];
+        Map<String, int[]> breedStats = new HashMap<String, int[]>();
+        int[] weightHistogram = new int[0];
+        int petCount = 0;
+
+        Cursor cursor = mContentResolver.query(PetEntry.CONTENT_URI, PetEntry.EDITOR_PROJECTION, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                petCount++;
+                int weight = cursor.getInt(cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_WEIGHT));
+                countByGender[cursor.getInt(cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_GENDER))]++;
+                int bucket = weight / weightBucketWidth;
+                if (bucket >= weightHistogram.length) {
+                    weightHistogram = Arrays.copyOf(weightHistogram, bucket + 1);
+                }
+                weightHistogram[bucket]++;
+
+                String breed = cursor.getString(cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_BREED));
+                if (breed != null) {
+                    int[] stats = breedStats.get(breed);
+                    if (stats == null) {
+                        stats = new int[2];
+                        breedStats.put(breed, stats);
+                    }
+                    stats[0]++;
+                    stats[1] += weight;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Bundle stats = mProvider.call(PetContract.METHOD_SHELTER_STATS, Integer.toString(weightBucketWidth), null);
+        assertEquals(petCount, stats.getInt(PetContract.KEY_PET_COUNT));
+        assertArrayEquals(countByGender, stats.getIntArray(PetContract.KEY_COUNT_BY_GENDER));
+        assertArrayEquals(weightHistogram, stats.getIntArray(PetContract.KEY_WEIGHT_HISTOGRAM));
+
+        String[] breeds = stats.getStringArray(PetContract.KEY_BREEDS);
+        int[] countByBreed = stats.getIntArray(PetContract.KEY_COUNT_BY_BREED);
+        double[] averageWeightByBreed = stats.getDoubleArray(PetContract.KEY_AVERAGE_WEIGHT_BY_BREED);
+        assertEquals(breedStats.size(), breeds.length);
+        for (int i = 0; i < breeds.length; i++) {
+            int[] breedStat = breedStats.get(breeds[i]);
+            assertEquals(breedStat[0], countByBreed[i]);
+            assertEquals((double) breedStat[1] / breedStat[0], averageWeightByBreed[i], 1e-9);
+        }
+    }
+
+    private ContentValues newPet(int index) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, "Pet " + index);
+        String breed = BREEDS[mRandom.nextInt(BREEDS.length)];
+        if (breed != null) {
+            values.put(PetEntry.COLUMN_PET_BREED, breed);
+        }
+        values.put(PetEntry.COLUMN_PET_GENDER, mRandom.nextInt(PetEntry.GENDER_FEMALE + 1));
+        values.put(PetEntry.COLUMN_PET_WEIGHT, mRandom.nextInt(60));
+        return values;
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.android.pets.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The query cache of {@link PetProvider}: a query repeated without a write in between is a hit,
+ * and a result is never served once a write committed, whatever the kind of write.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetQueryCacheTest {
+
+    private static final String CACHE_SIZE_BYTES = Integer.toString(1024 * 1024);
+    private static final String[] WEIGHT_PROJECTION = {PetEntry.COLUMN_PET_WEIGHT};
+
+    private PetProvider mProvider;
+    private ContentResolver mContentResolver;
+    private Uri mPetUri;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class);
+        ShadowContentResolver.registerProviderInternal(PetContract.CONTENT_AUTHORITY, mProvider);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+        mProvider.call(PetContract.METHOD_SET_QUERY_CACHE_SIZE, CACHE_SIZE_BYTES, null);
+        mPetUri = insertPet("Toto", 1);
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void repeatedQueryIsServedFromCache() {
+        assertEquals(1, queryWeight(mPetUri));
+        assertEquals(1, queryWeight(mPetUri));
+
+        assertTrue(dumpMetrics(), dumpMetrics().contains("query cache: hits 1 misses 1 "));
+    }
+
+    @Test
+    public void insertIsSeenByCachedQuery() {
+        assertEquals(1, countPets());
+
+        insertPet("Rex", 2);
+
+        assertEquals(2, countPets());
+    }
+
+    @Test
+    public void updateIsSeenByCachedQuery() {
+        assertEquals(1, queryWeight(mPetUri));
+
+        updateWeight(mPetUri, 2);
+
+        assertEquals(2, queryWeight(mPetUri));
+    }
+
+    @Test
+    public void updateOfAllPetsIsSeenByCachedQuery() {
+        assertEquals(1, queryWeight(mPetUri));
+
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 3);
+        mContentResolver.update(PetEntry.CONTENT_URI, values, null, null);
+
+        assertEquals(3, queryWeight(mPetUri));
+    }
+
+    @Test
+    public void deleteAndRestoreAreSeenByCachedQuery() {
+        assertEquals(1, countPets());
+
+        long deletedAt = PetWriteQueue.newDeletionTime();
+        mContentResolver.delete(PetEntry.buildDeleteUri(mPetUri, deletedAt), null, null);
+        assertEquals(0, countPets());
+
+        mContentResolver.update(PetEntry.buildRestoreUri(deletedAt), new ContentValues(), null, null);
+        assertEquals(1, countPets());
+    }
+
+    @Test
+    public void bulkInsertIsSeenByCachedQuery() {
+        assertEquals(1, countPets());
+
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, "Rex");
+        mContentResolver.bulkInsert(PetEntry.CONTENT_URI, new ContentValues[]{values, values});
+
+        assertEquals(3, countPets());
+    }
+
+    @Test
+    public void batchIsSeenByCachedQuery() throws Exception {
+        assertEquals(1, queryWeight(mPetUri));
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newUpdate(mPetUri)
+                .withValue(PetEntry.COLUMN_PET_WEIGHT, 4).build());
+        mProvider.applyBatch(operations);
+
+        assertEquals(4, queryWeight(mPetUri));
+    }
+
+    @Test
+    public void cachedResultIsNeverServedAfterConcurrentWrite() throws InterruptedException {
+        final int updates = 300;
+        final AtomicReference<Throwable> writerFailure = new AtomicReference<Throwable>();
+        final int[] committedWeight = {1};
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int weight = 2; weight <= updates; weight++) {
+                        updateWeight(mPetUri, weight);
+                        synchronized (committedWeight) {
+                            committedWeight[0] = weight;
+                        }
+                    }
+                } catch (Throwable e) {
+                    writerFailure.set(e);
+                }
+            }
+        });
+
+        writer.start();
+        int readWeight = 0;
+        while (readWeight < updates) {
+            int weightBeforeQuery;
+            synchronized (committedWeight) {
+                weightBeforeQuery = committedWeight[0];
+            }
+            readWeight = queryWeight(mPetUri);
+            // Any write committed before the query started must be seen
+            assertTrue(readWeight + " read after " + weightBeforeQuery + " committed",
+                    readWeight >= weightBeforeQuery);
+        }
+        writer.join();
+
+        assertNull(writerFailure.get());
+    }
+
+    @Test
+    public void resultOfOlderGenerationIsNotStored() {
+        PetQueryCache petQueryCache = new PetQueryCache(1024 * 1024);
+        assertNull(petQueryCache.get("key", 2));
+
+        // A query that started before the write of generation 2 committed
+        petQueryCache.put("key", 1, newWeightCursor(1)).close();
+
+        assertNull(petQueryCache.get("key", 2));
+    }
+
+    @Test
+    public void lookupWithNewerGenerationDropsOlderResults() {
+        PetQueryCache petQueryCache = new PetQueryCache(1024 * 1024);
+        petQueryCache.put("key", 1, newWeightCursor(1)).close();
+
+        assertNull(petQueryCache.get("key", 2));
+        assertNull(petQueryCache.get("key", 1));
+    }
+
+    @Test
+    public void zeroCacheSizeDisablesCache() {
+        mProvider.call(PetContract.METHOD_SET_QUERY_CACHE_SIZE, "0", null);
+
+        queryWeight(mPetUri);
+
+        assertTrue(!dumpMetrics().contains("query cache"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeCacheSizeIsRejected() {
+        mProvider.call(PetContract.METHOD_SET_QUERY_CACHE_SIZE, "-1", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedCacheSizeIsRejected() {
+        mProvider.call(PetContract.METHOD_SET_QUERY_CACHE_SIZE, "1MB", null);
+    }
+
+    private Uri insertPet(String name, int weight) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+        return mContentResolver.insert(PetEntry.CONTENT_URI, values);
+    }
+
+    private void updateWeight(Uri petUri, int weight) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+        assertEquals(1, mContentResolver.update(petUri, values, null, null));
+    }
+
+    private int queryWeight(Uri petUri) {
+        Cursor cursor = mContentResolver.query(petUri, WEIGHT_PROJECTION, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countPets() {
+        Cursor cursor = mContentResolver.query(PetEntry.CONTENT_URI, new String[]{PetEntry._ID}, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String dumpMetrics() {
+        return mProvider.call(PetContract.METHOD_DUMP_METRICS, null, null).getString(PetContract.KEY_METRICS_DUMP);
+    }
+
+    private static Cursor newWeightCursor(int weight) {
+        MatrixCursor cursor = new MatrixCursor(WEIGHT_PROJECTION);
+        cursor.addRow(new Object[]{weight});
+        return cursor;
+    }
+}
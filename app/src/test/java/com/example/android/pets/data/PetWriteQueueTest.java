@@ -0,0 +1,163 @@
+package com.example.android.pets.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Looper;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The write queue reports the result of each write, and the exception of a write the provider
+ * rejects, through the callbacks.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetWriteQueueTest {
+
+    private PetProvider mProvider;
+    private PetWriteQueue mPetWriteQueue;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class);
+        ShadowContentResolver.registerProviderInternal(PetContract.CONTENT_AUTHORITY, mProvider);
+        // The writes run on the main looper, when the test lets it run
+        mPetWriteQueue = new PetWriteQueue(RuntimeEnvironment.application.getContentResolver(),
+                Looper.getMainLooper());
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void insertAndUpdateReportTheirResults() {
+        RecordingCallback insertCallback = new RecordingCallback();
+        mPetWriteQueue.insertPet(newPet("Toto", 1), insertCallback);
+        runWrites();
+        assertNotNull(insertCallback.mPetUri);
+
+        RecordingCallback updateCallback = new RecordingCallback();
+        mPetWriteQueue.updatePet(insertCallback.mPetUri, newPet("Rex", 2), updateCallback);
+        runWrites();
+
+        assertEquals(1, updateCallback.mRows);
+        assertEquals(2, queryWeight(insertCallback.mPetUri));
+    }
+
+    @Test
+    public void updatesOfSamePetWaitingForTheWorkerRunOnce() {
+        RecordingCallback insertCallback = new RecordingCallback();
+        mPetWriteQueue.insertPet(newPet("Toto", 1), insertCallback);
+        runWrites();
+        Uri petUri = insertCallback.mPetUri;
+        mProvider.call(PetContract.METHOD_RESET_METRICS, null, null);
+
+        RecordingCallback firstCallback = new RecordingCallback();
+        RecordingCallback secondCallback = new RecordingCallback();
+        ContentValues nameValues = new ContentValues();
+        nameValues.put(PetEntry.COLUMN_PET_NAME, "Rex");
+        ContentValues weightValues = new ContentValues();
+        weightValues.put(PetEntry.COLUMN_PET_WEIGHT, 3);
+        mPetWriteQueue.updatePet(petUri, nameValues, firstCallback);
+        mPetWriteQueue.updatePet(petUri, weightValues, secondCallback);
+        runWrites();
+
+        assertEquals(1, firstCallback.mRows);
+        assertEquals(1, secondCallback.mRows);
+        assertEquals(3, queryWeight(petUri));
+        String metrics = mProvider.call(PetContract.METHOD_DUMP_METRICS, null, null)
+                .getString(PetContract.KEY_METRICS_DUMP);
+        assertTrue(metrics, metrics.contains("update pets/# 1 0 1 "));
+    }
+
+    @Test
+    public void rejectedWriteIsReportedToItsCallback() {
+        RecordingCallback callback = new RecordingCallback();
+        ContentValues invalidPet = newPet("Toto", 1);
+        invalidPet.put(PetEntry.COLUMN_PET_WEIGHT, -1);
+
+        mPetWriteQueue.insertPet(invalidPet, callback);
+        runWrites();
+
+        assertTrue(String.valueOf(callback.mFailure), callback.mFailure instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void deleteOfUnknownPetReportsNoRows() {
+        RecordingCallback callback = new RecordingCallback();
+
+        mPetWriteQueue.deletePets(ContentUris.withAppendedId(PetEntry.CONTENT_URI, 1000), callback);
+        runWrites();
+
+        assertEquals(0, callback.mRows);
+    }
+
+    private static void runWrites() {
+        ShadowLooper.idleMainLooper();
+    }
+
+    private int queryWeight(Uri petUri) {
+        Cursor cursor = mProvider.query(petUri, new String[]{PetEntry.COLUMN_PET_WEIGHT}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues newPet(String name, int weight) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+        return values;
+    }
+
+    private static class RecordingCallback extends PetWriteQueue.WriteCallback {
+
+        private Uri mPetUri;
+        private int mRows = -1;
+        private RuntimeException mFailure;
+
+        @Override
+        public void onInsertComplete(Uri petUri) {
+            mPetUri = petUri;
+        }
+
+        @Override
+        public void onUpdateComplete(int updatedRows) {
+            mRows = updatedRows;
+        }
+
+        @Override
+        public void onDeleteComplete(int deletedRows) {
+            mRows = deletedRows;
+        }
+
+        @Override
+        public void onWriteFailed(RuntimeException e) {
+            mFailure = e;
+        }
+    }
+}
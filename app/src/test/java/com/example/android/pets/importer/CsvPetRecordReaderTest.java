@@ -0,0 +1,193 @@
+package com.example.android.pets.importer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CsvPetRecordReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void readsColumnsInHeaderOrder() throws IOException {
+        CsvPetRecordReader reader = newReader("weight,Breed,NAME,gender\n7,Terrier,Toto,1\n");
+        PetRecord record = new PetRecord();
+
+        assertTrue(reader.readNext(record));
+        assertEquals("Toto", record.mName);
+        assertEquals("Terrier", record.mBreed);
+        assertEquals("1", record.mGender);
+        assertEquals("7", record.mWeight);
+        assertFalse(reader.readNext(record));
+    }
+
+    @Test
+    public void ignoresUnknownColumnsAndLeavesMissingOnesNull() throws IOException {
+        CsvPetRecordReader reader = newReader("color,name\nbrown,Toto\n");
+        PetRecord record = new PetRecord();
+
+        assertTrue(reader.readNext(record));
+        assertEquals("Toto", record.mName);
+        assertNull(record.mBreed);
+        assertNull(record.mGender);
+        assertNull(record.mWeight);
+    }
+
+    @Test
+    public void emptyAndShortRowsGiveNullFields() throws IOException {
+        CsvPetRecordReader reader = newReader("name,breed,weight\nToto, ,\nRex\n");
+        PetRecord record = new PetRecord();
+
+        assertTrue(reader.readNext(record));
+        assertEquals("Toto", record.mName);
+        assertNull(record.mBreed);
+        assertNull(record.mWeight);
+        assertTrue(reader.readNext(record));
+        assertEquals("Rex", record.mName);
+        assertNull(record.mBreed);
+    }
+
+    @Test
+    public void readsQuotedFieldsWithSeparatorsQuotesAndLineBreaks() throws IOException {
+        CsvPetRecordReader reader = newReader("name,breed\n\"Toto, \"\"the\"\" dog\",\"Cairn\nTerrier\"\n");
+        PetRecord record = new PetRecord();
+
+        assertTrue(reader.readNext(record));
+        assertEquals("Toto, \"the\" dog", record.mName);
+        assertEquals("Cairn\nTerrier", record.mBreed);
+        assertFalse(reader.readNext(record));
+    }
+
+    @Test
+    public void acceptsCrLfAndSkipsBlankLines() throws IOException {
+        CsvPetRecordReader reader = newReader("name,breed\r\n\r\nToto,Terrier\r\n\r\n\nRex,Collie");
+        PetRecord record = new PetRecord();
+
+        assertTrue(reader.readNext(record));
+        assertEquals("Toto", record.mName);
+        assertEquals("Terrier", record.mBreed);
+        assertTrue(reader.readNext(record));
+        assertEquals("Rex", record.mName);
+        assertEquals("Collie", record.mBreed);
+        assertFalse(reader.readNext(record));
+    }
+
+    @Test
+    public void decodesUtf8() throws IOException {
+        CsvPetRecordReader reader = newReader("name,breed\nMiélou,Bichon à poil frisé 🐶\n");
+        PetRecord record = new PetRecord();
+
+        assertTrue(reader.readNext(record));
+        assertEquals("Miélou", record.mName);
+        assertEquals("Bichon à poil frisé 🐶", record.mBreed);
+    }
+
+    @Test
+    public void readsFieldsLongerThanBuffer() throws IOException {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 100 * 1024; i++) {
+            name.append((char) ('a' + i % 26));
+        }
+        CsvPetRecordReader reader = newReader("name\n" + name + "\nRex\n");
+        PetRecord record = new PetRecord();
+
+        assertTrue(reader.readNext(record));
+        assertEquals(name.toString(), record.mName);
+        assertTrue(reader.readNext(record));
+        assertEquals("Rex", record.mName);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsEmptyFile() throws IOException {
+        newReader("");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFileWithoutNameColumn() throws IOException {
+        newReader("breed,weight\nTerrier,7\n");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnterminatedQuotedField() throws IOException {
+        CsvPetRecordReader reader = newReader("name\n\"Toto\n");
+
+        reader.readNext(new PetRecord());
+    }
+
+    @Test
+    public void skipNextMovesPastRecordsWithoutReadingThem() throws IOException {
+        CsvPetRecordReader reader = newReader("name\nToto\n\n\"Rex\nthe second\"\nFido\n");
+        PetRecord record = new PetRecord();
+
+        assertTrue(reader.skipNext());
+        assertTrue(reader.skipNext());
+        assertTrue(reader.readNext(record));
+        assertEquals("Fido", record.mName);
+        assertFalse(reader.skipNext());
+    }
+
+    @Test
+    public void seekToPositionResumesAfterReadRecords() throws IOException {
+        String csv = "name,breed\r\nToto,\"Cairn\nTerrier\"\r\nRéx,Collie\r\nFido,Beagle\r\n";
+        CsvPetRecordReader reader = newReader(csv);
+        PetRecord record = new PetRecord();
+        assertTrue(reader.readNext(record));
+        assertTrue(reader.readNext(record));
+        long position = reader.getPosition();
+
+        CsvPetRecordReader resumedReader = newReader(csv);
+        assertTrue(resumedReader.seek(position));
+
+        assertEquals(position, resumedReader.getPosition());
+        assertTrue(resumedReader.readNext(record));
+        assertEquals("Fido", record.mName);
+        assertEquals("Beagle", record.mBreed);
+        assertFalse(resumedReader.readNext(record));
+    }
+
+    @Test
+    public void seekBeyondBufferSkipsTheStream() throws IOException {
+        StringBuilder csv = new StringBuilder("name\n");
+        for (int i = 0; i < 20000; i++) {
+            csv.append("Pet ").append(i).append('\n');
+        }
+        CsvPetRecordReader reader = newReader(csv.toString());
+        PetRecord record = new PetRecord();
+        for (int i = 0; i < 15000; i++) {
+            assertTrue(reader.skipNext());
+        }
+        long position = reader.getPosition();
+
+        CsvPetRecordReader resumedReader = newReader(csv.toString());
+        assertTrue(resumedReader.seek(position));
+
+        assertTrue(resumedReader.readNext(record));
+        assertEquals("Pet 15000", record.mName);
+    }
+
+    @Test(expected = IOException.class)
+    public void seekBeyondEndOfFileFails() throws IOException {
+        newReader("name\nToto\n").seek(1000);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void seekAfterReadingFails() throws IOException {
+        CsvPetRecordReader reader = newReader("name\nToto\nRex\n");
+        reader.readNext(new PetRecord());
+
+        reader.seek(reader.getPosition());
+    }
+
+    private static CsvPetRecordReader newReader(String csv) throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(csv.getBytes(UTF_8));
+        return new CsvPetRecordReader(inputStream);
+    }
+}
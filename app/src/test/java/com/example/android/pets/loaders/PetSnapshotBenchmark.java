@@ -0,0 +1,167 @@
+package com.example.android.pets.loaders;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.adapters.PetRecyclerAdapter;
+import com.example.android.pets.benchmark.PetBenchmarkConfig;
+import com.example.android.pets.benchmark.PetBenchmarkRecorder;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.Pet;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Time to apply a reload of a catalog of 50000 pets in which a few pets changed: the diff the
+ * loader computes in the background, and the diff dispatched to the adapter of a laid out list
+ * on the main thread, against redrawing the whole list as the cursor adapter did.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetSnapshotBenchmark {
+
+    private static final int PET_COUNT = 50000;
+    private static final int CHANGED_PET_COUNT = 10;
+    private static final int LIST_WIDTH = 1080;
+    private static final int LIST_HEIGHT = 1920;
+
+    private final Random mRandom = new Random(9);
+
+    @Test
+    public void applyReloadOfLargeList() {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetSnapshotBenchmark.class);
+        Context context = RuntimeEnvironment.application;
+
+        List<Pet> pets = newPets();
+        List<Pet> changedPets = changePets(pets);
+        PetRecyclerAdapter adapter = new PetRecyclerAdapter(context, null);
+        RecyclerView recyclerView = new RecyclerView(context);
+        recyclerView.setLayoutManager(new LinearLayoutManager(context));
+        // Only the binds and the layout are measured, not the animations of the changed items
+        recyclerView.setItemAnimator(null);
+        recyclerView.setAdapter(adapter);
+
+        SwitchingPetsLoader loader = new SwitchingPetsLoader(context);
+        loader.startLoading();
+        loader.mNextPets = pets;
+        PetSnapshot snapshot = loader.loadInBackground();
+        // A snapshot that wasn't computed against the pets shown, so the adapter redraws the list
+        PetSnapshot redrawSnapshot = new PetSnapshot(new ArrayList<Pet>(), changedPets, null);
+
+        int operations = Math.max(PetBenchmarkConfig.getOperations() / 10, 1);
+        int warmUpOperations = Math.max(operations / 10, 1);
+        PetBenchmarkRecorder diffRecorder = new PetBenchmarkRecorder(operations);
+        PetBenchmarkRecorder dispatchRecorder = new PetBenchmarkRecorder(operations);
+        PetBenchmarkRecorder redrawRecorder = new PetBenchmarkRecorder(operations);
+        for (int i = 0; i < warmUpOperations + operations; i++) {
+            boolean measured = i >= warmUpOperations;
+
+            // Show the pets before the reload, as delivered by the loader
+            adapter.swapSnapshot(snapshot);
+            layOut(recyclerView);
+            loader.deliverResult(snapshot);
+            loader.mNextPets = changedPets;
+
+            start(diffRecorder, measured);
+            PetSnapshot changedSnapshot = loader.loadInBackground();
+            stop(diffRecorder, measured);
+
+            start(dispatchRecorder, measured);
+            adapter.swapSnapshot(changedSnapshot);
+            layOut(recyclerView);
+            stop(dispatchRecorder, measured);
+
+            adapter.swapSnapshot(snapshot);
+            layOut(recyclerView);
+
+            start(redrawRecorder, measured);
+            adapter.swapSnapshot(redrawSnapshot);
+            layOut(recyclerView);
+            stop(redrawRecorder, measured);
+        }
+
+        report.add("calculate_diff", PET_COUNT, 1, diffRecorder);
+        report.add("dispatch_diff", PET_COUNT, 1, dispatchRecorder);
+        report.add("redraw", PET_COUNT, 1, redrawRecorder);
+        report.write();
+    }
+
+    private static void start(PetBenchmarkRecorder recorder, boolean measured) {
+        if (measured) {
+            recorder.start();
+        }
+    }
+
+    private static void stop(PetBenchmarkRecorder recorder, boolean measured) {
+        if (measured) {
+            recorder.stop();
+        }
+    }
+
+    /**
+     * Measure and lay out the list, which binds the rows that changed on screen.
+     */
+    private static void layOut(RecyclerView recyclerView) {
+        recyclerView.measure(View.MeasureSpec.makeMeasureSpec(LIST_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(LIST_HEIGHT, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, LIST_WIDTH, LIST_HEIGHT);
+    }
+
+    private static List<Pet> newPets() {
+        List<Pet> pets = new ArrayList<Pet>(PET_COUNT);
+        for (int i = 1; i <= PET_COUNT; i++) {
+            pets.add(new Pet(i, "Pet " + i, i % 10 == 0 ? null : "Terrier", i % 3, 1 + i % 60));
+        }
+        return pets;
+    }
+
+    /**
+     * @return the pets with a pet removed, a pet added at the end and the weight of the others
+     * of the changed pets updated, one of them on the first screen
+     */
+    private List<Pet> changePets(List<Pet> pets) {
+        List<Pet> changedPets = new ArrayList<Pet>(pets);
+        for (int i = 0; i < CHANGED_PET_COUNT - 2; i++) {
+            int position = i == 0 ? 3 : mRandom.nextInt(changedPets.size());
+            Pet pet = changedPets.get(position);
+            changedPets.set(position, new Pet(pet.getId(), pet.getName(), pet.getBreed(), pet.getGender(),
+                    pet.getWeight() + 1));
+        }
+        changedPets.remove(mRandom.nextInt(changedPets.size()));
+        changedPets.add(new Pet(PET_COUNT + 1, "Pet " + (PET_COUNT + 1), "Terrier", 0, 1));
+        return changedPets;
+    }
+
+    /**
+     * Loads the pets it is given, on the calling thread: loading is only started to leave the
+     * reset state in which the loader drops the delivered snapshots.
+     */
+    private static class SwitchingPetsLoader extends PetSnapshotLoader {
+
+        private List<Pet> mNextPets;
+
+        SwitchingPetsLoader(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onForceLoad() {
+        }
+
+        @Override
+        protected List<Pet> loadPets(List<Pet> previousPets) {
+            return mNextPets;
+        }
+    }
+}
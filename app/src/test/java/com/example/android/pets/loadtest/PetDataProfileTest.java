@@ -0,0 +1,138 @@
+package com.example.android.pets.loadtest;
+
+import android.content.ContentValues;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Validation of the profiles and the pets they make. The profile checks its names and weights
+ * against {@link PetEntry}, whose content URIs need the platform classes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetDataProfileTest {
+
+    private static final String[] NAMES = {"Toto", "Rex", "Fido"};
+    private static final String[] BREEDS = {"Terrier", "Collie"};
+    private static final int[] GENDER_WEIGHTS = {1, 1, 1};
+
+    @Test
+    public void validProfileKeepsItsSettings() {
+        PetDataProfile profile = new PetDataProfile(7, 100, NAMES, 1.0, BREEDS, 0, GENDER_WEIGHTS, 2, 9);
+
+        assertEquals(7, profile.getSeed());
+        assertEquals(100, profile.getPetCount());
+        assertEquals(1.0, profile.getNameSkew(), 0);
+        assertEquals(0, profile.getBreedSkew(), 0);
+        assertEquals(1, profile.getGenderWeight(PetEntry.GENDER_MALE));
+        assertEquals(2, profile.getMinWeight());
+        assertEquals(9, profile.getMaxWeight());
+    }
+
+    @Test
+    public void profileCopiesItsArrays() {
+        String[] names = NAMES.clone();
+        PetDataProfile profile = new PetDataProfile(7, 100, names, 1.0, BREEDS, 0, GENDER_WEIGHTS, 2, 9);
+
+        names[0] = "Changed";
+
+        assertEquals("Toto", profile.getNames()[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroPetCountIsRejected() {
+        new PetDataProfile(7, 0, NAMES, 1.0, BREEDS, 1.0, GENDER_WEIGHTS, 1, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyNamesAreRejected() {
+        new PetDataProfile(7, 100, new String[0], 1.0, BREEDS, 1.0, GENDER_WEIGHTS, 1, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyBreedsAreRejected() {
+        new PetDataProfile(7, 100, NAMES, 1.0, new String[0], 1.0, GENDER_WEIGHTS, 1, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidNameIsRejected() {
+        new PetDataProfile(7, 100, new String[]{"Toto", null}, 1.0, BREEDS, 1.0, GENDER_WEIGHTS, 1, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeSkewIsRejected() {
+        new PetDataProfile(7, 100, NAMES, -0.5, BREEDS, 1.0, GENDER_WEIGHTS, 1, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingGenderWeightIsRejected() {
+        new PetDataProfile(7, 100, NAMES, 1.0, BREEDS, 1.0, new int[]{1, 1}, 1, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeGenderWeightIsRejected() {
+        new PetDataProfile(7, 100, NAMES, 1.0, BREEDS, 1.0, new int[]{1, -1, 1}, 1, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void allZeroGenderWeightsAreRejected() {
+        new PetDataProfile(7, 100, NAMES, 1.0, BREEDS, 1.0, new int[]{0, 0, 0}, 1, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMinWeightIsRejected() {
+        new PetDataProfile(7, 100, NAMES, 1.0, BREEDS, 1.0, GENDER_WEIGHTS, -1, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invertedWeightRangeIsRejected() {
+        new PetDataProfile(7, 100, NAMES, 1.0, BREEDS, 1.0, GENDER_WEIGHTS, 9, 1);
+    }
+
+    @Test
+    public void sameProfileMakesSamePets() {
+        PetDataGenerator first = new PetDataGenerator(PetDataProfile.DEFAULT);
+        PetDataGenerator second = new PetDataGenerator(PetDataProfile.DEFAULT);
+        ContentValues firstPet = new ContentValues();
+        ContentValues secondPet = new ContentValues();
+
+        for (int i = 0; i < 1000; i++) {
+            first.nextPet(firstPet);
+            second.nextPet(secondPet);
+            assertEquals(firstPet, secondPet);
+        }
+    }
+
+    @Test
+    public void petsFollowTheProfile() {
+        PetDataProfile profile = new PetDataProfile(7, 100, NAMES, 2.0, BREEDS, 0, new int[]{0, 1, 0}, 3, 5);
+        PetDataGenerator generator = new PetDataGenerator(profile);
+        ContentValues pet = new ContentValues();
+        Map<String, Integer> nameCounts = new HashMap<String, Integer>();
+
+        for (int i = 0; i < 3000; i++) {
+            generator.nextPet(pet);
+            String name = pet.getAsString(PetEntry.COLUMN_PET_NAME);
+            nameCounts.put(name, nameCounts.containsKey(name) ? nameCounts.get(name) + 1 : 1);
+            assertEquals(PetEntry.GENDER_MALE, (int) pet.getAsInteger(PetEntry.COLUMN_PET_GENDER));
+            int weight = pet.getAsInteger(PetEntry.COLUMN_PET_WEIGHT);
+            assertTrue(weight >= 3 && weight <= 5);
+        }
+
+        // With a skew of 2 the weights of the names are 1, 1/4 and 1/9
+        assertTrue(nameCounts.toString(), nameCounts.get("Toto") > nameCounts.get("Rex"));
+        assertTrue(nameCounts.toString(), nameCounts.get("Rex") > nameCounts.get("Fido"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.android.pets.loadtest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PetLoadRecorderTest {
+
+    private static final long NANOS_PER_MICRO = 1000;
+
+    @Test
+    public void percentilesUseNearestRank() {
+        PetLoadRecorder recorder = new PetLoadRecorder(100);
+        // Recorded out of order, 1 to 100 microseconds
+        for (int i = 100; i >= 1; i--) {
+            recorder.recordSuccess(i * NANOS_PER_MICRO, 1);
+        }
+
+        PetLoadReport report = recorder.toReport(1000);
+
+        assertEquals(50, report.getP50Micros());
+        assertEquals(99, report.getP99Micros());
+        assertEquals(100, report.getOperations());
+    }
+
+    @Test
+    public void percentilesOfFewLatenciesRoundUp() {
+        PetLoadRecorder recorder = new PetLoadRecorder(3);
+        recorder.recordSuccess(30 * NANOS_PER_MICRO, 1);
+        recorder.recordSuccess(10 * NANOS_PER_MICRO, 1);
+        recorder.recordSuccess(20 * NANOS_PER_MICRO, 1);
+
+        PetLoadReport report = recorder.toReport(1000);
+
+        assertEquals(20, report.getP50Micros());
+        assertEquals(30, report.getP99Micros());
+    }
+
+    @Test
+    public void singleLatencyIsEveryPercentile() {
+        PetLoadRecorder recorder = new PetLoadRecorder(1);
+        recorder.recordSuccess(7 * NANOS_PER_MICRO, 1);
+
+        PetLoadReport report = recorder.toReport(1000);
+
+        assertEquals(7, report.getP50Micros());
+        assertEquals(7, report.getP99Micros());
+    }
+
+    @Test
+    public void emptyRunReportsZeros() {
+        PetLoadReport report = new PetLoadRecorder(0).toReport(0);
+
+        assertEquals(0, report.getOperations());
+        assertEquals(0, report.getOperationsPerSecond());
+        assertEquals(0, report.getP50Micros());
+        assertEquals(0, report.getP99Micros());
+        assertNull(report.getFirstError());
+    }
+
+    @Test
+    public void growsBeyondExpectedCount() {
+        PetLoadRecorder recorder = new PetLoadRecorder(1);
+        for (int i = 1; i <= 1000; i++) {
+            recorder.recordSuccess(i * NANOS_PER_MICRO, 1);
+        }
+
+        PetLoadReport report = recorder.toReport(1000);
+
+        assertEquals(1000, report.getOperations());
+        assertEquals(500, report.getP50Micros());
+        assertEquals(990, report.getP99Micros());
+    }
+
+    @Test
+    public void bulkCallCountsEveryOperationButOneLatency() {
+        PetLoadRecorder recorder = new PetLoadRecorder(2);
+        recorder.recordSuccess(100 * NANOS_PER_MICRO, 500);
+        recorder.recordSuccess(300 * NANOS_PER_MICRO, 500);
+
+        PetLoadReport report = recorder.toReport(2000);
+
+        assertEquals(1000, report.getOperations());
+        assertEquals(500, report.getOperationsPerSecond());
+        assertEquals(100, report.getP50Micros());
+        assertEquals(300, report.getP99Micros());
+    }
+
+    @Test
+    public void addAllMergesLatenciesCountsAndFirstError() {
+        PetLoadRecorder first = new PetLoadRecorder(2);
+        first.recordSuccess(10 * NANOS_PER_MICRO, 1);
+        first.recordSuccess(30 * NANOS_PER_MICRO, 1);
+        PetLoadRecorder second = new PetLoadRecorder(2);
+        second.recordSuccess(20 * NANOS_PER_MICRO, 1);
+        second.recordSuccess(40 * NANOS_PER_MICRO, 1);
+        second.recordFailure(new IllegalStateException("boom"));
+
+        first.addAll(second);
+        PetLoadReport report = first.toReport(1000);
+
+        assertEquals(4, report.getOperations());
+        assertEquals(1, report.getErrors());
+        assertEquals(0, report.getLockTimeouts());
+        assertEquals(20, report.getP50Micros());
+        assertEquals(40, report.getP99Micros());
+        assertEquals(new IllegalStateException("boom").toString(), report.getFirstError());
+    }
+
+    @Test
+    public void failuresKeepTheFirstError() {
+        PetLoadRecorder recorder = new PetLoadRecorder(0);
+        recorder.recordFailure(new IllegalArgumentException("first"));
+        recorder.recordFailure(new IllegalStateException("second"));
+
+        PetLoadReport report = recorder.toReport(1000);
+
+        assertEquals(2, report.getErrors());
+        assertEquals(new IllegalArgumentException("first").toString(), report.getFirstError());
+    }
+}
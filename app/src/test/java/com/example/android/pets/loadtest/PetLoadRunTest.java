@@ -0,0 +1,60 @@
+package com.example.android.pets.loadtest;
+
+import android.content.Context;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetDbHelper;
+import com.example.android.pets.data.PetDbProfile;
+import com.example.android.pets.data.PetProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * A small fill and stress run against a provider of its own, as the load test service runs them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetLoadRunTest {
+
+    private static final String DB_NAME = "load_run_test.db";
+    private static final PetDataProfile PROFILE = new PetDataProfile(42, 2000, new String[]{"Toto", "Rex"}, 1.0,
+            new String[]{"Terrier", "Collie"}, 1.0, new int[]{1, 1, 1}, 1, 60);
+
+    private Context mContext;
+    private PetProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mProvider = new PetProvider(DB_NAME, PetDbProfile.DEFAULT);
+        mProvider.attachInfo(mContext, null);
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+        mContext.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void fillAndStressRunWithoutTouchingTheShelterDatabase() throws InterruptedException {
+        PetLoadReport fillReport = new PetDataGenerator(PROFILE).insertPets(mProvider, 300);
+        PetLoadReport stressReport = new PetStressTest(mProvider, PROFILE, 3, 200, 20).run();
+
+        assertEquals(PROFILE.getPetCount(), fillReport.getOperations());
+        assertEquals(0, fillReport.getErrors());
+        assertNull(stressReport.getFirstError(), stressReport.getFirstError());
+        assertEquals(3 * 200, stressReport.getOperations());
+        assertFalse(mContext.getDatabasePath(PetDbHelper.DB_NAME).exists());
+    }
+}
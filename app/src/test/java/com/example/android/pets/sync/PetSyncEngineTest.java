@@ -0,0 +1,370 @@
+package com.example.android.pets.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import com.example.android.pets.BuildConfig;
+import com.example.android.pets.data.PetContract;
+import com.example.android.pets.data.PetContract.PetEntry;
+import com.example.android.pets.data.PetDbHelper;
+import com.example.android.pets.data.PetDbProfile;
+import com.example.android.pets.data.PetProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Two devices, each with a provider over a database of its own, syncing through a
+ * {@link LocalPetSyncServer}. Small batches make every sync run over several of them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetSyncEngineTest {
+
+    private static final int BATCH_SIZE = 2;
+
+    private LocalPetSyncServer mServer;
+    private Device mFirstDevice;
+    private Device mSecondDevice;
+
+    @Before
+    public void setUp() {
+        mServer = new LocalPetSyncServer();
+        mFirstDevice = new Device("first");
+        mSecondDevice = new Device("second");
+    }
+
+    @After
+    public void tearDown() {
+        mFirstDevice.close();
+        mSecondDevice.close();
+    }
+
+    @Test
+    public void pushedRowsAreAcknowledged() throws IOException {
+        mFirstDevice.insertPet("Toto");
+        mFirstDevice.insertPet("Rex");
+        mFirstDevice.insertPet("Fido");
+        assertEquals(3, mFirstDevice.countChangedRows());
+
+        mFirstDevice.sync(mServer);
+
+        assertEquals(3, mServer.getRowCount());
+        assertEquals(0, mFirstDevice.countChangedRows());
+    }
+
+    @Test
+    public void pulledRowsReachTheOtherDevice() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            mFirstDevice.insertPet("Pet " + i);
+        }
+        mFirstDevice.sync(mServer);
+
+        mSecondDevice.sync(mServer);
+
+        assertEquals(Arrays.asList("Pet 0", "Pet 1", "Pet 2", "Pet 3", "Pet 4"), mSecondDevice.queryNames());
+        // Pulled rows are synced already, they aren't pushed back
+        assertEquals(0, mSecondDevice.countChangedRows());
+    }
+
+    @Test
+    public void interruptedPullResumesAfterTheCommittedBatches() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            mFirstDevice.insertPet("Pet " + i);
+        }
+        mFirstDevice.sync(mServer);
+        RecordingTransport failingTransport = new RecordingTransport(mServer, 1);
+
+        try {
+            mSecondDevice.sync(failingTransport);
+            fail("The second pull should have failed");
+        } catch (IOException e) {
+            // Expected, the first batch stays merged
+        }
+        assertEquals(Arrays.asList("Pet 0", "Pet 1"), mSecondDevice.queryNames());
+
+        RecordingTransport transport = new RecordingTransport(mServer, Integer.MAX_VALUE);
+        mSecondDevice.sync(transport);
+
+        assertEquals(Arrays.asList(2L, 4L), transport.mPullSequences);
+        assertEquals(Arrays.asList("Pet 0", "Pet 1", "Pet 2", "Pet 3", "Pet 4"), mSecondDevice.queryNames());
+    }
+
+    @Test
+    public void deletionReachesTheOtherDevice() throws IOException {
+        Uri petUri = mFirstDevice.insertPet("Toto");
+        mFirstDevice.insertPet("Rex");
+        mFirstDevice.sync(mServer);
+        mSecondDevice.sync(mServer);
+
+        mFirstDevice.deletePet(petUri);
+        mFirstDevice.sync(mServer);
+        mSecondDevice.sync(mServer);
+
+        assertEquals(Collections.singletonList("Rex"), mSecondDevice.queryNames());
+        assertEquals(2, mServer.getRowCount());
+    }
+
+    @Test
+    public void tombstoneOfPurgedPetIsPushedThenDropped() throws IOException {
+        Uri petUri = mFirstDevice.insertPet("Toto");
+        mFirstDevice.insertPet("Rex");
+        mFirstDevice.sync(mServer);
+        mSecondDevice.sync(mServer);
+
+        // Deleted and purged before the deletion was synced, only the tombstone is left
+        mFirstDevice.deletePet(petUri);
+        mFirstDevice.purgeDeletedPets();
+        assertEquals(1, mFirstDevice.countChangedRows());
+
+        mFirstDevice.sync(mServer);
+        assertEquals(0, mFirstDevice.countChangedRows());
+        mSecondDevice.sync(mServer);
+
+        assertEquals(Collections.singletonList("Rex"), mSecondDevice.queryNames());
+    }
+
+    @Test
+    public void petDeletedBeforeReachingADeviceIsNeverInserted() throws IOException {
+        Uri petUri = mFirstDevice.insertPet("Toto");
+        mFirstDevice.sync(mServer);
+        mFirstDevice.deletePet(petUri);
+        mFirstDevice.sync(mServer);
+
+        mSecondDevice.sync(mServer);
+
+        assertEquals(Collections.<String>emptyList(), mSecondDevice.queryNames());
+        assertEquals(0, mSecondDevice.countChangedRows());
+    }
+
+    @Test
+    public void laterOfConcurrentEditsWinsOnBothDevices() throws Exception {
+        mFirstDevice.insertPet("Toto");
+        mFirstDevice.sync(mServer);
+        mSecondDevice.sync(mServer);
+
+        mFirstDevice.renamePets("Toto", "Toto of the first device");
+        // The update times are in milliseconds
+        Thread.sleep(10);
+        mSecondDevice.renamePets("Toto", "Toto of the second device");
+        mSecondDevice.sync(mServer);
+        mFirstDevice.sync(mServer);
+        mSecondDevice.sync(mServer);
+
+        assertEquals(Collections.singletonList("Toto of the second device"), mFirstDevice.queryNames());
+        assertEquals(Collections.singletonList("Toto of the second device"), mSecondDevice.queryNames());
+        assertEquals(0, mFirstDevice.countChangedRows());
+        assertEquals(0, mSecondDevice.countChangedRows());
+    }
+
+    @Test
+    public void higherVersionWinsOverLaterEdit() throws Exception {
+        mFirstDevice.insertPet("Toto");
+        mFirstDevice.sync(mServer);
+        mSecondDevice.sync(mServer);
+
+        mFirstDevice.renamePets("Toto", "Toto again");
+        mFirstDevice.renamePets("Toto again", "Toto twice");
+        Thread.sleep(10);
+        mSecondDevice.renamePets("Toto", "Toto once");
+        mFirstDevice.sync(mServer);
+        mSecondDevice.sync(mServer);
+
+        assertEquals(Collections.singletonList("Toto twice"), mSecondDevice.queryNames());
+        assertEquals(0, mSecondDevice.countChangedRows());
+    }
+
+    @Test
+    public void serverKeepsNewestRowOfConcurrentPushes() throws IOException {
+        PetSyncRow olderRow = new PetSyncRow("uuid", "Toto", null, PetEntry.GENDER_UNKNOWN, 0, 0, 2, 100);
+        PetSyncRow newerRow = new PetSyncRow("uuid", "Rex", null, PetEntry.GENDER_UNKNOWN, 0, 0, 2, 200);
+
+        push(newerRow);
+        List<PetSyncRow> mergedRows = push(olderRow);
+
+        assertEquals(1, mServer.getRowCount());
+        assertEquals("Rex", mergedRows.get(0).getName());
+        assertEquals("Rex", PetSyncBatch.decode(mServer.pull(0, 10)).getRows().get(0).getName());
+    }
+
+    @Test
+    public void batchRoundTripKeepsRows() throws IOException {
+        PetSyncRow row = new PetSyncRow("uuid", "Miélou 🐶", null, PetEntry.GENDER_FEMALE, 4, 1234, 3, 5678);
+
+        PetSyncBatch batch = PetSyncBatch.decode(new PetSyncBatch(42, true,
+                Collections.singletonList(row)).encode());
+
+        assertEquals(42, batch.getSequence());
+        assertTrue(batch.hasMore());
+        PetSyncRow decodedRow = batch.getRows().get(0);
+        assertEquals("uuid", decodedRow.getUuid());
+        assertEquals("Miélou 🐶", decodedRow.getName());
+        assertNull(decodedRow.getBreed());
+        assertEquals(PetEntry.GENDER_FEMALE, decodedRow.getGender());
+        assertEquals(4, decodedRow.getWeight());
+        assertEquals(1234, decodedRow.getDeletedAt());
+        assertEquals(0, decodedRow.compareStampTo(row));
+    }
+
+    @Test(expected = IOException.class)
+    public void batchDecodeRejectsRowWithoutVersion() throws IOException {
+        PetSyncRow row = new PetSyncRow("uuid", "Toto", null, PetEntry.GENDER_UNKNOWN, 0, 0, 0, 0);
+
+        PetSyncBatch.decode(new PetSyncBatch(0, false, Collections.singletonList(row)).encode());
+    }
+
+    private List<PetSyncRow> push(PetSyncRow row) throws IOException {
+        byte[] request = new PetSyncBatch(0, false, Collections.singletonList(row)).encode();
+        return PetSyncBatch.decode(mServer.push(request)).getRows();
+    }
+
+    /**
+     * Passes the requests to the server, recording the sequence numbers pulled after, and fails
+     * every pull after the allowed ones.
+     */
+    private static final class RecordingTransport implements PetSyncTransport {
+        private final PetSyncTransport mTransport;
+        private final int mAllowedPulls;
+        final List<Long> mPullSequences = new ArrayList<Long>();
+
+        RecordingTransport(PetSyncTransport transport, int allowedPulls) {
+            this.mTransport = transport;
+            this.mAllowedPulls = allowedPulls;
+        }
+
+        @Override
+        public byte[] push(byte[] request) throws IOException {
+            return mTransport.push(request);
+        }
+
+        @Override
+        public byte[] pull(long sinceSequence, int limit) throws IOException {
+            if (mPullSequences.size() == mAllowedPulls) {
+                throw new IOException("Connection lost");
+            }
+            mPullSequences.add(sinceSequence);
+            return mTransport.pull(sinceSequence, limit);
+        }
+    }
+
+    /**
+     * A device: a provider over a database of its own, and sync preferences of its own. The
+     * provider is registered for the authority before every operation, as the engine reaches it
+     * through the content resolver.
+     */
+    private static final class Device {
+        private final String mDatabaseName;
+        private final Context mContext;
+        private final PetProvider mProvider;
+
+        Device(final String name) {
+            mDatabaseName = name + "_sync_test.db";
+            mContext = new ContextWrapper(RuntimeEnvironment.application) {
+                @Override
+                public SharedPreferences getSharedPreferences(String preferencesName, int mode) {
+                    return super.getSharedPreferences(name + "_" + preferencesName, mode);
+                }
+            };
+            mProvider = new PetProvider(mDatabaseName, PetDbProfile.DEFAULT);
+            mProvider.attachInfo(RuntimeEnvironment.application, null);
+        }
+
+        ContentResolver getContentResolver() {
+            ShadowContentResolver.registerProviderInternal(PetContract.CONTENT_AUTHORITY, mProvider);
+            return mContext.getContentResolver();
+        }
+
+        void sync(PetSyncTransport transport) throws IOException {
+            getContentResolver();
+            new PetSyncEngine(mContext, transport, BATCH_SIZE).sync();
+        }
+
+        Uri insertPet(String name) {
+            ContentValues values = new ContentValues();
+            values.put(PetEntry.COLUMN_PET_NAME, name);
+            return getContentResolver().insert(PetEntry.CONTENT_URI, values);
+        }
+
+        void renamePets(String name, String newName) {
+            ContentValues values = new ContentValues();
+            values.put(PetEntry.COLUMN_PET_NAME, newName);
+            assertEquals(1, getContentResolver().update(PetEntry.CONTENT_URI, values,
+                    PetEntry.COLUMN_PET_NAME + "=?", new String[]{name}));
+        }
+
+        void deletePet(Uri petUri) {
+            assertEquals(1, getContentResolver().delete(ContentUris.withAppendedId(PetEntry.CONTENT_URI,
+                    ContentUris.parseId(petUri)), null, null));
+        }
+
+        /**
+         * Purge the deleted pets at once, as the compactor does once their undo window is over.
+         */
+        void purgeDeletedPets() {
+            PetDbHelper petDbHelper = new PetDbHelper(RuntimeEnvironment.application, mDatabaseName,
+                    PetDbProfile.DEFAULT);
+            try {
+                SQLiteDatabase database = petDbHelper.getWritableDatabase();
+                assertTrue(database.delete(PetEntry.TABLE_NAME, PetEntry.COLUMN_PET_DELETED_AT + " IS NOT NULL",
+                        null) > 0);
+            } finally {
+                petDbHelper.close();
+            }
+        }
+
+        List<String> queryNames() {
+            List<String> names = new ArrayList<String>();
+            Cursor cursor = getContentResolver().query(PetEntry.CONTENT_URI, new String[]{PetEntry.COLUMN_PET_NAME},
+                    null, null, PetEntry.COLUMN_PET_NAME);
+            try {
+                while (cursor.moveToNext()) {
+                    names.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+            return names;
+        }
+
+        /**
+         * @return the number of rows the next sync pushes, tombstones included
+         */
+        int countChangedRows() {
+            Cursor cursor = getContentResolver().query(PetEntry.buildSyncUri(100), null, null, null, null);
+            try {
+                return cursor.getCount();
+            } finally {
+                cursor.close();
+            }
+        }
+
+        void close() {
+            mProvider.shutdown();
+            RuntimeEnvironment.application.deleteDatabase(mDatabaseName);
+        }
+    }
+}
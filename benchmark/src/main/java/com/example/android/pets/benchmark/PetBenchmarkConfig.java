@@ -0,0 +1,64 @@
+package com.example.android.pets.benchmark;
+
+import java.io.File;
+
+/**
+ * Settings of a benchmark run, read from the system properties the benchmark task passes on.
+ * <ul>
+ * <li>{@code pets.benchmark.rows}: the comma separated table sizes, 1k, 100k and 1M rows by default</li>
+ * <li>{@code pets.benchmark.operations}: the measured operations of each case, after as many warm up
+ * operations as a tenth of them</li>
+ * <li>{@code pets.benchmark.outputDir}: the directory the JSON results are written to</li>
+ * </ul>
+ */
+public final class PetBenchmarkConfig {
+
+    private static final String PROPERTY_ROWS = "pets.benchmark.rows";
+    private static final String PROPERTY_OPERATIONS = "pets.benchmark.operations";
+    private static final String PROPERTY_OUTPUT_DIR = "pets.benchmark.outputDir";
+
+    private static final String DEFAULT_ROWS = "1000,100000,1000000";
+    private static final int DEFAULT_OPERATIONS = 1000;
+    private static final String DEFAULT_OUTPUT_DIR = "build/benchmark-results";
+
+    private PetBenchmarkConfig() {
+    }
+
+    /**
+     * @return the table sizes to run the benchmarks at, in increasing order
+     */
+    public static int[] getRowCounts() {
+        String[] values = System.getProperty(PROPERTY_ROWS, DEFAULT_ROWS).split(",");
+        int[] rowCounts = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            rowCounts[i] = parsePositiveInt(PROPERTY_ROWS, values[i].trim());
+        }
+        return rowCounts;
+    }
+
+    public static int getOperations() {
+        String value = System.getProperty(PROPERTY_OPERATIONS);
+        return value == null ? DEFAULT_OPERATIONS : parsePositiveInt(PROPERTY_OPERATIONS, value);
+    }
+
+    public static int getWarmUpOperations() {
+        return Math.max(getOperations() / 10, 1);
+    }
+
+    public static File getOutputDirectory() {
+        return new File(System.getProperty(PROPERTY_OUTPUT_DIR, DEFAULT_OUTPUT_DIR));
+    }
+
+    private static int parsePositiveInt(String property, String value) {
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(property + " must be a positive number: " + value);
+        }
+        if (number <= 0) {
+            throw new IllegalArgumentException(property + " must be a positive number: " + value);
+        }
+        return number;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.android.pets.benchmark;
+
+/**
+ * One operation of a benchmark, run again and again while it is measured.
+ */
+public interface PetBenchmarkOperation {
+
+    /**
+     * @param index the number of the run, from 0, counting the warm up runs
+     */
+    void run(int index) throws Exception;
+}
@@ -0,0 +1,113 @@
+package com.example.android.pets.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Records the duration of every measured operation of a benchmark case, and the bytes the
+ * measuring thread allocated meanwhile. A recorder is used by one thread only, the recorders of
+ * the threads of a case are added together at its end.
+ * <p>
+ * Allocations are only counted on the JVMs that report them per thread, and only those of the
+ * measuring thread: work a call hands to another thread, as the SQLite of Robolectric does, is
+ * not counted.
+ */
+public final class PetBenchmarkRecorder {
+
+    private static final int MIN_CAPACITY = 64;
+
+    //Null if the JVM doesn't count the allocations of each thread
+    private static final com.sun.management.ThreadMXBean sThreadMXBean = getAllocationCountingThreadMXBean();
+
+    private long[] mDurationsNanos;
+    private int mCount;
+    private long mAllocatedBytes;
+    //Whether the allocations were counted, which they are only for the operations measured by start and stop
+    private boolean mAllocationsCounted;
+    private long mStartNanos;
+    private long mStartAllocatedBytes;
+
+    public PetBenchmarkRecorder(int expectedCount) {
+        this.mDurationsNanos = new long[Math.max(expectedCount, MIN_CAPACITY)];
+    }
+
+    /**
+     * Start measuring an operation, ended by {@link #stop()}.
+     */
+    public void start() {
+        mStartAllocatedBytes = getThreadAllocatedBytes();
+        mStartNanos = System.nanoTime();
+    }
+
+    public void stop() {
+        long durationNanos = System.nanoTime() - mStartNanos;
+        long allocatedBytes = getThreadAllocatedBytes();
+        if (mStartAllocatedBytes >= 0 && allocatedBytes >= 0) {
+            mAllocatedBytes += allocatedBytes - mStartAllocatedBytes;
+            mAllocationsCounted = true;
+        }
+        record(durationNanos);
+    }
+
+    public void record(long durationNanos) {
+        if (mCount == mDurationsNanos.length) {
+            mDurationsNanos = Arrays.copyOf(mDurationsNanos, mCount * 2);
+        }
+        mDurationsNanos[mCount++] = durationNanos;
+    }
+
+    public void addAll(PetBenchmarkRecorder other) {
+        for (int i = 0; i < other.mCount; i++) {
+            record(other.mDurationsNanos[i]);
+        }
+        mAllocatedBytes += other.mAllocatedBytes;
+        mAllocationsCounted |= other.mAllocationsCounted;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public long getTotalNanos() {
+        long totalNanos = 0;
+        for (int i = 0; i < mCount; i++) {
+            totalNanos += mDurationsNanos[i];
+        }
+        return totalNanos;
+    }
+
+    /**
+     * @return the duration under which the fraction of the recorded durations falls, by nearest rank
+     */
+    public long getPercentileNanos(double fraction) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long[] sortedDurations = Arrays.copyOf(mDurationsNanos, mCount);
+        Arrays.sort(sortedDurations);
+        int rank = (int) Math.ceil(fraction * mCount);
+        return sortedDurations[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * @return the bytes allocated by the measured operations, -1 if they weren't counted
+     */
+    public long getAllocatedBytes() {
+        return mAllocationsCounted ? mAllocatedBytes : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationCountingThreadMXBean() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean allocationCountingThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        return allocationCountingThreadMXBean.isThreadAllocatedMemorySupported() &&
+                allocationCountingThreadMXBean.isThreadAllocatedMemoryEnabled() ? allocationCountingThreadMXBean : null;
+    }
+
+    private static long getThreadAllocatedBytes() {
+        return sThreadMXBean == null ? -1 : sThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
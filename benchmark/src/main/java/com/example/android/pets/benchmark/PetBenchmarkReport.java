@@ -0,0 +1,138 @@
+package com.example.android.pets.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Results of the cases of a benchmark class, written as one JSON file named after the class, for
+ * example {@code {"benchmark": "PetProviderBenchmark", "results": [{"name": "insert", "rows": 1000,
+ * "operations": 1000, "itemsPerOperation": 1, "meanNanos": 5120, "p50Nanos": 4870, "p90Nanos": 6010,
+ * "p99Nanos": 9930, "maxNanos": 20110, "itemsPerSecond": 195312.5, "allocatedBytesPerItem": 1480}]}}.
+ * A CI job compares the files with the ones of a baseline run by benchmark, name and rows.
+ * <p>
+ * The allocated bytes are -1 when they weren't counted, see {@link PetBenchmarkRecorder}. The
+ * results of {@link #addRetainedHeap(String, long, long)} have the bytes a structure holds on the
+ * heap instead of timings, for example {@code {"name": "snapshot_heap", "rows": 1000,
+ * "retainedBytes": 52000, "retainedBytesPerItem": 52}}.
+ */
+public final class PetBenchmarkReport {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String mBenchmarkName;
+    private final List<String> mResults = new ArrayList<String>();
+
+    public PetBenchmarkReport(Class<?> benchmarkClass) {
+        this.mBenchmarkName = benchmarkClass.getSimpleName();
+    }
+
+    /**
+     * Measure a case with the configured numbers of operations.
+     *
+     * @param rows              the size of the table the case runs against
+     * @param itemsPerOperation the rows an operation reads or writes, more than one for a batch
+     */
+    public void measure(String name, long rows, int itemsPerOperation, PetBenchmarkOperation operation)
+            throws Exception {
+        measure(name, rows, itemsPerOperation, PetBenchmarkConfig.getOperations(), operation);
+    }
+
+    /**
+     * Measure a case with a number of operations of its own, for the cases too long to run the
+     * configured number of times. A tenth of them are run first to warm up.
+     */
+    public void measure(String name, long rows, int itemsPerOperation, int operations,
+                        PetBenchmarkOperation operation) throws Exception {
+        int warmUpOperations = Math.max(operations / 10, 1);
+        for (int i = 0; i < warmUpOperations; i++) {
+            operation.run(i);
+        }
+
+        PetBenchmarkRecorder recorder = new PetBenchmarkRecorder(operations);
+        for (int i = 0; i < operations; i++) {
+            recorder.start();
+            operation.run(warmUpOperations + i);
+            recorder.stop();
+        }
+        add(name, rows, itemsPerOperation, recorder);
+    }
+
+    /**
+     * Add the result of a case measured by the caller, for the cases with work that must not be
+     * measured between their operations or with several threads.
+     */
+    public void add(String name, long rows, int itemsPerOperation, PetBenchmarkRecorder recorder) {
+        int operations = recorder.getCount();
+        long totalNanos = recorder.getTotalNanos();
+        long items = (long) operations * itemsPerOperation;
+        double itemsPerSecond = totalNanos == 0 ? 0 : items * 1e9 / totalNanos;
+        long allocatedBytes = recorder.getAllocatedBytes();
+        long allocatedBytesPerItem = allocatedBytes < 0 || items == 0 ? -1 : allocatedBytes / items;
+
+        String result = String.format(Locale.US, "{\"name\": \"%s\", \"rows\": %d, \"operations\": %d, " +
+                        "\"itemsPerOperation\": %d, \"meanNanos\": %d, \"p50Nanos\": %d, \"p90Nanos\": %d, " +
+                        "\"p99Nanos\": %d, \"maxNanos\": %d, \"itemsPerSecond\": %.1f, \"allocatedBytesPerItem\": %d}",
+                escape(name), rows, operations, itemsPerOperation, operations == 0 ? 0 : totalNanos / operations,
+                recorder.getPercentileNanos(0.50), recorder.getPercentileNanos(0.90),
+                recorder.getPercentileNanos(0.99), recorder.getPercentileNanos(1), itemsPerSecond,
+                allocatedBytesPerItem);
+        mResults.add(result);
+        System.out.println(mBenchmarkName + ": " + result);
+    }
+
+    /**
+     * Add the heap a structure holding the given rows retains, measured by the caller.
+     */
+    public void addRetainedHeap(String name, long rows, long retainedBytes) {
+        String result = String.format(Locale.US, "{\"name\": \"%s\", \"rows\": %d, \"retainedBytes\": %d, " +
+                        "\"retainedBytesPerItem\": %d}",
+                escape(name), rows, retainedBytes, rows == 0 ? 0 : retainedBytes / rows);
+        mResults.add(result);
+        System.out.println(mBenchmarkName + ": " + result);
+    }
+
+    /**
+     * Write the results to the output directory, replacing those of an earlier run.
+     */
+    public void write() throws IOException {
+        File directory = PetBenchmarkConfig.getOutputDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, mBenchmarkName + ".json")),
+                UTF_8);
+        try {
+            writer.write("{\"benchmark\": \"" + escape(mBenchmarkName) + "\", \"results\": [");
+            for (int i = 0; i < mResults.size(); i++) {
+                writer.write(i == 0 ? "\n  " : ",\n  ");
+                writer.write(mResults.get(i));
+            }
+            writer.write("\n]}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.android.pets.benchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PetBenchmarkRecorderTest {
+
+    @Test
+    public void percentilesUseNearestRank() {
+        PetBenchmarkRecorder recorder = new PetBenchmarkRecorder(10);
+        for (int duration = 100; duration >= 1; duration--) {
+            recorder.record(duration);
+        }
+
+        assertEquals(50, recorder.getPercentileNanos(0.50));
+        assertEquals(90, recorder.getPercentileNanos(0.90));
+        assertEquals(99, recorder.getPercentileNanos(0.99));
+        assertEquals(100, recorder.getPercentileNanos(1));
+        assertEquals(1, recorder.getPercentileNanos(0));
+        assertEquals(5050, recorder.getTotalNanos());
+    }
+
+    @Test
+    public void emptyRecorderHasNoDurations() {
+        PetBenchmarkRecorder recorder = new PetBenchmarkRecorder(10);
+
+        assertEquals(0, recorder.getCount());
+        assertEquals(0, recorder.getPercentileNanos(0.99));
+        assertEquals(-1, recorder.getAllocatedBytes());
+    }
+
+    @Test
+    public void recorderGrowsPastItsExpectedCount() {
+        PetBenchmarkRecorder recorder = new PetBenchmarkRecorder(1);
+        for (int i = 0; i < 1000; i++) {
+            recorder.record(i);
+        }
+
+        assertEquals(1000, recorder.getCount());
+        assertEquals(999, recorder.getPercentileNanos(1));
+    }
+
+    @Test
+    public void addAllKeepsDurationsOfBothRecorders() {
+        PetBenchmarkRecorder recorder = new PetBenchmarkRecorder(10);
+        PetBenchmarkRecorder otherRecorder = new PetBenchmarkRecorder(10);
+        recorder.record(1);
+        otherRecorder.record(3);
+        otherRecorder.record(2);
+
+        recorder.addAll(otherRecorder);
+
+        assertEquals(3, recorder.getCount());
+        assertEquals(2, recorder.getPercentileNanos(0.5));
+        assertEquals(6, recorder.getTotalNanos());
+    }
+
+    @Test
+    public void measuredOperationsCountTheirAllocations() {
+        PetBenchmarkRecorder recorder = new PetBenchmarkRecorder(10);
+
+        recorder.start();
+        byte[][] arrays = new byte[10][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = new byte[1024];
+        }
+        recorder.stop();
+
+        assertEquals(1, recorder.getCount());
+        // Unless the JVM doesn't count the allocations of each thread
+        long allocatedBytes = recorder.getAllocatedBytes();
+        assertTrue(Long.toString(allocatedBytes), allocatedBytes == -1 || allocatedBytes >= 10 * 1024);
+    }
+}
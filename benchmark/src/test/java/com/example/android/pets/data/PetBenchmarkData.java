@@ -0,0 +1,81 @@
+package com.example.android.pets.data;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Providers over databases of their own, filled with random pets, for the benchmarks. The pets
+ * of a fresh database have the ids 1 to the number of pets inserted.
+ */
+final class PetBenchmarkData {
+
+    static final String[] BREEDS = {"Beagle", "Boxer", "Bulldog", "Chihuahua", "Collie", "Corgi", "Dachshund",
+            "Dalmatian", "Husky", "Labrador", "Maine Coon", "Persian", "Poodle", "Pug", "Ragdoll", "Shih Tzu",
+            "Siamese", "Sphynx", "Terrier", "Whippet"};
+    private static final String[] NAMES = {"Bella", "Charlie", "Coco", "Daisy", "Fido", "Luna", "Max", "Milo",
+            "Nala", "Oscar", "Rex", "Rocky", "Simba", "Toby", "Toto"};
+
+    //Pets inserted by each bulk insert of a fill, each one a transaction
+    private static final int FILL_BATCH_SIZE = 5000;
+
+    private PetBenchmarkData() {
+    }
+
+    /**
+     * @return a started provider over a new empty database
+     */
+    static PetProvider newProvider(String databaseName, PetDbProfile dbProfile) {
+        Context context = RuntimeEnvironment.application;
+        context.deleteDatabase(databaseName);
+        PetProvider provider = new PetProvider(databaseName, dbProfile);
+        provider.attachInfo(context, null);
+        return provider;
+    }
+
+    static void closeProvider(PetProvider provider, String databaseName) {
+        provider.shutdown();
+        RuntimeEnvironment.application.deleteDatabase(databaseName);
+    }
+
+    /**
+     * Insert random pets through bulk inserts of the provider.
+     */
+    static void insertPets(ContentProvider provider, int count, Random random) {
+        ContentValues[] values = new ContentValues[Math.min(count, FILL_BATCH_SIZE)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new ContentValues();
+        }
+
+        int insertedPets = 0;
+        while (insertedPets < count) {
+            int batchSize = Math.min(values.length, count - insertedPets);
+            ContentValues[] batchValues = batchSize == values.length ? values : Arrays.copyOf(values, batchSize);
+            for (ContentValues petValues : batchValues) {
+                putRandomPet(petValues, random);
+            }
+            insertedPets += provider.bulkInsert(PetEntry.CONTENT_URI, batchValues);
+        }
+    }
+
+    /**
+     * Put the values of a new random pet, with a breed for nine pets out of ten.
+     */
+    static void putRandomPet(ContentValues values, Random random) {
+        values.put(PetEntry.COLUMN_PET_NAME, NAMES[random.nextInt(NAMES.length)] + " " + random.nextInt(1000));
+        values.put(PetEntry.COLUMN_PET_BREED, random.nextInt(10) == 0 ? null : randomBreed(random));
+        values.put(PetEntry.COLUMN_PET_GENDER, random.nextInt(3));
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 1 + random.nextInt(60));
+    }
+
+    static String randomBreed(Random random) {
+        return BREEDS[random.nextInt(BREEDS.length)];
+    }
+}
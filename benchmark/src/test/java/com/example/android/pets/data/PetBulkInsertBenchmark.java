@@ -0,0 +1,76 @@
+package com.example.android.pets.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+
+import com.example.android.pets.benchmark.PetBenchmarkConfig;
+import com.example.android.pets.benchmark.PetBenchmarkOperation;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Rows inserted per second by a batch of inserts: one insert call per row, the path of the
+ * bulk insert of {@link android.content.ContentProvider} that the provider used to inherit, against
+ * the bulk insert and the batch of the provider, each one transaction with one notification.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PetBulkInsertBenchmark {
+
+    private static final String DB_NAME = "bulk_insert_benchmark.db";
+    private static final int TABLE_ROWS = 10000;
+    private static final int BATCH_SIZE = 1000;
+
+    private final Random mRandom = new Random(1);
+
+    @Test
+    public void insertBatches() throws Exception {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetBulkInsertBenchmark.class);
+        final PetProvider provider = PetBenchmarkData.newProvider(DB_NAME, PetDbProfile.DEFAULT);
+        try {
+            PetBenchmarkData.insertPets(provider, TABLE_ROWS, mRandom);
+
+            final ContentValues[] values = new ContentValues[BATCH_SIZE];
+            final ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new ContentValues();
+                PetBenchmarkData.putRandomPet(values[i], mRandom);
+                operations.add(ContentProviderOperation.newInsert(PetEntry.CONTENT_URI).withValues(values[i]).build());
+            }
+            // A batch takes as long as a thousand single operations
+            int batches = Math.max(PetBenchmarkConfig.getOperations() / 20, 1);
+
+            report.measure("insert_row_by_row", TABLE_ROWS, BATCH_SIZE, batches, new PetBenchmarkOperation() {
+                @Override
+                public void run(int index) {
+                    for (ContentValues petValues : values) {
+                        provider.insert(PetEntry.CONTENT_URI, petValues);
+                    }
+                }
+            });
+            report.measure("bulk_insert", TABLE_ROWS, BATCH_SIZE, batches, new PetBenchmarkOperation() {
+                @Override
+                public void run(int index) {
+                    provider.bulkInsert(PetEntry.CONTENT_URI, values);
+                }
+            });
+            report.measure("apply_batch", TABLE_ROWS, BATCH_SIZE, batches, new PetBenchmarkOperation() {
+                @Override
+                public void run(int index) throws Exception {
+                    provider.applyBatch(operations);
+                }
+            });
+        } finally {
+            PetBenchmarkData.closeProvider(provider, DB_NAME);
+        }
+        report.write();
+    }
+}
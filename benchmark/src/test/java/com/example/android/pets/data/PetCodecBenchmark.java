@@ -0,0 +1,86 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+
+import com.example.android.pets.benchmark.PetBenchmarkOperation;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+/**
+ * Rows per second and bytes allocated per row of decoding a filled cursor of pets: with
+ * {@link PetCursorCodec}, which resolves the column indices once, against looking the columns up
+ * by name on every row and against copying every row into content values.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PetCodecBenchmark {
+
+    private static final String DB_NAME = "codec_benchmark.db";
+    private static final int CURSOR_ROWS = 1000;
+
+    @Test
+    public void decodeFilledCursor() throws Exception {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetCodecBenchmark.class);
+        PetProvider provider = PetBenchmarkData.newProvider(DB_NAME, PetDbProfile.DEFAULT);
+        try {
+            PetBenchmarkData.insertPets(provider, CURSOR_ROWS, new Random(21));
+            final Cursor cursor = provider.query(PetEntry.CONTENT_URI, PetEntry.EDITOR_PROJECTION, null, null,
+                    null);
+            try {
+                // Fill the cursor window before measuring
+                cursor.getCount();
+                measure(report, cursor);
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            PetBenchmarkData.closeProvider(provider, DB_NAME);
+        }
+        report.write();
+    }
+
+    private static void measure(PetBenchmarkReport report, final Cursor cursor) throws Exception {
+        report.measure("codec", CURSOR_ROWS, CURSOR_ROWS, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                PetCursorCodec petCursorCodec = new PetCursorCodec(cursor);
+                cursor.moveToPosition(-1);
+                while (cursor.moveToNext()) {
+                    petCursorCodec.decode();
+                }
+            }
+        });
+        report.measure("column_index_per_row", CURSOR_ROWS, CURSOR_ROWS, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                cursor.moveToPosition(-1);
+                while (cursor.moveToNext()) {
+                    new Pet(cursor.getLong(cursor.getColumnIndex(PetEntry._ID)),
+                            cursor.getString(cursor.getColumnIndex(PetEntry.COLUMN_PET_NAME)),
+                            cursor.getString(cursor.getColumnIndex(PetEntry.COLUMN_PET_BREED)),
+                            cursor.getInt(cursor.getColumnIndex(PetEntry.COLUMN_PET_GENDER)),
+                            cursor.getInt(cursor.getColumnIndex(PetEntry.COLUMN_PET_WEIGHT)));
+                }
+            }
+        });
+        report.measure("content_values", CURSOR_ROWS, CURSOR_ROWS, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                cursor.moveToPosition(-1);
+                while (cursor.moveToNext()) {
+                    ContentValues values = new ContentValues();
+                    DatabaseUtils.cursorRowToContentValues(cursor, values);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+
+import com.example.android.pets.benchmark.PetBenchmarkConfig;
+import com.example.android.pets.benchmark.PetBenchmarkOperation;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The columnar snapshot against the plain cursor walk on a table of each configured size. The
+ * shelter statistics, counts by gender and breed, a weight histogram and the average weight by
+ * breed, are aggregated over the snapshot on one thread and across the cores, and by walking a
+ * cursor over every pet and counting in maps, as a caller did without the snapshot. The heap is
+ * the one retained by the read snapshot and by a cursor walked to its last pet.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PetColumnarSnapshotBenchmark {
+
+    private static final String DB_NAME = "columnar_snapshot_benchmark.db";
+    private static final int WEIGHT_BUCKET_WIDTH = PetContract.DEFAULT_WEIGHT_BUCKET_WIDTH;
+    private static final int GC_PASSES = 3;
+
+    private final Random mRandom = new Random(14);
+
+    @Test
+    public void runAtEveryTableSize() throws Exception {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetColumnarSnapshotBenchmark.class);
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (int rows : PetBenchmarkConfig.getRowCounts()) {
+                PetProvider provider = PetBenchmarkData.newProvider(DB_NAME, PetDbProfile.DEFAULT);
+                try {
+                    PetBenchmarkData.insertPets(provider, rows, mRandom);
+                    measure(report, provider, rows, executor);
+                } finally {
+                    PetBenchmarkData.closeProvider(provider, DB_NAME);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        report.write();
+    }
+
+    private static void measure(PetBenchmarkReport report, final PetProvider provider, int rows,
+                                final ExecutorService executor) throws Exception {
+        // Each read and each walk goes over the whole table
+        int tableOperations = Math.max(PetBenchmarkConfig.getOperations() / 50, 1);
+
+        report.measure("snapshot_read", rows, rows, tableOperations, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                readSnapshot(provider);
+            }
+        });
+
+        final PetColumnarSnapshot snapshot = readSnapshot(provider);
+        report.measure("snapshot_aggregate", rows, rows, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                aggregate(snapshot, null);
+            }
+        });
+        report.measure("snapshot_aggregate_parallel", rows, rows, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                aggregate(snapshot, executor);
+            }
+        });
+        report.measure("cursor_walk_aggregate", rows, rows, tableOperations, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                walkAndAggregate(provider);
+            }
+        });
+
+        report.addRetainedHeap("snapshot_heap", rows, measureSnapshotHeap(provider));
+        report.addRetainedHeap("cursor_heap", rows, measureCursorHeap(provider));
+    }
+
+    private static PetColumnarSnapshot readSnapshot(PetProvider provider) {
+        return PetColumnarSnapshot.read(provider.query(PetEntry.CONTENT_URI, PetEntry.EDITOR_PROJECTION,
+                null, null, null));
+    }
+
+    private static void aggregate(PetColumnarSnapshot snapshot, ExecutorService executor) {
+        snapshot.countByGender(executor);
+        snapshot.countByBreed(executor);
+        snapshot.weightHistogram(WEIGHT_BUCKET_WIDTH, executor);
+        snapshot.averageWeightByBreed();
+    }
+
+    private static void walkAndAggregate(PetProvider provider) {
+        int[] countByGender = new int[PetEntry.GENDER_FEMALE + 1];
+        Map<String, long[]> breedStats = new HashMap<String, long[]>();
+        Map<Integer, Integer> weightHistogram = new HashMap<Integer, Integer>();
+
+        Cursor cursor = provider.query(PetEntry.CONTENT_URI, PetEntry.EDITOR_PROJECTION, null, null, null);
+        try {
+            int breedColumnIndex = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_BREED);
+            int genderColumnIndex = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_GENDER);
+            int weightColumnIndex = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_WEIGHT);
+            while (cursor.moveToNext()) {
+                int weight = cursor.getInt(weightColumnIndex);
+                countByGender[cursor.getInt(genderColumnIndex)]++;
+                Integer bucket = weight / WEIGHT_BUCKET_WIDTH;
+                Integer bucketCount = weightHistogram.get(bucket);
+                weightHistogram.put(bucket, bucketCount == null ? 1 : bucketCount + 1);
+
+                String breed = cursor.getString(breedColumnIndex);
+                if (breed != null) {
+                    long[] stats = breedStats.get(breed);
+                    if (stats == null) {
+                        stats = new long[2];
+                        breedStats.put(breed, stats);
+                    }
+                    stats[0]++;
+                    stats[1] += weight;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long measureSnapshotHeap(PetProvider provider) {
+        long usedBytes = getUsedHeapBytes();
+        PetColumnarSnapshot snapshot = readSnapshot(provider);
+        long retainedBytes = getUsedHeapBytes() - usedBytes;
+        // Keeps the snapshot reachable until the heap is measured
+        return snapshot.getCount() < 0 ? 0 : retainedBytes;
+    }
+
+    private static long measureCursorHeap(PetProvider provider) {
+        long usedBytes = getUsedHeapBytes();
+        Cursor cursor = provider.query(PetEntry.CONTENT_URI, PetEntry.EDITOR_PROJECTION, null, null, null);
+        try {
+            cursor.moveToLast();
+            return getUsedHeapBytes() - usedBytes;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long getUsedHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < GC_PASSES; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
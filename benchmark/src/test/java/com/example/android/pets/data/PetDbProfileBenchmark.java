@@ -0,0 +1,144 @@
+package com.example.android.pets.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.pets.benchmark.PetBenchmarkConfig;
+import com.example.android.pets.benchmark.PetBenchmarkRecorder;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latencies of the catalog reads of several reader threads while a writer thread keeps updating
+ * pets, with write-ahead logging and with the rollback journal.
+ * <p>
+ * The SQLite of Robolectric runs the statements of all the connections on one thread, so the
+ * readers never run in parallel with the writer here as they do on a device in WAL mode. The
+ * results show the cost of each profile for the same work, not the waits WAL saves.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PetDbProfileBenchmark {
+
+    private static final String DB_NAME = "db_profile_benchmark.db";
+    private static final int TABLE_ROWS = 10000;
+    private static final int READER_COUNT = 4;
+    private static final int PAGE_SIZE = 50;
+
+    @Test
+    public void readWhileWriting() throws Exception {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetDbProfileBenchmark.class);
+        measure(report, "wal", PetDbProfile.DEFAULT);
+        measure(report, "rollback_journal", PetDbProfile.ROLLBACK_JOURNAL);
+        report.write();
+    }
+
+    private void measure(PetBenchmarkReport report, String profileName, PetDbProfile dbProfile) throws Exception {
+        final PetProvider provider = PetBenchmarkData.newProvider(DB_NAME, dbProfile);
+        try {
+            PetBenchmarkData.insertPets(provider, TABLE_ROWS, new Random(5));
+
+            final int readsPerReader = PetBenchmarkConfig.getOperations();
+            final AtomicBoolean readersDone = new AtomicBoolean();
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            final PetBenchmarkRecorder writeRecorder = new PetBenchmarkRecorder(readsPerReader);
+            final PetBenchmarkRecorder[] readRecorders = new PetBenchmarkRecorder[READER_COUNT];
+
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(7);
+                    ContentValues values = new ContentValues();
+                    try {
+                        while (!readersDone.get()) {
+                            values.put(PetEntry.COLUMN_PET_WEIGHT, 1 + random.nextInt(60));
+                            Uri petUri = ContentUris.withAppendedId(PetEntry.CONTENT_URI, 1 + random.nextInt(TABLE_ROWS));
+                            writeRecorder.start();
+                            provider.update(petUri, values, null, null);
+                            writeRecorder.stop();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            Thread[] readers = new Thread[READER_COUNT];
+            for (int i = 0; i < readers.length; i++) {
+                final PetBenchmarkRecorder readRecorder = new PetBenchmarkRecorder(readsPerReader);
+                final Random random = new Random(i);
+                readRecorders[i] = readRecorder;
+                readers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int read = 0; read < readsPerReader; read++) {
+                                readRecorder.start();
+                                readPage(provider, 1 + random.nextInt(TABLE_ROWS - PAGE_SIZE));
+                                readRecorder.stop();
+                            }
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                });
+            }
+
+            writer.start();
+            for (Thread reader : readers) {
+                reader.start();
+            }
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            readersDone.set(true);
+            writer.join();
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+
+            PetBenchmarkRecorder readRecorder = new PetBenchmarkRecorder(readsPerReader * READER_COUNT);
+            for (PetBenchmarkRecorder recorder : readRecorders) {
+                readRecorder.addAll(recorder);
+            }
+            report.add("read_" + profileName, TABLE_ROWS, PAGE_SIZE, readRecorder);
+            report.add("write_" + profileName, TABLE_ROWS, 1, writeRecorder);
+        } finally {
+            PetBenchmarkData.closeProvider(provider, DB_NAME);
+        }
+    }
+
+    /**
+     * Read a page of the catalog, as its loader does.
+     */
+    private static void readPage(PetProvider provider, long afterId) {
+        ShadowContentResolver contentResolver =
+                Shadows.shadowOf(RuntimeEnvironment.application.getContentResolver());
+        Cursor cursor = provider.query(PetEntry.buildPageUri(afterId, PAGE_SIZE), PetEntry.CATALOG_PROJECTION,
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getString(1);
+            }
+        } finally {
+            // The shadow resolver walks its observers outside of its lock when the cursor
+            // unregisters, while another reader may register the observer of its page
+            synchronized (contentResolver) {
+                cursor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.os.ParcelFileDescriptor;
+
+import com.example.android.pets.benchmark.PetBenchmarkConfig;
+import com.example.android.pets.benchmark.PetBenchmarkOperation;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Rows per second and bytes allocated per row of an export of the table of each configured size,
+ * in CSV and in the binary format, written to a file. Reading every row through a cursor of the
+ * provider and writing it to a buffered writer is the export the writer replaced.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PetExportBenchmark {
+
+    private static final String DB_NAME = "export_benchmark.db";
+    private static final String[] EXPORT_PROJECTION = {PetEntry._ID, PetEntry.COLUMN_PET_NAME,
+            PetEntry.COLUMN_PET_BREED, PetEntry.COLUMN_PET_GENDER, PetEntry.COLUMN_PET_WEIGHT};
+
+    private final Random mRandom = new Random(17);
+
+    @Test
+    public void runAtEveryTableSize() throws Exception {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetExportBenchmark.class);
+        File exportFile = File.createTempFile("pets", ".export");
+        try {
+            for (int rows : PetBenchmarkConfig.getRowCounts()) {
+                PetProvider provider = PetBenchmarkData.newProvider(DB_NAME, PetDbProfile.DEFAULT);
+                PetDbHelper petDbHelper = new PetDbHelper(RuntimeEnvironment.application, DB_NAME,
+                        PetDbProfile.DEFAULT);
+                try {
+                    PetBenchmarkData.insertPets(provider, rows, mRandom);
+                    measure(report, provider, new PetExportWriter(petDbHelper), exportFile, rows);
+                } finally {
+                    petDbHelper.close();
+                    PetBenchmarkData.closeProvider(provider, DB_NAME);
+                }
+            }
+        } finally {
+            exportFile.delete();
+        }
+        report.write();
+    }
+
+    private static void measure(PetBenchmarkReport report, final PetProvider provider,
+                                final PetExportWriter petExportWriter, final File exportFile, int rows)
+            throws Exception {
+        // Each of these operations writes the whole table
+        int exportOperations = Math.max(PetBenchmarkConfig.getOperations() / 20, 1);
+
+        report.measure("export_csv", rows, rows, exportOperations, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) throws IOException {
+                export(petExportWriter, exportFile, PetEntry.EXPORT_FORMAT_CSV);
+            }
+        });
+        report.measure("export_binary", rows, rows, exportOperations, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) throws IOException {
+                export(petExportWriter, exportFile, PetEntry.EXPORT_FORMAT_BINARY);
+            }
+        });
+        report.measure("cursor_to_writer", rows, rows, exportOperations, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) throws IOException {
+                copyCursor(provider, exportFile);
+            }
+        });
+    }
+
+    private static void export(PetExportWriter petExportWriter, File exportFile, String format) throws IOException {
+        ParcelFileDescriptor output = ParcelFileDescriptor.open(exportFile, ParcelFileDescriptor.MODE_WRITE_ONLY |
+                ParcelFileDescriptor.MODE_CREATE | ParcelFileDescriptor.MODE_TRUNCATE);
+        try {
+            petExportWriter.writeDataToPipe(output, PetEntry.CONTENT_EXPORT_URI, null, null, format);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void copyCursor(PetProvider provider, File exportFile) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(exportFile), "UTF-8"));
+        try {
+            Cursor cursor = provider.query(PetEntry.CONTENT_URI, EXPORT_PROJECTION, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    writer.write(cursor.getLong(0) + "," + cursor.getString(1) + "," + cursor.getString(2) + "," +
+                            cursor.getInt(3) + "," + cursor.getInt(4) + "\n");
+                }
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
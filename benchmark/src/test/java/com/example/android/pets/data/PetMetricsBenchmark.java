@@ -0,0 +1,79 @@
+package com.example.android.pets.data;
+
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.util.SparseArray;
+
+import com.example.android.pets.benchmark.PetBenchmarkOperation;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+/**
+ * The cost of the metrics of {@link PetProvider}: recording an operation on its own, and a query
+ * by id with the slow query log off, with a threshold no query reaches, and with a threshold of
+ * 0 that logs every query with its plan.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PetMetricsBenchmark {
+
+    private static final String DB_NAME = "metrics_benchmark.db";
+    private static final int TABLE_ROWS = 10000;
+    private static final int RECORDS_PER_OPERATION = 1000;
+    private static final int URI_CODE_PETS = 100;
+
+    private final Random mRandom = new Random(20);
+
+    @Test
+    public void measureMetrics() throws Exception {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetMetricsBenchmark.class);
+
+        SparseArray<String> uriCodeNames = new SparseArray<String>();
+        uriCodeNames.put(URI_CODE_PETS, "pets");
+        uriCodeNames.put(URI_CODE_PETS + 1, "pets/#");
+        final PetProviderMetrics metrics = new PetProviderMetrics(uriCodeNames);
+        report.measure("record", 0, RECORDS_PER_OPERATION, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                for (int i = 0; i < RECORDS_PER_OPERATION; i++) {
+                    metrics.record(PetProviderMetrics.OP_QUERY, URI_CODE_PETS, System.nanoTime(), 1, true);
+                }
+            }
+        });
+
+        PetProvider provider = PetBenchmarkData.newProvider(DB_NAME, PetDbProfile.DEFAULT);
+        try {
+            PetBenchmarkData.insertPets(provider, TABLE_ROWS, mRandom);
+            measureQueryById(report, "query_by_id_slow_log_off", provider, null);
+            measureQueryById(report, "query_by_id_slow_log_unreached", provider, "60000");
+            measureQueryById(report, "query_by_id_slow_log_every_query", provider, "0");
+        } finally {
+            PetBenchmarkData.closeProvider(provider, DB_NAME);
+        }
+        report.write();
+    }
+
+    private void measureQueryById(PetBenchmarkReport report, String name, final PetProvider provider,
+                                  String slowQueryThresholdMillis) throws Exception {
+        provider.call(PetContract.METHOD_SET_SLOW_QUERY_THRESHOLD, slowQueryThresholdMillis, null);
+        report.measure(name, TABLE_ROWS, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                Cursor cursor = provider.query(ContentUris.withAppendedId(PetEntry.CONTENT_URI,
+                        1 + mRandom.nextInt(TABLE_ROWS)), PetEntry.EDITOR_PROJECTION, null, null, null);
+                try {
+                    cursor.moveToFirst();
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+}
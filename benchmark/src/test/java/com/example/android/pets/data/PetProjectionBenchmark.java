@@ -0,0 +1,85 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.example.android.pets.benchmark.PetBenchmarkOperation;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+/**
+ * Time to fill the cursor windows of a page of pets once the table has a wide column, like the
+ * photo or notes columns to come: reading every column, as a null projection used to, against
+ * reading the columns of the catalog only.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PetProjectionBenchmark {
+
+    private static final String DB_NAME = "projection_benchmark.db";
+    private static final int TABLE_ROWS = 10000;
+    private static final int PAGE_SIZE = 1000;
+    private static final int NOTES_BYTES = 2048;
+    private static final String COLUMN_NOTES = "notes";
+
+    @Test
+    public void readPagesOfWideTable() throws Exception {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetProjectionBenchmark.class);
+        final Random random = new Random(10);
+        PetProvider provider = PetBenchmarkData.newProvider(DB_NAME, PetDbProfile.DEFAULT);
+        try {
+            PetBenchmarkData.insertPets(provider, TABLE_ROWS, random);
+        } finally {
+            provider.shutdown();
+        }
+
+        PetDbHelper petDbHelper = new PetDbHelper(RuntimeEnvironment.application, DB_NAME, PetDbProfile.DEFAULT);
+        try {
+            final SQLiteDatabase database = petDbHelper.getWritableDatabase();
+            // Notes of 4 KiB of text, 4 MiB for a page
+            database.execSQL("ALTER TABLE " + PetEntry.TABLE_NAME + " ADD COLUMN " + COLUMN_NOTES + " TEXT");
+            database.execSQL("UPDATE " + PetEntry.TABLE_NAME + " SET " + COLUMN_NOTES + "=hex(randomblob(" +
+                    NOTES_BYTES + "))");
+
+            report.measure("all_columns", TABLE_ROWS, PAGE_SIZE, new PetBenchmarkOperation() {
+                @Override
+                public void run(int index) {
+                    readPage(database, "*", random);
+                }
+            });
+            report.measure("catalog_projection", TABLE_ROWS, PAGE_SIZE, new PetBenchmarkOperation() {
+                @Override
+                public void run(int index) {
+                    readPage(database, TextUtils.join(",", PetEntry.CATALOG_PROJECTION), random);
+                }
+            });
+        } finally {
+            petDbHelper.close();
+            RuntimeEnvironment.application.deleteDatabase(DB_NAME);
+        }
+        report.write();
+    }
+
+    private static void readPage(SQLiteDatabase database, String columns, Random random) {
+        String afterId = Integer.toString(random.nextInt(TABLE_ROWS - PAGE_SIZE));
+        Cursor cursor = database.rawQuery("SELECT " + columns + " FROM " + PetEntry.TABLE_NAME + " WHERE " +
+                PetEntry._ID + ">? ORDER BY " + PetEntry._ID + " LIMIT " + PAGE_SIZE, new String[]{afterId});
+        try {
+            int nameColumnIndex = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_NAME);
+            while (cursor.moveToNext()) {
+                cursor.getString(nameColumnIndex);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.android.pets.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.pets.benchmark.PetBenchmarkConfig;
+import com.example.android.pets.benchmark.PetBenchmarkOperation;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+/**
+ * The operations of {@link PetProvider} on a table of each configured size: insert, bulk insert,
+ * query by id, filtered query, update and delete.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PetProviderBenchmark {
+
+    private static final String DB_NAME = "provider_benchmark.db";
+    private static final int BULK_INSERT_BATCH_SIZE = 100;
+    private static final int FILTERED_QUERY_LIMIT = 50;
+
+    private final Random mRandom = new Random(11);
+
+    @Test
+    public void runAtEveryTableSize() throws Exception {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetProviderBenchmark.class);
+        for (int rows : PetBenchmarkConfig.getRowCounts()) {
+            PetProvider provider = PetBenchmarkData.newProvider(DB_NAME, PetDbProfile.DEFAULT);
+            try {
+                PetBenchmarkData.insertPets(provider, rows, mRandom);
+                measure(report, provider, rows);
+            } finally {
+                PetBenchmarkData.closeProvider(provider, DB_NAME);
+            }
+        }
+        report.write();
+    }
+
+    private void measure(PetBenchmarkReport report, final PetProvider provider, final int rows) throws Exception {
+        final ContentValues values = new ContentValues();
+        final ContentValues[] bulkValues = new ContentValues[BULK_INSERT_BATCH_SIZE];
+        for (int i = 0; i < bulkValues.length; i++) {
+            bulkValues[i] = new ContentValues();
+        }
+        final ContentValues weightValues = new ContentValues();
+        final Uri filteredQueryUri = PetEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(PetEntry.QUERY_PARAMETER_LIMIT, Integer.toString(FILTERED_QUERY_LIMIT))
+                .build();
+        final String filteredQuerySelection = PetEntry.COLUMN_PET_BREED + "=?";
+
+        // The pets of the insert case, deleted by the delete case
+        final long firstInsertedId = rows + 1;
+        report.measure("insert", rows, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                PetBenchmarkData.putRandomPet(values, mRandom);
+                provider.insert(PetEntry.CONTENT_URI, values);
+            }
+        });
+
+        report.measure("bulk_insert", rows, BULK_INSERT_BATCH_SIZE,
+                Math.max(PetBenchmarkConfig.getOperations() / 10, 1), new PetBenchmarkOperation() {
+                    @Override
+                    public void run(int index) {
+                        for (ContentValues petValues : bulkValues) {
+                            PetBenchmarkData.putRandomPet(petValues, mRandom);
+                        }
+                        provider.bulkInsert(PetEntry.CONTENT_URI, bulkValues);
+                    }
+                });
+
+        report.measure("query_by_id", rows, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                Uri petUri = ContentUris.withAppendedId(PetEntry.CONTENT_URI, 1 + mRandom.nextInt(rows));
+                Cursor cursor = provider.query(petUri, PetEntry.EDITOR_PROJECTION, null, null, null);
+                try {
+                    if (!cursor.moveToFirst()) {
+                        throw new AssertionError("No pet at " + petUri);
+                    }
+                    cursor.getString(cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_NAME));
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+
+        report.measure("filtered_query", rows, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                Cursor cursor = provider.query(filteredQueryUri, PetEntry.CATALOG_PROJECTION, filteredQuerySelection,
+                        new String[]{PetBenchmarkData.randomBreed(mRandom)}, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        cursor.getString(1);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+
+        report.measure("update", rows, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                weightValues.put(PetEntry.COLUMN_PET_WEIGHT, 1 + mRandom.nextInt(60));
+                Uri petUri = ContentUris.withAppendedId(PetEntry.CONTENT_URI, 1 + mRandom.nextInt(rows));
+                provider.update(petUri, weightValues, null, null);
+            }
+        });
+
+        report.measure("delete", rows, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                provider.delete(ContentUris.withAppendedId(PetEntry.CONTENT_URI, firstInsertedId + index), null,
+                        null);
+            }
+        });
+    }
+}
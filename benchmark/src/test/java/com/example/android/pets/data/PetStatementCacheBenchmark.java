@@ -0,0 +1,151 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.pets.benchmark.PetBenchmarkOperation;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+/**
+ * The fixed-shape writes of the provider through the statements of {@link PetStatementCache},
+ * against the same writes through the methods of {@link SQLiteDatabase} that build the SQL and
+ * compile it on every call.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PetStatementCacheBenchmark {
+
+    private static final String DB_NAME = "statement_cache_benchmark.db";
+    private static final int TABLE_ROWS = 10000;
+    private static final String SELECTION_BY_ID = PetEntry._ID + "=?";
+    private static final String SELECTION_NOT_DELETED_BY_ID = PetEntry._ID + "=? AND " +
+            PetEntry.COLUMN_PET_DELETED_AT + " IS NULL";
+
+    private final Random mRandom = new Random(12);
+
+    @Test
+    public void writeById() throws Exception {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetStatementCacheBenchmark.class);
+        PetProvider provider = PetBenchmarkData.newProvider(DB_NAME, PetDbProfile.DEFAULT);
+        try {
+            PetBenchmarkData.insertPets(provider, TABLE_ROWS, mRandom);
+        } finally {
+            provider.shutdown();
+        }
+
+        PetDbHelper petDbHelper = new PetDbHelper(RuntimeEnvironment.application, DB_NAME, PetDbProfile.DEFAULT);
+        PetStatementCache petStatementCache = new PetStatementCache(petDbHelper);
+        try {
+            measure(report, petDbHelper.getWritableDatabase(), petStatementCache);
+        } finally {
+            petStatementCache.close();
+            petDbHelper.close();
+            RuntimeEnvironment.application.deleteDatabase(DB_NAME);
+        }
+        report.write();
+    }
+
+    private void measure(PetBenchmarkReport report, final SQLiteDatabase database,
+                         final PetStatementCache petStatementCache) throws Exception {
+        final ContentValues values = new ContentValues();
+        final ContentValues weightValues = new ContentValues();
+        final int weightColumnMask = PetStatementCache.getUpdateColumnMask(newWeightValues(1));
+        final ContentValues deletionValues = new ContentValues();
+        // The deletes run on the pets of the inserts, which are counted from here
+        final long[] nextDeletedId = {TABLE_ROWS + 1};
+
+        report.measure("insert_generic", TABLE_ROWS, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                PetBenchmarkData.putRandomPet(values, mRandom);
+                database.insert(PetEntry.TABLE_NAME, null, values);
+            }
+        });
+        report.measure("insert_cached", TABLE_ROWS, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                PetBenchmarkData.putRandomPet(values, mRandom);
+                SQLiteStatement insertStatement = petStatementCache.getInsertStatement(database);
+                database.beginTransactionNonExclusive();
+                try {
+                    synchronized (insertStatement) {
+                        PetCursorCodec.bindInsert(insertStatement, PetCursorCodec.fromContentValues(values));
+                        insertStatement.executeInsert();
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+            }
+        });
+
+        report.measure("update_by_id_generic", TABLE_ROWS, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                weightValues.put(PetEntry.COLUMN_PET_WEIGHT, 1 + mRandom.nextInt(60));
+                database.update(PetEntry.TABLE_NAME, weightValues, SELECTION_BY_ID,
+                        new String[]{String.valueOf(1 + mRandom.nextInt(TABLE_ROWS))});
+            }
+        });
+        report.measure("update_by_id_cached", TABLE_ROWS, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                weightValues.put(PetEntry.COLUMN_PET_WEIGHT, 1 + mRandom.nextInt(60));
+                SQLiteStatement updateStatement = petStatementCache.getUpdateByIdStatement(database, weightColumnMask);
+                database.beginTransactionNonExclusive();
+                try {
+                    synchronized (updateStatement) {
+                        PetStatementCache.bindUpdateById(updateStatement, weightColumnMask, weightValues,
+                                1 + mRandom.nextInt(TABLE_ROWS));
+                        updateStatement.executeUpdateDelete();
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+            }
+        });
+
+        report.measure("delete_by_id_generic", TABLE_ROWS, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                deletionValues.put(PetEntry.COLUMN_PET_DELETED_AT, System.currentTimeMillis());
+                database.update(PetEntry.TABLE_NAME, deletionValues, SELECTION_NOT_DELETED_BY_ID,
+                        new String[]{String.valueOf(nextDeletedId[0]++)});
+            }
+        });
+        report.measure("delete_by_id_cached", TABLE_ROWS, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                SQLiteStatement deleteStatement = petStatementCache.getDeleteByIdStatement(database);
+                database.beginTransactionNonExclusive();
+                try {
+                    synchronized (deleteStatement) {
+                        deleteStatement.bindLong(1, System.currentTimeMillis());
+                        deleteStatement.bindLong(2, nextDeletedId[0]++);
+                        deleteStatement.executeUpdateDelete();
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+            }
+        });
+    }
+
+    private static ContentValues newWeightValues(int weight) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+        return values;
+    }
+}
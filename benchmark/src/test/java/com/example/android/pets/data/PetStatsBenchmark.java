@@ -0,0 +1,130 @@
+package com.example.android.pets.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.pets.benchmark.PetBenchmarkConfig;
+import com.example.android.pets.benchmark.PetBenchmarkOperation;
+import com.example.android.pets.benchmark.PetBenchmarkRecorder;
+import com.example.android.pets.benchmark.PetBenchmarkReport;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The statistics URIs on a table of each configured size: right after a write, when the GROUP BY
+ * query runs, and when the result comes from the statistics cache. The walk over the breeds and
+ * weights of every pet, counting in Java, is the work a caller did before the statistics URIs.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PetStatsBenchmark {
+
+    private static final String DB_NAME = "stats_benchmark.db";
+    private static final String[] WALK_PROJECTION = {PetEntry.COLUMN_PET_BREED, PetEntry.COLUMN_PET_WEIGHT};
+
+    private final Random mRandom = new Random(14);
+
+    @Test
+    public void runAtEveryTableSize() throws Exception {
+        PetBenchmarkReport report = new PetBenchmarkReport(PetStatsBenchmark.class);
+        for (int rows : PetBenchmarkConfig.getRowCounts()) {
+            PetProvider provider = PetBenchmarkData.newProvider(DB_NAME, PetDbProfile.DEFAULT);
+            try {
+                PetBenchmarkData.insertPets(provider, rows, mRandom);
+                measure(report, provider, rows);
+            } finally {
+                PetBenchmarkData.closeProvider(provider, DB_NAME);
+            }
+        }
+        report.write();
+    }
+
+    private void measure(PetBenchmarkReport report, final PetProvider provider, int rows) throws Exception {
+        // Each of these operations reads the whole table
+        int tableOperations = Math.max(PetBenchmarkConfig.getOperations() / 20, 1);
+
+        measureAfterWrite(report, "by_breed_after_write", provider, rows, tableOperations,
+                PetEntry.CONTENT_STATS_BY_BREED_URI);
+        measureCached(report, "by_breed_cached", provider, rows, PetEntry.CONTENT_STATS_BY_BREED_URI);
+        measureAfterWrite(report, "count_after_write", provider, rows, tableOperations,
+                PetEntry.CONTENT_STATS_COUNT_URI);
+        measureCached(report, "count_cached", provider, rows, PetEntry.CONTENT_STATS_COUNT_URI);
+
+        report.measure("by_breed_cursor_walk", rows, 1, tableOperations, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                Map<String, long[]> breedStats = new HashMap<String, long[]>();
+                Cursor cursor = provider.query(PetEntry.CONTENT_URI, WALK_PROJECTION, null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        String breed = cursor.getString(0);
+                        long[] stats = breedStats.get(breed);
+                        if (stats == null) {
+                            stats = new long[2];
+                            breedStats.put(breed, stats);
+                        }
+                        stats[0]++;
+                        stats[1] += cursor.getInt(1);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Measure the queries of a statistics URI that each follow a write, which makes the cached
+     * result stale. The writes are not measured.
+     */
+    private void measureAfterWrite(PetBenchmarkReport report, String name, PetProvider provider, int rows,
+                                   int operations, Uri statsUri) {
+        ContentValues values = new ContentValues();
+        int warmUpOperations = Math.max(operations / 10, 1);
+        PetBenchmarkRecorder recorder = new PetBenchmarkRecorder(operations);
+        for (int i = 0; i < warmUpOperations + operations; i++) {
+            values.put(PetEntry.COLUMN_PET_WEIGHT, 1 + mRandom.nextInt(60));
+            provider.update(ContentUris.withAppendedId(PetEntry.CONTENT_URI, 1 + mRandom.nextInt(rows)), values,
+                    null, null);
+            if (i < warmUpOperations) {
+                readStats(provider, statsUri);
+            } else {
+                recorder.start();
+                readStats(provider, statsUri);
+                recorder.stop();
+            }
+        }
+        report.add(name, rows, 1, recorder);
+    }
+
+    private static void measureCached(PetBenchmarkReport report, String name, final PetProvider provider,
+                                      int rows, final Uri statsUri) throws Exception {
+        report.measure(name, rows, 1, new PetBenchmarkOperation() {
+            @Override
+            public void run(int index) {
+                readStats(provider, statsUri);
+            }
+        });
+    }
+
+    private static void readStats(PetProvider provider, Uri statsUri) {
+        Cursor cursor = provider.query(statsUri, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getLong(cursor.getColumnIndexOrThrow(PetEntry.COLUMN_STATS_COUNT));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}